@@ -0,0 +1,285 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.baksmali.Adaptors;
+
+import com.android.tools.smali.baksmali.BaksmaliOptions;
+import com.android.tools.smali.dexlib2.analysis.MethodAnalyzer;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedMethodImplementation;
+import com.android.tools.smali.dexlib2.iface.Method;
+import com.android.tools.smali.dexlib2.iface.MethodImplementation;
+import com.android.tools.smali.dexlib2.iface.instruction.Instruction;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Spreads the MethodAnalyzer work for the methods of a class across an executor, so that a class with several large
+ * methods isn't analyzed entirely on the thread that is writing it.
+ *
+ * The analyses of a class are handed to the executor largest method first, while the thread writing the class asks
+ * for them in output order. If no other thread has started on the method that the writing thread needs, the writing
+ * thread analyzes it itself. It only ever waits on an analysis that is already running, so this can't deadlock when
+ * the executor's threads are all busy writing classes.
+ *
+ * An analysis is dropped as soon as it has been handed to the writing thread, and the helper threads stop claiming
+ * new analyses once a limited number of them are running or waiting to be written. A helper that stops is started
+ * again when the writing thread catches up.
+ */
+public class MethodAnalysisScheduler {
+    @Nonnull private final Executor executor;
+    private final int parallelism;
+
+    /**
+     * @param executor The executor to run the analyses on
+     * @param parallelism The maximum number of threads that should work on the analyses of a single class, including
+     *                    the thread that is writing the class
+     */
+    public MethodAnalysisScheduler(@Nonnull Executor executor, int parallelism) {
+        this.executor = executor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Starts analyzing the given methods of a class, for those methods that need to be analyzed with the given options.
+     *
+     * @param options The options that the class will be disassembled with
+     * @param methods The methods of the class. The analyzers are keyed by the identity of these Method instances
+     * @return A ClassAnalyses object that the analyzers for these methods can be retrieved from
+     */
+    @Nonnull
+    public ClassAnalyses scheduleClass(@Nonnull final BaksmaliOptions options,
+                                       @Nonnull Iterable<? extends Method> methods) {
+        Map<Method, ScheduledAnalysis> analyses = new IdentityHashMap<>();
+        List<ScheduledAnalysis> scheduledAnalyses = new ArrayList<>();
+
+        for (final Method method: methods) {
+            MethodImplementation methodImpl = method.getImplementation();
+            if (methodImpl == null || !MethodDefinition.needsAnalysis(options, methodImpl)) {
+                continue;
+            }
+
+            ScheduledAnalysis analysis = new ScheduledAnalysis(
+                    new FutureTask<>(() -> analyzeMethod(options, method)), getCodeSize(methodImpl));
+            analyses.put(method, analysis);
+            scheduledAnalyses.add(analysis);
+        }
+
+        int helperCount = Math.min(parallelism, scheduledAnalyses.size()) - 1;
+        ClassAnalyses classAnalyses;
+        if (helperCount > 0) {
+            Collections.sort(scheduledAnalyses);
+            // the helpers can each have one analysis running and one finished, ahead of the writing thread
+            classAnalyses = new ClassAnalyses(executor, analyses, scheduledAnalyses, helperCount, helperCount * 2);
+        } else {
+            classAnalyses = new ClassAnalyses(executor, analyses, Collections.emptyList(), 0, 0);
+        }
+        classAnalyses.startHelpers();
+        return classAnalyses;
+    }
+
+    @Nonnull
+    static MethodAnalyzer analyzeMethod(@Nonnull BaksmaliOptions options, @Nonnull Method method) {
+        return new MethodAnalyzer(options.classPath, method, options.inlineResolver, options.normalizeVirtualMethods);
+    }
+
+    private static int getCodeSize(@Nonnull MethodImplementation methodImpl) {
+        if (methodImpl instanceof DexBackedMethodImplementation) {
+            return ((DexBackedMethodImplementation)methodImpl).getInstructionsSize();
+        }
+        int codeSize = 0;
+        for (Instruction instruction: methodImpl.getInstructions()) {
+            codeSize += instruction.getCodeUnits();
+        }
+        return codeSize;
+    }
+
+    /**
+     * The analyses that have been scheduled for a single class.
+     */
+    public static class ClassAnalyses {
+        @Nonnull private final Executor executor;
+        // the analyses that haven't been handed out yet. Only accessed by the writing thread
+        @Nonnull private final Map<Method, ScheduledAnalysis> analyses;
+        // the analyses in the order the helpers claim them. Guarded by this
+        @Nonnull private final List<ScheduledAnalysis> queue;
+        private final int helperCount;
+        private final int maxAhead;
+        // the state of the helpers. Guarded by this
+        private int nextAnalysis = 0;
+        private int runningHelpers = 0;
+        // the number of analyses that a helper has claimed, that haven't been handed out yet. Guarded by this
+        private int aheadCount = 0;
+
+        private ClassAnalyses(@Nonnull Executor executor, @Nonnull Map<Method, ScheduledAnalysis> analyses,
+                              @Nonnull List<ScheduledAnalysis> queue, int helperCount, int maxAhead) {
+            this.executor = executor;
+            this.analyses = analyses;
+            this.queue = queue;
+            this.helperCount = helperCount;
+            this.maxAhead = maxAhead;
+        }
+
+        /**
+         * Gets the analyzer for the given method, analyzing it on the current thread if no other thread has started
+         * analyzing it yet.
+         *
+         * The analyzer is only handed out once. Later calls for the same method return null.
+         *
+         * @param method One of the Method instances that was passed to scheduleClass
+         * @return The analyzer for the method, or null if no analysis was scheduled for the method
+         */
+        @Nullable
+        public MethodAnalyzer getMethodAnalyzer(@Nonnull Method method) {
+            ScheduledAnalysis scheduledAnalysis = analyses.remove(method);
+            if (scheduledAnalysis == null) {
+                return null;
+            }
+
+            FutureTask<MethodAnalyzer> analysis = handOut(scheduledAnalysis);
+            startHelpers();
+
+            analysis.run();
+
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        return analysis.get();
+                    } catch (InterruptedException ex) {
+                        interrupted = true;
+                    } catch (ExecutionException ex) {
+                        Throwable cause = ex.getCause();
+                        if (cause instanceof RuntimeException) {
+                            throw (RuntimeException)cause;
+                        }
+                        if (cause instanceof Error) {
+                            throw (Error)cause;
+                        }
+                        throw new RuntimeException(cause);
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Nonnull
+        private synchronized FutureTask<MethodAnalyzer> handOut(@Nonnull ScheduledAnalysis scheduledAnalysis) {
+            FutureTask<MethodAnalyzer> analysis = scheduledAnalysis.analysis;
+            assert analysis != null;
+            // the queue no longer holds on to the analysis once it's handed out, and the helpers will skip it
+            scheduledAnalysis.analysis = null;
+            if (scheduledAnalysis.claimed) {
+                aheadCount--;
+            }
+            return analysis;
+        }
+
+        /**
+         * Claims the next analysis for a helper.
+         *
+         * @return The analysis to run, or null if the helper should stop
+         */
+        @Nullable
+        private synchronized FutureTask<MethodAnalyzer> claimNext() {
+            while (nextAnalysis < queue.size()) {
+                ScheduledAnalysis scheduledAnalysis = queue.get(nextAnalysis);
+                if (scheduledAnalysis.analysis == null) {
+                    // it has already been handed out to the writing thread
+                    nextAnalysis++;
+                    continue;
+                }
+                if (aheadCount >= maxAhead) {
+                    break;
+                }
+                nextAnalysis++;
+                aheadCount++;
+                scheduledAnalysis.claimed = true;
+                return scheduledAnalysis.analysis;
+            }
+            runningHelpers--;
+            return null;
+        }
+
+        /**
+         * Starts as many helpers as are needed for the remaining analyses, up to the helper count.
+         */
+        private void startHelpers() {
+            int newHelpers;
+            synchronized (this) {
+                if (nextAnalysis >= queue.size() || aheadCount >= maxAhead) {
+                    return;
+                }
+                newHelpers = helperCount - runningHelpers;
+                runningHelpers = helperCount;
+            }
+
+            Runnable helper = () -> {
+                FutureTask<MethodAnalyzer> analysis;
+                while ((analysis = claimNext()) != null) {
+                    // this is a no-op if the writing thread has already started this analysis
+                    analysis.run();
+                }
+            };
+            for (int i=0; i<newHelpers; i++) {
+                executor.execute(helper);
+            }
+        }
+    }
+
+    private static class ScheduledAnalysis implements Comparable<ScheduledAnalysis> {
+        // null once the analysis has been handed out. Guarded by the ClassAnalyses
+        @Nullable public FutureTask<MethodAnalyzer> analysis;
+        // whether a helper has claimed the analysis. Guarded by the ClassAnalyses
+        public boolean claimed;
+        public final int codeSize;
+
+        public ScheduledAnalysis(@Nonnull FutureTask<MethodAnalyzer> analysis, int codeSize) {
+            this.analysis = analysis;
+            this.codeSize = codeSize;
+        }
+
+        @Override public int compareTo(@Nonnull ScheduledAnalysis other) {
+            // largest first
+            return Integer.compare(other.codeSize, codeSize);
+        }
+    }
+}
@@ -36,13 +36,18 @@ import com.google.common.collect.Lists;
 import com.android.tools.smali.dexlib2.VersionMap;
 import com.android.tools.smali.dexlib2.analysis.ClassPath;
 import com.android.tools.smali.dexlib2.analysis.ClassPathResolver;
+import com.android.tools.smali.dexlib2.analysis.ClassPathSnapshot;
+import com.android.tools.smali.dexlib2.analysis.ClassProvider;
+import com.android.tools.smali.dexlib2.analysis.DexClassProvider;
 import com.android.tools.smali.dexlib2.dexbacked.DexBackedDexFile;
 import com.android.tools.smali.dexlib2.dexbacked.OatFile;
+import com.android.tools.smali.dexlib2.iface.DexFile;
 import com.android.tools.smali.dexlib2.iface.MultiDexContainer;
 import com.android.tools.smali.util.jcommander.ColonParameterSplitter;
 import com.android.tools.smali.util.jcommander.ExtendedParameter;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
@@ -73,6 +78,17 @@ public class AnalysisArguments {
     @ExtendedParameter(argumentNames = "dir")
     public List<String> classPathDirectories = null;
 
+    @Parameter(names = {"--classpath-cache", "--cpc"},
+            description = "A directory in which to cache the vtables and field offsets that are calculated for the " +
+                    "classes in the classpath. The cache is keyed on the contents of the classpath files, so the " +
+                    "same directory can be shared by runs that use different classpaths.")
+    @ExtendedParameter(argumentNames = "dir")
+    public String classPathCacheDir = null;
+
+    @Nullable private File classPathSnapshotFile = null;
+    @Nullable private byte[] classPathSnapshotKey = null;
+    @Nonnull private List<ClassProvider> inputClassProviders = ImmutableList.of();
+
     public static class CheckPackagePrivateArgument {
         @Parameter(names = {"--check-package-private-access", "--package-private", "--checkpp", "--pp"},
                 description = "Use the package-private access check when calculating vtable indexes. This is enabled " +
@@ -142,6 +158,72 @@ public class AnalysisArguments {
         if (oatVersion == 0 && container instanceof OatFile) {
             oatVersion = ((OatFile) container).getOatVersion();
         }
-        return new ClassPath(resolver.getResolvedClassProviders(), checkPackagePrivateAccess, oatVersion);
+
+        List<ClassProvider> classProviders = resolver.getResolvedClassProviders();
+        for (ClassProvider classProvider: classProviders) {
+            if (classProvider instanceof DexClassProvider) {
+                DexFile classPathDexFile = ((DexClassProvider)classProvider).getDexFile();
+                if (classPathDexFile instanceof DexBackedDexFile) {
+                    // the analysis looks up the same class path types over and over
+                    ((DexBackedDexFile)classPathDexFile).setStringCacheEnabled(true);
+                }
+            }
+        }
+
+        ClassPathSnapshot snapshot = null;
+        if (classPathCacheDir != null) {
+            // the dex files being analyzed are also in the class path, but they're different for every input. They're
+            // left out of the snapshot, so that it can be shared by every input that uses the same class path
+            inputClassProviders = resolver.getInputClassProviders();
+            List<ClassProvider> snapshotProviders = Lists.newArrayList(classProviders);
+            snapshotProviders.removeAll(inputClassProviders);
+            snapshot = loadClassPathSnapshot(snapshotProviders, checkPackagePrivateAccess, oatVersion);
+        }
+        return new ClassPath(classProviders, checkPackagePrivateAccess, oatVersion, snapshot);
+    }
+
+    @Nullable
+    private ClassPathSnapshot loadClassPathSnapshot(@Nonnull List<ClassProvider> classProviders,
+                                                    boolean checkPackagePrivateAccess, int oatVersion) {
+        classPathSnapshotKey = ClassPathSnapshot.getKey(classProviders, checkPackagePrivateAccess, oatVersion);
+        if (classPathSnapshotKey == null) {
+            System.err.println("Warning: The classpath can't be cached. Ignoring --classpath-cache.");
+            return null;
+        }
+        classPathSnapshotFile = new File(classPathCacheDir, ClassPathSnapshot.getFileName(classPathSnapshotKey));
+
+        try {
+            return ClassPathSnapshot.open(classPathSnapshotFile, classPathSnapshotKey);
+        } catch (IOException ex) {
+            System.err.println(String.format("Warning: Could not read classpath cache file %s. Ignoring.",
+                    classPathSnapshotFile));
+            return null;
+        }
+    }
+
+    /**
+     * Saves the vtables and field offsets that have been calculated for the given class path, if a classpath cache
+     * directory was specified.
+     *
+     * @param classPath The class path that was returned by loadClassPathForDexFile
+     */
+    public void saveClassPathCache(@Nonnull ClassPath classPath) {
+        if (classPathSnapshotFile == null || classPathSnapshotKey == null) {
+            return;
+        }
+
+        File cacheDir = classPathSnapshotFile.getParentFile();
+        if (!cacheDir.exists() && !cacheDir.mkdirs() && !cacheDir.exists()) {
+            System.err.println("Warning: Can't create the classpath cache directory " + cacheDir);
+            return;
+        }
+
+        try {
+            ClassPathSnapshot.write(classPath, inputClassProviders, classPathSnapshotKey, classPathSnapshotFile);
+        } catch (IOException ex) {
+            System.err.println(String.format("Warning: Could not write classpath cache file %s",
+                    classPathSnapshotFile));
+            ex.printStackTrace(System.err);
+        }
     }
 }
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.baksmali;
+
+import com.android.tools.smali.baksmali.Adaptors.ClassDefinition;
+import com.android.tools.smali.baksmali.Adaptors.MethodAnalysisScheduler;
+import com.android.tools.smali.baksmali.formatter.BaksmaliWriter;
+import com.android.tools.smali.dexlib2.iface.ClassDef;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+
+/**
+ * Disassembles classes into an Appendable, e.g. a StringBuilder or CharBuffer, without going through the file system.
+ *
+ * The same writer stack is reused for every class, so a single instance can disassemble any number of classes without
+ * allocating a new set of writers for each one. An instance must only be used by a single thread at a time.
+ */
+public class ClassDisassembler {
+    @Nonnull private final BaksmaliOptions options;
+    @Nullable private final MethodAnalysisScheduler analysisScheduler;
+
+    @Nonnull private final AppendableWriter output = new AppendableWriter();
+    @Nonnull private final BaksmaliWriter writer = new BaksmaliWriter(output);
+
+    public ClassDisassembler(@Nonnull BaksmaliOptions options) {
+        this(options, null);
+    }
+
+    /**
+     * @param options The options to disassemble with
+     * @param analysisScheduler If not null, used to analyze the methods of each class in parallel, when they need to
+     *                          be analyzed
+     */
+    public ClassDisassembler(@Nonnull BaksmaliOptions options,
+                             @Nullable MethodAnalysisScheduler analysisScheduler) {
+        this.options = options;
+        this.analysisScheduler = analysisScheduler;
+    }
+
+    /**
+     * Disassembles a class, appending the smali to the given Appendable.
+     *
+     * @param classDef The class to disassemble
+     * @param appendable The Appendable to append the smali to. This isn't cleared first.
+     */
+    public void disassembleClass(@Nonnull ClassDef classDef, @Nonnull Appendable appendable) throws IOException {
+        output.setTarget(appendable);
+        try {
+            writer.reset(options.implicitReferences ? classDef.getType() : null);
+            ClassDefinition classDefinition = new ClassDefinition(options, classDef, analysisScheduler);
+            classDefinition.writeTo(writer);
+        } finally {
+            output.setTarget(null);
+        }
+    }
+
+    /**
+     * A Writer that forwards to an Appendable that can be swapped out between classes.
+     */
+    private static class AppendableWriter extends Writer {
+        @Nullable private Appendable target;
+        @Nullable private StringBuilder stringBuilder;
+
+        public void setTarget(@Nullable Appendable target) {
+            this.target = target;
+            // StringBuilder can append a char[] directly, without wrapping it
+            this.stringBuilder = target instanceof StringBuilder ? (StringBuilder)target : null;
+        }
+
+        @Nonnull
+        private Appendable getTarget() {
+            if (target == null) {
+                throw new IllegalStateException("No class is being disassembled");
+            }
+            return target;
+        }
+
+        @Override public void write(int c) throws IOException {
+            getTarget().append((char)c);
+        }
+
+        @Override public void write(@Nonnull char[] cbuf, int off, int len) throws IOException {
+            if (stringBuilder != null) {
+                stringBuilder.append(cbuf, off, len);
+            } else {
+                getTarget().append(CharBuffer.wrap(cbuf, off, len));
+            }
+        }
+
+        @Override public void write(@Nonnull String str, int off, int len) throws IOException {
+            getTarget().append(str, off, off + len);
+        }
+
+        @Override public Writer append(CharSequence csq) throws IOException {
+            getTarget().append(csq);
+            return this;
+        }
+
+        @Override public Writer append(CharSequence csq, int start, int end) throws IOException {
+            getTarget().append(csq, start, end);
+            return this;
+        }
+
+        @Override public Writer append(char c) throws IOException {
+            getTarget().append(c);
+            return this;
+        }
+
+        @Override public void flush() {
+        }
+
+        @Override public void close() {
+        }
+    }
+}
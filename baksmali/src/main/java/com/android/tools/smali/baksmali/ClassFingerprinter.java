@@ -0,0 +1,407 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.baksmali;
+
+import com.android.tools.smali.dexlib2.Format;
+import com.android.tools.smali.dexlib2.HiddenApiRestriction;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedClassDef;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedDexFile;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedField;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedMethod;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedMethodImplementation;
+import com.android.tools.smali.dexlib2.dexbacked.DexBuffer;
+import com.android.tools.smali.dexlib2.dexbacked.MappedDexBuffer;
+import com.android.tools.smali.dexlib2.dexbacked.instruction.DexBackedInstruction;
+import com.android.tools.smali.dexlib2.formatter.DexFormatter;
+import com.android.tools.smali.dexlib2.iface.Annotation;
+import com.android.tools.smali.dexlib2.iface.AnnotationElement;
+import com.android.tools.smali.dexlib2.iface.ClassDef;
+import com.android.tools.smali.dexlib2.iface.ExceptionHandler;
+import com.android.tools.smali.dexlib2.iface.MethodParameter;
+import com.android.tools.smali.dexlib2.iface.TryBlock;
+import com.android.tools.smali.dexlib2.iface.debug.DebugItem;
+import com.android.tools.smali.dexlib2.iface.debug.EndLocal;
+import com.android.tools.smali.dexlib2.iface.debug.LineNumber;
+import com.android.tools.smali.dexlib2.iface.debug.LocalInfo;
+import com.android.tools.smali.dexlib2.iface.debug.RestartLocal;
+import com.android.tools.smali.dexlib2.iface.debug.SetSourceFile;
+import com.android.tools.smali.dexlib2.iface.debug.StartLocal;
+import com.android.tools.smali.dexlib2.iface.instruction.DualReferenceInstruction;
+import com.android.tools.smali.dexlib2.iface.instruction.Instruction;
+import com.android.tools.smali.dexlib2.iface.instruction.ReferenceInstruction;
+import com.android.tools.smali.dexlib2.iface.reference.MethodReference;
+import com.android.tools.smali.dexlib2.iface.reference.Reference;
+import com.android.tools.smali.dexlib2.iface.value.EncodedValue;
+import com.android.tools.smali.dexlib2.util.SyntheticAccessorResolver;
+import com.android.tools.smali.dexlib2.util.SyntheticAccessorResolver.AccessedMember;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Computes a fingerprint of everything in a class that can affect its disassembly, without disassembling it.
+ *
+ * The fingerprint covers the class, field and method definitions, annotations, debug info and the raw bytecode of each
+ * method. Item indexes are never hashed directly, since they change whenever an unrelated item is added to or removed
+ * from the dex file. Instead, the code units holding an instruction's reference index are skipped, and the reference
+ * itself is hashed. When accessor comments are enabled, the member accessed by each synthetic accessor that the class
+ * calls is hashed as well, since that comes from another class.
+ *
+ * Anything else that affects the output, i.e. the options, must be tracked separately. See
+ * {@link #getOptionsFingerprint(BaksmaliOptions)}.
+ *
+ * An instance must only be used by a single thread at a time.
+ */
+public class ClassFingerprinter {
+    // bump this whenever the contents of the fingerprint change
+    private static final int VERSION = 1;
+
+    @Nonnull private final BaksmaliOptions options;
+    @Nonnull private final MessageDigest digest;
+    @Nonnull private final byte[] intBuffer = new byte[4];
+
+    public ClassFingerprinter(@Nonnull BaksmaliOptions options) {
+        this.options = options;
+        this.digest = newDigest();
+    }
+
+    @Nonnull
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Gets a fingerprint of the given options, covering everything in them that affects the disassembly of every
+     * class.
+     *
+     * @return The fingerprint, as a hex string
+     */
+    @Nonnull
+    public static String getOptionsFingerprint(@Nonnull BaksmaliOptions options) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(VERSION).append('\n');
+        sb.append(options.apiLevel).append('\n');
+        sb.append(options.parameterRegisters).append('\n');
+        sb.append(options.localsDirective).append('\n');
+        sb.append(options.sequentialLabels).append('\n');
+        sb.append(options.debugInfo).append('\n');
+        sb.append(options.codeOffsets).append('\n');
+        sb.append(options.accessorComments && options.syntheticAccessorResolver != null).append('\n');
+        sb.append(options.allowOdex).append('\n');
+        sb.append(options.deodex).append('\n');
+        sb.append(options.implicitReferences).append('\n');
+        sb.append(options.normalizeVirtualMethods).append('\n');
+        sb.append(options.registerInfo).append('\n');
+        sb.append(System.getProperty("line.separator")).append('\n');
+        for (Map.Entry<Integer, String> entry: new TreeMap<Integer, String>(options.resourceIds).entrySet()) {
+            sb.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+        }
+
+        MessageDigest digest = newDigest();
+        return toHex(digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Gets the fingerprint of the given class.
+     *
+     * @return The fingerprint, as a hex string, or null if a fingerprint can't be computed for this kind of class.
+     * Only classes read from a dex file can be fingerprinted.
+     */
+    @Nullable
+    public String getFingerprint(@Nonnull ClassDef classDef) {
+        if (!(classDef instanceof DexBackedClassDef)) {
+            return null;
+        }
+        DexBackedClassDef dexBackedClassDef = (DexBackedClassDef)classDef;
+
+        digest.reset();
+        updateString(classDef.getType());
+        updateInt(classDef.getAccessFlags());
+        updateString(classDef.getSuperclass());
+        updateStrings(classDef.getInterfaces());
+        updateString(classDef.getSourceFile());
+        updateAnnotations(classDef.getAnnotations());
+
+        // these are the same lists that ClassDefinition uses, including any duplicates
+        updateInt(-1);
+        for (DexBackedField field: dexBackedClassDef.getStaticFields(false)) {
+            updateField(field);
+        }
+        updateInt(-1);
+        for (DexBackedField field: dexBackedClassDef.getInstanceFields(false)) {
+            updateField(field);
+        }
+        updateInt(-1);
+        for (DexBackedMethod method: dexBackedClassDef.getDirectMethods(false)) {
+            updateMethod(method);
+        }
+        updateInt(-1);
+        for (DexBackedMethod method: dexBackedClassDef.getVirtualMethods(false)) {
+            updateMethod(method);
+        }
+
+        return toHex(digest.digest());
+    }
+
+    private void updateField(@Nonnull DexBackedField field) {
+        updateString(field.getName());
+        updateString(field.getType());
+        updateInt(field.getAccessFlags());
+        updateHiddenApiRestrictions(field.getHiddenApiRestrictions());
+        updateEncodedValue(field.getInitialValue());
+        updateAnnotations(field.getAnnotations());
+    }
+
+    private void updateMethod(@Nonnull DexBackedMethod method) {
+        updateString(method.getName());
+        updateString(method.getReturnType());
+        updateInt(method.getAccessFlags());
+        updateHiddenApiRestrictions(method.getHiddenApiRestrictions());
+        updateAnnotations(method.getAnnotations());
+
+        Collection<? extends MethodParameter> parameters = method.getParameters();
+        updateInt(parameters.size());
+        for (MethodParameter parameter: parameters) {
+            updateString(parameter.getType());
+            updateString(parameter.getName());
+            updateString(parameter.getSignature());
+            updateAnnotations(parameter.getAnnotations());
+        }
+
+        DexBackedMethodImplementation implementation = method.getImplementation();
+        if (implementation == null) {
+            updateInt(-1);
+            return;
+        }
+        updateInt(implementation.getRegisterCount());
+        updateInstructions(implementation);
+
+        for (TryBlock<? extends ExceptionHandler> tryBlock: implementation.getTryBlocks()) {
+            updateInt(tryBlock.getStartCodeAddress());
+            updateInt(tryBlock.getCodeUnitCount());
+            for (ExceptionHandler handler: tryBlock.getExceptionHandlers()) {
+                updateString(handler.getExceptionType());
+                updateInt(handler.getHandlerCodeAddress());
+            }
+            updateInt(-1);
+        }
+        updateInt(-1);
+
+        for (DebugItem debugItem: implementation.getDebugItems()) {
+            updateInt(debugItem.getDebugItemType());
+            updateInt(debugItem.getCodeAddress());
+            if (debugItem instanceof LineNumber) {
+                updateInt(((LineNumber)debugItem).getLineNumber());
+            } else if (debugItem instanceof SetSourceFile) {
+                updateString(((SetSourceFile)debugItem).getSourceFile());
+            } else if (debugItem instanceof StartLocal || debugItem instanceof EndLocal ||
+                    debugItem instanceof RestartLocal) {
+                int register;
+                if (debugItem instanceof StartLocal) {
+                    register = ((StartLocal)debugItem).getRegister();
+                } else if (debugItem instanceof EndLocal) {
+                    register = ((EndLocal)debugItem).getRegister();
+                } else {
+                    register = ((RestartLocal)debugItem).getRegister();
+                }
+                updateInt(register);
+                LocalInfo localInfo = (LocalInfo)debugItem;
+                updateString(localInfo.getName());
+                updateString(localInfo.getType());
+                updateString(localInfo.getSignature());
+            }
+        }
+        updateInt(-1);
+    }
+
+    /**
+     * Hashes the raw code units of each instruction, except that the reference indexes are replaced with the
+     * references themselves.
+     */
+    private void updateInstructions(@Nonnull DexBackedMethodImplementation implementation) {
+        DexBackedDexFile dexFile = implementation.dexFile;
+        DexBuffer dataBuffer = dexFile.getDataBuffer();
+        byte[] buf = null;
+        int baseOffset = 0;
+
+        for (Instruction instruction: implementation.getInstructions()) {
+            int instructionStart = ((DexBackedInstruction)instruction).instructionStart;
+            if (buf == null) {
+                if (dataBuffer instanceof MappedDexBuffer) {
+                    // getBuf would copy the whole mapping, so only the instructions of this method are read
+                    buf = dataBuffer.readByteRange(instructionStart, implementation.getInstructionsSize() * 2);
+                    baseOffset = -instructionStart;
+                } else {
+                    buf = dataBuffer.getBuf();
+                    baseOffset = dataBuffer.getBaseOffset();
+                }
+            }
+            int start = baseOffset + instructionStart;
+            int length = instruction.getCodeUnits() * 2;
+
+            if (!(instruction instanceof ReferenceInstruction)) {
+                digest.update(buf, start, length);
+                continue;
+            }
+
+            String reference;
+            String reference2 = null;
+            try {
+                reference = getReferenceString(((ReferenceInstruction)instruction).getReference());
+                if (instruction instanceof DualReferenceInstruction) {
+                    reference2 = getReferenceString(((DualReferenceInstruction)instruction).getReference2());
+                }
+            } catch (RuntimeException ex) {
+                // an invalid reference is printed as the raw index, so just hash the raw instruction
+                digest.update(buf, start, length);
+                continue;
+            }
+
+            Format format = instruction.getOpcode().format;
+            // the first code unit has the opcode, and the first reference index always starts at the second
+            digest.update(buf, start, 2);
+            int end = start + length;
+            int position = start + (format == Format.Format31c ? 6 : 4);
+            if (format == Format.Format45cc || format == Format.Format4rcc) {
+                // the third code unit has registers, and the second reference index is in the fourth
+                digest.update(buf, position, 2);
+                position += 4;
+            }
+            digest.update(buf, position, end - position);
+
+            updateString(reference);
+            updateString(reference2);
+            updateAccessedMember(((ReferenceInstruction)instruction).getReference());
+        }
+        updateInt(-1);
+    }
+
+    @Nonnull
+    private static String getReferenceString(@Nonnull Reference reference) {
+        return DexFormatter.INSTANCE.getReference(reference);
+    }
+
+    /**
+     * Hashes the member that a call to a synthetic accessor accesses, which is added to the output as a comment.
+     */
+    private void updateAccessedMember(@Nonnull Reference reference) {
+        SyntheticAccessorResolver resolver = options.syntheticAccessorResolver;
+        if (!options.accessorComments || resolver == null || !(reference instanceof MethodReference)) {
+            return;
+        }
+        MethodReference methodReference = (MethodReference)reference;
+        if (!SyntheticAccessorResolver.looksLikeSyntheticAccessor(methodReference.getName())) {
+            return;
+        }
+        AccessedMember accessedMember = resolver.getAccessedMember(methodReference);
+        if (accessedMember == null) {
+            updateInt(-1);
+        } else {
+            updateInt(accessedMember.accessedMemberType);
+            updateString(getReferenceString(accessedMember.accessedMember));
+        }
+    }
+
+    private void updateAnnotations(@Nonnull Set<? extends Annotation> annotations) {
+        updateInt(annotations.size());
+        for (Annotation annotation: annotations) {
+            updateInt(annotation.getVisibility());
+            updateString(annotation.getType());
+            Set<? extends AnnotationElement> elements = annotation.getElements();
+            updateInt(elements.size());
+            for (AnnotationElement element: elements) {
+                updateString(element.getName());
+                updateEncodedValue(element.getValue());
+            }
+        }
+    }
+
+    private void updateEncodedValue(@Nullable EncodedValue encodedValue) {
+        if (encodedValue == null) {
+            updateInt(-1);
+        } else {
+            updateString(DexFormatter.INSTANCE.getEncodedValue(encodedValue));
+        }
+    }
+
+    private void updateHiddenApiRestrictions(@Nonnull Set<HiddenApiRestriction> restrictions) {
+        updateInt(restrictions.size());
+        for (HiddenApiRestriction restriction: restrictions) {
+            updateString(restriction.toString());
+        }
+    }
+
+    private void updateStrings(@Nonnull Collection<String> strings) {
+        updateInt(strings.size());
+        for (String string: strings) {
+            updateString(string);
+        }
+    }
+
+    private void updateString(@Nullable String string) {
+        if (string == null) {
+            updateInt(-1);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        updateInt(bytes.length);
+        digest.update(bytes);
+    }
+
+    private void updateInt(int value) {
+        intBuffer[0] = (byte)value;
+        intBuffer[1] = (byte)(value >> 8);
+        intBuffer[2] = (byte)(value >> 16);
+        intBuffer[3] = (byte)(value >> 24);
+        digest.update(intBuffer);
+    }
+
+    @Nonnull
+    private static String toHex(@Nonnull byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b: bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -57,6 +57,11 @@ public abstract class DexInputCommand extends Command {
     @ExtendedParameter(argumentNames = "api")
     public int apiLevel = -1;
 
+    @Parameter(names = {"--mmap", "--memory-map"},
+            description = "Memory map the input file instead of reading it onto the heap. Uncompressed dex files " +
+                    "within an apk are read directly from the mapping.")
+    public boolean memoryMap = false;
+
     @Parameter(description = "A dex/apk/oat/odex file. For apk or oat files that contain multiple dex " +
             "files, you can specify the specific entry to use as if the apk/oat file was a directory. " +
             "e.g. \"app.apk/classes2.dex\". For more information, see \"baksmali help input\".")
@@ -65,6 +70,7 @@ public abstract class DexInputCommand extends Command {
 
     protected File inputFile;
     protected String inputEntry;
+    protected MultiDexContainer<? extends DexBackedDexFile> dexContainer;
     protected MultiDexContainer.DexEntry<? extends DexBackedDexFile> dexEntry;
     protected DexBackedDexFile dexFile;
 
@@ -141,7 +147,8 @@ public abstract class DexInputCommand extends Command {
             inputEntry = dexEntryName;
 
             try {
-                dexEntry = DexFileFactory.loadDexEntry(file, dexEntryName, exactMatch, opcodes);
+                dexEntry = DexFileFactory.loadDexEntry(file, dexEntryName, exactMatch, opcodes, memoryMap);
+                dexContainer = dexEntry.getContainer();
                 dexFile = dexEntry.getDexFile();
             } catch (IOException ex) {
                 throw new RuntimeException(ex);
@@ -149,7 +156,8 @@ public abstract class DexInputCommand extends Command {
         } else {
             try {
                 MultiDexContainer<? extends DexBackedDexFile> container =
-                        DexFileFactory.loadDexContainer(file, opcodes);
+                        DexFileFactory.loadDexContainer(file, opcodes, memoryMap);
+                dexContainer = container;
 
                 if (container.getDexEntryNames().size() == 1) {
                     dexEntry = container.getEntry(container.getDexEntryNames().get(0));
@@ -169,5 +177,8 @@ public abstract class DexInputCommand extends Command {
                 throw new RuntimeException(ex);
             }
         }
+
+        // the same type descriptors are looked up over and over while processing a dex file
+        dexFile.setStringCacheEnabled(true);
     }
 }
@@ -35,8 +35,14 @@ import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
 import com.beust.jcommander.ParametersDelegate;
 import com.beust.jcommander.validators.PositiveInteger;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.android.tools.smali.baksmali.output.ZipOutputSink;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedDexFile;
+import com.android.tools.smali.dexlib2.iface.ClassDef;
+import com.android.tools.smali.dexlib2.iface.MultiDexContainer;
 import com.android.tools.smali.dexlib2.util.SyntheticAccessorResolver;
 import com.android.tools.smali.util.ConsoleUtil;
 import com.android.tools.smali.util.StringWrapper;
@@ -105,7 +111,8 @@ public class DisassembleCommand extends DexInputCommand {
     private boolean normalizeVirtualMethods = false;
 
     @Parameter(names = {"-o", "--output"},
-            description = "The directory to write the disassembled files to.")
+            description = "The directory to write the disassembled files to. If this ends with .zip or .jar, the " +
+                    "files are written into a single archive with that name instead.")
     @ExtendedParameter(argumentNames = "dir")
     private String outputDir = "out";
 
@@ -141,6 +148,22 @@ public class DisassembleCommand extends DexInputCommand {
     @ExtendedParameter(argumentNames = "classes")
     private List<String> classes = null;
 
+    @Parameter(names = {"--all-entries", "--all"},
+            description = "Disassemble every dex file in a multidex apk/oat file in a single run. The class path " +
+                    "is only loaded once, and the classes from all dex files share the same pool of threads. The " +
+                    "classes from each dex file are written to a subdirectory of the output directory that is " +
+                    "named after the dex entry, e.g. out/classes2 for classes2.dex")
+    private boolean allEntries = false;
+
+    @Parameter(names = {"--incremental", "--inc"},
+            description = "Only re-write the classes that changed since the last incremental run into the same " +
+                    "output directory, and delete the files of classes that were removed. A fingerprint of each " +
+                    "class is kept in a .baksmali-manifest file in the output directory. This can't be used with " +
+                    "an archive output, --classes, or the options that need a class path")
+    private boolean incremental = false;
+
+    private Map<String, DexBackedDexFile> entryDexFiles = null;
+
     public DisassembleCommand(@Nonnull List<JCommander> commandAncestors) {
         super(commandAncestors);
     }
@@ -160,6 +183,28 @@ public class DisassembleCommand extends DexInputCommand {
         String input = inputList.get(0);
         loadDexFile(input);
 
+        if (allEntries && inputEntry != null) {
+            System.err.println("--all-entries can't be used with a specific dex entry");
+            usage();
+            return;
+        }
+
+        if (incremental) {
+            String error = null;
+            if (classes != null) {
+                error = "--incremental can't be used with --classes";
+            } else if (needsClassPath()) {
+                error = "--incremental can't be used with options that need a class path";
+            } else if (isArchiveOutput(new File(outputDir))) {
+                error = "--incremental can't be used with an archive output";
+            }
+            if (error != null) {
+                System.err.println(error);
+                usage();
+                return;
+            }
+        }
+
         if (showDeodexWarning() && dexFile.supportsOptimizedOpcodes()) {
             StringWrapper.printWrappedString(System.err,
                     "Warning: You are disassembling an odex/oat file without deodexing it. You won't be able to " +
@@ -168,9 +213,14 @@ public class DisassembleCommand extends DexInputCommand {
         }
 
         File outputDirectoryFile = new File(outputDir);
-        if (!outputDirectoryFile.exists()) {
-            if (!outputDirectoryFile.mkdirs()) {
-                System.err.println("Can't create the output directory " + outputDir);
+        boolean archiveOutput = isArchiveOutput(outputDirectoryFile);
+        File directoryToCreate = outputDirectoryFile;
+        if (archiveOutput) {
+            directoryToCreate = outputDirectoryFile.getAbsoluteFile().getParentFile();
+        }
+        if (!directoryToCreate.exists()) {
+            if (!directoryToCreate.mkdirs()) {
+                System.err.println("Can't create the output directory " + directoryToCreate);
                 System.exit(-1);
             }
         }
@@ -179,11 +229,121 @@ public class DisassembleCommand extends DexInputCommand {
             analysisArguments.classPathDirectories = Lists.newArrayList(inputFile.getAbsoluteFile().getParent());
         }
 
-        if (!Baksmali.disassembleDexFile(dexFile, outputDirectoryFile, jobs, getOptions(), classes)) {
+        boolean success;
+        BaksmaliOptions options;
+        if (allEntries) {
+            entryDexFiles = loadEntryDexFiles();
+        }
+        if (archiveOutput) {
+            options = getOptions();
+            Map<String, DexBackedDexFile> dexFiles = entryDexFiles;
+            if (dexFiles == null) {
+                dexFiles = ImmutableMap.of("", dexFile);
+            }
+            try {
+                success = Baksmali.disassembleDexFiles(dexFiles, new ZipOutputSink(outputDirectoryFile, jobs * 4),
+                        jobs, options, classes);
+            } catch (IOException ex) {
+                System.err.println("\n\nError occurred while writing " + outputDirectoryFile);
+                ex.printStackTrace(System.err);
+                success = false;
+            }
+        } else if (incremental) {
+            options = getOptions();
+            Map<File, DexBackedDexFile> dexFiles = Maps.newLinkedHashMap();
+            if (entryDexFiles != null) {
+                for (Map.Entry<String, DexBackedDexFile> entry: entryDexFiles.entrySet()) {
+                    dexFiles.put(new File(outputDirectoryFile, entry.getKey()), entry.getValue());
+                }
+            } else {
+                dexFiles.put(outputDirectoryFile, dexFile);
+            }
+            try {
+                success = Baksmali.disassembleDexFilesIncrementally(dexFiles, outputDirectoryFile, jobs, options);
+            } catch (IOException ex) {
+                System.err.println("\n\nError occurred while updating " + outputDirectoryFile);
+                ex.printStackTrace(System.err);
+                success = false;
+            }
+        } else if (allEntries) {
+            options = getOptions();
+            Map<File, DexBackedDexFile> dexFiles = Maps.newLinkedHashMap();
+            for (Map.Entry<String, DexBackedDexFile> entry: entryDexFiles.entrySet()) {
+                dexFiles.put(new File(outputDirectoryFile, entry.getKey()), entry.getValue());
+            }
+            success = Baksmali.disassembleDexFiles(dexFiles, jobs, options, classes);
+        } else {
+            options = getOptions();
+            success = Baksmali.disassembleDexFile(dexFile, outputDirectoryFile, jobs, options, classes);
+        }
+
+        if (options.classPath != null) {
+            analysisArguments.saveClassPathCache(options.classPath);
+        }
+
+        if (!success) {
             System.exit(-1);
         }
     }
 
+    /**
+     * Returns whether the given output path names an archive, rather than a directory.
+     */
+    private static boolean isArchiveOutput(@Nonnull File output) {
+        String name = output.getName().toLowerCase();
+        return (name.endsWith(".zip") || name.endsWith(".jar")) && !output.isDirectory();
+    }
+
+    /**
+     * Loads every dex file in the input container, and assigns each one a separate output directory.
+     *
+     * @return A map of output directory name -&gt; dex file, in the container's entry order. The names are relative
+     * to the top level output directory.
+     */
+    @Nonnull
+    private Map<String, DexBackedDexFile> loadEntryDexFiles() {
+        Map<String, DexBackedDexFile> dexFiles = Maps.newLinkedHashMap();
+        try {
+            for (String entryName: dexContainer.getDexEntryNames()) {
+                MultiDexContainer.DexEntry<? extends DexBackedDexFile> entry = dexContainer.getEntry(entryName);
+                assert entry != null;
+
+                String directoryName = getEntryDirectoryName(entryName);
+                String entryDirectory = directoryName;
+                for (int i=2; dexFiles.containsKey(entryDirectory); i++) {
+                    entryDirectory = directoryName + "_" + i;
+                }
+                DexBackedDexFile entryDexFile = entry.getDexFile();
+                // as with the primary dex file, the same type descriptors are looked up over and over
+                entryDexFile.setStringCacheEnabled(true);
+                dexFiles.put(entryDirectory, entryDexFile);
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        return dexFiles;
+    }
+
+    /**
+     * Converts a dex entry name, like "classes2.dex" or "/system/framework/framework.jar:classes2.dex", into a
+     * directory name, like "classes2" or "system_framework_framework.jar_classes2".
+     */
+    @Nonnull
+    private static String getEntryDirectoryName(@Nonnull String entryName) {
+        String name = entryName;
+        if (name.endsWith(".dex")) {
+            name = name.substring(0, name.length() - 4);
+        }
+        while (name.startsWith("/")) {
+            name = name.substring(1);
+        }
+        name = name.replace('/', '_').replace(':', '_');
+        if (name.isEmpty() || name.equals(".") || name.equals("..")) {
+            name = "dex";
+        }
+        return name;
+    }
+
     protected boolean needsClassPath() {
         return !registerInfoTypes.isEmpty() || normalizeVirtualMethods;
     }
@@ -283,8 +443,15 @@ public class DisassembleCommand extends DexInputCommand {
         }
 
         if (accessorComments) {
-            options.syntheticAccessorResolver = new SyntheticAccessorResolver(dexFile.getOpcodes(),
-                    dexFile.getClasses());
+            Iterable<? extends ClassDef> classDefs = dexFile.getClasses();
+            if (entryDexFiles != null) {
+                List<Iterable<? extends ClassDef>> entryClassDefs = Lists.newArrayList();
+                for (DexBackedDexFile entryDexFile: entryDexFiles.values()) {
+                    entryClassDefs.add(entryDexFile.getClasses());
+                }
+                classDefs = Iterables.concat(entryClassDefs);
+            }
+            options.syntheticAccessorResolver = new SyntheticAccessorResolver(dexFile.getOpcodes(), classDefs);
         }
 
         if (allowOdex) {
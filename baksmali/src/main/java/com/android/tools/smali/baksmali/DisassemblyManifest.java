@@ -0,0 +1,168 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.baksmali;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Records the fingerprint of each class that was disassembled into an output directory, so that a later run can skip
+ * the classes that haven't changed. See {@link Baksmali#disassembleDexFilesIncrementally}.
+ *
+ * The manifest is a text file. The first line identifies the format, and the second line has the fingerprint of the
+ * options that were used. Each following line has the fingerprint, type and file of a class, separated by tabs. The
+ * file is relative to the output directory, and uses '/' as the separator.
+ */
+public class DisassemblyManifest {
+    public static final String FILE_NAME = ".baksmali-manifest";
+
+    private static final String HEADER = "baksmali-manifest 1";
+    private static final String OPTIONS_PREFIX = "options ";
+
+    @Nonnull private final String optionsFingerprint;
+    @Nonnull private final Map<String, Entry> entries = new TreeMap<>();
+
+    public DisassemblyManifest(@Nonnull String optionsFingerprint) {
+        this.optionsFingerprint = optionsFingerprint;
+    }
+
+    @Nonnull
+    public String getOptionsFingerprint() {
+        return optionsFingerprint;
+    }
+
+    /**
+     * @return The entry for the class in the given file, or null if there isn't one
+     */
+    @Nullable
+    public Entry getEntry(@Nonnull String path) {
+        return entries.get(path);
+    }
+
+    /**
+     * @return All of the entries in this manifest, in path order
+     */
+    @Nonnull
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    public void addEntry(@Nonnull Entry entry) {
+        entries.put(entry.path, entry);
+    }
+
+    /**
+     * Reads a manifest.
+     *
+     * @return The manifest, or null if the file doesn't exist or isn't a manifest in a format that we understand
+     */
+    @Nullable
+    public static DisassemblyManifest read(@Nonnull File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            if (!HEADER.equals(reader.readLine())) {
+                return null;
+            }
+            String optionsLine = reader.readLine();
+            if (optionsLine == null || !optionsLine.startsWith(OPTIONS_PREFIX)) {
+                return null;
+            }
+
+            DisassemblyManifest manifest = new DisassemblyManifest(optionsLine.substring(OPTIONS_PREFIX.length()));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", -1);
+                if (parts.length != 3) {
+                    return null;
+                }
+                manifest.addEntry(new Entry(parts[2], parts[1], parts[0]));
+            }
+            return manifest;
+        }
+    }
+
+    /**
+     * Writes this manifest. The manifest is first written to a temporary file, and then moved into place, so that an
+     * interrupted write doesn't leave a truncated manifest behind.
+     */
+    public void write(@Nonnull File file) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8))) {
+            writer.write(HEADER);
+            writer.write('\n');
+            writer.write(OPTIONS_PREFIX);
+            writer.write(optionsFingerprint);
+            writer.write('\n');
+            for (Entry entry: entries.values()) {
+                writer.write(entry.fingerprint);
+                writer.write('\t');
+                writer.write(entry.classType);
+                writer.write('\t');
+                writer.write(entry.path);
+                writer.write('\n');
+            }
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public static class Entry {
+        @Nonnull public final String path;
+        @Nonnull public final String classType;
+        @Nonnull public final String fingerprint;
+
+        public Entry(@Nonnull String path, @Nonnull String classType, @Nonnull String fingerprint) {
+            this.path = path;
+            this.classType = classType;
+            this.fingerprint = fingerprint;
+        }
+    }
+}
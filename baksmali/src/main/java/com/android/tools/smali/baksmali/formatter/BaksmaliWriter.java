@@ -73,7 +73,7 @@ import static java.lang.Math.abs;
  */
 public class BaksmaliWriter extends DexFormattedWriter {
 
-    @Nullable private final String classContext;
+    @Nullable private String classContext;
 
     protected final char[] buffer = new char[24];
 
@@ -384,6 +384,17 @@ public class BaksmaliWriter extends DexFormattedWriter {
         return (IndentingWriter) writer;
     }
 
+    /**
+     * Resets the indentation and sets a new class context, so that this writer can be reused for another class.
+     *
+     * @param classContext If provided, the class will be elided from any field/method descriptors whose containing
+     *                     class match this instance's classContext.
+     */
+    public void reset(@Nullable String classContext) {
+        indentingWriter().reset();
+        this.classContext = classContext;
+    }
+
     public void writeUnsignedLongAsHex(long value) throws IOException {
         int bufferIndex = 23;
         do {
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.baksmali.output;
+
+import com.android.tools.smali.util.ClassFileNameHandler;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Writes each class to a separate file, in a directory tree based on the package of the class.
+ *
+ * When the outputs are created in bulk, the file names for all of the classes are allocated up front, and the
+ * directories and files are created at that point. The threads writing the classes then only need to open the file.
+ */
+public class DirectoryOutputSink implements OutputSink {
+    @Nonnull private final Map<String, ClassFileNameHandler> fileNameHandlers = new HashMap<>();
+
+    @Nonnull
+    @Override
+    public ClassOutput createClassOutput(@Nonnull String directory, @Nonnull String classDescriptor) {
+        return new FileClassOutput(getFileNameHandler(directory), classDescriptor, null);
+    }
+
+    @Nonnull
+    @Override
+    public List<ClassOutput> createClassOutputs(@Nonnull String directory, @Nonnull List<String> classDescriptors,
+                                                @Nonnull Executor executor) throws IOException {
+        ClassFileNameHandler fileNameHandler = getFileNameHandler(directory);
+        List<File> smaliFiles = fileNameHandler.getUniqueFilenamesForClasses(classDescriptors, executor);
+
+        List<ClassOutput> classOutputs = new ArrayList<>(classDescriptors.size());
+        for (int i=0; i<classDescriptors.size(); i++) {
+            classOutputs.add(new FileClassOutput(fileNameHandler, classDescriptors.get(i), smaliFiles.get(i)));
+        }
+        return classOutputs;
+    }
+
+    /**
+     * Creates an output that writes a class to the given file, e.g. one whose name was already allocated by a
+     * {@link ClassFileNameHandler}.
+     */
+    @Nonnull
+    public static ClassOutput createFileOutput(@Nonnull File smaliFile) {
+        return new FileClassOutput(null, null, smaliFile);
+    }
+
+    @Nonnull
+    private synchronized ClassFileNameHandler getFileNameHandler(@Nonnull String directory) {
+        ClassFileNameHandler fileNameHandler = fileNameHandlers.get(directory);
+        if (fileNameHandler == null) {
+            fileNameHandler = new ClassFileNameHandler(new File(directory), ".smali");
+            fileNameHandlers.put(directory, fileNameHandler);
+        }
+        return fileNameHandler;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private static class FileClassOutput implements ClassOutput {
+        // these are only needed when the file wasn't set up front
+        @Nullable private final ClassFileNameHandler fileNameHandler;
+        @Nullable private final String classDescriptor;
+        // the file for the class. If this is set up front, the file has already been created
+        @Nullable private File smaliFile;
+        @Nullable private Writer writer;
+        private boolean committed;
+
+        public FileClassOutput(@Nullable ClassFileNameHandler fileNameHandler, @Nullable String classDescriptor,
+                               @Nullable File smaliFile) {
+            this.fileNameHandler = fileNameHandler;
+            this.classDescriptor = classDescriptor;
+            this.smaliFile = smaliFile;
+        }
+
+        @Nonnull
+        @Override
+        public Writer getWriter() throws IOException {
+            if (writer != null) {
+                return writer;
+            }
+
+            if (smaliFile == null) {
+                assert fileNameHandler != null && classDescriptor != null;
+                smaliFile = createFile(fileNameHandler, classDescriptor);
+            }
+
+            writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(smaliFile), StandardCharsets.UTF_8));
+            return writer;
+        }
+
+        @Nonnull
+        private static File createFile(@Nonnull ClassFileNameHandler fileNameHandler,
+                                       @Nonnull String classDescriptor) throws IOException {
+            File smaliFile = fileNameHandler.getUniqueFilenameForClass(classDescriptor);
+
+            File smaliParent = smaliFile.getParentFile();
+            if (!smaliParent.exists()) {
+                if (!smaliParent.mkdirs()) {
+                    // check again, it's likely it was created in a different thread
+                    if (!smaliParent.exists()) {
+                        throw new IOException("Unable to create directory " + smaliParent.toString());
+                    }
+                }
+            }
+
+            if (!smaliFile.exists()){
+                if (!smaliFile.createNewFile()) {
+                    throw new IOException("Unable to create file " + smaliFile.toString());
+                }
+            }
+            return smaliFile;
+        }
+
+        @Override
+        public void commit() throws IOException {
+            if (writer != null) {
+                writer.close();
+            }
+            committed = true;
+        }
+
+        @Override
+        public void discard() {
+            if (committed) {
+                return;
+            }
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException ex) {
+                    // we're deleting it anyway
+                }
+            }
+            if (smaliFile != null) {
+                // noinspection ResultOfMethodCallIgnored
+                smaliFile.delete();
+            }
+        }
+    }
+}
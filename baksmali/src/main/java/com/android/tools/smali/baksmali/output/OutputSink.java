@@ -0,0 +1,93 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.baksmali.output;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * A destination for the smali files produced by baksmali, e.g. a directory tree or an archive.
+ */
+public interface OutputSink extends Closeable {
+    /**
+     * Creates the output for a single class.
+     *
+     * This is called in the order that the classes should appear in the output, before the class is disassembled.
+     * The returned ClassOutput can then be written by any single thread.
+     *
+     * @param directory The directory to put the class in. For a DirectoryOutputSink, this is a file system path. For
+     *                  an archive, it is a path within the archive, where "" is the root of the archive.
+     * @param classDescriptor The type of the class, e.g. Ljava/lang/Object;
+     * @return A ClassOutput for the class. Every ClassOutput must either be committed or discarded.
+     */
+    @Nonnull ClassOutput createClassOutput(@Nonnull String directory, @Nonnull String classDescriptor);
+
+    /**
+     * Creates the outputs for several classes at once, in the order that they should appear in the output.
+     *
+     * This is the same as calling createClassOutput for each class, except that the sink can prepare all of the
+     * outputs up front, e.g. allocating the file names for all of the classes in a single pass.
+     *
+     * @param directory The directory to put the classes in. See createClassOutput.
+     * @param classDescriptors The types of the classes
+     * @param executor An executor that the sink may use to prepare the outputs in parallel
+     * @return A ClassOutput for each class, in the same order as classDescriptors
+     */
+    @Nonnull List<ClassOutput> createClassOutputs(@Nonnull String directory, @Nonnull List<String> classDescriptors,
+                                                  @Nonnull Executor executor) throws IOException;
+
+    /**
+     * Finishes the output. This must only be called after all ClassOutputs have been committed or discarded.
+     */
+    @Override void close() throws IOException;
+
+    interface ClassOutput {
+        /**
+         * @return A writer for the disassembly of the class. This is opened on the first call.
+         */
+        @Nonnull Writer getWriter() throws IOException;
+
+        /**
+         * Closes the writer, and adds the class to the output.
+         */
+        void commit() throws IOException;
+
+        /**
+         * Closes the writer, and removes any partial output for the class. This has no effect if the output has
+         * already been committed.
+         */
+        void discard();
+    }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.baksmali.output;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes all of the classes into a single zip (or jar) file, instead of creating a separate file for each class.
+ *
+ * Each class is formatted into an in-memory buffer by the thread that disassembles it. A single writer thread then
+ * appends the buffers to the archive in the order that the ClassOutputs were created, so the layout of the archive
+ * doesn't depend on the order in which the classes finish. The buffers are reused once they have been written.
+ *
+ * To bound the memory used by the buffers, a class output that is too far ahead of the next class to be written
+ * blocks in {@link ClassOutput#getWriter()} until the writer thread catches up. The class outputs should therefore be
+ * started in roughly the order that they were created, as the tasks of an executor are.
+ *
+ * Since an archive has no file system restrictions, the entry for a class is simply its package path, e.g.
+ * java/lang/Object.smali.
+ */
+public class ZipOutputSink implements OutputSink {
+    public static final int DEFAULT_MAX_BUFFERED_ENTRIES = 64;
+
+    @Nonnull private final ZipOutputStream zipStream;
+    @Nonnull private final Thread writerThread;
+    private final int maxBufferedEntries;
+
+    // the pool never needs more buffers than can be in use at once
+    @Nonnull private final BlockingQueue<ByteArrayOutputStream> bufferPool;
+
+    // the following fields are guarded by "this"
+    // maps the index of a class output to its finished entry. A discarded class has an entry with a null buffer
+    @Nonnull private final Map<Integer, FinishedEntry> finishedEntries = new HashMap<>();
+    private int classOutputCount = 0;
+    // the index of the next class output to be written to the archive
+    private int nextIndex = 0;
+    private boolean writerFinished = false;
+    private boolean closed = false;
+    @Nullable private IOException writeException = null;
+
+    public ZipOutputSink(@Nonnull File zipFile) throws IOException {
+        this(zipFile, DEFAULT_MAX_BUFFERED_ENTRIES);
+    }
+
+    /**
+     * @param zipFile The archive to write
+     * @param maxBufferedEntries The number of classes that may be buffered ahead of the next class to be written,
+     *                           e.g. a small multiple of the number of threads writing classes
+     */
+    public ZipOutputSink(@Nonnull File zipFile, int maxBufferedEntries) throws IOException {
+        this(new BufferedOutputStream(new FileOutputStream(zipFile)), maxBufferedEntries);
+    }
+
+    public ZipOutputSink(@Nonnull OutputStream outputStream) {
+        this(outputStream, DEFAULT_MAX_BUFFERED_ENTRIES);
+    }
+
+    public ZipOutputSink(@Nonnull OutputStream outputStream, int maxBufferedEntries) {
+        if (maxBufferedEntries < 1) {
+            throw new IllegalArgumentException("maxBufferedEntries must be at least 1");
+        }
+        this.maxBufferedEntries = maxBufferedEntries;
+        this.bufferPool = new ArrayBlockingQueue<>(maxBufferedEntries);
+        this.zipStream = new ZipOutputStream(outputStream);
+        this.writerThread = new Thread(this::writeEntries, "baksmali-zip-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    @Nonnull
+    @Override
+    public synchronized ClassOutput createClassOutput(@Nonnull String directory, @Nonnull String classDescriptor) {
+        if (closed) {
+            throw new IllegalStateException("This sink has already been closed");
+        }
+        return new BufferedClassOutput(classOutputCount++, getEntryName(directory, classDescriptor));
+    }
+
+    @Nonnull
+    @Override
+    public synchronized List<ClassOutput> createClassOutputs(@Nonnull String directory,
+                                                             @Nonnull List<String> classDescriptors,
+                                                             @Nonnull Executor executor) {
+        List<ClassOutput> classOutputs = new ArrayList<>(classDescriptors.size());
+        for (String classDescriptor: classDescriptors) {
+            classOutputs.add(createClassOutput(directory, classDescriptor));
+        }
+        return classOutputs;
+    }
+
+    @Nonnull
+    static String getEntryName(@Nonnull String directory, @Nonnull String classDescriptor) {
+        String classPath = classDescriptor;
+        if (classPath.length() > 2 && classPath.charAt(0) == 'L' && classPath.charAt(classPath.length()-1) == ';') {
+            classPath = classPath.substring(1, classPath.length()-1);
+        }
+        classPath += ".smali";
+
+        directory = directory.replace(File.separatorChar, '/');
+        while (directory.endsWith("/")) {
+            directory = directory.substring(0, directory.length()-1);
+        }
+        if (directory.isEmpty()) {
+            return classPath;
+        }
+        return directory + "/" + classPath;
+    }
+
+    private synchronized void finishEntry(int index, @Nonnull FinishedEntry entry) {
+        finishedEntries.put(index, entry);
+        notifyAll();
+    }
+
+    /**
+     * Waits until the class output with the given index is close enough to the next class to be written that it can
+     * be buffered.
+     */
+    private synchronized void waitForBufferSpace(int index) throws IOException {
+        while (index >= nextIndex + maxBufferedEntries && !writerFinished) {
+            try {
+                wait();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the archive to be written", ex);
+            }
+        }
+    }
+
+    private void recycleBuffer(@Nonnull ByteArrayOutputStream buffer) {
+        buffer.reset();
+        // if the pool is full, the buffer is just dropped
+        bufferPool.offer(buffer);
+    }
+
+    private void writeEntries() {
+        try {
+            writeEntriesInOrder();
+        } finally {
+            synchronized (this) {
+                // don't leave any class outputs waiting for a writer that's gone
+                writerFinished = true;
+                notifyAll();
+            }
+        }
+    }
+
+    private void writeEntriesInOrder() {
+        while (true) {
+            FinishedEntry entry;
+            synchronized (this) {
+                while (!finishedEntries.containsKey(nextIndex) && !(closed && nextIndex == classOutputCount)) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        writeException = new IOException("Interrupted while writing the archive", ex);
+                        return;
+                    }
+                }
+                entry = finishedEntries.remove(nextIndex);
+                if (entry == null) {
+                    // everything has been written
+                    return;
+                }
+                nextIndex++;
+                // a class output that was waiting for buffer space may be able to continue
+                notifyAll();
+            }
+
+            if (entry.buffer != null) {
+                try {
+                    zipStream.putNextEntry(new ZipEntry(entry.name));
+                    entry.buffer.writeTo(zipStream);
+                    zipStream.closeEntry();
+                } catch (IOException ex) {
+                    synchronized (this) {
+                        if (writeException == null) {
+                            writeException = ex;
+                        }
+                    }
+                    // keep consuming the remaining entries, so that their buffers don't pile up
+                }
+                recycleBuffer(entry.buffer);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+
+        try {
+            writerThread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the archive to be written", ex);
+        }
+
+        IOException exception;
+        synchronized (this) {
+            exception = writeException;
+        }
+        try {
+            zipStream.close();
+        } catch (IOException ex) {
+            if (exception == null) {
+                exception = ex;
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private static class FinishedEntry {
+        @Nonnull public final String name;
+        @Nullable public final ByteArrayOutputStream buffer;
+
+        public FinishedEntry(@Nonnull String name, @Nullable ByteArrayOutputStream buffer) {
+            this.name = name;
+            this.buffer = buffer;
+        }
+    }
+
+    private class BufferedClassOutput implements ClassOutput {
+        private final int index;
+        @Nonnull private final String name;
+        @Nullable private ByteArrayOutputStream buffer;
+        @Nullable private Writer writer;
+        private boolean finished;
+
+        public BufferedClassOutput(int index, @Nonnull String name) {
+            this.index = index;
+            this.name = name;
+        }
+
+        @Nonnull
+        @Override
+        public Writer getWriter() throws IOException {
+            if (writer == null) {
+                waitForBufferSpace(index);
+                buffer = bufferPool.poll();
+                if (buffer == null) {
+                    buffer = new ByteArrayOutputStream(8192);
+                }
+                writer = new BufferedWriter(new OutputStreamWriter(buffer, StandardCharsets.UTF_8));
+            }
+            return writer;
+        }
+
+        @Override
+        public void commit() throws IOException {
+            if (finished) {
+                throw new IllegalStateException("This output has already been finished");
+            }
+            // closing the writer just flushes it into the buffer
+            getWriter().close();
+            finished = true;
+            finishEntry(index, new FinishedEntry(name, buffer));
+        }
+
+        @Override
+        public void discard() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (buffer != null) {
+                recycleBuffer(buffer);
+            }
+            finishEntry(index, new FinishedEntry(name, null));
+        }
+    }
+}
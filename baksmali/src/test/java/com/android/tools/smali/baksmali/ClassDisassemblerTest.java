@@ -0,0 +1,119 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.baksmali;
+
+import com.google.common.collect.Maps;
+import com.google.common.io.Resources;
+import com.android.tools.smali.baksmali.Adaptors.ClassDefinition;
+import com.android.tools.smali.baksmali.formatter.BaksmaliWriter;
+import com.android.tools.smali.dexlib2.DexFileFactory;
+import com.android.tools.smali.dexlib2.Opcodes;
+import com.android.tools.smali.dexlib2.analysis.ClassPath;
+import com.android.tools.smali.dexlib2.iface.ClassDef;
+import com.android.tools.smali.dexlib2.iface.DexFile;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URISyntaxException;
+import java.nio.CharBuffer;
+import java.util.Map;
+
+public class ClassDisassemblerTest {
+    private static final String[] TESTS = new String[] { "ConstructorTest", "InstanceOfTest", "LocalTest",
+            "UninitRefIdentityTest", "DuplicateTest" };
+
+    @Test
+    public void testReusedDisassembler() throws IOException, URISyntaxException {
+        for (boolean implicitReferences: new boolean[] { false, true }) {
+            BaksmaliOptions options = new BaksmaliOptions();
+            options.implicitReferences = implicitReferences;
+            options.registerInfo = BaksmaliOptions.ALL;
+            options.classPath = new ClassPath();
+
+            ClassDisassembler disassembler = new ClassDisassembler(options);
+            StringBuilder smali = new StringBuilder();
+            for (String test: TESTS) {
+                for (ClassDef classDef: loadDexFile(test).getClasses()) {
+                    smali.setLength(0);
+                    disassembler.disassembleClass(classDef, smali);
+                    Assert.assertEquals(disassemble(options, classDef), smali.toString());
+
+                    CharBuffer charBuffer = CharBuffer.allocate(smali.length());
+                    disassembler.disassembleClass(classDef, charBuffer);
+                    charBuffer.flip();
+                    Assert.assertEquals(smali.toString(), charBuffer.toString());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDisassembleClasses() throws IOException, URISyntaxException {
+        BaksmaliOptions options = new BaksmaliOptions();
+        for (String test: TESTS) {
+            DexFile dexFile = loadDexFile(test);
+
+            final Map<String, String> classes = Maps.newConcurrentMap();
+            Baksmali.disassembleClasses(dexFile, options, 4, new Baksmali.DisassembledClassHandler() {
+                @Override public void handleClass(@Nonnull ClassDef classDef, @Nonnull CharSequence smali) {
+                    Assert.assertNull(classes.put(classDef.getType(), smali.toString()));
+                }
+            });
+
+            Assert.assertEquals(dexFile.getClasses().size(), classes.size());
+            for (ClassDef classDef: dexFile.getClasses()) {
+                StringBuilder smali = new StringBuilder();
+                Baksmali.disassembleClass(classDef, options, smali);
+                Assert.assertEquals(smali.toString(), classes.get(classDef.getType()));
+            }
+        }
+    }
+
+    private static String disassemble(BaksmaliOptions options, ClassDef classDef) throws IOException {
+        StringWriter stringWriter = new StringWriter();
+        BaksmaliWriter writer = new BaksmaliWriter(stringWriter,
+                options.implicitReferences ? classDef.getType() : null);
+        ClassDefinition classDefinition = new ClassDefinition(options, classDef, null);
+        classDefinition.writeTo(writer);
+        writer.close();
+        return stringWriter.toString();
+    }
+
+    private static DexFile loadDexFile(String test) throws IOException, URISyntaxException {
+        String dexFilePath = String.format("%s%sclasses.dex", test, File.separatorChar);
+        return DexFileFactory.loadDexFile(new File(Resources.getResource(dexFilePath).toURI()),
+                Opcodes.getDefault());
+    }
+}
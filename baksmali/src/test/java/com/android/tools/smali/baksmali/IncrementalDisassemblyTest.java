@@ -0,0 +1,169 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.baksmali;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+import com.android.tools.smali.dexlib2.DexFileFactory;
+import com.android.tools.smali.dexlib2.Opcodes;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedDexFile;
+import com.android.tools.smali.dexlib2.dexbacked.MappedDexBuffer;
+import com.android.tools.smali.dexlib2.iface.ClassDef;
+import com.android.tools.smali.dexlib2.iface.DexFile;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+
+public class IncrementalDisassemblyTest {
+    @Test
+    public void testStableFingerprints() throws IOException, URISyntaxException {
+        BaksmaliOptions options = new BaksmaliOptions();
+        ClassFingerprinter first = new ClassFingerprinter(options);
+        ClassFingerprinter second = new ClassFingerprinter(options);
+
+        Set<String> fingerprints = Sets.newHashSet();
+        int classCount = 0;
+        for (String test: new String[] { "InstanceOfTest", "LocalTest", "UninitRefIdentityTest" }) {
+            for (ClassDef classDef: loadDexFile(test).getClasses()) {
+                String fingerprint = first.getFingerprint(classDef);
+                Assert.assertNotNull(fingerprint);
+                Assert.assertEquals(fingerprint, first.getFingerprint(classDef));
+                Assert.assertEquals(fingerprint, second.getFingerprint(classDef));
+                fingerprints.add(fingerprint);
+                classCount++;
+            }
+        }
+        // each class has a different fingerprint
+        Assert.assertEquals(classCount, fingerprints.size());
+    }
+
+    @Test
+    public void testMemoryMappedFingerprints() throws IOException, URISyntaxException {
+        BaksmaliOptions options = new BaksmaliOptions();
+        ClassFingerprinter fingerprinter = new ClassFingerprinter(options);
+
+        for (String test: new String[] { "InstanceOfTest", "LocalTest", "UninitRefIdentityTest" }) {
+            Map<String, String> fingerprints = Maps.newHashMap();
+            for (ClassDef classDef: loadDexFile(test, false).getClasses()) {
+                fingerprints.put(classDef.getType(), fingerprinter.getFingerprint(classDef));
+            }
+            // a memory mapped dex file has the same fingerprints as one that's read onto the heap
+            DexFile mappedDexFile = loadDexFile(test, true);
+            Assert.assertTrue(((DexBackedDexFile)mappedDexFile).getDataBuffer() instanceof MappedDexBuffer);
+            for (ClassDef classDef: mappedDexFile.getClasses()) {
+                Assert.assertEquals(fingerprints.get(classDef.getType()), fingerprinter.getFingerprint(classDef));
+            }
+        }
+    }
+
+    @Test
+    public void testIncrementalDisassembly() throws IOException, URISyntaxException {
+        DexFile firstDexFile = loadDexFile("InstanceOfTest");
+        DexFile secondDexFile = loadDexFile("LocalTest");
+
+        File tempDir = Files.createTempDir();
+        try {
+            File firstDir = new File(tempDir, "first");
+            File secondDir = new File(tempDir, "second");
+            BaksmaliOptions options = new BaksmaliOptions();
+
+            Assert.assertTrue(Baksmali.disassembleDexFilesIncrementally(
+                    ImmutableMap.of(firstDir, firstDexFile, secondDir, secondDexFile), tempDir, 2, options));
+            DisassemblyManifest manifest = DisassemblyManifest.read(new File(tempDir, DisassemblyManifest.FILE_NAME));
+            Assert.assertNotNull(manifest);
+            Assert.assertEquals(firstDexFile.getClasses().size() + secondDexFile.getClasses().size(),
+                    manifest.getEntries().size());
+
+            File firstFile = new File(tempDir, manifest.getEntries().iterator().next().path);
+            String firstSmali = Files.asCharSource(firstFile, StandardCharsets.UTF_8).read();
+            Assert.assertFalse(firstSmali.isEmpty());
+
+            // an unchanged class isn't written again
+            Files.asCharSink(firstFile, StandardCharsets.UTF_8).write("unchanged");
+            Assert.assertTrue(Baksmali.disassembleDexFilesIncrementally(
+                    ImmutableMap.of(firstDir, firstDexFile, secondDir, secondDexFile), tempDir, 2, options));
+            Assert.assertEquals("unchanged", Files.asCharSource(firstFile, StandardCharsets.UTF_8).read());
+
+            // but every class is written again when the options change
+            options.codeOffsets = true;
+            Assert.assertTrue(Baksmali.disassembleDexFilesIncrementally(
+                    ImmutableMap.of(firstDir, firstDexFile, secondDir, secondDexFile), tempDir, 2, options));
+            Assert.assertNotEquals("unchanged", Files.asCharSource(firstFile, StandardCharsets.UTF_8).read());
+
+            // and the files for classes that were removed are deleted
+            Assert.assertTrue(Baksmali.disassembleDexFilesIncrementally(
+                    ImmutableMap.of(firstDir, firstDexFile), tempDir, 2, options));
+            manifest = DisassemblyManifest.read(new File(tempDir, DisassemblyManifest.FILE_NAME));
+            Assert.assertNotNull(manifest);
+            Assert.assertEquals(firstDexFile.getClasses().size(), manifest.getEntries().size());
+            for (DisassemblyManifest.Entry entry: manifest.getEntries()) {
+                Assert.assertTrue(entry.path.startsWith("first/"));
+                Assert.assertTrue(new File(tempDir, entry.path).isFile());
+            }
+            for (ClassDef classDef: secondDexFile.getClasses()) {
+                String type = classDef.getType();
+                Assert.assertFalse(new File(secondDir, type.substring(1, type.length() - 1) + ".smali").exists());
+            }
+        } finally {
+            deleteRecursively(tempDir);
+        }
+    }
+
+    private static DexFile loadDexFile(String test) throws IOException, URISyntaxException {
+        return loadDexFile(test, false);
+    }
+
+    private static DexFile loadDexFile(String test, boolean memoryMapped) throws IOException, URISyntaxException {
+        String dexFilePath = String.format("%s%sclasses.dex", test, File.separatorChar);
+        return DexFileFactory.loadDexFile(new File(Resources.getResource(dexFilePath).toURI()),
+                Opcodes.getDefault(), memoryMapped);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child: children) {
+                deleteRecursively(child);
+            }
+        }
+        // noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+}
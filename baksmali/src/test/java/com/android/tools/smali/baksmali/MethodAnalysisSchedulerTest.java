@@ -0,0 +1,140 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.baksmali;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Resources;
+import com.android.tools.smali.baksmali.Adaptors.ClassDefinition;
+import com.android.tools.smali.baksmali.Adaptors.MethodAnalysisScheduler;
+import com.android.tools.smali.baksmali.formatter.BaksmaliWriter;
+import com.android.tools.smali.dexlib2.DexFileFactory;
+import com.android.tools.smali.dexlib2.Opcodes;
+import com.android.tools.smali.dexlib2.analysis.ClassPath;
+import com.android.tools.smali.dexlib2.analysis.MethodAnalyzer;
+import com.android.tools.smali.dexlib2.iface.ClassDef;
+import com.android.tools.smali.dexlib2.iface.DexFile;
+import com.android.tools.smali.dexlib2.iface.Method;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URISyntaxException;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class MethodAnalysisSchedulerTest {
+    @Test
+    public void testScheduledOutputMatches() throws IOException, URISyntaxException {
+        ForkJoinPool executor = new ForkJoinPool(4);
+        try {
+            MethodAnalysisScheduler scheduler = new MethodAnalysisScheduler(executor, 4);
+            for (String test: new String[] { "ConstructorTest", "RegisterEqualityOnMergeTest",
+                    "UninitRefIdentityTest", "MultipleStartInstructionsTest", "DuplicateTest" }) {
+                DexFile dexFile = loadDexFile(test);
+                BaksmaliOptions options = new BaksmaliOptions();
+                options.registerInfo = BaksmaliOptions.ALL | BaksmaliOptions.FULLMERGE;
+                options.classPath = new ClassPath();
+
+                for (ClassDef classDef: dexFile.getClasses()) {
+                    Assert.assertEquals(disassemble(options, classDef, null),
+                            disassemble(options, classDef, scheduler));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testHelpersRestarted() throws IOException, URISyntaxException {
+        // with a same-thread executor, the helpers run until they are as far ahead of the writer as they're allowed,
+        // and are then started again as the writer catches up
+        MethodAnalysisScheduler scheduler = new MethodAnalysisScheduler(Runnable::run, 2);
+        DexFile dexFile = loadDexFile("RegisterEqualityOnMergeTest");
+        BaksmaliOptions options = new BaksmaliOptions();
+        options.registerInfo = BaksmaliOptions.ALL | BaksmaliOptions.FULLMERGE;
+        options.classPath = new ClassPath();
+
+        for (ClassDef classDef: dexFile.getClasses()) {
+            Assert.assertEquals(disassemble(options, classDef, null), disassemble(options, classDef, scheduler));
+        }
+    }
+
+    @Test
+    public void testGetMethodAnalyzer() throws IOException, URISyntaxException {
+        ForkJoinPool executor = new ForkJoinPool(2);
+        try {
+            MethodAnalysisScheduler scheduler = new MethodAnalysisScheduler(executor, 2);
+            DexFile dexFile = loadDexFile("ConstructorTest");
+            ClassDef classDef = dexFile.getClasses().iterator().next();
+            List<Method> methods = Lists.newArrayList(classDef.getMethods());
+
+            BaksmaliOptions options = new BaksmaliOptions();
+            options.classPath = new ClassPath();
+
+            // nothing needs to be analyzed with the default options
+            MethodAnalysisScheduler.ClassAnalyses analyses = scheduler.scheduleClass(options, methods);
+            Assert.assertNull(analyses.getMethodAnalyzer(methods.get(0)));
+
+            options.registerInfo = BaksmaliOptions.ALL;
+            analyses = scheduler.scheduleClass(options, methods);
+            for (Method method: methods) {
+                if (method.getImplementation() != null) {
+                    MethodAnalyzer methodAnalyzer = analyses.getMethodAnalyzer(method);
+                    Assert.assertNotNull(methodAnalyzer);
+                    // the analysis is dropped once it has been handed out
+                    Assert.assertNull(analyses.getMethodAnalyzer(method));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static String disassemble(BaksmaliOptions options, ClassDef classDef,
+                                      @Nullable MethodAnalysisScheduler scheduler) throws IOException {
+        StringWriter stringWriter = new StringWriter();
+        BaksmaliWriter writer = new BaksmaliWriter(stringWriter);
+        ClassDefinition classDefinition = new ClassDefinition(options, classDef, scheduler);
+        classDefinition.writeTo(writer);
+        writer.close();
+        return stringWriter.toString();
+    }
+
+    private static DexFile loadDexFile(String test) throws IOException, URISyntaxException {
+        String dexFilePath = String.format("%s%sclasses.dex", test, File.separatorChar);
+        return DexFileFactory.loadDexFile(new File(Resources.getResource(dexFilePath).toURI()),
+                Opcodes.getDefault());
+    }
+}
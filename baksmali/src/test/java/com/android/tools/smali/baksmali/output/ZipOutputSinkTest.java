@@ -0,0 +1,219 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.baksmali.output;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import com.android.tools.smali.baksmali.Baksmali;
+import com.android.tools.smali.baksmali.BaksmaliOptions;
+import com.android.tools.smali.dexlib2.AccessFlags;
+import com.android.tools.smali.dexlib2.Opcodes;
+import com.android.tools.smali.dexlib2.iface.DexFile;
+import com.android.tools.smali.dexlib2.immutable.ImmutableClassDef;
+import com.android.tools.smali.dexlib2.immutable.ImmutableDexFile;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+public class ZipOutputSinkTest {
+    @Test
+    public void testMatchesDirectoryOutput() throws IOException {
+        List<ImmutableClassDef> classDefs = Lists.newArrayList();
+        for (String type: new String[] { "Lcom/example/Foo;", "LTop;", "Lcom/example/Bar;", "Lorg/Baz;" }) {
+            classDefs.add(new ImmutableClassDef(type, AccessFlags.PUBLIC.getValue(), "Ljava/lang/Object;", null,
+                    null, null, null, null));
+        }
+        DexFile dexFile = new ImmutableDexFile(Opcodes.getDefault(), classDefs);
+
+        ByteArrayOutputStream zipBytes = new ByteArrayOutputStream();
+        Assert.assertTrue(Baksmali.disassembleDexFiles(ImmutableMap.of("classes2", dexFile),
+                new ZipOutputSink(zipBytes), 4, new BaksmaliOptions(), null));
+
+        File tempDir = Files.createTempDir();
+        try {
+            Assert.assertTrue(Baksmali.disassembleDexFile(dexFile, tempDir, 1, new BaksmaliOptions()));
+
+            List<String> entryNames = Lists.newArrayList();
+            try (ZipInputStream zipStream = new ZipInputStream(new ByteArrayInputStream(zipBytes.toByteArray()))) {
+                ZipEntry entry;
+                while ((entry = zipStream.getNextEntry()) != null) {
+                    entryNames.add(entry.getName());
+
+                    String path = entry.getName().substring("classes2/".length());
+                    Assert.assertEquals(Files.asCharSource(new File(tempDir, path), StandardCharsets.UTF_8).read(),
+                            new String(ByteStreams.toByteArray(zipStream), StandardCharsets.UTF_8));
+                }
+            }
+
+            // the entries are in class order, regardless of which class finished first
+            Assert.assertEquals(Lists.newArrayList("classes2/Top.smali",
+                    "classes2/com/example/Bar.smali", "classes2/com/example/Foo.smali", "classes2/org/Baz.smali"),
+                    entryNames);
+        } finally {
+            deleteRecursively(tempDir);
+        }
+    }
+
+    @Test
+    public void testOutOfOrderCompletion() throws IOException {
+        ByteArrayOutputStream zipBytes = new ByteArrayOutputStream();
+        ZipOutputSink sink = new ZipOutputSink(zipBytes);
+
+        OutputSink.ClassOutput first = sink.createClassOutput("", "La;");
+        OutputSink.ClassOutput second = sink.createClassOutput("", "Lb;");
+        OutputSink.ClassOutput third = sink.createClassOutput("dir", "Lc;");
+
+        third.getWriter().write("c");
+        third.commit();
+        second.getWriter().write("b");
+        second.discard();
+        first.getWriter().write("a");
+        first.commit();
+        // discarding a committed output has no effect
+        first.discard();
+        sink.close();
+
+        List<String> entries = Lists.newArrayList();
+        try (ZipInputStream zipStream = new ZipInputStream(new ByteArrayInputStream(zipBytes.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zipStream.getNextEntry()) != null) {
+                entries.add(entry.getName() + ":" +
+                        new String(ByteStreams.toByteArray(zipStream), StandardCharsets.UTF_8));
+            }
+        }
+        Assert.assertEquals(Lists.newArrayList("a.smali:a", "dir/c.smali:c"), entries);
+    }
+
+    @Test
+    public void testBufferedEntriesBounded() throws Exception {
+        ByteArrayOutputStream zipBytes = new ByteArrayOutputStream();
+        ZipOutputSink sink = new ZipOutputSink(zipBytes, 2);
+
+        List<OutputSink.ClassOutput> outputs = Lists.newArrayList();
+        for (String type: new String[] { "La;", "Lb;", "Lc;" }) {
+            outputs.add(sink.createClassOutput("", type));
+        }
+
+        // the second output can be buffered while the first is still being written
+        outputs.get(1).getWriter().write("b");
+        outputs.get(1).commit();
+
+        // but the third has to wait until the first has been written
+        CountDownLatch started = new CountDownLatch(1);
+        FutureTask<Void> third = new FutureTask<>(() -> {
+            started.countDown();
+            outputs.get(2).getWriter().write("c");
+            outputs.get(2).commit();
+            return null;
+        });
+        new Thread(third).start();
+        started.await();
+        try {
+            third.get(200, TimeUnit.MILLISECONDS);
+            Assert.fail();
+        } catch (TimeoutException ex) {
+            // expected
+        }
+
+        outputs.get(0).getWriter().write("a");
+        outputs.get(0).commit();
+        third.get(10, TimeUnit.SECONDS);
+        sink.close();
+
+        List<String> entries = Lists.newArrayList();
+        try (ZipInputStream zipStream = new ZipInputStream(new ByteArrayInputStream(zipBytes.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zipStream.getNextEntry()) != null) {
+                entries.add(entry.getName() + ":" +
+                        new String(ByteStreams.toByteArray(zipStream), StandardCharsets.UTF_8));
+            }
+        }
+        Assert.assertEquals(Lists.newArrayList("a.smali:a", "b.smali:b", "c.smali:c"), entries);
+    }
+
+    @Test
+    public void testClosedAfterFailure() {
+        List<ImmutableClassDef> classDefs = Lists.newArrayList();
+        classDefs.add(new ImmutableClassDef("La;", AccessFlags.PUBLIC.getValue(), "Ljava/lang/Object;", null,
+                null, null, null, null));
+        classDefs.add(new ImmutableClassDef("Lb;", AccessFlags.PUBLIC.getValue(), "Ljava/lang/Object;", null,
+                null, null, null, null) {
+            @Override public String getSourceFile() {
+                // an Error isn't caught by the per-class error handling
+                throw new StackOverflowError();
+            }
+        });
+        DexFile dexFile = new ImmutableDexFile(Opcodes.getDefault(), classDefs);
+
+        final boolean[] closed = new boolean[1];
+        ByteArrayOutputStream zipBytes = new ByteArrayOutputStream() {
+            @Override public void close() {
+                closed[0] = true;
+            }
+        };
+        try {
+            Baksmali.disassembleDexFiles(ImmutableMap.of("", dexFile), new ZipOutputSink(zipBytes), 2,
+                    new BaksmaliOptions(), null);
+            Assert.fail();
+        } catch (RuntimeException ex) {
+            Assert.assertTrue(ex.getCause().getCause() instanceof StackOverflowError);
+        } catch (IOException ex) {
+            Assert.fail();
+        }
+        // the archive was still finished
+        Assert.assertTrue(closed[0]);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child: children) {
+                deleteRecursively(child);
+            }
+        }
+        // noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.benchmarks;
+
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedClassDef;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedDexFile;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedField;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedMethod;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedMethodImplementation;
+import com.android.tools.smali.dexlib2.iface.instruction.Instruction;
+import com.android.tools.smali.dexlib2.iface.instruction.ReferenceInstruction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for reading the various parts of a DexBackedDexFile.
+ *
+ * A new DexBackedDexFile is created for each invocation, so that any data cached by a previous invocation isn't
+ * reused.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DexFileReadBenchmark {
+    @Param({"2000"})
+    public int classCount;
+
+    private byte[] dexBytes;
+
+    @Setup
+    public void setup() throws IOException {
+        dexBytes = SyntheticDexFiles.toBytes(SyntheticDexFiles.generate(classCount, 10, 8));
+    }
+
+    @Benchmark
+    public void iterateClasses(Blackhole blackhole) {
+        DexBackedDexFile dexFile = new DexBackedDexFile(SyntheticDexFiles.OPCODES, dexBytes);
+        for (DexBackedClassDef classDef: dexFile.getClasses()) {
+            blackhole.consume(classDef.getType());
+            blackhole.consume(classDef.getSuperclass());
+            blackhole.consume(classDef.getSourceFile());
+            for (DexBackedField field: classDef.getFields()) {
+                blackhole.consume(field.getName());
+                blackhole.consume(field.getInitialValue());
+            }
+        }
+    }
+
+    @Benchmark
+    public void iterateMethods(Blackhole blackhole) {
+        DexBackedDexFile dexFile = new DexBackedDexFile(SyntheticDexFiles.OPCODES, dexBytes);
+        for (DexBackedClassDef classDef: dexFile.getClasses()) {
+            for (DexBackedMethod method: classDef.getMethods()) {
+                blackhole.consume(method.getName());
+                blackhole.consume(method.getParameterTypes());
+                blackhole.consume(method.getReturnType());
+                blackhole.consume(method.getAccessFlags());
+            }
+        }
+    }
+
+    @Benchmark
+    public void iterateInstructions(Blackhole blackhole) {
+        DexBackedDexFile dexFile = new DexBackedDexFile(SyntheticDexFiles.OPCODES, dexBytes);
+        for (DexBackedClassDef classDef: dexFile.getClasses()) {
+            for (DexBackedMethod method: classDef.getMethods()) {
+                DexBackedMethodImplementation implementation = method.getImplementation();
+                if (implementation == null) {
+                    continue;
+                }
+                for (Instruction instruction: implementation.getInstructions()) {
+                    blackhole.consume(instruction.getOpcode());
+                    if (instruction instanceof ReferenceInstruction) {
+                        blackhole.consume(((ReferenceInstruction)instruction).getReference());
+                    }
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void decodeStrings(Blackhole blackhole) {
+        DexBackedDexFile dexFile = new DexBackedDexFile(SyntheticDexFiles.OPCODES, dexBytes);
+        for (String string: dexFile.getStringSection()) {
+            blackhole.consume(string);
+        }
+    }
+}
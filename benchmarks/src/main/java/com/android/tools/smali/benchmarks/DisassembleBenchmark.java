@@ -0,0 +1,125 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.benchmarks;
+
+import com.android.tools.smali.baksmali.Adaptors.ClassDefinition;
+import com.android.tools.smali.baksmali.Baksmali;
+import com.android.tools.smali.baksmali.BaksmaliOptions;
+import com.android.tools.smali.baksmali.formatter.BaksmaliWriter;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedClassDef;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedDexFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks disassembling a dex file, both in memory and to a directory of smali files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DisassembleBenchmark {
+    @Param({"500"})
+    public int classCount;
+
+    private byte[] dexBytes;
+
+    @Setup
+    public void setup() throws IOException {
+        dexBytes = SyntheticDexFiles.toBytes(SyntheticDexFiles.generate(classCount, 10, 8));
+    }
+
+    /**
+     * The state for disassembling to a directory. This is separate from the benchmark's own state, so that the jobs
+     * parameter and the output directory only apply to {@link #disassembleDexFile}.
+     */
+    @State(Scope.Benchmark)
+    public static class OutputState {
+        @Param({"1", "4"})
+        public int jobs;
+
+        private File outputDir;
+
+        @Setup(Level.Invocation)
+        public void createOutputDir() throws IOException {
+            outputDir = Files.createTempDirectory("baksmali").toFile();
+        }
+
+        @TearDown(Level.Invocation)
+        public void deleteOutputDir() throws IOException {
+            BenchmarkUtils.deleteRecursively(outputDir);
+        }
+    }
+
+    /**
+     * Disassembles each class to a string, without touching the filesystem. This is single threaded.
+     */
+    @Benchmark
+    public int disassembleClasses() throws IOException {
+        DexBackedDexFile dexFile = new DexBackedDexFile(SyntheticDexFiles.OPCODES, dexBytes);
+        BaksmaliOptions options = new BaksmaliOptions();
+
+        int length = 0;
+        for (DexBackedClassDef classDef: dexFile.getClasses()) {
+            StringWriter stringWriter = new StringWriter();
+            BaksmaliWriter writer = new BaksmaliWriter(stringWriter);
+            new ClassDefinition(options, classDef).writeTo(writer);
+            writer.close();
+            length += stringWriter.getBuffer().length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public boolean disassembleDexFile(OutputState output) {
+        DexBackedDexFile dexFile = new DexBackedDexFile(SyntheticDexFiles.OPCODES, dexBytes);
+        return Baksmali.disassembleDexFile(dexFile, output.outputDir, output.jobs, new BaksmaliOptions());
+    }
+}
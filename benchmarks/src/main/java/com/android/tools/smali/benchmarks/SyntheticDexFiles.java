@@ -0,0 +1,226 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.benchmarks;
+
+import com.android.tools.smali.dexlib2.AccessFlags;
+import com.android.tools.smali.dexlib2.Opcode;
+import com.android.tools.smali.dexlib2.Opcodes;
+import com.android.tools.smali.dexlib2.builder.Label;
+import com.android.tools.smali.dexlib2.builder.MethodImplementationBuilder;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction11n;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction11x;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction12x;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction21c;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction21s;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction22t;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction23x;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction35c;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedDexFile;
+import com.android.tools.smali.dexlib2.iface.ClassDef;
+import com.android.tools.smali.dexlib2.iface.DexFile;
+import com.android.tools.smali.dexlib2.iface.Method;
+import com.android.tools.smali.dexlib2.immutable.ImmutableClassDef;
+import com.android.tools.smali.dexlib2.immutable.ImmutableDexFile;
+import com.android.tools.smali.dexlib2.immutable.ImmutableField;
+import com.android.tools.smali.dexlib2.immutable.ImmutableMethod;
+import com.android.tools.smali.dexlib2.immutable.ImmutableMethodParameter;
+import com.android.tools.smali.dexlib2.immutable.reference.ImmutableFieldReference;
+import com.android.tools.smali.dexlib2.immutable.reference.ImmutableMethodReference;
+import com.android.tools.smali.dexlib2.immutable.reference.ImmutableStringReference;
+import com.android.tools.smali.dexlib2.immutable.reference.ImmutableTypeReference;
+import com.android.tools.smali.dexlib2.immutable.value.ImmutableIntEncodedValue;
+import com.android.tools.smali.dexlib2.writer.io.MemoryDataStore;
+import com.android.tools.smali.dexlib2.writer.pool.DexPool;
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates synthetic dex files for the benchmarks, so that they don't depend on any external input.
+ *
+ * The generated methods are made up of a series of blocks, each of which contains a mix of string constants,
+ * arithmetic, field accesses, invocations and a conditional branch to the next block, along with debug info and a
+ * try block.
+ */
+public class SyntheticDexFiles {
+    public static final Opcodes OPCODES = Opcodes.getDefault();
+
+    private static final String OBJECT = "Ljava/lang/Object;";
+    private static final String STRING = "Ljava/lang/String;";
+    private static final String STRING_BUILDER = "Ljava/lang/StringBuilder;";
+    private static final String THROWABLE = "Ljava/lang/Throwable;";
+    private static final String EXCEPTION = "Ljava/lang/Exception;";
+
+    private static final ImmutableList<String> METHOD_PARAMETERS = ImmutableList.of("I", STRING);
+
+    /**
+     * Generates a dex file with the given number of classes, each with the given number of methods.
+     *
+     * @param classCount The number of classes to generate
+     * @param methodsPerClass The number of static methods in each class
+     * @param blocksPerMethod The number of blocks in each method. Each block is 12 instructions.
+     * @return The generated dex file
+     */
+    @Nonnull
+    public static DexFile generate(int classCount, int methodsPerClass, int blocksPerMethod) {
+        List<ClassDef> classes = new ArrayList<>();
+        for (int classIndex=0; classIndex<classCount; classIndex++) {
+            String type = getClassType(classIndex);
+
+            List<Method> methods = new ArrayList<>();
+            for (int methodIndex=0; methodIndex<methodsPerClass; methodIndex++) {
+                methods.add(generateMethod(type, "method" + methodIndex,
+                        getClassType((classIndex + 1) % classCount), "method" + ((methodIndex + 1) % methodsPerClass),
+                        blocksPerMethod));
+            }
+
+            ImmutableField field = new ImmutableField(type, "field", "I",
+                    AccessFlags.STATIC.getValue(), new ImmutableIntEncodedValue(classIndex), null, null);
+
+            classes.add(new ImmutableClassDef(type, AccessFlags.PUBLIC.getValue(), OBJECT, null,
+                    "Class" + classIndex + ".java", null, ImmutableList.of(field), methods));
+        }
+        return new ImmutableDexFile(OPCODES, classes);
+    }
+
+    /**
+     * Generates a single method with the given number of blocks. This is useful for benchmarking code that operates
+     * on a method as a whole, like MethodAnalyzer.
+     */
+    @Nonnull
+    public static Method generateMethod(int blocks) {
+        String type = getClassType(0);
+        return generateMethod(type, "method0", type, "method0", blocks);
+    }
+
+    /**
+     * Generates minimal definitions of the framework classes that are referenced by the generated code, for use as
+     * a class path.
+     */
+    @Nonnull
+    public static DexFile generateFrameworkStubs() {
+        Method length = new ImmutableMethod(STRING, "length", null, "I", AccessFlags.PUBLIC.getValue(), null,
+                null, null);
+        Method init = new ImmutableMethod(STRING_BUILDER, "<init>", null, "V",
+                AccessFlags.PUBLIC.getValue() | AccessFlags.CONSTRUCTOR.getValue(), null, null, null);
+
+        return new ImmutableDexFile(OPCODES, ImmutableList.of(
+                new ImmutableClassDef(OBJECT, AccessFlags.PUBLIC.getValue(), null, null, null, null, null, null),
+                new ImmutableClassDef(STRING, AccessFlags.PUBLIC.getValue() | AccessFlags.FINAL.getValue(), OBJECT,
+                        null, null, null, null, ImmutableList.of(length)),
+                new ImmutableClassDef(STRING_BUILDER, AccessFlags.PUBLIC.getValue() | AccessFlags.FINAL.getValue(),
+                        OBJECT, null, null, null, null, ImmutableList.of(init)),
+                new ImmutableClassDef(THROWABLE, AccessFlags.PUBLIC.getValue(), OBJECT, null, null, null, null,
+                        null),
+                new ImmutableClassDef(EXCEPTION, AccessFlags.PUBLIC.getValue(), THROWABLE, null, null, null, null,
+                        null)));
+    }
+
+    /**
+     * Writes the given dex file and reads it back as a DexBackedDexFile.
+     */
+    @Nonnull
+    public static DexBackedDexFile toDexBackedDexFile(@Nonnull DexFile dexFile) throws IOException {
+        return new DexBackedDexFile(dexFile.getOpcodes(), toBytes(dexFile));
+    }
+
+    @Nonnull
+    public static byte[] toBytes(@Nonnull DexFile dexFile) throws IOException {
+        MemoryDataStore dataStore = new MemoryDataStore();
+        DexPool dexPool = new DexPool(dexFile.getOpcodes());
+        for (ClassDef classDef: dexFile.getClasses()) {
+            dexPool.internClass(classDef);
+        }
+        dexPool.writeTo(dataStore);
+        return dataStore.getData();
+    }
+
+    @Nonnull
+    private static String getClassType(int classIndex) {
+        return "Lcom/android/tools/smali/benchmarks/generated/package" + (classIndex % 16) + "/Class" +
+                classIndex + ";";
+    }
+
+    @Nonnull
+    private static Method generateMethod(@Nonnull String type, @Nonnull String name, @Nonnull String calleeType,
+                                         @Nonnull String calleeName, int blocks) {
+        // v0-v5 are locals, v6 is the int parameter and v7 is the string parameter
+        MethodImplementationBuilder builder = new MethodImplementationBuilder(8);
+
+        ImmutableFieldReference field = new ImmutableFieldReference(type, "field", "I");
+        ImmutableMethodReference length = new ImmutableMethodReference(STRING, "length", null, "I");
+        ImmutableMethodReference init = new ImmutableMethodReference(STRING_BUILDER, "<init>", null, "V");
+        ImmutableMethodReference callee = new ImmutableMethodReference(calleeType, calleeName, METHOD_PARAMETERS,
+                "I");
+
+        Label tryStart = builder.addLabel("try_start");
+        for (int i=0; i<blocks; i++) {
+            builder.addLabel("block" + i);
+            builder.addLineNumber(i + 1);
+
+            builder.addInstruction(new BuilderInstruction21c(Opcode.CONST_STRING, 0,
+                    new ImmutableStringReference(name + " block " + i + " of " + type)));
+            builder.addInstruction(new BuilderInstruction35c(Opcode.INVOKE_VIRTUAL, 1, 0, 0, 0, 0, 0, length));
+            builder.addInstruction(new BuilderInstruction11x(Opcode.MOVE_RESULT, 1));
+            builder.addInstruction(new BuilderInstruction23x(Opcode.ADD_INT, 2, 1, 6));
+            builder.addInstruction(new BuilderInstruction21s(Opcode.CONST_16, 3, i));
+            builder.addInstruction(new BuilderInstruction22t(Opcode.IF_GE, 2, 3,
+                    builder.getLabel("block" + (i + 1))));
+            builder.addInstruction(new BuilderInstruction21c(Opcode.SGET, 4, field));
+            builder.addInstruction(new BuilderInstruction12x(Opcode.MUL_INT_2ADDR, 2, 4));
+            builder.addInstruction(new BuilderInstruction21c(Opcode.NEW_INSTANCE, 5,
+                    new ImmutableTypeReference(STRING_BUILDER)));
+            builder.addInstruction(new BuilderInstruction35c(Opcode.INVOKE_DIRECT, 1, 5, 0, 0, 0, 0, init));
+            builder.addInstruction(new BuilderInstruction35c(Opcode.INVOKE_STATIC, 2, 2, 7, 0, 0, 0, callee));
+            builder.addInstruction(new BuilderInstruction11x(Opcode.MOVE_RESULT, 2));
+        }
+        builder.addLabel("block" + blocks);
+        Label tryEnd = builder.addLabel("try_end");
+        builder.addInstruction(new BuilderInstruction11x(Opcode.RETURN, 2));
+
+        Label handler = builder.addLabel("handler");
+        builder.addInstruction(new BuilderInstruction11x(Opcode.MOVE_EXCEPTION, 0));
+        builder.addInstruction(new BuilderInstruction11n(Opcode.CONST_4, 2, 0));
+        builder.addInstruction(new BuilderInstruction11x(Opcode.RETURN, 2));
+        builder.addCatch(EXCEPTION, tryStart, tryEnd, handler);
+
+        return new ImmutableMethod(type, name, ImmutableList.of(
+                    new ImmutableMethodParameter("I", null, "count"),
+                    new ImmutableMethodParameter(STRING, null, "value")),
+                "I", AccessFlags.PUBLIC.getValue() | AccessFlags.STATIC.getValue(), null, null,
+                builder.getMethodImplementation());
+    }
+
+    private SyntheticDexFiles() {}
+}
@@ -39,6 +39,7 @@ import com.android.tools.smali.dexlib2.iface.MultiDexContainer.DexEntry;
 import com.android.tools.smali.dexlib2.dexbacked.DexBackedDexFile;
 import com.android.tools.smali.dexlib2.dexbacked.DexBackedDexFile.NotADexFile;
 import com.android.tools.smali.dexlib2.dexbacked.DexBackedOdexFile;
+import com.android.tools.smali.dexlib2.dexbacked.MappedDexBuffer;
 import com.android.tools.smali.dexlib2.dexbacked.OatFile;
 import com.android.tools.smali.dexlib2.dexbacked.OatFile.NotAnOatFileException;
 import com.android.tools.smali.dexlib2.dexbacked.OatFile.VdexProvider;
@@ -87,17 +88,45 @@ public final class DexFileFactory {
      */
     @Nonnull
     public static DexBackedDexFile loadDexFile(@Nonnull File file, @Nullable Opcodes opcodes) throws IOException {
+        return loadDexFile(file, opcodes, false);
+    }
+
+    /**
+     * Loads a dex/apk/odex/oat file, optionally memory mapping it.
+     *
+     * When memoryMapped is true, dex and oat files are memory mapped rather than read onto the heap, as are any
+     * uncompressed dex entries in a zip file. Odex files and compressed zip entries are always read onto the heap.
+     *
+     * @see #loadDexFile(File, Opcodes)
+     */
+    @Nonnull
+    public static DexBackedDexFile loadDexFile(@Nonnull File file, @Nullable Opcodes opcodes, boolean memoryMapped)
+            throws IOException {
         if (!file.exists()) {
             throw new DexFileNotFoundException("%s does not exist", file.getName());
         }
 
         try {
-            ZipDexContainer container = new ZipDexContainer(file, opcodes);
+            ZipDexContainer container = new ZipDexContainer(file, opcodes, memoryMapped);
             return new DexEntryFinder(file.getPath(), container).findEntry("classes.dex", true).getDexFile();
         } catch (NotAZipFileException ex) {
             // eat it and continue
         }
 
+        if (memoryMapped) {
+            MappedDexBuffer buf = MappedDexBuffer.map(file);
+            try {
+                return DexBackedDexFile.fromBuffer(opcodes, buf);
+            } catch (NotADexFile ex) {
+                // just eat it
+            }
+
+            OatFile oatFile = loadMappedOatFile(file, buf);
+            if (oatFile != null) {
+                return getFirstOatDexFile(file, oatFile);
+            }
+        }
+
         try (InputStream inputStream = new BufferedInputStream(new FileInputStream(file))) {
             try {
                 return DexBackedDexFile.fromInputStream(opcodes, inputStream);
@@ -122,21 +151,35 @@ public final class DexFileFactory {
             }
 
             if (oatFile != null) {
-                if (oatFile.isSupportedVersion() == OatFile.UNSUPPORTED) {
-                    throw new UnsupportedOatVersionException(oatFile);
-                }
+                return getFirstOatDexFile(file, oatFile);
+            }
+        }
 
-                List<DexBackedDexFile> oatDexFiles = oatFile.getDexFiles();
+        throw new UnsupportedFileTypeException("%s is not an apk, dex, odex or oat file.", file.getPath());
+    }
 
-                if (oatDexFiles.size() == 0) {
-                    throw new DexFileNotFoundException("Oat file %s contains no dex files", file.getName());
-                }
+    @Nonnull
+    private static DexBackedDexFile getFirstOatDexFile(@Nonnull File file, @Nonnull OatFile oatFile) {
+        if (oatFile.isSupportedVersion() == OatFile.UNSUPPORTED) {
+            throw new UnsupportedOatVersionException(oatFile);
+        }
 
-                return oatDexFiles.get(0);
-            }
+        List<DexBackedDexFile> oatDexFiles = oatFile.getDexFiles();
+
+        if (oatDexFiles.size() == 0) {
+            throw new DexFileNotFoundException("Oat file %s contains no dex files", file.getName());
         }
 
-        throw new UnsupportedFileTypeException("%s is not an apk, dex, odex or oat file.", file.getPath());
+        return oatDexFiles.get(0);
+    }
+
+    @Nullable
+    private static OatFile loadMappedOatFile(@Nonnull File file, @Nonnull MappedDexBuffer buf) {
+        try {
+            return new OatFile(buf, new FilenameVdexProvider(file));
+        } catch (NotAnOatFileException ex) {
+            return null;
+        }
     }
 
     /**
@@ -184,12 +227,27 @@ public final class DexFileFactory {
             @Nonnull String dexEntry,
             boolean exactMatch,
             @Nullable Opcodes opcodes) throws IOException {
+        return loadDexEntry(file, dexEntry, exactMatch, opcodes, false);
+    }
+
+    /**
+     * Loads a dex entry from a container format (zip/oat), optionally memory mapping the container.
+     *
+     * @see #loadDexEntry(File, String, boolean, Opcodes)
+     * @see #loadDexFile(File, Opcodes, boolean)
+     */
+    public static DexEntry<? extends DexBackedDexFile> loadDexEntry(
+            @Nonnull File file,
+            @Nonnull String dexEntry,
+            boolean exactMatch,
+            @Nullable Opcodes opcodes,
+            boolean memoryMapped) throws IOException {
         if (!file.exists()) {
             throw new DexFileNotFoundException("Container file %s does not exist", file.getName());
         }
 
         try {
-            ZipDexContainer container = new ZipDexContainer(file, opcodes);
+            ZipDexContainer container = new ZipDexContainer(file, opcodes, memoryMapped);
             return new DexEntryFinder(file.getPath(), container).findEntry(dexEntry, exactMatch);
         } catch (NotAZipFileException ex) {
             // eat it and continue
@@ -197,10 +255,14 @@ public final class DexFileFactory {
 
         try (InputStream inputStream = new BufferedInputStream(new FileInputStream(file))) {
             OatFile oatFile = null;
-            try {
-                oatFile = OatFile.fromInputStream(inputStream, new FilenameVdexProvider(file));
-            } catch (NotAnOatFileException ex) {
-                // just eat it
+            if (memoryMapped) {
+                oatFile = loadMappedOatFile(file, MappedDexBuffer.map(file));
+            } else {
+                try {
+                    oatFile = OatFile.fromInputStream(inputStream, new FilenameVdexProvider(file));
+                } catch (NotAnOatFileException ex) {
+                    // just eat it
+                }
             }
 
             if (oatFile != null) {
@@ -235,15 +297,45 @@ public final class DexFileFactory {
      */
     public static MultiDexContainer<? extends DexBackedDexFile> loadDexContainer(
             @Nonnull File file, @Nullable final Opcodes opcodes) throws IOException {
+        return loadDexContainer(file, opcodes, false);
+    }
+
+    /**
+     * Loads a file containing 1 or more dex files, optionally memory mapping it.
+     *
+     * @see #loadDexContainer(File, Opcodes)
+     * @see #loadDexFile(File, Opcodes, boolean)
+     */
+    public static MultiDexContainer<? extends DexBackedDexFile> loadDexContainer(
+            @Nonnull File file, @Nullable final Opcodes opcodes, boolean memoryMapped) throws IOException {
         if (!file.exists()) {
             throw new DexFileNotFoundException("%s does not exist", file.getName());
         }
 
-        ZipDexContainer zipDexContainer = new ZipDexContainer(file, opcodes);
+        ZipDexContainer zipDexContainer = new ZipDexContainer(file, opcodes, memoryMapped);
         if (zipDexContainer.isZipFile()) {
             return zipDexContainer;
         }
 
+        if (memoryMapped) {
+            MappedDexBuffer buf = MappedDexBuffer.map(file);
+            try {
+                DexBackedDexFile dexFile = DexBackedDexFile.fromBuffer(opcodes, buf);
+                return new SingletonMultiDexContainer(file.getPath(), dexFile);
+            } catch (NotADexFile ex) {
+                // just eat it
+            }
+
+            OatFile oatFile = loadMappedOatFile(file, buf);
+            if (oatFile != null) {
+                // TODO: we should support loading earlier oat files, just not deodexing them
+                if (oatFile.isSupportedVersion() == OatFile.UNSUPPORTED) {
+                    throw new UnsupportedOatVersionException(oatFile);
+                }
+                return oatFile;
+            }
+        }
+
         try (InputStream inputStream = new BufferedInputStream(new FileInputStream(file))) {
             try {
                 DexBackedDexFile dexFile = DexBackedDexFile.fromInputStream(opcodes, inputStream);
@@ -44,10 +44,10 @@ import com.android.tools.smali.dexlib2.iface.reference.TypeReference;
 import com.android.tools.smali.util.ExceptionWithContext;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -57,6 +57,10 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 public class AnalyzedInstruction implements Comparable<AnalyzedInstruction> {
+    private static final AnalyzedInstruction[] NO_INSTRUCTIONS = new AnalyzedInstruction[0];
+    private static final int[] NO_REGISTERS = new int[0];
+    private static final RegisterType[] NO_REGISTER_TYPES = new RegisterType[0];
+
     /**
      * The MethodAnalyzer containing this instruction
      */
@@ -75,16 +79,20 @@ public class AnalyzedInstruction implements Comparable<AnalyzedInstruction> {
     protected final int instructionIndex;
 
     /**
-     * Instructions that can pass on execution to this one during normal execution
+     * Instructions that can pass on execution to this one during normal execution, sorted by instruction index. Only
+     * the first predecessorCount elements are valid.
      */
     @Nonnull
-    protected final TreeSet<AnalyzedInstruction> predecessors = new TreeSet<AnalyzedInstruction>();
+    protected AnalyzedInstruction[] predecessors = NO_INSTRUCTIONS;
+    protected int predecessorCount;
 
     /**
-     * Instructions that can execution could pass on to next during normal execution
+     * Instructions that can execution could pass on to next during normal execution, in the order they were added.
+     * Only the first successorCount elements are valid.
      */
     @Nonnull
-    protected final LinkedList<AnalyzedInstruction> successors = new LinkedList<AnalyzedInstruction>();
+    protected AnalyzedInstruction[] successors = NO_INSTRUCTIONS;
+    protected int successorCount;
 
     /**
      * This contains the register types *before* the instruction has executed
@@ -93,10 +101,16 @@ public class AnalyzedInstruction implements Comparable<AnalyzedInstruction> {
     protected final RegisterType[] preRegisterMap;
 
     /**
-     * This contains the register types *after* the instruction has executed
+     * The register types *after* the instruction has executed are stored as a delta against preRegisterMap, since
+     * an instruction only changes a few registers. A register without an entry here has the same post-instruction
+     * type as its pre-instruction type. The entries are sorted by register number, and only the first
+     * postRegisterDeltaCount elements are valid.
      */
     @Nonnull
-    protected final RegisterType[] postRegisterMap;
+    private int[] postRegisterDeltaNumbers = NO_REGISTERS;
+    @Nonnull
+    private RegisterType[] postRegisterDeltaTypes = NO_REGISTER_TYPES;
+    private int postRegisterDeltaCount;
 
     /**
      * This contains optional register type overrides for register types from predecessors
@@ -116,13 +130,9 @@ public class AnalyzedInstruction implements Comparable<AnalyzedInstruction> {
         this.instruction = instruction;
         this.originalInstruction = instruction;
         this.instructionIndex = instructionIndex;
-        this.postRegisterMap = new RegisterType[registerCount];
         this.preRegisterMap = new RegisterType[registerCount];
         RegisterType unknown = RegisterType.getRegisterType(RegisterType.UNKNOWN, null);
-        for (int i=0; i<registerCount; i++) {
-            preRegisterMap[i] = unknown;
-            postRegisterMap[i] = unknown;
-        }
+        Arrays.fill(preRegisterMap, unknown);
     }
 
     public int getInstructionIndex() {
@@ -130,11 +140,12 @@ public class AnalyzedInstruction implements Comparable<AnalyzedInstruction> {
     }
 
     public int getPredecessorCount() {
-        return predecessors.size();
+        return predecessorCount;
     }
 
     public SortedSet<AnalyzedInstruction> getPredecessors() {
-        return Collections.unmodifiableSortedSet(predecessors);
+        return Collections.unmodifiableSortedSet(
+                new TreeSet<>(Arrays.asList(predecessors).subList(0, predecessorCount)));
     }
 
     public RegisterType getPredecessorRegisterType(@Nonnull AnalyzedInstruction predecessor, int registerNumber) {
@@ -145,15 +156,50 @@ public class AnalyzedInstruction implements Comparable<AnalyzedInstruction> {
                 return override;
             }
         }
-        return predecessor.postRegisterMap[registerNumber];
+        return predecessor.getPostInstructionRegisterType(registerNumber);
     }
 
     protected boolean addPredecessor(AnalyzedInstruction predecessor) {
-        return predecessors.add(predecessor);
+        int low = 0;
+        int high = predecessorCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int comparison = predecessors[mid].compareTo(predecessor);
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                return false;
+            }
+        }
+
+        if (predecessorCount == predecessors.length) {
+            predecessors = Arrays.copyOf(predecessors, Math.max(2, predecessorCount * 2));
+        }
+        System.arraycopy(predecessors, low, predecessors, low + 1, predecessorCount - low);
+        predecessors[low] = predecessor;
+        predecessorCount++;
+        return true;
     }
 
     protected void addSuccessor(AnalyzedInstruction successor) {
-        successors.add(successor);
+        if (successorCount == successors.length) {
+            successors = Arrays.copyOf(successors, Math.max(2, successorCount * 2));
+        }
+        successors[successorCount++] = successor;
+    }
+
+    /**
+     * Releases any unused capacity in the predecessor and successor arrays, once the control flow graph is complete.
+     */
+    protected void trimEdges() {
+        if (predecessors.length != predecessorCount) {
+            predecessors = predecessorCount == 0 ? NO_INSTRUCTIONS : Arrays.copyOf(predecessors, predecessorCount);
+        }
+        if (successors.length != successorCount) {
+            successors = successorCount == 0 ? NO_INSTRUCTIONS : Arrays.copyOf(successors, successorCount);
+        }
     }
 
     protected void setDeodexedInstruction(Instruction instruction) {
@@ -166,9 +212,13 @@ public class AnalyzedInstruction implements Comparable<AnalyzedInstruction> {
         instruction = originalInstruction;
     }
 
+    public int getSuccessorCount() {
+        return successorCount;
+    }
+
     @Nonnull
     public List<AnalyzedInstruction> getSuccessors() {
-        return Collections.unmodifiableList(successors);
+        return Collections.unmodifiableList(Arrays.asList(successors).subList(0, successorCount));
     }
 
     @Nonnull
@@ -196,10 +246,10 @@ public class AnalyzedInstruction implements Comparable<AnalyzedInstruction> {
     public boolean isBeginningInstruction() {
         //if this instruction has no predecessors, it is either the fake "StartOfMethod" instruction or it is an
         //unreachable instruction.
-        if (predecessors.size() == 0) {
+        if (predecessorCount == 0) {
             return false;
         }
-        return predecessors.first().instructionIndex == -1;
+        return predecessors[0].instructionIndex == -1;
     }
 
     /*
@@ -213,7 +263,7 @@ public class AnalyzedInstruction implements Comparable<AnalyzedInstruction> {
      */
     protected boolean mergeRegister(int registerNumber, RegisterType registerType, BitSet verifiedInstructions,
                                     boolean override) {
-        assert registerNumber >= 0 && registerNumber < postRegisterMap.length;
+        assert registerNumber >= 0 && registerNumber < preRegisterMap.length;
         assert registerType != null;
 
         RegisterType oldRegisterType = preRegisterMap[registerNumber];
@@ -229,14 +279,17 @@ public class AnalyzedInstruction implements Comparable<AnalyzedInstruction> {
             return false;
         }
 
+        RegisterType oldPostRegisterType = getPostInstructionRegisterType(registerNumber);
         preRegisterMap[registerNumber] = mergedRegisterType;
         verifiedInstructions.clear(instructionIndex);
 
         if (!setsRegister(registerNumber)) {
-            postRegisterMap[registerNumber] = mergedRegisterType;
+            removePostRegisterDelta(registerNumber);
             return true;
         }
 
+        // the post-instruction type must not follow the pre-instruction type for a register that this instruction sets
+        putPostRegisterDelta(registerNumber, oldPostRegisterType);
         return false;
     }
 
@@ -251,7 +304,8 @@ public class AnalyzedInstruction implements Comparable<AnalyzedInstruction> {
     @Nonnull
     protected RegisterType getMergedPreRegisterTypeFromPredecessors(int registerNumber) {
         RegisterType mergedRegisterType = null;
-        for (AnalyzedInstruction predecessor: predecessors) {
+        for (int i = 0; i < predecessorCount; i++) {
+            AnalyzedInstruction predecessor = predecessors[i];
             RegisterType predecessorRegisterType = getPredecessorRegisterType(predecessor, registerNumber);
             if (predecessorRegisterType != null) {
                 if (mergedRegisterType == null) {
@@ -274,18 +328,68 @@ public class AnalyzedInstruction implements Comparable<AnalyzedInstruction> {
      * @return true if the given register type is different than the existing post-instruction register type
      */
     protected boolean setPostRegisterType(int registerNumber, RegisterType registerType) {
-        assert registerNumber >= 0 && registerNumber < postRegisterMap.length;
+        assert registerNumber >= 0 && registerNumber < preRegisterMap.length;
         assert registerType != null;
 
-        RegisterType oldRegisterType = postRegisterMap[registerNumber];
+        RegisterType oldRegisterType = getPostInstructionRegisterType(registerNumber);
         if (oldRegisterType.equals(registerType)) {
             return false;
         }
 
-        postRegisterMap[registerNumber] = registerType;
+        putPostRegisterDelta(registerNumber, registerType);
         return true;
     }
 
+    private int findPostRegisterDelta(int registerNumber) {
+        int low = 0;
+        int high = postRegisterDeltaCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int deltaRegister = postRegisterDeltaNumbers[mid];
+            if (deltaRegister < registerNumber) {
+                low = mid + 1;
+            } else if (deltaRegister > registerNumber) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private void putPostRegisterDelta(int registerNumber, @Nonnull RegisterType registerType) {
+        int index = findPostRegisterDelta(registerNumber);
+        if (index >= 0) {
+            postRegisterDeltaTypes[index] = registerType;
+            return;
+        }
+
+        index = -(index + 1);
+        if (postRegisterDeltaCount == postRegisterDeltaNumbers.length) {
+            int newLength = Math.max(2, postRegisterDeltaCount * 2);
+            postRegisterDeltaNumbers = Arrays.copyOf(postRegisterDeltaNumbers, newLength);
+            postRegisterDeltaTypes = Arrays.copyOf(postRegisterDeltaTypes, newLength);
+        }
+        int moveCount = postRegisterDeltaCount - index;
+        System.arraycopy(postRegisterDeltaNumbers, index, postRegisterDeltaNumbers, index + 1, moveCount);
+        System.arraycopy(postRegisterDeltaTypes, index, postRegisterDeltaTypes, index + 1, moveCount);
+        postRegisterDeltaNumbers[index] = registerNumber;
+        postRegisterDeltaTypes[index] = registerType;
+        postRegisterDeltaCount++;
+    }
+
+    private void removePostRegisterDelta(int registerNumber) {
+        int index = findPostRegisterDelta(registerNumber);
+        if (index < 0) {
+            return;
+        }
+        int moveCount = postRegisterDeltaCount - index - 1;
+        System.arraycopy(postRegisterDeltaNumbers, index + 1, postRegisterDeltaNumbers, index, moveCount);
+        System.arraycopy(postRegisterDeltaTypes, index + 1, postRegisterDeltaTypes, index, moveCount);
+        postRegisterDeltaCount--;
+        postRegisterDeltaTypes[postRegisterDeltaCount] = null;
+    }
+
     /**
      * Adds an override for a register type from a predecessor.
      *
@@ -311,16 +415,16 @@ public class AnalyzedInstruction implements Comparable<AnalyzedInstruction> {
             return false;
         }
 
+        RegisterType oldPostRegisterType = getPostInstructionRegisterType(registerNumber);
         preRegisterMap[registerNumber] = mergedType;
         verifiedInstructions.clear(instructionIndex);
 
         if (!setsRegister(registerNumber)) {
-            if (!postRegisterMap[registerNumber].equals(mergedType)) {
-                postRegisterMap[registerNumber] = mergedType;
-                return true;
-            }
+            removePostRegisterDelta(registerNumber);
+            return !oldPostRegisterType.equals(mergedType);
         }
 
+        putPostRegisterDelta(registerNumber, oldPostRegisterType);
         return false;
     }
 
@@ -401,7 +505,7 @@ public class AnalyzedInstruction implements Comparable<AnalyzedInstruction> {
                 getPredecessorCount() == 1 &&
                 (instruction.getOpcode() == Opcode.IF_EQZ || instruction.getOpcode() == Opcode.IF_NEZ)) {
 
-            AnalyzedInstruction prevInstruction = predecessors.first();
+            AnalyzedInstruction prevInstruction = predecessors[0];
             if (prevInstruction.instruction.getOpcode() == Opcode.INSTANCE_OF &&
                     MethodAnalyzer.canPropagateTypeAfterInstanceOf(
                             prevInstruction, this, methodAnalyzer.getClassPath())) {
@@ -422,7 +526,8 @@ public class AnalyzedInstruction implements Comparable<AnalyzedInstruction> {
 
                     RegisterType newType = null;
 
-                    for (AnalyzedInstruction prevPrevAnalyzedInstruction : prevInstruction.predecessors) {
+                    for (int i = 0; i < prevInstruction.predecessorCount; i++) {
+                        AnalyzedInstruction prevPrevAnalyzedInstruction = prevInstruction.predecessors[i];
                         Opcode opcode = prevPrevAnalyzedInstruction.instruction.getOpcode();
                         if (opcode == Opcode.MOVE_OBJECT || opcode == Opcode.MOVE_OBJECT_16 ||
                                 opcode == Opcode.MOVE_OBJECT_FROM16) {
@@ -526,7 +631,7 @@ public class AnalyzedInstruction implements Comparable<AnalyzedInstruction> {
                         setRegisters.add(i);
                     } else if (preInstructionRegisterType.category == RegisterType.UNINIT_REF ||
                             preInstructionRegisterType.category == RegisterType.UNINIT_THIS) {
-                        RegisterType postInstructionRegisterType = postRegisterMap[i];
+                        RegisterType postInstructionRegisterType = getPostInstructionRegisterType(i);
                         if (postInstructionRegisterType.category == RegisterType.UNKNOWN) {
                             setRegisters.add(i);
                         }
@@ -556,7 +661,7 @@ public class AnalyzedInstruction implements Comparable<AnalyzedInstruction> {
                 getPredecessorCount() == 1 &&
                 (instruction.getOpcode() == Opcode.IF_EQZ || instruction.getOpcode() == Opcode.IF_NEZ)) {
 
-            AnalyzedInstruction prevInstruction = predecessors.first();
+            AnalyzedInstruction prevInstruction = predecessors[0];
             if (prevInstruction.instruction.getOpcode() == Opcode.INSTANCE_OF &&
                     MethodAnalyzer.canPropagateTypeAfterInstanceOf(
                             prevInstruction, this, methodAnalyzer.getClassPath())) {
@@ -574,7 +679,8 @@ public class AnalyzedInstruction implements Comparable<AnalyzedInstruction> {
 
                     RegisterType newType = null;
 
-                    for (AnalyzedInstruction prevPrevAnalyzedInstruction : prevInstruction.predecessors) {
+                    for (int i = 0; i < prevInstruction.predecessorCount; i++) {
+                        AnalyzedInstruction prevPrevAnalyzedInstruction = prevInstruction.predecessors[i];
                         Opcode opcode = prevPrevAnalyzedInstruction.instruction.getOpcode();
                         if (opcode == Opcode.MOVE_OBJECT || opcode == Opcode.MOVE_OBJECT_16 ||
                                 opcode == Opcode.MOVE_OBJECT_FROM16) {
@@ -631,12 +737,18 @@ public class AnalyzedInstruction implements Comparable<AnalyzedInstruction> {
     }
 
     public int getRegisterCount() {
-        return postRegisterMap.length;
+        return preRegisterMap.length;
     }
 
     @Nonnull
     public RegisterType getPostInstructionRegisterType(int registerNumber) {
-        return postRegisterMap[registerNumber];
+        if (postRegisterDeltaCount > 0) {
+            int index = findPostRegisterDelta(registerNumber);
+            if (index >= 0) {
+                return postRegisterDeltaTypes[index];
+            }
+        }
+        return preRegisterMap[registerNumber];
     }
 
     @Nonnull
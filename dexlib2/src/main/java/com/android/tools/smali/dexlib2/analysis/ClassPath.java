@@ -32,26 +32,29 @@ package com.android.tools.smali.dexlib2.analysis;
 
 import com.android.tools.smali.dexlib2.Opcodes;
 import com.android.tools.smali.dexlib2.analysis.reflection.ReflectionClassDef;
-import com.android.tools.smali.dexlib2.analysis.util.LruCache;
+import com.android.tools.smali.dexlib2.analysis.util.ConcurrentLruCache;
 import com.android.tools.smali.dexlib2.analysis.util.MemoizingSupplier;
 import com.android.tools.smali.dexlib2.iface.ClassDef;
 import com.android.tools.smali.dexlib2.immutable.ImmutableDexFile;
 import com.android.tools.smali.util.IteratorUtils;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Supplier;
 
 public class ClassPath {
     @Nonnull private final TypeProto unknownClass;
-    @Nonnull private List<ClassProvider> classProviders;
+    @Nonnull private final List<ClassProvider> classProviders;
     private final boolean checkPackagePrivateAccess;
     public final int oatVersion;
+    @Nullable private final ClassPathSnapshot snapshot;
 
     public static final int NOT_ART = -1;
     public static final int NOT_SPECIFIED = -2;
@@ -87,11 +90,29 @@ public class ClassPath {
      */
     public ClassPath(@Nonnull Iterable<? extends ClassProvider> classProviders, boolean checkPackagePrivateAccess,
                      int oatVersion) {
+        this(classProviders, checkPackagePrivateAccess, oatVersion, null);
+    }
+
+    /**
+     * Creates a new ClassPath instance that can load classes from the given providers
+     *
+     * @param classProviders An iterable of ClassProviders. When loading a class, these providers will be searched in
+     *                       order
+     * @param checkPackagePrivateAccess Whether checkPackagePrivateAccess is needed, enabled for ONLY early API 17 by
+     *                                  default
+     * @param oatVersion The applicable oat version, or NOT_ART
+     * @param snapshot A snapshot of precomputed vtables and field offsets for these class providers, or null. This
+     *                 must have been created for the same class providers and parameters. See
+     *                 {@link ClassPathSnapshot#getKey}
+     */
+    public ClassPath(@Nonnull Iterable<? extends ClassProvider> classProviders, boolean checkPackagePrivateAccess,
+                     int oatVersion, @Nullable ClassPathSnapshot snapshot) {
         // add fallbacks for certain special classes that must be present
         unknownClass = new UnknownClassProto(this);
         loadedClasses.put(unknownClass.getType(), unknownClass);
         this.checkPackagePrivateAccess = checkPackagePrivateAccess;
         this.oatVersion = oatVersion;
+        this.snapshot = snapshot;
 
         loadPrimitiveType("Z");
         loadPrimitiveType("B");
@@ -132,16 +153,32 @@ public class ClassPath {
         return loadedClasses.get(type.toString());
     }
 
-    @Nonnull private LruCache<String, TypeProto> loadedClasses = new LruCache<String, TypeProto>(30000) {
-        @Override protected TypeProto create(String key) {
+    @Nonnull private final ConcurrentLruCache<String, TypeProto> loadedClasses =
+            new ConcurrentLruCache<String, TypeProto>(30000) {
+        @Override protected TypeProto create(@Nonnull String key) {
             if (key.charAt(0) == '[') {
                 return new ArrayProto(ClassPath.this, key);
+            } else if (key.length() == 1) {
+                // the primitive types are added up front, but may have been evicted since
+                return new PrimitiveProto(ClassPath.this, key);
+            } else if (key.equals(unknownClass.getType())) {
+                return unknownClass;
             } else {
                 return new ClassProto(ClassPath.this, key);
             }
         }
     };
 
+    @Nonnull
+    Map<String, TypeProto> getLoadedClasses() {
+        return loadedClasses.snapshot();
+    }
+
+    @Nullable
+    public ClassPathSnapshot getSnapshot() {
+        return snapshot;
+    }
+
     @Nonnull
     public ClassDef getClassDef(String type) {
         for (ClassProvider provider: classProviders) {
@@ -153,6 +190,19 @@ public class ClassPath {
         throw new UnresolvedClassException("Could not resolve class %s", type);
     }
 
+    /**
+     * @return The first class provider that defines the given class, or null if none of them do
+     */
+    @Nullable
+    ClassProvider getClassProvider(@Nonnull String type) {
+        for (ClassProvider provider: classProviders) {
+            if (provider.getClassDef(type) != null) {
+                return provider;
+            }
+        }
+        return null;
+    }
+
     @Nonnull
     public TypeProto getUnknownClass() {
         return unknownClass;
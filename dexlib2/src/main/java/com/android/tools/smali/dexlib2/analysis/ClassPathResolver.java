@@ -42,13 +42,16 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 public class ClassPathResolver {
     private final Iterable<String> classPathDirs;
 
     private final PathEntryLoader pathEntryLoader;
+    private final List<ClassProvider> inputClassProviders = new ArrayList<>();
 
     /**
      * Constructs a new ClassPathResolver using a specified list of bootclasspath entries
@@ -129,7 +132,9 @@ public class ClassPathResolver {
         for (String entry: container.getDexEntryNames()) {
             MultiDexContainer.DexEntry<? extends DexFile> tempDexEntry = container.getEntry(entry);
             assert tempDexEntry != null;
-            pathEntryLoader.getClassProviders().add(new DexClassProvider(tempDexEntry.getDexFile()));
+            DexClassProvider classProvider = new DexClassProvider(tempDexEntry.getDexFile());
+            pathEntryLoader.getClassProviders().add(classProvider);
+            inputClassProviders.add(classProvider);
         }
     }
 
@@ -158,6 +163,15 @@ public class ClassPathResolver {
         return pathEntryLoader.getResolvedClassProviders();
     }
 
+    /**
+     * @return The class providers for the dex files in the container of the dex entry being analyzed. These are
+     * included at the end of {@link #getResolvedClassProviders()}
+     */
+    @Nonnull
+    public List<ClassProvider> getInputClassProviders() {
+        return Collections.unmodifiableList(inputClassProviders);
+    }
+
     private boolean loadLocalClassPathEntry(@Nonnull String entry) throws PathEntryLoader.NoDexException, IOException {
         File entryFile = new File(entry);
         if (entryFile.exists() && entryFile.isFile()) {
@@ -0,0 +1,517 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.dexlib2.analysis;
+
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedDexFile;
+import com.android.tools.smali.dexlib2.dexbacked.raw.HeaderItem;
+import com.android.tools.smali.dexlib2.iface.ClassDef;
+import com.android.tools.smali.dexlib2.iface.DexFile;
+import com.android.tools.smali.dexlib2.iface.Method;
+import com.android.tools.smali.dexlib2.iface.reference.FieldReference;
+import com.android.tools.smali.dexlib2.immutable.ImmutableMethod;
+import com.android.tools.smali.dexlib2.immutable.ImmutableMethodParameter;
+import com.android.tools.smali.dexlib2.immutable.reference.ImmutableFieldReference;
+import com.android.tools.smali.util.ExceptionWithContext;
+import com.android.tools.smali.util.SparseArray;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A persistent, memory-mapped snapshot of the vtables and instance field offsets of the classes in a class path.
+ *
+ * Computing the vtable or field offsets of a class requires loading and walking all of its superclasses and
+ * interfaces. When the same class path (e.g. a device's boot class path) is used for many runs, a snapshot saved at
+ * the end of one run lets the following runs skip that work for every class that was resolved previously.
+ *
+ * A snapshot is identified by a key that is derived from the signatures of every dex file in the class path, along
+ * with the options that affect how vtables and field offsets are calculated. See {@link #getKey}. The dex files that
+ * are being analyzed are normally left out of the key, and their classes out of the snapshot, so that the snapshot of
+ * a boot class path can be shared by the runs for every app that uses it. See
+ * {@link #write(ClassPath, Collection, byte[], File)}.
+ *
+ * The file consists of a fixed size header, followed by the class records, followed by an index of
+ * (type string offset, record offset) pairs, sorted by type. Lookups binary search the index directly in the mapped
+ * file, so opening a snapshot doesn't depend on the number of classes it contains.
+ */
+public class ClassPathSnapshot {
+    private static final byte[] MAGIC = "CPSNAP\n\0".getBytes(StandardCharsets.US_ASCII);
+    private static final int FORMAT_VERSION = 1;
+
+    public static final int KEY_SIZE = 20;
+
+    private static final int KEY_OFFSET = 12;
+    private static final int CLASS_COUNT_OFFSET = KEY_OFFSET + KEY_SIZE;
+    private static final int INDEX_OFFSET_OFFSET = CLASS_COUNT_OFFSET + 4;
+    private static final int HEADER_SIZE = INDEX_OFFSET_OFFSET + 4;
+
+    @Nonnull private final ByteBuffer buf;
+    private final int classCount;
+    private final int indexOffset;
+
+    private ClassPathSnapshot(@Nonnull ByteBuffer buf) {
+        this.buf = buf;
+        this.classCount = buf.getInt(CLASS_COUNT_OFFSET);
+        this.indexOffset = buf.getInt(INDEX_OFFSET_OFFSET);
+    }
+
+    /**
+     * Opens an existing snapshot file.
+     *
+     * @param file The snapshot file
+     * @param key The expected key, as returned by {@link #getKey}
+     * @return The snapshot, or null if the file doesn't exist, or if it is for a different key or format version
+     * @throws IOException If an error occurred while reading the file, or if the file is malformed
+     */
+    @Nullable
+    public static ClassPathSnapshot open(@Nonnull File file, @Nonnull byte[] key) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+
+        ByteBuffer buf;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(String.format("%s is not a valid class path snapshot", file));
+            }
+            // the mapping remains valid after the channel is closed
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+
+        byte[] magic = new byte[MAGIC.length];
+        buf.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException(String.format("%s is not a valid class path snapshot", file));
+        }
+        if (buf.getInt(MAGIC.length) != FORMAT_VERSION) {
+            return null;
+        }
+
+        byte[] fileKey = new byte[KEY_SIZE];
+        // ByteBuffer.position only returns a ByteBuffer as of java 9
+        Buffer position = buf;
+        position.position(KEY_OFFSET);
+        buf.get(fileKey);
+        if (!Arrays.equals(fileKey, key)) {
+            return null;
+        }
+
+        ClassPathSnapshot snapshot = new ClassPathSnapshot(buf);
+        if (snapshot.classCount < 0 || snapshot.indexOffset < HEADER_SIZE ||
+                (long)snapshot.indexOffset + snapshot.classCount * 8L > buf.capacity()) {
+            throw new IOException(String.format("%s is not a valid class path snapshot", file));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Calculates the key that identifies a snapshot for the given class path.
+     *
+     * The key is a SHA-1 hash of the signatures of the dex files in the class path, in order, and of the other
+     * parameters that affect the vtable and field offset calculations. Since the dex signature is itself a hash of
+     * the dex file's contents, the key changes whenever any of the class path entries change.
+     *
+     * @return The key, or null if a key can't be calculated because one of the providers is not backed by a dex file
+     */
+    @Nullable
+    public static byte[] getKey(@Nonnull Iterable<? extends ClassProvider> classProviders,
+                                boolean checkPackagePrivateAccess, int oatVersion) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+
+        for (ClassProvider classProvider: classProviders) {
+            if (!(classProvider instanceof DexClassProvider)) {
+                return null;
+            }
+            DexFile dexFile = ((DexClassProvider)classProvider).getDexFile();
+            if (!(dexFile instanceof DexBackedDexFile)) {
+                return null;
+            }
+            digest.update(((DexBackedDexFile)dexFile).getBuffer().readByteRange(
+                    HeaderItem.SIGNATURE_OFFSET, HeaderItem.SIGNATURE_SIZE));
+        }
+
+        digest.update((byte)(checkPackagePrivateAccess ? 1 : 0));
+        digest.update(ByteBuffer.allocate(8).putInt(oatVersion).putInt(FORMAT_VERSION).array());
+        return digest.digest();
+    }
+
+    /**
+     * @return The file name to use for the snapshot with the given key, within a cache directory
+     */
+    @Nonnull
+    public static String getFileName(@Nonnull byte[] key) {
+        StringBuilder sb = new StringBuilder(key.length * 2 + 7);
+        for (byte b: key) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        sb.append(".cpsnap");
+        return sb.toString();
+    }
+
+    public int getClassCount() {
+        return classCount;
+    }
+
+    /**
+     * Looks up the snapshot of the given class.
+     *
+     * @param type The type of the class
+     * @return The snapshot of the class, or null if the snapshot doesn't contain the given class
+     */
+    @Nullable
+    public ClassEntry getClassEntry(@Nonnull String type) {
+        int low = 0;
+        int high = classCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int comparison = readString(buf.getInt(indexOffset + mid * 8)).compareTo(type);
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                return new ClassEntry(type, buf.getInt(indexOffset + mid * 8 + 4));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return A list of the types of all of the classes in this snapshot, in sorted order
+     */
+    @Nonnull
+    public List<String> getTypes() {
+        List<String> types = new ArrayList<String>(classCount);
+        for (int i=0; i<classCount; i++) {
+            types.add(readString(buf.getInt(indexOffset + i * 8)));
+        }
+        return types;
+    }
+
+    @Nonnull
+    private String readString(int offset) {
+        return new Reader(offset).readString();
+    }
+
+    /**
+     * The precomputed vtable and instance fields of a single class
+     */
+    public class ClassEntry {
+        @Nonnull private final String type;
+        @Nonnull private final List<Method> vtable;
+        @Nonnull private final SparseArray<FieldReference> instanceFields;
+
+        private ClassEntry(@Nonnull String type, int recordOffset) {
+            this.type = type;
+
+            Reader reader = new Reader(recordOffset);
+            int vtableSize = reader.readInt();
+            List<Method> vtable = new ArrayList<Method>(vtableSize);
+            for (int i=0; i<vtableSize; i++) {
+                String definingClass = reader.readString();
+                String name = reader.readString();
+                int parameterCount = reader.readInt();
+                List<ImmutableMethodParameter> parameters = new ArrayList<ImmutableMethodParameter>(parameterCount);
+                for (int j=0; j<parameterCount; j++) {
+                    parameters.add(new ImmutableMethodParameter(reader.readString(), null, null));
+                }
+                String returnType = reader.readString();
+                int accessFlags = reader.readInt();
+                vtable.add(new ImmutableMethod(definingClass, name, parameters, returnType, accessFlags,
+                        null, null, null));
+            }
+            this.vtable = Collections.unmodifiableList(vtable);
+
+            int fieldCount = reader.readInt();
+            SparseArray<FieldReference> instanceFields = new SparseArray<FieldReference>(fieldCount);
+            for (int i=0; i<fieldCount; i++) {
+                int offset = reader.readInt();
+                instanceFields.put(offset,
+                        new ImmutableFieldReference(reader.readString(), reader.readString(), reader.readString()));
+            }
+            this.instanceFields = instanceFields;
+        }
+
+        @Nonnull public String getType() { return type; }
+        @Nonnull public List<Method> getVtable() { return vtable; }
+        @Nonnull public SparseArray<FieldReference> getInstanceFields() { return instanceFields; }
+    }
+
+    private class Reader {
+        private int offset;
+
+        Reader(int offset) {
+            this.offset = offset;
+        }
+
+        int readInt() {
+            int value = buf.getInt(offset);
+            offset += 4;
+            return value;
+        }
+
+        @Nonnull
+        String readString() {
+            int length = buf.getShort(offset) & 0xffff;
+            byte[] bytes = new byte[length + 2];
+            ByteBuffer dup = buf.duplicate();
+            // ByteBuffer.position only returns a ByteBuffer as of java 9
+            Buffer position = dup;
+            position.position(offset);
+            dup.get(bytes);
+            offset += length + 2;
+            try {
+                return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+            } catch (IOException ex) {
+                throw new ExceptionWithContext(ex, "Invalid string in class path snapshot");
+            }
+        }
+    }
+
+    /**
+     * Writes a snapshot of the classes that have been loaded by the given class path.
+     *
+     * This includes every class that was loaded and fully resolved by the class path, as well as any classes from
+     * the class path's current snapshot, if it has one. Classes whose vtable or interfaces couldn't be fully resolved
+     * are skipped, so that a partial result isn't persisted.
+     *
+     * The snapshot is written to a temporary file first, and then moved into place.
+     *
+     * @param classPath The class path to write a snapshot for
+     * @param key The key for this class path, as returned by {@link #getKey}
+     * @param file The file to write the snapshot to
+     */
+    public static void write(@Nonnull ClassPath classPath, @Nonnull byte[] key, @Nonnull File file)
+            throws IOException {
+        write(classPath, Collections.<ClassProvider>emptyList(), key, file);
+    }
+
+    /**
+     * Writes a snapshot of the classes that have been loaded by the given class path, leaving out the classes that
+     * come from the given providers.
+     *
+     * This is used to leave out the classes of the dex files being analyzed, which change from run to run. A class is
+     * left out if it is defined by one of the excluded providers, or if any of its superclasses or interfaces are,
+     * since its vtable and field offsets depend on them. The key should be calculated from the remaining providers.
+     *
+     * @param classPath The class path to write a snapshot for
+     * @param excludedProviders The providers whose classes shouldn't be included in the snapshot
+     * @param key The key for the remaining providers, as returned by {@link #getKey}
+     * @param file The file to write the snapshot to
+     */
+    public static void write(@Nonnull ClassPath classPath,
+                             @Nonnull Collection<? extends ClassProvider> excludedProviders,
+                             @Nonnull byte[] key, @Nonnull File file) throws IOException {
+        if (key.length != KEY_SIZE) {
+            throw new IllegalArgumentException("Invalid key size");
+        }
+
+        ClassFilter filter = new ClassFilter(classPath, excludedProviders);
+        TreeMap<String, ClassProto> classes = new TreeMap<String, ClassProto>();
+        ClassPathSnapshot previousSnapshot = classPath.getSnapshot();
+        if (previousSnapshot != null) {
+            for (String type: previousSnapshot.getTypes()) {
+                TypeProto typeProto = classPath.getClass(type);
+                if (typeProto instanceof ClassProto && filter.isIncluded(type)) {
+                    classes.put(type, (ClassProto)typeProto);
+                }
+            }
+        }
+        for (Map.Entry<String, TypeProto> entry: classPath.getLoadedClasses().entrySet()) {
+            if (entry.getValue() instanceof ClassProto && filter.isIncluded(entry.getKey())) {
+                classes.put(entry.getKey(), (ClassProto)entry.getValue());
+            }
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+        List<int[]> index = new ArrayList<int[]>(classes.size());
+
+        for (ClassProto classProto: classes.values()) {
+            List<Method> vtable;
+            SparseArray<FieldReference> instanceFields;
+            try {
+                vtable = classProto.getVtable();
+                instanceFields = classProto.getInstanceFields();
+            } catch (UnresolvedClassException ex) {
+                continue;
+            } catch (ExceptionWithContext ex) {
+                continue;
+            }
+            if (!classProto.isFullyResolved()) {
+                continue;
+            }
+
+            int typeOffset = HEADER_SIZE + out.size();
+            out.writeUTF(classProto.getType());
+            int recordOffset = HEADER_SIZE + out.size();
+
+            out.writeInt(vtable.size());
+            for (Method method: vtable) {
+                out.writeUTF(method.getDefiningClass());
+                out.writeUTF(method.getName());
+                List<? extends CharSequence> parameterTypes = method.getParameterTypes();
+                out.writeInt(parameterTypes.size());
+                for (CharSequence parameterType: parameterTypes) {
+                    out.writeUTF(parameterType.toString());
+                }
+                out.writeUTF(method.getReturnType());
+                out.writeInt(method.getAccessFlags());
+            }
+
+            out.writeInt(instanceFields.size());
+            for (int i=0; i<instanceFields.size(); i++) {
+                FieldReference field = instanceFields.valueAt(i);
+                out.writeInt(instanceFields.keyAt(i));
+                out.writeUTF(field.getDefiningClass());
+                out.writeUTF(field.getName());
+                out.writeUTF(field.getType());
+            }
+
+            index.add(new int[] { typeOffset, recordOffset });
+        }
+
+        for (int[] entry: index) {
+            out.writeInt(entry[0]);
+            out.writeInt(entry[1]);
+        }
+        out.flush();
+
+        int indexOffset = HEADER_SIZE + body.size() - index.size() * 8;
+
+        File tempFile = File.createTempFile("cpsnap", ".tmp", file.getAbsoluteFile().getParentFile());
+        try {
+            DataOutputStream fileOut = new DataOutputStream(new FileOutputStream(tempFile));
+            try {
+                fileOut.write(MAGIC);
+                fileOut.writeInt(FORMAT_VERSION);
+                fileOut.write(key);
+                fileOut.writeInt(index.size());
+                fileOut.writeInt(indexOffset);
+                body.writeTo(fileOut);
+            } finally {
+                fileOut.close();
+            }
+
+            if (!tempFile.renameTo(file)) {
+                // renameTo may fail on some platforms if the destination already exists
+                if (!file.delete() || !tempFile.renameTo(file)) {
+                    throw new IOException(String.format("Could not move %s to %s", tempFile, file));
+                }
+            }
+        } finally {
+            // noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Determines which classes don't depend on any of the excluded providers.
+     */
+    private static class ClassFilter {
+        @Nonnull private final ClassPath classPath;
+        @Nonnull private final Set<ClassProvider> excludedProviders;
+        @Nonnull private final Map<String, Boolean> included = new HashMap<String, Boolean>();
+
+        ClassFilter(@Nonnull ClassPath classPath, @Nonnull Collection<? extends ClassProvider> excludedProviders) {
+            this.classPath = classPath;
+            this.excludedProviders = Collections.newSetFromMap(new IdentityHashMap<ClassProvider, Boolean>());
+            this.excludedProviders.addAll(excludedProviders);
+        }
+
+        boolean isIncluded(@Nonnull String type) {
+            if (excludedProviders.isEmpty()) {
+                return true;
+            }
+
+            Boolean result = included.get(type);
+            if (result != null) {
+                return result;
+            }
+            // guards against a circular class hierarchy
+            included.put(type, false);
+
+            boolean isIncluded = false;
+            ClassProvider provider = classPath.getClassProvider(type);
+            if (provider != null && !excludedProviders.contains(provider)) {
+                ClassDef classDef = provider.getClassDef(type);
+                isIncluded = classDef != null;
+                if (isIncluded && classDef.getSuperclass() != null) {
+                    isIncluded = isIncluded(classDef.getSuperclass());
+                }
+                if (isIncluded) {
+                    for (String iface: classDef.getInterfaces()) {
+                        if (!isIncluded(iface)) {
+                            isIncluded = false;
+                            break;
+                        }
+                    }
+                }
+            }
+            included.put(type, isIncluded);
+            return isIncluded;
+        }
+    }
+}
@@ -77,10 +77,12 @@ public class ClassProto implements TypeProto {
     @Nonnull protected final ClassPath classPath;
     @Nonnull protected final String type;
 
-    protected boolean vtableFullyResolved = true;
-    protected boolean interfacesFullyResolved = true;
+    // These are set while the memoized interfaces and vtable are computed, and may be read by other threads that are
+    // analyzing methods concurrently
+    protected volatile boolean vtableFullyResolved = true;
+    protected volatile boolean interfacesFullyResolved = true;
 
-    protected Set<String> unresolvedInterfaces = null;
+    protected volatile Set<String> unresolvedInterfaces = null;
 
     public ClassProto(@Nonnull ClassPath classPath, @Nonnull String type) {
         if (type.charAt(0) != 'L') {
@@ -106,6 +108,24 @@ public class ClassProto implements TypeProto {
         }
     });
 
+    @Nonnull private final Supplier<ClassPathSnapshot.ClassEntry> snapshotEntrySupplier =
+            MemoizingSupplier.memoize(new Supplier<ClassPathSnapshot.ClassEntry>() {
+                @Override public ClassPathSnapshot.ClassEntry get() {
+                    ClassPathSnapshot snapshot = classPath.getSnapshot();
+                    if (snapshot == null) {
+                        return null;
+                    }
+                    return snapshot.getClassEntry(type);
+                }
+            });
+
+    /**
+     * @return true if the vtable and interfaces of this class were resolved without any missing classes
+     */
+    boolean isFullyResolved() {
+        return vtableFullyResolved && interfacesFullyResolved;
+    }
+
     /**
      * Returns true if this class is an interface.
      *
@@ -499,6 +519,10 @@ public class ClassProto implements TypeProto {
     }
 
     @Nonnull public SparseArray<FieldReference> getInstanceFields() {
+        ClassPathSnapshot.ClassEntry snapshotEntry = snapshotEntrySupplier.get();
+        if (snapshotEntry != null) {
+            return snapshotEntry.getInstanceFields();
+        }
         if (classPath.isArt()) {
             return artInstanceFieldsSupplier.get();
         } else {
@@ -881,6 +905,10 @@ public class ClassProto implements TypeProto {
     }
 
     @Nonnull public List<Method> getVtable() {
+        ClassPathSnapshot.ClassEntry snapshotEntry = snapshotEntrySupplier.get();
+        if (snapshotEntry != null) {
+            return snapshotEntry.getVtable();
+        }
         if (!classPath.isArt() || classPath.oatVersion < 72) {
             return preDefaultMethodVtableSupplier.get();
         } else if (classPath.oatVersion < 87) {
@@ -30,26 +30,62 @@
 
 package com.android.tools.smali.dexlib2.analysis;
 
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedDexFile;
 import com.android.tools.smali.dexlib2.iface.ClassDef;
 import com.android.tools.smali.dexlib2.iface.DexFile;
 
 import javax.annotation.Nullable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * A ClassProvider that provides the classes from a single dex file.
+ *
+ * For a DexBackedDexFile, classes are looked up lazily with {@link DexBackedDexFile#findClassDefIndex}, and each
+ * class is kept once it has been read, so that repeated lookups return the same instance. For other dex files, every
+ * class is added to a map up front.
+ */
 public class DexClassProvider implements ClassProvider {
     private final DexFile dexFile;
-    private Map<String, ClassDef> classMap = new HashMap<>();
+    @Nullable private Map<String, ClassDef> classMap;
+    // The classes that have been read so far from a DexBackedDexFile, indexed by class_def_item index
+    @Nullable private AtomicReferenceArray<ClassDef> classDefs;
 
     public DexClassProvider(DexFile dexFile) {
         this.dexFile = dexFile;
 
-        for (ClassDef classDef: dexFile.getClasses()) {
-            classMap.put(classDef.getType(), classDef);
+        if (dexFile instanceof DexBackedDexFile) {
+            classDefs = new AtomicReferenceArray<>(((DexBackedDexFile)dexFile).getClassSection().size());
+        } else {
+            classMap = new HashMap<>();
+            for (ClassDef classDef: dexFile.getClasses()) {
+                classMap.put(classDef.getType(), classDef);
+            }
         }
     }
 
+    public DexFile getDexFile() {
+        return dexFile;
+    }
+
     @Nullable @Override public ClassDef getClassDef(String type) {
-        return classMap.get(type);
+        if (classMap != null) {
+            return classMap.get(type);
+        }
+
+        DexBackedDexFile dexBackedDexFile = (DexBackedDexFile)dexFile;
+        int classIndex = dexBackedDexFile.findClassDefIndex(type);
+        if (classIndex < 0) {
+            return null;
+        }
+        ClassDef classDef = classDefs.get(classIndex);
+        if (classDef == null) {
+            classDef = dexBackedDexFile.getClassSection().get(classIndex);
+            if (!classDefs.compareAndSet(classIndex, null, classDef)) {
+                classDef = classDefs.get(classIndex);
+            }
+        }
+        return classDef;
     }
 }
@@ -114,6 +114,20 @@ public class MethodAnalyzer {
     // Which instructions have been analyzed, keyed by instruction index
     @Nonnull private final BitSet analyzedState;
 
+    // The position of each instruction in a reverse postorder traversal of the control flow graph, keyed by
+    // instruction index, and the inverse mapping. The worklists used during analysis are BitSets keyed by this
+    // position, so that an instruction is normally processed only after all of its predecessors, other than those
+    // reached by a back edge. Unreachable instructions are placed after all reachable instructions.
+    @Nonnull private final int[] reversePostorderPositions;
+    @Nonnull private final int[] instructionsInReversePostorder;
+
+    // A scratch worklist used when propagating a register change, keyed by reverse postorder position. This is always
+    // empty between propagations.
+    @Nonnull private final BitSet changedInstructions;
+
+    private int instructionAnalysisCount = 0;
+    private int registerMergeCount = 0;
+
     @Nullable private AnalysisException analysisException = null;
 
     // This is a dummy instruction that occurs immediately before the first real instruction. We can initialize the
@@ -152,7 +166,13 @@ public class MethodAnalyzer {
 
         buildInstructionList();
 
-        analyzedState = new BitSet(analyzedInstructions.size());
+        int instructionCount = analyzedInstructions.size();
+        reversePostorderPositions = new int[instructionCount];
+        instructionsInReversePostorder = new int[instructionCount];
+        computeReversePostorder();
+
+        analyzedState = new BitSet(instructionCount);
+        changedInstructions = new BitSet(instructionCount);
         paramRegisterCount = MethodUtil.getParameterRegisterCount(method);
         analyze();
     }
@@ -197,11 +217,14 @@ public class MethodAnalyzer {
             setPostRegisterTypeAndPropagateChanges(startOfMethod, i, uninit);
         }
 
+        //the worklist of instructions to analyze, keyed by reverse postorder position. The instruction with the lowest
+        //position is always analyzed next, so that changes flow forward through the method before any loops are
+        //revisited
         BitSet instructionsToAnalyze = new BitSet(analyzedInstructions.size());
 
         //make sure all of the "first instructions" are marked for processing
-        for (AnalyzedInstruction successor: startOfMethod.successors) {
-            instructionsToAnalyze.set(successor.instructionIndex);
+        for (int i = 0; i < startOfMethod.successorCount; i++) {
+            instructionsToAnalyze.set(reversePostorderPositions[startOfMethod.successors[i].instructionIndex]);
         }
 
         BitSet undeodexedInstructions = new BitSet(analyzedInstructions.size());
@@ -209,57 +232,67 @@ public class MethodAnalyzer {
         do {
             boolean didSomething = false;
 
-            while (!instructionsToAnalyze.isEmpty()) {
-                for(int i=instructionsToAnalyze.nextSetBit(0); i>=0; i=instructionsToAnalyze.nextSetBit(i+1)) {
-                    instructionsToAnalyze.clear(i);
-                    if (analyzedState.get(i)) {
-                        continue;
+            int position = instructionsToAnalyze.nextSetBit(0);
+            while (position >= 0) {
+                instructionsToAnalyze.clear(position);
+                int i = instructionsInReversePostorder[position];
+                if (analyzedState.get(i)) {
+                    position = instructionsToAnalyze.nextSetBit(position + 1);
+                    continue;
+                }
+                AnalyzedInstruction instructionToAnalyze = analyzedInstructions.valueAt(i);
+                try {
+                    if (instructionToAnalyze.originalInstruction.getOpcode().odexOnly()) {
+                        //if we had deodexed an odex instruction in a previous pass, we might have more specific
+                        //register information now, so let's restore the original odexed instruction and
+                        //re-deodex it
+                        instructionToAnalyze.restoreOdexedInstruction();
                     }
-                    AnalyzedInstruction instructionToAnalyze = analyzedInstructions.valueAt(i);
-                    try {
-                        if (instructionToAnalyze.originalInstruction.getOpcode().odexOnly()) {
-                            //if we had deodexed an odex instruction in a previous pass, we might have more specific
-                            //register information now, so let's restore the original odexed instruction and
-                            //re-deodex it
-                            instructionToAnalyze.restoreOdexedInstruction();
-                        }
 
-                        if (!analyzeInstruction(instructionToAnalyze)) {
-                            undeodexedInstructions.set(i);
-                            continue;
-                        } else {
-                            didSomething = true;
-                            undeodexedInstructions.clear(i);
-                        }
-                    } catch (AnalysisException ex) {
-                        this.analysisException = ex;
-                        int codeAddress = getInstructionAddress(instructionToAnalyze);
-                        ex.codeAddress = codeAddress;
-                        ex.addContext(String.format("opcode: %s", instructionToAnalyze.instruction.getOpcode().name));
-                        ex.addContext(String.format("code address: %d", codeAddress));
-                        ex.addContext(String.format("method: %s", method));
-                        break;
+                    instructionAnalysisCount++;
+                    if (!analyzeInstruction(instructionToAnalyze)) {
+                        undeodexedInstructions.set(i);
+                        position = instructionsToAnalyze.nextSetBit(position + 1);
+                        continue;
+                    } else {
+                        didSomething = true;
+                        undeodexedInstructions.clear(i);
                     }
+                } catch (AnalysisException ex) {
+                    this.analysisException = ex;
+                    int codeAddress = getInstructionAddress(instructionToAnalyze);
+                    ex.codeAddress = codeAddress;
+                    ex.addContext(String.format("opcode: %s", instructionToAnalyze.instruction.getOpcode().name));
+                    ex.addContext(String.format("code address: %d", codeAddress));
+                    ex.addContext(String.format("method: %s", method));
+                    break;
+                }
 
-                    analyzedState.set(instructionToAnalyze.getInstructionIndex());
-
-                    for (AnalyzedInstruction successor: instructionToAnalyze.successors) {
-                        instructionsToAnalyze.set(successor.getInstructionIndex());
+                analyzedState.set(i);
+
+                //only successors whose register types have changed since they were last analyzed (or that haven't
+                //been analyzed yet) need to be analyzed again. Every bit below the current position is clear, so the
+                //next position to analyze is either after this one, or is one of the successors that was just added
+                int nextSearchPosition = position + 1;
+                for (int j = 0; j < instructionToAnalyze.successorCount; j++) {
+                    int successorIndex = instructionToAnalyze.successors[j].instructionIndex;
+                    if (!analyzedState.get(successorIndex)) {
+                        int successorPosition = reversePostorderPositions[successorIndex];
+                        instructionsToAnalyze.set(successorPosition);
+                        if (successorPosition < nextSearchPosition) {
+                            nextSearchPosition = successorPosition;
+                        }
                     }
                 }
-                if (analysisException != null) {
-                    break;
-                }
+                position = instructionsToAnalyze.nextSetBit(nextSearchPosition);
             }
 
             if (!didSomething) {
                 break;
             }
 
-            if (!undeodexedInstructions.isEmpty()) {
-                for (int i=undeodexedInstructions.nextSetBit(0); i>=0; i=undeodexedInstructions.nextSetBit(i+1)) {
-                    instructionsToAnalyze.set(i);
-                }
+            for (int i=undeodexedInstructions.nextSetBit(0); i>=0; i=undeodexedInstructions.nextSetBit(i+1)) {
+                instructionsToAnalyze.set(reversePostorderPositions[i]);
             }
         } while (true);
 
@@ -309,6 +342,58 @@ public class MethodAnalyzer {
         }
     }
 
+    /**
+     * Numbers the reachable instructions in reverse postorder, starting from the startOfMethod instruction, and places
+     * any unreachable instructions after them, in instruction order.
+     */
+    private void computeReversePostorder() {
+        int instructionCount = analyzedInstructions.size();
+        int[] postorder = new int[instructionCount];
+        int postorderCount = 0;
+
+        BitSet visited = new BitSet(instructionCount);
+        AnalyzedInstruction[] stack = new AnalyzedInstruction[instructionCount + 1];
+        // the number of successors of the instruction at each stack depth that have not been visited yet. Successors
+        // are visited last to first, so that the first successor (usually the fallthrough) ends up first in the
+        // reverse postorder
+        int[] remainingSuccessors = new int[instructionCount + 1];
+
+        stack[0] = startOfMethod;
+        remainingSuccessors[0] = startOfMethod.successorCount;
+        int depth = 1;
+        while (depth > 0) {
+            AnalyzedInstruction instruction = stack[depth - 1];
+            int remaining = remainingSuccessors[depth - 1];
+            if (remaining > 0) {
+                remainingSuccessors[depth - 1] = remaining - 1;
+                AnalyzedInstruction successor = instruction.successors[remaining - 1];
+                if (!visited.get(successor.instructionIndex)) {
+                    visited.set(successor.instructionIndex);
+                    stack[depth] = successor;
+                    remainingSuccessors[depth] = successor.successorCount;
+                    depth++;
+                }
+            } else {
+                depth--;
+                if (instruction != startOfMethod) {
+                    postorder[postorderCount++] = instruction.instructionIndex;
+                }
+            }
+        }
+
+        int position = 0;
+        for (int i=postorderCount-1; i>=0; i--) {
+            reversePostorderPositions[postorder[i]] = position;
+            instructionsInReversePostorder[position] = postorder[i];
+            position++;
+        }
+        for (int i=visited.nextClearBit(0); i<instructionCount; i=visited.nextClearBit(i+1)) {
+            reversePostorderPositions[i] = position;
+            instructionsInReversePostorder[position] = i;
+            position++;
+        }
+    }
+
     private void propagateParameterTypes(int parameterStartRegister) {
         int i=0;
         for (MethodParameter parameter: method.getParameters()) {
@@ -342,6 +427,22 @@ public class MethodAnalyzer {
         return paramRegisterCount;
     }
 
+    /**
+     * @return The number of times an instruction was analyzed. This is at least the number of reachable instructions,
+     * and grows as instructions are revisited because the register types flowing into them changed.
+     */
+    public int getInstructionAnalysisCount() {
+        return instructionAnalysisCount;
+    }
+
+    /**
+     * @return The number of times a register type was merged into the pre-instruction register types of an
+     * instruction while propagating register types along the control flow graph.
+     */
+    public int getRegisterMergeCount() {
+        return registerMergeCount;
+    }
+
     public int getInstructionAddress(@Nonnull AnalyzedInstruction instruction) {
         return analyzedInstructions.keyAt(instruction.instructionIndex);
     }
@@ -352,21 +453,18 @@ public class MethodAnalyzer {
                 registerType);
     }
 
-    private void propagateChanges(@Nonnull BitSet changedInstructions, int registerNumber, boolean override) {
-        //Using a for loop inside the while loop optimizes for the common case of the successors of an instruction
-        //occurring after the instruction. Any successors that occur prior to the instruction will be picked up on
-        //the next iteration of the while loop.
+    private void propagateChanges(int registerNumber, boolean override) {
+        //The worklist is keyed by reverse postorder position, and the lowest position is always processed next, so
+        //that each instruction normally sees the merged changes from all of its predecessors before passing them on.
         //This could also be done recursively, but in large methods it would likely cause very deep recursion.
-        while (!changedInstructions.isEmpty()) {
-            for (int instructionIndex=changedInstructions.nextSetBit(0);
-                 instructionIndex>=0;
-                 instructionIndex=changedInstructions.nextSetBit(instructionIndex+1)) {
-
-                changedInstructions.clear(instructionIndex);
+        BitSet changedInstructions = this.changedInstructions;
+        int position = changedInstructions.nextSetBit(0);
+        while (position >= 0) {
+            changedInstructions.clear(position);
 
-                propagateRegisterToSuccessors(analyzedInstructions.valueAt(instructionIndex), registerNumber,
-                        changedInstructions, override);
-            }
+            int nextSearchPosition = propagateRegisterToSuccessors(
+                    analyzedInstructions.valueAt(instructionsInReversePostorder[position]), registerNumber, override);
+            position = changedInstructions.nextSetBit(Math.min(nextSearchPosition, position + 1));
         }
     }
 
@@ -374,15 +472,14 @@ public class MethodAnalyzer {
             @Nonnull AnalyzedInstruction analyzedInstruction, @Nonnull AnalyzedInstruction predecessor,
             int registerNumber, @Nonnull RegisterType registerType) {
 
-        BitSet changedInstructions = new BitSet(analyzedInstructions.size());
-
+        registerMergeCount++;
         if (!analyzedInstruction.overridePredecessorRegisterType(
                 predecessor, registerNumber, registerType, analyzedState)) {
             return;
         }
-        changedInstructions.set(analyzedInstruction.instructionIndex);
+        changedInstructions.set(reversePostorderPositions[analyzedInstruction.instructionIndex]);
 
-        propagateChanges(changedInstructions, registerNumber, true);
+        propagateChanges(registerNumber, true);
 
         if (registerType.category == RegisterType.LONG_LO) {
             checkWidePair(registerNumber, analyzedInstruction);
@@ -398,15 +495,13 @@ public class MethodAnalyzer {
     private void initializeRefAndPropagateChanges(@Nonnull AnalyzedInstruction analyzedInstruction,
                                                   int registerNumber, @Nonnull RegisterType registerType) {
 
-        BitSet changedInstructions = new BitSet(analyzedInstructions.size());
-
         if (!analyzedInstruction.setPostRegisterType(registerNumber, registerType)) {
             return;
         }
 
-        propagateRegisterToSuccessors(analyzedInstruction, registerNumber, changedInstructions, false);
+        propagateRegisterToSuccessors(analyzedInstruction, registerNumber, false);
 
-        propagateChanges(changedInstructions, registerNumber, false);
+        propagateChanges(registerNumber, false);
 
         if (registerType.category == RegisterType.LONG_LO) {
             checkWidePair(registerNumber, analyzedInstruction);
@@ -420,15 +515,13 @@ public class MethodAnalyzer {
     private void setPostRegisterTypeAndPropagateChanges(@Nonnull AnalyzedInstruction analyzedInstruction,
                                                         int registerNumber, @Nonnull RegisterType registerType) {
 
-        BitSet changedInstructions = new BitSet(analyzedInstructions.size());
-
         if (!analyzedInstruction.setPostRegisterType(registerNumber, registerType)) {
             return;
         }
 
-        propagateRegisterToSuccessors(analyzedInstruction, registerNumber, changedInstructions, false);
+        propagateRegisterToSuccessors(analyzedInstruction, registerNumber, false);
 
-        propagateChanges(changedInstructions, registerNumber, false);
+        propagateChanges(registerNumber, false);
 
         if (registerType.category == RegisterType.LONG_LO) {
             checkWidePair(registerNumber, analyzedInstruction);
@@ -439,14 +532,29 @@ public class MethodAnalyzer {
         }
     }
 
-    private void propagateRegisterToSuccessors(@Nonnull AnalyzedInstruction instruction, int registerNumber,
-                                               @Nonnull BitSet changedInstructions, boolean override) {
+    /**
+     * Merges the post-instruction type of the given register into the successors of the given instruction, and adds
+     * any successors that need to pass the change on to the changedInstructions worklist.
+     *
+     * @return The lowest reverse postorder position that was added to the worklist, or Integer.MAX_VALUE if none was
+     * added
+     */
+    private int propagateRegisterToSuccessors(@Nonnull AnalyzedInstruction instruction, int registerNumber,
+                                              boolean override) {
+        int lowestPosition = Integer.MAX_VALUE;
         RegisterType postRegisterType = instruction.getPostInstructionRegisterType(registerNumber);
-        for (AnalyzedInstruction successor: instruction.successors) {
+        for (int i = 0; i < instruction.successorCount; i++) {
+            AnalyzedInstruction successor = instruction.successors[i];
+            registerMergeCount++;
             if (successor.mergeRegister(registerNumber, postRegisterType, analyzedState, override)) {
-                changedInstructions.set(successor.instructionIndex);
+                int position = reversePostorderPositions[successor.instructionIndex];
+                changedInstructions.set(position);
+                if (position < lowestPosition) {
+                    lowestPosition = position;
+                }
             }
         }
+        return lowestPosition;
     }
 
     private void buildInstructionList() {
@@ -564,6 +672,11 @@ public class MethodAnalyzer {
                 }
             }
         }
+
+        startOfMethod.trimEdges();
+        for (int i=0; i<analyzedInstructions.size(); i++) {
+            analyzedInstructions.valueAt(i).trimEdges();
+        }
     }
 
     private void addPredecessorSuccessor(@Nonnull AnalyzedInstruction predecessor,
@@ -1267,7 +1380,7 @@ public class MethodAnalyzer {
                 if (analyzedInstruction.getPredecessorCount() != 1) {
                     return;
                 }
-                AnalyzedInstruction prevAnalyzedInstruction = analyzedInstruction.getPredecessors().first();
+                AnalyzedInstruction prevAnalyzedInstruction = analyzedInstruction.predecessors[0];
                 if (prevAnalyzedInstruction.instruction.getOpcode() == Opcode.INSTANCE_OF) {
 
                     AnalyzedInstruction fallthroughInstruction = analyzedInstructions.valueAt(
@@ -1955,7 +2068,7 @@ public class MethodAnalyzer {
     @Nonnull
     private static RegisterType getAndCheckSourceRegister(@Nonnull AnalyzedInstruction analyzedInstruction,
                                                           int registerNumber, BitSet validCategories) {
-        assert registerNumber >= 0 && registerNumber < analyzedInstruction.postRegisterMap.length;
+        assert registerNumber >= 0 && registerNumber < analyzedInstruction.getRegisterCount();
 
         RegisterType registerType = analyzedInstruction.getPreInstructionRegisterType(registerNumber);
 
@@ -1980,7 +2093,7 @@ public class MethodAnalyzer {
     }
 
     private static void checkWidePair(int registerNumber, AnalyzedInstruction analyzedInstruction) {
-        if (registerNumber + 1 >= analyzedInstruction.postRegisterMap.length) {
+        if (registerNumber + 1 >= analyzedInstruction.getRegisterCount()) {
             throw new AnalysisException(String.format("v%d cannot be used as the first register in a wide register" +
                     "pair because it is the last register.", registerNumber));
         }
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.dexlib2.analysis.util;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A concurrent alternative to {@link LruCache}, for caches that are read far more often than they are written, from
+ * many threads at once.
+ *
+ * <p>Values are held in a {@link ConcurrentHashMap}, so a cache hit doesn't take any locks. Instead of maintaining
+ * an exact access-ordered list, each entry records an approximate access time, and once the cache grows past its
+ * maximum size, the least recently accessed entries are evicted in a batch. The access "clock" only advances when a
+ * value is added, so a hit is a read of two volatile fields and, at most, one volatile write.
+ *
+ * <p>If a cache miss should be computed on demand for the corresponding keys, override {@link #create}. Only one
+ * thread will call {@link #create} for a given key at a time. Any other thread that requests the same key while it is
+ * being created will wait for that value, rather than creating its own copy. {@link #create} must not request the
+ * key that it is creating.
+ *
+ * <p>This class does not allow null to be used as a key or value.
+ */
+public class ConcurrentLruCache<K, V> {
+    @Nonnull private final ConcurrentHashMap<K, Node<V>> map = new ConcurrentHashMap<K, Node<V>>();
+    @Nonnull private final AtomicLong clock = new AtomicLong();
+    @Nonnull private final AtomicBoolean trimming = new AtomicBoolean();
+    private volatile int maxSize;
+
+    /**
+     * @param maxSize The maximum number of entries in the cache
+     */
+    public ConcurrentLruCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Sets the size of the cache.
+     *
+     * @param maxSize The new maximum size.
+     */
+    public void resize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        this.maxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    /**
+     * Returns the value for {@code key} if it exists in the cache or can be created by {@code #create}. This returns
+     * null if a value is not cached and cannot be created.
+     */
+    @Nullable
+    public final V get(@Nonnull K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+
+        while (true) {
+            Node<V> node = map.get(key);
+            if (node != null) {
+                V value = node.value;
+                if (value != null) {
+                    node.touch(clock.get());
+                    return value;
+                }
+            } else {
+                Node<V> newNode = new Node<V>(Thread.currentThread());
+                node = map.putIfAbsent(key, newNode);
+                if (node == null) {
+                    return createValue(key, newNode);
+                }
+            }
+
+            if (node.creator == Thread.currentThread()) {
+                throw new IllegalStateException("Recursive request for key " + key + " while creating it");
+            }
+
+            V value = node.await();
+            if (value != null) {
+                node.touch(clock.get());
+                return value;
+            }
+            // the value couldn't be created by the other thread, try again
+        }
+    }
+
+    @Nullable
+    private V createValue(@Nonnull K key, @Nonnull Node<V> node) {
+        V createdValue;
+        try {
+            createdValue = create(key);
+        } catch (RuntimeException ex) {
+            map.remove(key, node);
+            node.complete(null, 0);
+            throw ex;
+        } catch (Error ex) {
+            map.remove(key, node);
+            node.complete(null, 0);
+            throw ex;
+        }
+
+        if (createdValue == null) {
+            map.remove(key, node);
+            node.complete(null, 0);
+            return null;
+        }
+
+        if (!node.complete(createdValue, clock.incrementAndGet())) {
+            // a value was put while we were creating this one. Use that value instead
+            return node.value;
+        }
+        trimToSize(maxSize);
+        return createdValue;
+    }
+
+    /**
+     * Caches {@code value} for {@code key}.
+     *
+     * @return the previous value mapped by {@code key}.
+     */
+    @Nullable
+    public final V put(@Nonnull K key, @Nonnull V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("key == null || value == null");
+        }
+
+        Node<V> node = new Node<V>(null);
+        node.complete(value, clock.incrementAndGet());
+
+        Node<V> previous = map.put(key, node);
+        V previousValue = null;
+        if (previous != null) {
+            previousValue = previous.value;
+            // wake up anyone waiting for a value that was still being created
+            previous.complete(value, node.lastAccess);
+        }
+
+        trimToSize(maxSize);
+        return previousValue;
+    }
+
+    /**
+     * Removes the entry for {@code key} if it exists.
+     *
+     * @return the previous value mapped by {@code key}.
+     */
+    @Nullable
+    public final V remove(@Nonnull K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+
+        Node<V> previous = map.remove(key);
+        if (previous != null) {
+            return previous.value;
+        }
+        return null;
+    }
+
+    /**
+     * Called after a cache miss to compute a value for the corresponding key. Returns the computed value or null if
+     * no value can be computed. The default implementation returns null.
+     *
+     * <p>The method is called without synchronization, but no other thread will create a value for the same key
+     * while it is executing.
+     */
+    @Nullable
+    protected V create(@Nonnull K key) {
+        return null;
+    }
+
+    /**
+     * Evicts the least recently accessed entries until the number of remaining entries is at or below the requested
+     * size. When eviction is needed, a few extra entries are evicted, so that the cache doesn't need to be trimmed
+     * again on the very next addition.
+     *
+     * <p>If another thread is already trimming the cache, this returns immediately.
+     *
+     * @param maxSize the maximum size of the cache before returning. May be -1 to evict all entries.
+     */
+    public void trimToSize(int maxSize) {
+        if (map.size() <= maxSize) {
+            return;
+        }
+        if (!trimming.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int targetSize = maxSize < 0 ? 0 : maxSize - (maxSize / 16);
+
+            List<Map.Entry<K, Node<V>>> entries = new ArrayList<Map.Entry<K, Node<V>>>(map.size());
+            for (Map.Entry<K, Node<V>> entry: map.entrySet()) {
+                // entries that are still being created aren't eligible for eviction
+                if (entry.getValue().value != null) {
+                    entries.add(entry);
+                }
+            }
+
+            int toEvict = Math.min(entries.size(), map.size() - targetSize);
+            if (toEvict <= 0) {
+                return;
+            }
+
+            Collections.sort(entries, new Comparator<Map.Entry<K, Node<V>>>() {
+                @Override public int compare(Map.Entry<K, Node<V>> o1, Map.Entry<K, Node<V>> o2) {
+                    return Long.compare(o1.getValue().lastAccess, o2.getValue().lastAccess);
+                }
+            });
+
+            for (int i=0; i<toEvict; i++) {
+                Map.Entry<K, Node<V>> entry = entries.get(i);
+                map.remove(entry.getKey(), entry.getValue());
+            }
+        } finally {
+            trimming.set(false);
+        }
+    }
+
+    /**
+     * Returns a copy of the current contents of the cache. Entries that are still being created are not included.
+     */
+    @Nonnull
+    public final Map<K, V> snapshot() {
+        Map<K, V> snapshot = new HashMap<K, V>(map.size());
+        for (Map.Entry<K, Node<V>> entry: map.entrySet()) {
+            V value = entry.getValue().value;
+            if (value != null) {
+                snapshot.put(entry.getKey(), value);
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Clear the cache.
+     */
+    public final void evictAll() {
+        map.clear();
+    }
+
+    /**
+     * @return The number of entries in the cache, including any that are currently being created
+     */
+    public final int size() {
+        return map.size();
+    }
+
+    /**
+     * @return The maximum number of entries in the cache
+     */
+    public final int maxSize() {
+        return maxSize;
+    }
+
+    private static final class Node<V> {
+        // The thread that is creating the value, or null once it has been created
+        @Nullable volatile Thread creator;
+        @Nullable volatile V value;
+        volatile long lastAccess;
+        private boolean done;
+
+        Node(@Nullable Thread creator) {
+            this.creator = creator;
+        }
+
+        void touch(long now) {
+            // avoid dirtying the cache line when the entry was already accessed during this tick
+            if (lastAccess != now) {
+                lastAccess = now;
+            }
+        }
+
+        /**
+         * @return true if the node was completed by this call, or false if it had already been completed
+         */
+        synchronized boolean complete(@Nullable V value, long lastAccess) {
+            if (done) {
+                return false;
+            }
+            this.lastAccess = lastAccess;
+            this.value = value;
+            this.creator = null;
+            done = true;
+            notifyAll();
+            return true;
+        }
+
+        @Nullable
+        synchronized V await() {
+            boolean interrupted = false;
+            try {
+                while (!done) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return value;
+        }
+    }
+}
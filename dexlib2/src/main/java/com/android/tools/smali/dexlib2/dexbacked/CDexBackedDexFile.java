@@ -73,6 +73,13 @@ public class CDexBackedDexFile extends DexBackedDexFile {
                 buf[offset+3] == cdexMagic[3];
     }
 
+    public static boolean isCdex(@Nonnull DexBuffer buf, int offset) {
+        if (offset + 4 > buf.getLength()) {
+            return false;
+        }
+        return isCdex(buf.readByteRange(offset, 4), 0);
+    }
+
     @Override
     protected int getVersion(byte[] buf, int offset, boolean verifyMagic) {
         if (verifyMagic) {
@@ -44,6 +44,7 @@ import com.android.tools.smali.dexlib2.dexbacked.raw.MethodIdItem;
 import com.android.tools.smali.dexlib2.dexbacked.raw.ProtoIdItem;
 import com.android.tools.smali.dexlib2.dexbacked.raw.StringIdItem;
 import com.android.tools.smali.dexlib2.dexbacked.raw.TypeIdItem;
+import com.android.tools.smali.dexlib2.dexbacked.raw.TypeListItem;
 import com.android.tools.smali.dexlib2.dexbacked.reference.DexBackedCallSiteReference;
 import com.android.tools.smali.dexlib2.dexbacked.reference.DexBackedFieldReference;
 import com.android.tools.smali.dexlib2.dexbacked.reference.DexBackedMethodHandleReference;
@@ -54,6 +55,8 @@ import com.android.tools.smali.dexlib2.dexbacked.reference.DexBackedTypeReferenc
 import com.android.tools.smali.dexlib2.dexbacked.util.FixedSizeList;
 import com.android.tools.smali.dexlib2.dexbacked.util.FixedSizeSet;
 import com.android.tools.smali.dexlib2.iface.DexFile;
+import com.android.tools.smali.dexlib2.iface.reference.FieldReference;
+import com.android.tools.smali.dexlib2.iface.reference.MethodReference;
 import com.android.tools.smali.dexlib2.iface.reference.Reference;
 import com.android.tools.smali.dexlib2.util.DexUtil;
 import com.android.tools.smali.dexlib2.writer.DexWriter;
@@ -65,6 +68,7 @@ import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
@@ -91,6 +95,21 @@ public class DexBackedDexFile implements DexFile {
     private final int mapOffset;
     private final int hiddenApiRestrictionsOffset;
 
+    /**
+     * Decoded strings, indexed by string index, or null if string caching is disabled.
+     *
+     * Entries are populated lazily without locking. This is safe because String is immutable, so a String instance
+     * is always fully visible to any thread that reads a non-null reference to it. At worst, two threads that race on
+     * the same index will both decode the string, and one of the equivalent instances will be kept.
+     */
+    @Nullable private volatile String[] stringCache;
+
+    /**
+     * Maps a type index to the index of the class_def_item that defines it, or -1. This is built lazily by
+     * findClassDef, since class_def_items are not sorted by type.
+     */
+    @Nullable private volatile int[] classDefIndexes;
+
     protected DexBackedDexFile(@Nullable Opcodes opcodes, @Nonnull byte[] buf, int offset, boolean verifyMagic) {
         this(opcodes, buf, offset, verifyMagic, 0);
     }
@@ -100,10 +119,19 @@ public class DexBackedDexFile implements DexFile {
                                int offset,
                                boolean verifyMagic,
                                int header_offset) {
-        dexBuffer = new DexBuffer(buf, offset);
-        dataBuffer = new DexBuffer(buf, offset + getBaseDataOffset());
+        this(opcodes, new DexBuffer(buf, offset), verifyMagic, header_offset);
+    }
 
-        int dexVersion = getVersion(buf, offset, verifyMagic);
+    protected DexBackedDexFile(@Nullable Opcodes opcodes,
+                               @Nonnull DexBuffer buf,
+                               boolean verifyMagic,
+                               int header_offset) {
+        dexBuffer = buf;
+        dataBuffer = buf.slice(getBaseDataOffset());
+
+        // only the header is needed to determine the version, so avoid touching the rest of a mapped buffer
+        int dexVersion = getVersion(buf.readByteRange(0, Math.min(HeaderItem.ITEM_SIZE, buf.getLength())), 0,
+                verifyMagic);
 
         if (opcodes == null) {
             this.opcodes = getDefaultOpcodes(dexVersion);
@@ -178,7 +206,7 @@ public class DexBackedDexFile implements DexFile {
     }
 
     public DexBackedDexFile(@Nullable Opcodes opcodes, @Nonnull DexBuffer buf) {
-        this(opcodes, buf.buf, buf.baseOffset);
+        this(opcodes, buf, false, 0);
     }
 
     public DexBackedDexFile(@Nullable Opcodes opcodes, @Nonnull byte[] buf, int offset) {
@@ -198,6 +226,48 @@ public class DexBackedDexFile implements DexFile {
         return new DexBackedDexFile(opcodes, buf, 0, false);
     }
 
+    /**
+     * Creates a DexBackedDexFile from the given buffer, after verifying that it contains a valid dex header.
+     *
+     * This can be used with a MappedDexBuffer, to avoid copying the dex file onto the heap.
+     *
+     * @param opcodes The set of opcodes to use, or null to determine it from the dex version
+     * @param buf A buffer containing a dex file, starting at offset 0
+     * @return A DexBackedDexFile for the dex file in the given buffer
+     * @throws NotADexFile If the buffer doesn't contain a dex file
+     */
+    @Nonnull
+    public static DexBackedDexFile fromBuffer(@Nullable Opcodes opcodes, @Nonnull DexBuffer buf) {
+        if (buf.getLength() < HeaderItem.ITEM_SIZE) {
+            throw new NotADexFile("File is too short");
+        }
+        return new DexBackedDexFile(opcodes, buf, true, 0);
+    }
+
+    /**
+     * Enables or disables caching of decoded strings.
+     *
+     * When enabled, each string in the string section is decoded at most once (modulo races), and the same String
+     * instance is returned for subsequent lookups of the same string or type index. This trades memory, up to the
+     * size of the decoded string section, for avoiding repeated MUTF-8 decoding of frequently used strings such as
+     * type descriptors. It is safe to read strings concurrently from multiple threads while the cache is enabled.
+     *
+     * @param enabled Whether decoded strings should be cached. Disabling the cache discards any cached strings.
+     */
+    public void setStringCacheEnabled(boolean enabled) {
+        if (enabled) {
+            if (stringCache == null) {
+                stringCache = new String[stringCount];
+            }
+        } else {
+            stringCache = null;
+        }
+    }
+
+    public boolean isStringCacheEnabled() {
+        return stringCache != null;
+    }
+
     @Nonnull public Opcodes getOpcodes() {
         return opcodes;
     }
@@ -273,6 +343,272 @@ public class DexBackedDexFile implements DexFile {
         }
     }
 
+    /**
+     * Finds a string by binary searching the sorted string_ids section, comparing the encoded strings directly.
+     *
+     * @param string The string to find
+     * @return The index of the string, or -1 if this dex file does not contain the string
+     */
+    public int findStringIndex(@Nonnull String string) {
+        int low = 0;
+        int high = stringCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int comparison = compareString(mid, string);
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds a type by binary searching the sorted type_ids section.
+     *
+     * @param type The type descriptor to find
+     * @return The index of the type, or -1 if this dex file does not contain the type
+     */
+    public int findTypeIndex(@Nonnull String type) {
+        int stringIndex = findStringIndex(type);
+        if (stringIndex < 0) {
+            return -1;
+        }
+
+        int low = 0;
+        int high = typeCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int comparison = Integer.compare(
+                    dexBuffer.readSmallUint(typeStartOffset + mid * TypeIdItem.ITEM_SIZE), stringIndex);
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds a field by binary searching the sorted field_ids section.
+     *
+     * @return The index of the field, or -1 if this dex file does not contain the field
+     */
+    public int findFieldIndex(@Nonnull String definingClass, @Nonnull String name, @Nonnull String type) {
+        int classIndex = findTypeIndex(definingClass);
+        if (classIndex < 0) {
+            return -1;
+        }
+        int nameIndex = findStringIndex(name);
+        if (nameIndex < 0) {
+            return -1;
+        }
+        int typeIndex = findTypeIndex(type);
+        if (typeIndex < 0) {
+            return -1;
+        }
+
+        int low = 0;
+        int high = fieldCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int fieldOffset = fieldStartOffset + mid * FieldIdItem.ITEM_SIZE;
+            int comparison = Integer.compare(
+                    dexBuffer.readUshort(fieldOffset + FieldIdItem.CLASS_OFFSET), classIndex);
+            if (comparison == 0) {
+                comparison = Integer.compare(
+                        dexBuffer.readSmallUint(fieldOffset + FieldIdItem.NAME_OFFSET), nameIndex);
+                if (comparison == 0) {
+                    comparison = Integer.compare(
+                            dexBuffer.readUshort(fieldOffset + FieldIdItem.TYPE_OFFSET), typeIndex);
+                }
+            }
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds a field by binary searching the sorted field_ids section.
+     *
+     * @return The index of the field, or -1 if this dex file does not contain the field
+     */
+    public int findFieldIndex(@Nonnull FieldReference field) {
+        return findFieldIndex(field.getDefiningClass(), field.getName(), field.getType());
+    }
+
+    /**
+     * Finds a method prototype by binary searching the sorted proto_ids section.
+     *
+     * @return The index of the prototype, or -1 if this dex file does not contain the prototype
+     */
+    public int findProtoIndex(@Nonnull List<? extends CharSequence> parameterTypes, @Nonnull String returnType) {
+        int returnTypeIndex = findTypeIndex(returnType);
+        if (returnTypeIndex < 0) {
+            return -1;
+        }
+        int[] parameterTypeIndexes = new int[parameterTypes.size()];
+        for (int i = 0; i < parameterTypeIndexes.length; i++) {
+            parameterTypeIndexes[i] = findTypeIndex(parameterTypes.get(i).toString());
+            if (parameterTypeIndexes[i] < 0) {
+                return -1;
+            }
+        }
+
+        int low = 0;
+        int high = protoCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int protoOffset = protoStartOffset + mid * ProtoIdItem.ITEM_SIZE;
+            int comparison = Integer.compare(
+                    dexBuffer.readSmallUint(protoOffset + ProtoIdItem.RETURN_TYPE_OFFSET), returnTypeIndex);
+            if (comparison == 0) {
+                comparison = compareTypeList(
+                        dexBuffer.readSmallUint(protoOffset + ProtoIdItem.PARAMETERS_OFFSET), parameterTypeIndexes);
+            }
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private int compareTypeList(int typeListOffset, @Nonnull int[] typeIndexes) {
+        int size = 0;
+        if (typeListOffset != 0) {
+            size = dataBuffer.readSmallUint(typeListOffset + TypeListItem.SIZE_OFFSET);
+        }
+        int count = Math.min(size, typeIndexes.length);
+        for (int i = 0; i < count; i++) {
+            int comparison = Integer.compare(
+                    dataBuffer.readUshort(typeListOffset + TypeListItem.LIST_OFFSET + i * 2), typeIndexes[i]);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(size, typeIndexes.length);
+    }
+
+    /**
+     * Finds a method by binary searching the sorted method_ids section.
+     *
+     * @return The index of the method, or -1 if this dex file does not contain the method
+     */
+    public int findMethodIndex(@Nonnull String definingClass, @Nonnull String name,
+                               @Nonnull List<? extends CharSequence> parameterTypes, @Nonnull String returnType) {
+        int classIndex = findTypeIndex(definingClass);
+        if (classIndex < 0) {
+            return -1;
+        }
+        int nameIndex = findStringIndex(name);
+        if (nameIndex < 0) {
+            return -1;
+        }
+        int protoIndex = findProtoIndex(parameterTypes, returnType);
+        if (protoIndex < 0) {
+            return -1;
+        }
+
+        int low = 0;
+        int high = methodCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int methodOffset = methodStartOffset + mid * MethodIdItem.ITEM_SIZE;
+            int comparison = Integer.compare(
+                    dexBuffer.readUshort(methodOffset + MethodIdItem.CLASS_OFFSET), classIndex);
+            if (comparison == 0) {
+                comparison = Integer.compare(
+                        dexBuffer.readSmallUint(methodOffset + MethodIdItem.NAME_OFFSET), nameIndex);
+                if (comparison == 0) {
+                    comparison = Integer.compare(
+                            dexBuffer.readUshort(methodOffset + MethodIdItem.PROTO_OFFSET), protoIndex);
+                }
+            }
+            if (comparison < 0) {
+                low = mid + 1;
+            } else if (comparison > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds a method by binary searching the sorted method_ids section.
+     *
+     * @return The index of the method, or -1 if this dex file does not contain the method
+     */
+    public int findMethodIndex(@Nonnull MethodReference method) {
+        return findMethodIndex(method.getDefiningClass(), method.getName(), method.getParameterTypes(),
+                method.getReturnType());
+    }
+
+    /**
+     * Finds the class defined in this dex file with the given type.
+     *
+     * Unlike the other id sections, class_def_items are ordered so that superclasses come first rather than by type,
+     * so the first call builds a table mapping type indexes to class_def_items.
+     *
+     * @param type The type descriptor of the class to find
+     * @return The class definition, or null if this dex file does not define the class
+     */
+    @Nullable
+    public DexBackedClassDef findClassDef(@Nonnull String type) {
+        int classIndex = findClassDefIndex(type);
+        if (classIndex < 0) {
+            return null;
+        }
+        return getClassSection().get(classIndex);
+    }
+
+    /**
+     * Finds the index of the class_def_item for the class with the given type.
+     *
+     * @param type The type descriptor of the class to find
+     * @return The index of the class in {@link #getClassSection()}, or -1 if this dex file does not define the class
+     */
+    public int findClassDefIndex(@Nonnull String type) {
+        int typeIndex = findTypeIndex(type);
+        if (typeIndex < 0) {
+            return -1;
+        }
+
+        int[] classDefIndexes = this.classDefIndexes;
+        if (classDefIndexes == null) {
+            classDefIndexes = new int[typeCount];
+            Arrays.fill(classDefIndexes, -1);
+            for (int i = 0; i < classCount; i++) {
+                int classTypeIndex = dexBuffer.readSmallUint(
+                        classStartOffset + i * ClassDefItem.ITEM_SIZE + ClassDefItem.CLASS_OFFSET);
+                if (classTypeIndex < classDefIndexes.length) {
+                    classDefIndexes[classTypeIndex] = i;
+                }
+            }
+            // a race here just results in an equivalent table being built more than once
+            this.classDefIndexes = classDefIndexes;
+        }
+
+        return classDefIndexes[typeIndex];
+    }
+
     public List<MapItem> getMapItems() {
         final int mapSize = dataBuffer.readSmallUint(mapOffset);
 
@@ -319,6 +655,21 @@ public class DexBackedDexFile implements DexFile {
     private OptionalIndexedSection<String> stringSection = new OptionalIndexedSection<String>() {
         @Override
         public String get(int index) {
+            String[] cache = stringCache;
+            if (cache == null || index < 0 || index >= cache.length) {
+                // out of range indexes are rejected by getOffset
+                return readString(index);
+            }
+
+            String string = cache[index];
+            if (string == null) {
+                string = readString(index);
+                cache[index] = string;
+            }
+            return string;
+        }
+
+        private String readString(int index) {
             int stringOffset = getOffset(index);
             int stringDataOffset = dexBuffer.readSmallUint(stringOffset);
             DexReader<? extends DexBuffer> reader = dataBuffer.readerAt(stringDataOffset);
@@ -354,6 +705,29 @@ public class DexBackedDexFile implements DexFile {
         return stringSection;
     }
 
+    /**
+     * Compares the string with the given index against a Java string, without decoding the string from the dex file.
+     *
+     * @param stringIndex The index of the string in the string section
+     * @param string The string to compare against
+     * @return A value consistent with String.compareTo
+     * @throws IndexOutOfBoundsException if stringIndex is out of bounds
+     */
+    public int compareString(int stringIndex, @Nonnull String string) {
+        String[] cache = stringCache;
+        if (cache != null && stringIndex >= 0 && stringIndex < cache.length) {
+            String cached = cache[stringIndex];
+            if (cached != null) {
+                return cached.compareTo(string);
+            }
+        }
+
+        int stringDataOffset = dexBuffer.readSmallUint(stringSection.getOffset(stringIndex));
+        DexReader<? extends DexBuffer> reader = dataBuffer.readerAt(stringDataOffset);
+        int utf16Length = reader.readSmallUleb128();
+        return reader.compareString(utf16Length, string);
+    }
+
     private OptionalIndexedSection<String> typeSection = new OptionalIndexedSection<String>() {
         @Override
         public String get(int index) {
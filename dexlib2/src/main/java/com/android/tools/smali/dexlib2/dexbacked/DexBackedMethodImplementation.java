@@ -31,6 +31,7 @@
 package com.android.tools.smali.dexlib2.dexbacked;
 
 import com.android.tools.smali.dexlib2.dexbacked.instruction.DexBackedInstruction;
+import com.android.tools.smali.dexlib2.dexbacked.instruction.InstructionCursor;
 import com.android.tools.smali.dexlib2.dexbacked.raw.CodeItem;
 import com.android.tools.smali.dexlib2.dexbacked.util.DebugInfo;
 import com.android.tools.smali.dexlib2.dexbacked.util.FixedSizeList;
@@ -105,6 +106,26 @@ public class DexBackedMethodImplementation implements MethodImplementation {
         };
     }
 
+    /**
+     * @return A new cursor positioned before the first instruction of this method
+     */
+    @Nonnull
+    public InstructionCursor getInstructionCursor() {
+        return resetInstructionCursor(new InstructionCursor());
+    }
+
+    /**
+     * Repositions an existing cursor before the first instruction of this method, so that a single cursor can be
+     * reused across many methods.
+     *
+     * @param cursor The cursor to reset
+     * @return The given cursor
+     */
+    @Nonnull
+    public InstructionCursor resetInstructionCursor(@Nonnull InstructionCursor cursor) {
+        return cursor.reset(dexFile, getInstructionsStartOffset(), getInstructionsSize());
+    }
+
     protected int getTriesSize() {
         return dexFile.getDataBuffer().readUshort(codeOffset + CodeItem.TRIES_SIZE_OFFSET);
     }
@@ -152,7 +173,7 @@ public class DexBackedMethodImplementation implements MethodImplementation {
             System.err.println(String.format("%s: Invalid debug offset", method));
             return DebugInfo.newOrEmpty(dexFile, 0, this);
         }
-        if ((debugOffset + dexFile.getBaseDataOffset()) >= dexFile.getBuffer().buf.length) {
+        if ((debugOffset + dexFile.getBaseDataOffset()) >= dexFile.getBuffer().getLength()) {
             System.err.println(String.format("%s: Invalid debug offset", method));
             return DebugInfo.newOrEmpty(dexFile, 0, this);
         }
@@ -144,6 +144,17 @@ public class DexBuffer {
         return new DexReader<DexBuffer>(this, offset);
     }
 
+    /**
+     * Gets a buffer over the same underlying data, starting at the given offset in this buffer
+     *
+     * @param offset The offset in this buffer that will become offset 0 in the returned buffer
+     * @return A DexBuffer that shares this buffer's data
+     */
+    @Nonnull
+    public DexBuffer slice(int offset) {
+        return new DexBuffer(buf, baseOffset + offset);
+    }
+
     @Nonnull
     public byte[] getBuf() {
         return buf;
@@ -152,4 +163,11 @@ public class DexBuffer {
     public int getBaseOffset() {
         return baseOffset;
     }
+
+    /**
+     * @return The number of bytes available in this buffer, starting from offset 0
+     */
+    public int getLength() {
+        return buf.length - baseOffset;
+    }
 }
@@ -619,4 +619,16 @@ public class DexReader<T extends DexBuffer> {
             dexBuf.buf, dexBuf.baseOffset + offset, utf16Length, ret);
         return ret[0];
     }
+
+    /**
+     * Compares the string at the current offset against the given string, without decoding it or moving the reader.
+     *
+     * @param utf16Length The number of utf-16 code units in the string at the current offset
+     * @param string The string to compare against
+     * @return A value consistent with String.compareTo
+     */
+    public int compareString(int utf16Length, @Nonnull String string) {
+        return Utf8Utils.compareUtf8BytesWithUtf16LengthToString(
+            dexBuf.buf, dexBuf.baseOffset + offset, utf16Length, string);
+    }
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.dexlib2.dexbacked;
+
+import com.android.tools.smali.util.ExceptionWithContext;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * A DexBuffer that is backed by a ByteBuffer rather than an on-heap byte array.
+ *
+ * This is typically used with a MappedByteBuffer, so that large dex, apk and oat files can be read without copying
+ * their contents onto the heap.
+ */
+public class MappedDexBuffer extends DexBuffer {
+    private static final byte[] NO_BYTES = new byte[0];
+
+    @Nonnull final ByteBuffer data;
+
+    public MappedDexBuffer(@Nonnull ByteBuffer data) {
+        this(data, 0);
+    }
+
+    public MappedDexBuffer(@Nonnull ByteBuffer data, int offset) {
+        super(NO_BYTES, offset);
+        this.data = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Maps the given file into memory, read-only.
+     *
+     * @param file The file to map
+     * @return A MappedDexBuffer over the entire contents of the file
+     * @throws IOException If the file can't be mapped, e.g. because it is larger than 2GB
+     */
+    @Nonnull
+    public static MappedDexBuffer map(@Nonnull File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(String.format("%s is too large to be memory mapped", file.getPath()));
+            }
+            // The mapping remains valid after the channel is closed
+            return new MappedDexBuffer(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    @Override
+    public int readSmallUint(int offset) {
+        offset += baseOffset;
+        int result = data.getInt(offset);
+        if (result < 0) {
+            throw new ExceptionWithContext("Encountered small uint that is out of range at offset 0x%x", offset);
+        }
+        return result;
+    }
+
+    @Override
+    public int readOptionalUint(int offset) {
+        offset += baseOffset;
+        int result = data.getInt(offset);
+        if (result < -1) {
+            throw new ExceptionWithContext("Encountered optional uint that is out of range at offset 0x%x", offset);
+        }
+        return result;
+    }
+
+    @Override
+    public int readUshort(int offset) {
+        return data.getShort(baseOffset + offset) & 0xffff;
+    }
+
+    @Override
+    public int readUbyte(int offset) {
+        return data.get(baseOffset + offset) & 0xff;
+    }
+
+    @Override
+    public long readLong(int offset) {
+        return data.getLong(baseOffset + offset);
+    }
+
+    @Override
+    public int readLongAsSmallUint(int offset) {
+        offset += baseOffset;
+        long result = data.getLong(offset);
+        if (result < 0 || result > Integer.MAX_VALUE) {
+            throw new ExceptionWithContext("Encountered out-of-range ulong at offset 0x%x", offset);
+        }
+        return (int)result;
+    }
+
+    @Override
+    public int readInt(int offset) {
+        return data.getInt(baseOffset + offset);
+    }
+
+    @Override
+    public int readShort(int offset) {
+        return data.getShort(baseOffset + offset);
+    }
+
+    @Override
+    public int readByte(int offset) {
+        return data.get(baseOffset + offset);
+    }
+
+    @Nonnull
+    @Override
+    public byte[] readByteRange(int start, int length) {
+        byte[] result = new byte[length];
+        ByteBuffer dup = data.duplicate();
+        ((Buffer) dup).position(baseOffset + start);
+        dup.get(result);
+        return result;
+    }
+
+    @Nonnull
+    @Override
+    public DexReader<? extends DexBuffer> readerAt(int offset) {
+        return new MappedDexReader(this, offset);
+    }
+
+    @Nonnull
+    @Override
+    public MappedDexBuffer slice(int offset) {
+        return new MappedDexBuffer(data, baseOffset + offset);
+    }
+
+    /**
+     * Gets the full contents of the underlying buffer as a byte array.
+     *
+     * Note that this copies the entire buffer onto the heap, so should be avoided for large buffers.
+     */
+    @Nonnull
+    @Override
+    public byte[] getBuf() {
+        byte[] result = new byte[data.limit()];
+        ByteBuffer dup = data.duplicate();
+        ((Buffer) dup).position(0);
+        dup.get(result);
+        return result;
+    }
+
+    @Override
+    public int getLength() {
+        return data.limit() - baseOffset;
+    }
+}
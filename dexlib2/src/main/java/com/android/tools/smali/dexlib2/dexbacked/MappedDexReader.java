@@ -0,0 +1,261 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.dexlib2.dexbacked;
+
+import com.android.tools.smali.util.ExceptionWithContext;
+import com.android.tools.smali.util.Utf8Utils;
+
+import javax.annotation.Nonnull;
+
+/**
+ * A DexReader for a MappedDexBuffer.
+ *
+ * The base DexReader implementation reads variable-width values directly from the backing array of a DexBuffer. This
+ * implementation reads them a byte at a time via the buffer instead.
+ */
+public class MappedDexReader extends DexReader<MappedDexBuffer> {
+    public MappedDexReader(@Nonnull MappedDexBuffer dexBuf, int offset) {
+        super(dexBuf, offset);
+    }
+
+    @Override
+    public int readSleb128() {
+        int start = getOffset();
+        int end = start;
+        int result = 0;
+
+        for (int i = 0; ; i++) {
+            int currentByteValue = dexBuf.readUbyte(end++);
+            if (i == 4) {
+                if (currentByteValue > 0x7f) {
+                    throw new ExceptionWithContext("Invalid sleb128 integer encountered at offset 0x%x", start);
+                }
+                result |= currentByteValue << 28;
+                break;
+            }
+            result |= (currentByteValue & 0x7f) << (i * 7);
+            if (currentByteValue <= 0x7f) {
+                int shift = 32 - ((i + 1) * 7);
+                result = (result << shift) >> shift;
+                break;
+            }
+        }
+
+        setOffset(end);
+        return result;
+    }
+
+    @Override
+    public int peekSleb128Size() {
+        int start = getOffset();
+        readSleb128();
+        int size = getOffset() - start;
+        setOffset(start);
+        return size;
+    }
+
+    @Override
+    public int readSmallUleb128() {
+        return readUleb128(false);
+    }
+
+    @Override
+    public int peekSmallUleb128Size() {
+        int start = getOffset();
+        readUleb128(false);
+        int size = getOffset() - start;
+        setOffset(start);
+        return size;
+    }
+
+    @Override
+    public int readLargeUleb128() {
+        return readUleb128(true);
+    }
+
+    @Override
+    public int readBigUleb128() {
+        return readUleb128(true);
+    }
+
+    @Override
+    public int peekBigUleb128Size() {
+        int start = getOffset();
+        readUleb128(true);
+        int size = getOffset() - start;
+        setOffset(start);
+        return size;
+    }
+
+    private int readUleb128(boolean allowLarge) {
+        int start = getOffset();
+        int end = start;
+        int result = 0;
+
+        for (int i = 0; ; i++) {
+            int currentByteValue = dexBuf.readUbyte(end++);
+            if (i == 4) {
+                // MSB shouldn't be set on last byte
+                if (currentByteValue > 0x7f) {
+                    throw new ExceptionWithContext("Invalid uleb128 integer encountered at offset 0x%x", start);
+                } else if ((currentByteValue & 0xf) > 0x07 && !allowLarge) {
+                    throw new ExceptionWithContext(
+                            "Encountered valid uleb128 that is out of range at offset 0x%x", start);
+                }
+                result |= currentByteValue << 28;
+                break;
+            }
+            result |= (currentByteValue & 0x7f) << (i * 7);
+            if (currentByteValue <= 0x7f) {
+                break;
+            }
+        }
+
+        setOffset(end);
+        return result;
+    }
+
+    @Override
+    public void skipUleb128() {
+        int start = getOffset();
+        int end = start;
+
+        for (int i = 0; i < 5; i++) {
+            if (dexBuf.readByte(end++) >= 0) {
+                setOffset(end);
+                return;
+            }
+        }
+        throw new ExceptionWithContext("Invalid uleb128 integer encountered at offset 0x%x", start);
+    }
+
+    @Override
+    public int readSizedInt(int bytes) {
+        if (bytes < 1 || bytes > 4) {
+            throw new ExceptionWithContext("Invalid size %d for sized int at offset 0x%x", bytes, getOffset());
+        }
+        int shift = 32 - (bytes * 8);
+        return (readRightExtendedBits(bytes) << shift) >> shift;
+    }
+
+    @Override
+    public int readSizedSmallUint(int bytes) {
+        int o = getOffset();
+        if (bytes < 1 || bytes > 4) {
+            throw new ExceptionWithContext("Invalid size %d for sized uint at offset 0x%x", bytes, o);
+        }
+        if (bytes == 4 && dexBuf.readByte(o + 3) < 0) {
+            throw new ExceptionWithContext("Encountered valid sized uint that is out of range at offset 0x%x", o);
+        }
+        return readRightExtendedBits(bytes);
+    }
+
+    @Override
+    public int readSizedRightExtendedInt(int bytes) {
+        if (bytes < 1 || bytes > 4) {
+            throw new ExceptionWithContext(
+                    "Invalid size %d for sized, right extended int at offset 0x%x", bytes, getOffset());
+        }
+        return readRightExtendedBits(bytes) << (32 - (bytes * 8));
+    }
+
+    @Override
+    public long readSizedRightExtendedLong(int bytes) {
+        if (bytes < 1 || bytes > 8) {
+            throw new ExceptionWithContext(
+                    "Invalid size %d for sized, right extended long at offset 0x%x", bytes, getOffset());
+        }
+        return readRightExtendedLongBits(bytes) << (64 - (bytes * 8));
+    }
+
+    @Override
+    public long readSizedLong(int bytes) {
+        if (bytes < 1 || bytes > 8) {
+            throw new ExceptionWithContext("Invalid size %d for sized long at offset 0x%x", bytes, getOffset());
+        }
+        int shift = 64 - (bytes * 8);
+        return (readRightExtendedLongBits(bytes) << shift) >> shift;
+    }
+
+    /**
+     * Reads the given number of bytes as an unsigned little-endian value, and advances past them
+     */
+    private int readRightExtendedBits(int bytes) {
+        int o = getOffset();
+        int result = 0;
+        for (int i = 0; i < bytes; i++) {
+            result |= dexBuf.readUbyte(o + i) << (i * 8);
+        }
+        setOffset(o + bytes);
+        return result;
+    }
+
+    private long readRightExtendedLongBits(int bytes) {
+        int o = getOffset();
+        long result = 0;
+        for (int i = 0; i < bytes; i++) {
+            result |= ((long)dexBuf.readUbyte(o + i)) << (i * 8);
+        }
+        setOffset(o + bytes);
+        return result;
+    }
+
+    @Override
+    public String readString(int utf16Length) {
+        int[] ret = new int[1];
+        String value = Utf8Utils.utf8BytesWithUtf16LengthToString(
+                readStringBytes(utf16Length), 0, utf16Length, ret);
+        setOffset(getOffset() + ret[0]);
+        return value;
+    }
+
+    @Override
+    public int peekStringLength(int utf16Length) {
+        int[] ret = new int[1];
+        Utf8Utils.utf8BytesWithUtf16LengthToString(readStringBytes(utf16Length), 0, utf16Length, ret);
+        return ret[0];
+    }
+
+    @Override
+    public int compareString(int utf16Length, @Nonnull String string) {
+        return Utf8Utils.compareUtf8BytesWithUtf16LengthToString(readStringBytes(utf16Length), 0, utf16Length, string);
+    }
+
+    /**
+     * Copies out enough bytes to hold a modified utf-8 string with the given utf-16 length
+     */
+    @Nonnull
+    private byte[] readStringBytes(int utf16Length) {
+        // Each utf-16 code unit is encoded with at most 3 bytes
+        int maxLength = (int)Math.min(utf16Length * 3L, dexBuf.getLength() - getOffset());
+        return dexBuf.readByteRange(getOffset(), maxLength);
+    }
+}
@@ -59,6 +59,7 @@ public class OatFile extends DexBuffer implements MultiDexContainer<DexBackedDex
     private static final byte[] ELF_MAGIC = new byte[] { 0x7f, 'E', 'L', 'F' };
     private static final byte[] OAT_MAGIC = new byte[] { 'o', 'a', 't', '\n' };
     private static final int MIN_ELF_HEADER_SIZE = 52;
+    private static final byte[] NO_BYTES = new byte[0];
 
     // These are the "known working" versions that I have manually inspected the source for.
     // Later version may or may not work, depending on what changed.
@@ -69,6 +70,8 @@ public class OatFile extends DexBuffer implements MultiDexContainer<DexBackedDex
     public static final int SUPPORTED = 1;
     public static final int UNKNOWN = 2;
 
+    // All reads go through this buffer, which may be a MappedDexBuffer rather than the array that backs this DexBuffer
+    @Nonnull private final DexBuffer oatBuffer;
     private final boolean is64bit;
     @Nonnull private final OatHeader oatHeader;
     @Nonnull private final Opcodes opcodes;
@@ -79,20 +82,32 @@ public class OatFile extends DexBuffer implements MultiDexContainer<DexBackedDex
     }
 
     public OatFile(@Nonnull byte[] buf, @Nullable VdexProvider vdexProvider) {
+        this(buf, new DexBuffer(buf), vdexProvider);
+    }
+
+    /**
+     * Creates an OatFile that reads from the given buffer, which is typically a MappedDexBuffer
+     */
+    public OatFile(@Nonnull DexBuffer buf, @Nullable VdexProvider vdexProvider) {
+        this(NO_BYTES, buf, vdexProvider);
+    }
+
+    private OatFile(@Nonnull byte[] buf, @Nonnull DexBuffer oatBuffer, @Nullable VdexProvider vdexProvider) {
         super(buf);
+        this.oatBuffer = oatBuffer;
 
-        if (buf.length < MIN_ELF_HEADER_SIZE) {
+        if (oatBuffer.getLength() < MIN_ELF_HEADER_SIZE) {
             throw new NotAnOatFileException();
         }
 
-        verifyMagic(buf);
+        verifyMagic(oatBuffer.readByteRange(0, ELF_MAGIC.length));
 
-        if (buf[4] == 1) {
+        if (readByte(4) == 1) {
             is64bit = false;
-        } else if (buf[4] == 2) {
+        } else if (readByte(4) == 2) {
             is64bit = true;
         } else {
-            throw new InvalidOatFileException(String.format("Invalid word-size value: %x", buf[5]));
+            throw new InvalidOatFileException(String.format("Invalid word-size value: %x", readByte(5)));
         }
 
         OatHeader oatHeader = null;
@@ -152,6 +167,24 @@ public class OatFile extends DexBuffer implements MultiDexContainer<DexBackedDex
         return new OatFile(buf, vdexProvider);
     }
 
+    @Override public int readSmallUint(int offset) { return oatBuffer.readSmallUint(offset); }
+    @Override public int readOptionalUint(int offset) { return oatBuffer.readOptionalUint(offset); }
+    @Override public int readUshort(int offset) { return oatBuffer.readUshort(offset); }
+    @Override public int readUbyte(int offset) { return oatBuffer.readUbyte(offset); }
+    @Override public long readLong(int offset) { return oatBuffer.readLong(offset); }
+    @Override public int readLongAsSmallUint(int offset) { return oatBuffer.readLongAsSmallUint(offset); }
+    @Override public int readInt(int offset) { return oatBuffer.readInt(offset); }
+    @Override public int readShort(int offset) { return oatBuffer.readShort(offset); }
+    @Override public int readByte(int offset) { return oatBuffer.readByte(offset); }
+    @Nonnull @Override public byte[] readByteRange(int start, int length) {
+        return oatBuffer.readByteRange(start, length);
+    }
+    @Nonnull @Override public DexReader<? extends DexBuffer> readerAt(int offset) { return oatBuffer.readerAt(offset); }
+    @Nonnull @Override public DexBuffer slice(int offset) { return oatBuffer.slice(offset); }
+    @Nonnull @Override public byte[] getBuf() { return oatBuffer.getBuf(); }
+    @Override public int getBaseOffset() { return oatBuffer.getBaseOffset(); }
+    @Override public int getLength() { return oatBuffer.getLength(); }
+
     public int getOatVersion() {
         return oatHeader.getVersion();
     }
@@ -233,6 +266,10 @@ public class OatFile extends DexBuffer implements MultiDexContainer<DexBackedDex
             super(opcodes, buf, offset);
         }
 
+        public OatDexFile(@Nonnull DexBuffer buf) {
+            super(opcodes, buf);
+        }
+
         @Override public boolean supportsOptimizedOpcodes() {
             return true;
         }
@@ -243,6 +280,10 @@ public class OatFile extends DexBuffer implements MultiDexContainer<DexBackedDex
             super(opcodes, buf, offset);
         }
 
+        public OatCDexFile(@Nonnull DexBuffer buf) {
+            super(opcodes, buf);
+        }
+
         @Override public boolean supportsOptimizedOpcodes() {
             return true;
         }
@@ -275,22 +316,22 @@ public class OatFile extends DexBuffer implements MultiDexContainer<DexBackedDex
 
         public boolean isValid() {
             for (int i=0; i<OAT_MAGIC.length; i++) {
-                if (buf[headerOffset + i] != OAT_MAGIC[i]) {
+                if (readByte(headerOffset + i) != OAT_MAGIC[i]) {
                     return false;
                 }
             }
 
             for (int i=4; i<7; i++) {
-                if (buf[headerOffset + i] < '0' || buf[headerOffset + i] > '9') {
+                if (readByte(headerOffset + i) < '0' || readByte(headerOffset + i) > '9') {
                     return false;
                 }
             }
 
-            return buf[headerOffset + 7] == 0;
+            return readByte(headerOffset + 7) == 0;
         }
 
         public int getVersion() {
-            return Integer.valueOf(new String(buf, headerOffset + 4, 3));
+            return Integer.valueOf(new String(readByteRange(headerOffset + 4, 3)));
         }
 
         public int getDexFileCount() {
@@ -321,7 +362,7 @@ public class OatFile extends DexBuffer implements MultiDexContainer<DexBackedDex
 
             while (offset < endOffset) {
                 int keyStartOffset = offset;
-                while (offset < endOffset && buf[offset] != '\0') {
+                while (offset < endOffset && readByte(offset) != '\0') {
                     offset++;
                 }
                 if (offset >= endOffset) {
@@ -329,17 +370,17 @@ public class OatFile extends DexBuffer implements MultiDexContainer<DexBackedDex
                 }
                 int keyEndOffset = offset;
 
-                String k = new String(buf, keyStartOffset, keyEndOffset - keyStartOffset);
+                String k = new String(readByteRange(keyStartOffset, keyEndOffset - keyStartOffset));
                 if (k.equals(key)) {
                     int valueStartOffset = ++offset;
-                    while (offset < endOffset && buf[offset] != '\0') {
+                    while (offset < endOffset && readByte(offset) != '\0') {
                         offset++;
                     }
                     if (offset >= endOffset) {
                         throw new InvalidOatFileException("Oat file contains truncated key value store");
                     }
                     int valueEndOffset = offset;
-                    return new String(buf, valueStartOffset, valueEndOffset - valueStartOffset);
+                    return new String(readByteRange(valueStartOffset, valueEndOffset - valueStartOffset));
                 }
                 offset++;
             }
@@ -370,7 +411,7 @@ public class OatFile extends DexBuffer implements MultiDexContainer<DexBackedDex
             entryCount = readUshort(48);
         }
 
-        if (offset + (entrySize * entryCount) > buf.length) {
+        if (offset + (entrySize * entryCount) > getLength()) {
             throw new InvalidOatFileException("The ELF section headers extend past the end of the file");
         }
 
@@ -463,7 +504,7 @@ public class OatFile extends DexBuffer implements MultiDexContainer<DexBackedDex
             this.entrySize = header.getEntrySize();
             this.entryCount = header.getSize() / entrySize;
 
-            if (offset + entryCount * entrySize > buf.length) {
+            if (offset + entryCount * entrySize > getLength()) {
                 throw new InvalidOatFileException("Symbol table extends past end of file");
             }
         }
@@ -549,7 +590,7 @@ public class OatFile extends DexBuffer implements MultiDexContainer<DexBackedDex
             this.offset = header.getOffset();
             this.size = header.getSize();
 
-            if (offset + size > buf.length) {
+            if (offset + size > getLength()) {
                 throw new InvalidOatFileException("String table extends past end of file");
             }
         }
@@ -562,23 +603,23 @@ public class OatFile extends DexBuffer implements MultiDexContainer<DexBackedDex
 
             int start = offset + index;
             int end = start;
-            while (buf[end] != 0) {
+            while (readByte(end) != 0) {
                 end++;
                 if (end >= offset + size) {
                     throw new InvalidOatFileException("String extends past end of string table");
                 }
             }
 
-            return new String(buf, start, end-start, Charset.forName("US-ASCII"));
+            return new String(readByteRange(start, end-start), Charset.forName("US-ASCII"));
         }
     }
 
     private class OatDexEntry implements MultiDexContainer.DexEntry<DexBackedDexFile> {
         public final String entryName;
-        public final byte[] buf;
+        public final DexBuffer buf;
         public final int dexOffset;
 
-        public OatDexEntry(String entryName, byte[] buf, int dexOffset) {
+        public OatDexEntry(String entryName, DexBuffer buf, int dexOffset) {
             this.entryName = entryName;
             this.buf = buf;
             this.dexOffset = dexOffset;
@@ -586,10 +627,11 @@ public class OatFile extends DexBuffer implements MultiDexContainer<DexBackedDex
 
         public DexBackedDexFile getDexFile() {
             if (CDexBackedDexFile.isCdex(buf, dexOffset)) {
-                return new OatCDexFile(buf, dexOffset);
+                return new OatCDexFile(buf.slice(dexOffset));
             } else {
                 try {
-                    DexUtil.verifyDexHeader(buf, dexOffset);
+                    int headerLength = Math.max(0, Math.min(HeaderItem.ITEM_SIZE, buf.getLength() - dexOffset));
+                    DexUtil.verifyDexHeader(buf.readByteRange(dexOffset, headerLength), 0);
                 } catch (DexBackedDexFile.NotADexFile ex) {
                     if (getOatVersion() >= 87) {
                         throw new DexFileNotFoundException(ex,
@@ -599,7 +641,7 @@ public class OatFile extends DexBuffer implements MultiDexContainer<DexBackedDex
                                 "The embedded dex file %s does not appear to be a valid dex file.", entryName);
                     }
                 }
-                return new OatDexFile(buf, dexOffset);
+                return new OatDexFile(buf.slice(dexOffset));
             }
         }
 
@@ -631,7 +673,7 @@ public class OatFile extends DexBuffer implements MultiDexContainer<DexBackedDex
                 offset += 4;
 
                 // TODO: what is the correct character encoding?
-                String filename = new String(buf, offset, filenameLength, Charset.forName("US-ASCII"));
+                String filename = new String(readByteRange(offset, filenameLength), Charset.forName("US-ASCII"));
                 offset += filenameLength;
 
                 if (getOatVersion() >= 233){
@@ -647,11 +689,11 @@ public class OatFile extends DexBuffer implements MultiDexContainer<DexBackedDex
                 int dexOffset = readSmallUint(offset);
                 offset += 4;
 
-                byte[] buf;
+                DexBuffer buf;
                 if (getOatVersion() >= 87 && vdexProvider != null && vdexProvider.getVdex() != null) {
-                    buf = vdexProvider.getVdex();
+                    buf = new DexBuffer(vdexProvider.getVdex());
                 } else {
-                    buf = OatFile.this.buf;
+                    buf = oatBuffer;
                     dexOffset += oatHeader.headerOffset;
                 }
 
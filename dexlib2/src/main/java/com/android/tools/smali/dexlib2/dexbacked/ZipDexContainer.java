@@ -30,8 +30,9 @@
 
 package com.android.tools.smali.dexlib2.dexbacked;
 
+import com.android.tools.smali.dexlib2.DexFileFactory.DexFileNotFoundException;
 import com.android.tools.smali.dexlib2.Opcodes;
-import com.android.tools.smali.dexlib2.iface.DexFile;
+import com.android.tools.smali.dexlib2.dexbacked.raw.HeaderItem;
 import com.android.tools.smali.dexlib2.iface.MultiDexContainer;
 import com.android.tools.smali.dexlib2.util.DexUtil;
 import com.android.tools.smali.dexlib2.util.DexUtil.InvalidFile;
@@ -41,11 +42,15 @@ import com.android.tools.smali.util.InputStreamUtil;
 import com.android.tools.smali.dexlib2.dexbacked.DexBackedDexFile.NotADexFile;
 
 import java.io.BufferedInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.SoftReference;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -58,10 +63,21 @@ import javax.annotation.Nullable;
  * Represents a zip file that contains dex files (i.e. an apk or jar file)
  */
 public class ZipDexContainer implements MultiDexContainer<DexBackedDexFile> {
+    private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
 
     private final File zipFilePath;
     @Nullable private final Opcodes opcodes;
-    private TreeMap<String, DexBackedDexFile> entries;
+    private final boolean memoryMapped;
+    private TreeMap<String, ZipDexEntry> entries;
+
+    // These are only populated once a dex file is actually loaded from a memory mapped container
+    @Nullable private MappedDexBuffer zipBuffer;
+    @Nullable private Map<String, Integer> storedEntryOffsets;
+    // The contents of the zip entries whose dex files have been loaded
+    @Nonnull private final Map<String, SoftReference<DexBuffer>> entryBuffers = new HashMap<>();
 
     /**
      * Constructs a new ZipDexContainer for the given zip file
@@ -69,8 +85,21 @@ public class ZipDexContainer implements MultiDexContainer<DexBackedDexFile> {
      * @param zipFilePath The path to the zip file
      */
     public ZipDexContainer(@Nonnull File zipFilePath, @Nullable Opcodes opcodes) {
+        this(zipFilePath, opcodes, false);
+    }
+
+    /**
+     * Constructs a new ZipDexContainer for the given zip file
+     *
+     * @param zipFilePath The path to the zip file
+     * @param memoryMapped If true, the zip file will be memory mapped, and any uncompressed dex entries will be read
+     *                     directly from the mapping rather than copied onto the heap. Compressed entries are still
+     *                     inflated onto the heap.
+     */
+    public ZipDexContainer(@Nonnull File zipFilePath, @Nullable Opcodes opcodes, boolean memoryMapped) {
         this.zipFilePath = zipFilePath;
         this.opcodes = opcodes;
+        this.memoryMapped = memoryMapped;
     }
 
     /**
@@ -82,69 +111,268 @@ public class ZipDexContainer implements MultiDexContainer<DexBackedDexFile> {
         return new ArrayList<>(getEntries().keySet());
     }
 
-    private Map<String, DexBackedDexFile> getEntries() throws IOException {
+    /**
+     * Gets the dex entries in this zip file.
+     *
+     * Only the headers of the dex files are read and validated at this point, in a single pass over each zip entry.
+     * Entries with a valid header are then passed to {@link #isDex(ZipFile, ZipEntry)}, so that subclasses can exclude
+     * them. The dex files themselves are loaded on demand, by {@link ZipDexEntry#getDexFile()}.
+     */
+    private synchronized Map<String, ZipDexEntry> getEntries() throws IOException {
         if (entries != null) {
           return entries;
         }
-        entries = new TreeMap<String, DexBackedDexFile>();
+        TreeMap<String, ZipDexEntry> entries = new TreeMap<>();
         try (ZipFile zipFile = getZipFile()) {
             Enumeration<? extends ZipEntry> entriesEnumeration = zipFile.entries();
 
             while (entriesEnumeration.hasMoreElements()) {
                 ZipEntry entry = entriesEnumeration.nextElement();
 
-                if (!isDex(zipFile, entry)) {
+                // There might be several dex files in zip entry since DEX v41.
+                List<Integer> headerOffsets = getDexHeaderOffsets(zipFile, entry);
+                if (headerOffsets.isEmpty() || !isDex(zipFile, entry)) {
                     continue;
                 }
+                for (int i = 0; i < headerOffsets.size(); i++) {
+                    String entryName = entry.getName() + (i > 0 ? ("/" + (i + 1)) : "");
+                    entries.put(entryName, new ZipDexEntry(entryName, entry.getName(), headerOffsets.get(i)));
+                }
+            }
+        }
+        this.entries = entries;
+        return entries;
+    }
 
-                // There might be several dex files in zip entry since DEX v41.
-                try (InputStream inputStream = zipFile.getInputStream(entry)) {
-                    byte[] buf = InputStreamUtil.toByteArray(inputStream);
-                    for (int offset = 0, i = 1; offset < buf.length; i++) {
-                      DexBackedDexFile dex = new DexBackedDexFile(opcodes, buf, 0, true, offset);
-                      entries.put(entry.getName() + (i > 1 ? ("/" + i) : ""), dex);
-                      offset += dex.getFileSize();
-                    };
-                } catch (ArrayIndexOutOfBoundsException ex) {
+    /**
+     * Gets the offsets of the valid dex files in the given entry.
+     *
+     * Since DEX v41, a single entry may contain several dex files, one after another. Only the headers are read, the
+     * rest of the entry is skipped. A dex file is only included if its header is valid and the entry is large enough
+     * to hold it. Any dex files after an invalid or truncated one are ignored.
+     *
+     * @return The offsets of the dex headers. This is empty if the entry isn't a dex file.
+     */
+    @Nonnull
+    private static List<Integer> getDexHeaderOffsets(@Nonnull ZipFile zipFile, @Nonnull ZipEntry entry)
+            throws IOException {
+        List<Integer> headerOffsets = new ArrayList<>();
+        try (InputStream inputStream = new BufferedInputStream(zipFile.getInputStream(entry))) {
+            byte[] header = new byte[HeaderItem.ITEM_SIZE];
+            DexBuffer headerBuffer = new DexBuffer(header);
+            long offset = 0;
+            while (true) {
+                try {
+                    InputStreamUtil.readFully(inputStream, header);
+                } catch (EOFException ex) {
                     // This is expected if the dex file is invalid.
+                    break;
                 }
-            }
 
-            return entries;
+                int dexVersion;
+                try {
+                    dexVersion = DexUtil.verifyDexHeader(header, 0);
+                } catch (NotADexFile | InvalidFile | UnsupportedFile ex) {
+                    break;
+                }
+
+                // these are read as signed ints, so that out of range values are rejected below
+                int fileSize = headerBuffer.readInt(HeaderItem.FILE_SIZE_OFFSET);
+                if (fileSize < header.length) {
+                    break;
+                }
+                if (dexVersion < 41) {
+                    // since DEX v41, the offsets are relative to the start of the container instead
+                    int mapOffset = headerBuffer.readInt(HeaderItem.MAP_OFFSET);
+                    if (mapOffset < header.length || mapOffset > fileSize - 4) {
+                        break;
+                    }
+                }
+                long entrySize = entry.getSize();
+                if (entrySize >= 0 && offset + fileSize > entrySize) {
+                    break;
+                }
+                boolean hasNext = dexVersion >= 41 && (entrySize < 0 || offset + fileSize < entrySize);
+                if (hasNext || entrySize < 0) {
+                    // If the size of the entry isn't known up front, the rest of the dex file has to be skipped to
+                    // check that it isn't truncated.
+                    try {
+                        InputStreamUtil.skipFully(inputStream, fileSize - header.length);
+                    } catch (EOFException ex) {
+                        break;
+                    }
+                }
+                headerOffsets.add((int)offset);
+                offset += fileSize;
+                if (!hasNext) {
+                    break;
+                }
+            }
         }
+        return headerOffsets;
     }
 
     /**
      * Loads a dex file from a specific named entry.
      *
+     * The entry's dex file isn't loaded until {@link DexEntry#getDexFile()} is called. Once loaded, it is softly
+     * cached, so that repeated lookups return the same instance unless the dex file has been garbage collected.
+     *
      * @param entryName The name of the entry
      * @return A DexEntry, or null if there is no entry with the given name
      * @throws NotADexFile If the entry isn't a dex file
      */
     @Nullable @Override public DexEntry<DexBackedDexFile> getEntry(@Nonnull String entryName) throws IOException {
-         DexFile dexFile = getEntries().get(entryName);
-         if (dexFile == null) {
-             return null;
-         }
-         return new DexEntry() {
-             @Nonnull
-             @Override
-             public String getEntryName() {
-                 return entryName;
-             }
-
-             @Nonnull
-             @Override
-             public DexFile getDexFile() {
-                 return dexFile;
-             }
-
-             @Nonnull
-             @Override
-             public MultiDexContainer getContainer() {
-                 return ZipDexContainer.this;
-             }
-         };
+        return getEntries().get(entryName);
+    }
+
+    /**
+     * Gets a buffer containing the contents of the given zip entry.
+     *
+     * For a memory mapped container, uncompressed entries are read directly from the mapping. Otherwise, the entry is
+     * read onto the heap. The buffer is softly cached, so that the dex files in a DEX v41 entry share a single copy
+     * of the entry.
+     *
+     * @throws DexFileNotFoundException If the entry couldn't be read
+     */
+    @Nonnull
+    private synchronized DexBuffer getEntryBuffer(@Nonnull String zipEntryName) {
+        SoftReference<DexBuffer> cachedBuffer = entryBuffers.get(zipEntryName);
+        DexBuffer buffer = cachedBuffer == null ? null : cachedBuffer.get();
+        if (buffer == null) {
+            try {
+                buffer = readEntryBuffer(zipEntryName);
+            } catch (IOException ex) {
+                throw new DexFileNotFoundException(ex, "Error while reading %s from %s", zipEntryName, zipFilePath);
+            }
+            entryBuffers.put(zipEntryName, new SoftReference<>(buffer));
+        }
+        return buffer;
+    }
+
+    @Nonnull
+    private DexBuffer readEntryBuffer(@Nonnull String zipEntryName) throws IOException {
+        if (memoryMapped) {
+            if (zipBuffer == null) {
+                zipBuffer = MappedDexBuffer.map(zipFilePath);
+                storedEntryOffsets = getStoredEntryDataOffsets(zipBuffer);
+            }
+            Integer dataOffset = storedEntryOffsets.get(zipEntryName);
+            if (dataOffset != null) {
+                return zipBuffer.slice(dataOffset);
+            }
+        }
+
+        try (ZipFile zipFile = getZipFile()) {
+            ZipEntry entry = zipFile.getEntry(zipEntryName);
+            if (entry == null) {
+                throw new DexFileNotFoundException("%s no longer contains %s", zipFilePath, zipEntryName);
+            }
+            try (InputStream inputStream = zipFile.getInputStream(entry)) {
+                return new DexBuffer(InputStreamUtil.toByteArray(inputStream));
+            }
+        }
+    }
+
+    private class ZipDexEntry implements DexEntry<DexBackedDexFile> {
+        @Nonnull private final String entryName;
+        @Nonnull private final String zipEntryName;
+        private final int headerOffset;
+        @Nonnull private SoftReference<DexBackedDexFile> dexFile = new SoftReference<>(null);
+
+        public ZipDexEntry(@Nonnull String entryName, @Nonnull String zipEntryName, int headerOffset) {
+            this.entryName = entryName;
+            this.zipEntryName = zipEntryName;
+            this.headerOffset = headerOffset;
+        }
+
+        @Nonnull
+        @Override
+        public String getEntryName() {
+            return entryName;
+        }
+
+        /**
+         * @throws DexFileNotFoundException If the zip entry couldn't be read
+         * @throws NotADexFile If the zip entry no longer contains a valid dex file
+         */
+        @Nonnull
+        @Override
+        public synchronized DexBackedDexFile getDexFile() {
+            DexBackedDexFile dexFile = this.dexFile.get();
+            if (dexFile == null) {
+                DexBuffer buffer = getEntryBuffer(zipEntryName);
+                try {
+                    dexFile = new DexBackedDexFile(opcodes, buffer, true, headerOffset);
+                } catch (NotADexFile ex) {
+                    throw ex;
+                } catch (RuntimeException ex) {
+                    // the header was checked when the entries were listed, but the rest of the dex file may still be
+                    // invalid, or the zip file may have changed since then
+                    throw new NotADexFile(String.format("%s in %s is not a valid dex file", entryName, zipFilePath),
+                            ex);
+                }
+                this.dexFile = new SoftReference<>(dexFile);
+            }
+            return dexFile;
+        }
+
+        @Nonnull
+        @Override
+        public MultiDexContainer<? extends DexBackedDexFile> getContainer() {
+            return ZipDexContainer.this;
+        }
+    }
+
+    /**
+     * Finds the offset of the data for each uncompressed entry in the given zip file, by reading the local header
+     * offsets from the central directory.
+     *
+     * @param zipBuffer A buffer containing the entire zip file
+     * @return A map of entry name to data offset. Entries that are compressed, or whose offset couldn't be
+     * determined (e.g. zip64 entries) are not included.
+     */
+    @Nonnull
+    private static Map<String, Integer> getStoredEntryDataOffsets(@Nonnull DexBuffer zipBuffer) {
+        Map<String, Integer> offsets = new HashMap<>();
+        try {
+            int endOffset = -1;
+            int minEndOffset = Math.max(0, zipBuffer.getLength() - END_OF_CENTRAL_DIRECTORY_SIZE - 0xffff);
+            for (int i = zipBuffer.getLength() - END_OF_CENTRAL_DIRECTORY_SIZE; i >= minEndOffset; i--) {
+                if (zipBuffer.readInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+                    endOffset = i;
+                    break;
+                }
+            }
+            if (endOffset == -1) {
+                return offsets;
+            }
+
+            int entryCount = zipBuffer.readUshort(endOffset + 10);
+            int offset = zipBuffer.readInt(endOffset + 16);
+            for (int i = 0; i < entryCount && offset >= 0; i++) {
+                if (zipBuffer.readInt(offset) != CENTRAL_DIRECTORY_SIGNATURE) {
+                    break;
+                }
+                int method = zipBuffer.readUshort(offset + 10);
+                int nameLength = zipBuffer.readUshort(offset + 28);
+                int extraLength = zipBuffer.readUshort(offset + 30);
+                int commentLength = zipBuffer.readUshort(offset + 32);
+                int localHeaderOffset = zipBuffer.readInt(offset + 42);
+
+                if (method == ZipEntry.STORED && localHeaderOffset >= 0 &&
+                        zipBuffer.readInt(localHeaderOffset) == LOCAL_FILE_HEADER_SIGNATURE) {
+                    String name = new String(zipBuffer.readByteRange(offset + 46, nameLength), StandardCharsets.UTF_8);
+                    offsets.put(name, localHeaderOffset + 30 +
+                            zipBuffer.readUshort(localHeaderOffset + 26) +
+                            zipBuffer.readUshort(localHeaderOffset + 28));
+                }
+                offset += 46 + nameLength + extraLength + commentLength;
+            }
+        } catch (IndexOutOfBoundsException ex) {
+            // The central directory is truncated or otherwise invalid. Any remaining entries will be inflated instead.
+        }
+        return offsets;
     }
 
     public boolean isZipFile() {
@@ -158,6 +386,12 @@ public class ZipDexContainer implements MultiDexContainer<DexBackedDexFile> {
         // just eat it
     }
 
+    /**
+     * Checks whether the given entry should be included as a dex file.
+     *
+     * This is only called for entries that start with a valid dex header. Subclasses can override it to exclude
+     * additional entries.
+     */
     protected boolean isDex(@Nonnull ZipFile zipFile, @Nonnull ZipEntry zipEntry) throws IOException {
         try (InputStream inputStream = new BufferedInputStream(zipFile.getInputStream(zipEntry))) {
             DexUtil.verifyDexHeader(inputStream);
@@ -73,8 +73,8 @@ public abstract class DexBackedInstruction implements Instruction {
         return instruction;
     }
     
-    private static DexBackedInstruction buildInstruction(@Nonnull DexBackedDexFile dexFile, @Nullable Opcode opcode,
-                                                         int instructionStartOffset) {
+    static DexBackedInstruction buildInstruction(@Nonnull DexBackedDexFile dexFile, @Nullable Opcode opcode,
+                                                 int instructionStartOffset) {
         if (opcode == null) {
             return new DexBackedUnknownInstruction(dexFile, instructionStartOffset);
         }
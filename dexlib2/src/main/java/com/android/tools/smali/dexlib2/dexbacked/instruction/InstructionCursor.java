@@ -0,0 +1,561 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.dexlib2.dexbacked.instruction;
+
+import com.android.tools.smali.dexlib2.Format;
+import com.android.tools.smali.dexlib2.Opcode;
+import com.android.tools.smali.dexlib2.ReferenceType;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedDexFile;
+import com.android.tools.smali.dexlib2.dexbacked.DexBuffer;
+import com.android.tools.smali.dexlib2.dexbacked.reference.DexBackedReference;
+import com.android.tools.smali.dexlib2.iface.instruction.Instruction;
+import com.android.tools.smali.dexlib2.iface.reference.Reference;
+import com.android.tools.smali.util.ExceptionWithContext;
+import com.android.tools.smali.util.NibbleUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * A reusable, forward-only cursor over the instructions of a method.
+ *
+ * Unlike {@link DexBackedInstruction#readFrom}, the cursor does not allocate an object per instruction. Each
+ * accessor decodes the requested field directly from the dex buffer for the instruction that the cursor is
+ * currently positioned on. A single cursor can be reused for any number of methods by calling one of the reset
+ * methods, e.g. via {@link com.android.tools.smali.dexlib2.dexbacked.DexBackedMethodImplementation#resetInstructionCursor}.
+ *
+ * The accessors follow the naming and semantics of the corresponding instruction interfaces. Calling an accessor
+ * that is not applicable to the current instruction's format throws an IllegalStateException.
+ */
+public class InstructionCursor {
+    @Nullable private DexBackedDexFile dexFile;
+    @Nullable private DexBuffer buffer;
+
+    private int startOffset;
+    private int endOffset;
+
+    private int instructionStart = -1;
+    private int nextInstructionStart;
+    private int opcodeValue;
+    @Nullable private Opcode opcode;
+    @Nonnull private Format format = Format.Format10x;
+
+    /**
+     * Positions the cursor before the first instruction of the given instruction list.
+     *
+     * @param dexFile The dex file containing the instructions
+     * @param instructionsStartOffset The offset of the first instruction, relative to the dex file's data buffer
+     * @param instructionsSize The size of the instruction list, in 16-bit code units
+     * @return this cursor
+     */
+    @Nonnull
+    public InstructionCursor reset(@Nonnull DexBackedDexFile dexFile, int instructionsStartOffset,
+                                   int instructionsSize) {
+        this.dexFile = dexFile;
+        this.buffer = dexFile.getDataBuffer();
+        this.startOffset = instructionsStartOffset;
+        this.endOffset = instructionsStartOffset + instructionsSize * 2;
+        this.instructionStart = -1;
+        this.nextInstructionStart = instructionsStartOffset;
+        this.opcodeValue = 0;
+        this.opcode = null;
+        this.format = Format.Format10x;
+        return this;
+    }
+
+    /**
+     * Advances the cursor to the next instruction.
+     *
+     * @return true if the cursor is now positioned on an instruction, or false if there are no more instructions
+     */
+    public boolean next() {
+        DexBuffer buffer = this.buffer;
+        if (buffer == null) {
+            throw new IllegalStateException("The cursor has not been reset");
+        }
+        if (nextInstructionStart >= endOffset) {
+            instructionStart = endOffset;
+            return false;
+        }
+
+        int start = nextInstructionStart;
+        int value = buffer.readUbyte(start);
+        if (value == 0) {
+            value = buffer.readUshort(start);
+        }
+
+        instructionStart = start;
+        opcodeValue = value;
+        opcode = getDexFile().getOpcodes().getOpcodeByValue(value);
+        // unknown opcodes are treated as a single code unit instruction, like DexBackedUnknownInstruction
+        format = opcode == null ? Format.Format10x : opcode.format;
+
+        int end = start + calculateCodeUnits() * 2;
+        if (end > endOffset || end < 0) {
+            throw new ExceptionWithContext("Instruction at code offset %d is truncated", getCodeAddress());
+        }
+        nextInstructionStart = end;
+        return true;
+    }
+
+    private int calculateCodeUnits() {
+        switch (format) {
+            case PackedSwitchPayload:
+                return 4 + readUshort(2) * 2;
+            case SparseSwitchPayload:
+                return 2 + readUshort(2) * 4;
+            case ArrayPayload: {
+                int elementWidth = readUshort(2);
+                if (elementWidth == 0) {
+                    return 4;
+                }
+                long size = ((long) elementWidth) * getBuffer().readSmallUint(instructionStart + 4);
+                if (size > Integer.MAX_VALUE) {
+                    throw new ExceptionWithContext("Invalid array-payload instruction: element width*count overflows");
+                }
+                return 4 + (int) ((size + 1) / 2);
+            }
+            default:
+                return format.size / 2;
+        }
+    }
+
+    @Nonnull
+    private DexBackedDexFile getDexFile() {
+        if (dexFile == null) {
+            throw new IllegalStateException("The cursor has not been reset");
+        }
+        return dexFile;
+    }
+
+    @Nonnull
+    private DexBuffer getBuffer() {
+        if (buffer == null) {
+            throw new IllegalStateException("The cursor has not been reset");
+        }
+        return buffer;
+    }
+
+    private void checkPositioned() {
+        if (instructionStart < 0 || instructionStart >= endOffset) {
+            throw new IllegalStateException("The cursor is not positioned on an instruction");
+        }
+    }
+
+    private int readUbyte(int offset) {
+        checkPositioned();
+        return getBuffer().readUbyte(instructionStart + offset);
+    }
+
+    private int readByte(int offset) {
+        checkPositioned();
+        return getBuffer().readByte(instructionStart + offset);
+    }
+
+    private int readUshort(int offset) {
+        checkPositioned();
+        return getBuffer().readUshort(instructionStart + offset);
+    }
+
+    private int readShort(int offset) {
+        checkPositioned();
+        return getBuffer().readShort(instructionStart + offset);
+    }
+
+    private int readInt(int offset) {
+        checkPositioned();
+        return getBuffer().readInt(instructionStart + offset);
+    }
+
+    @Nonnull
+    private IllegalStateException notApplicable(@Nonnull String field) {
+        return new IllegalStateException(String.format("Instructions of format %s do not have a %s",
+                format.name(), field));
+    }
+
+    /**
+     * @return The offset of the current instruction, relative to the dex file's data buffer
+     */
+    public int getInstructionStart() {
+        checkPositioned();
+        return instructionStart;
+    }
+
+    /**
+     * @return The offset of the current instruction from the start of the method, in 16-bit code units
+     */
+    public int getCodeAddress() {
+        checkPositioned();
+        return (instructionStart - startOffset) / 2;
+    }
+
+    /**
+     * @return The size of the current instruction, in 16-bit code units
+     */
+    public int getCodeUnits() {
+        checkPositioned();
+        return (nextInstructionStart - instructionStart) / 2;
+    }
+
+    /**
+     * @return The opcode of the current instruction, or null if the opcode value is not known for the dex file's
+     * opcode set
+     */
+    @Nullable
+    public Opcode getOpcode() {
+        checkPositioned();
+        return opcode;
+    }
+
+    /**
+     * @return The raw opcode value of the current instruction. For payload pseudo-instructions, this is the full
+     * 16-bit identifier.
+     */
+    public int getOpcodeValue() {
+        checkPositioned();
+        return opcodeValue;
+    }
+
+    /**
+     * @return The format of the current instruction. Instructions with an unknown opcode are reported as Format10x.
+     */
+    @Nonnull
+    public Format getFormat() {
+        checkPositioned();
+        return format;
+    }
+
+    public int getRegisterA() {
+        switch (format) {
+            case Format11n:
+            case Format12x:
+            case Format22c:
+            case Format22cs:
+            case Format22s:
+            case Format22t:
+                return NibbleUtils.extractLowUnsignedNibble(readUbyte(1));
+            case Format11x:
+            case Format21c:
+            case Format21ih:
+            case Format21lh:
+            case Format21s:
+            case Format21t:
+            case Format22b:
+            case Format22x:
+            case Format23x:
+            case Format31c:
+            case Format31i:
+            case Format31t:
+            case Format51l:
+                return readUbyte(1);
+            case Format32x:
+                return readUshort(2);
+            default:
+                throw notApplicable("register A");
+        }
+    }
+
+    public int getRegisterB() {
+        switch (format) {
+            case Format12x:
+            case Format22c:
+            case Format22cs:
+            case Format22s:
+            case Format22t:
+                return NibbleUtils.extractHighUnsignedNibble(readUbyte(1));
+            case Format22b:
+            case Format23x:
+                return readUbyte(2);
+            case Format22x:
+                return readUshort(2);
+            case Format32x:
+                return readUshort(4);
+            default:
+                throw notApplicable("register B");
+        }
+    }
+
+    public int getRegisterC() {
+        switch (format) {
+            case Format23x:
+                return readUbyte(3);
+            case Format35c:
+            case Format35mi:
+            case Format35ms:
+            case Format45cc:
+                return NibbleUtils.extractLowUnsignedNibble(readUbyte(4));
+            default:
+                throw notApplicable("register C");
+        }
+    }
+
+    public int getRegisterD() {
+        checkFiveRegisterFormat("register D");
+        return NibbleUtils.extractHighUnsignedNibble(readUbyte(4));
+    }
+
+    public int getRegisterE() {
+        checkFiveRegisterFormat("register E");
+        return NibbleUtils.extractLowUnsignedNibble(readUbyte(5));
+    }
+
+    public int getRegisterF() {
+        checkFiveRegisterFormat("register F");
+        return NibbleUtils.extractHighUnsignedNibble(readUbyte(5));
+    }
+
+    public int getRegisterG() {
+        checkFiveRegisterFormat("register G");
+        return NibbleUtils.extractLowUnsignedNibble(readUbyte(1));
+    }
+
+    private void checkFiveRegisterFormat(@Nonnull String field) {
+        switch (format) {
+            case Format35c:
+            case Format35mi:
+            case Format35ms:
+            case Format45cc:
+                return;
+            default:
+                throw notApplicable(field);
+        }
+    }
+
+    public int getRegisterCount() {
+        switch (format) {
+            case Format35c:
+            case Format35mi:
+            case Format35ms:
+            case Format45cc:
+                return NibbleUtils.extractHighUnsignedNibble(readUbyte(1));
+            case Format3rc:
+            case Format3rmi:
+            case Format3rms:
+            case Format4rcc:
+                return readUbyte(1);
+            default:
+                throw notApplicable("register count");
+        }
+    }
+
+    public int getStartRegister() {
+        switch (format) {
+            case Format3rc:
+            case Format3rmi:
+            case Format3rms:
+            case Format4rcc:
+                return readUshort(4);
+            default:
+                throw notApplicable("start register");
+        }
+    }
+
+    public int getNarrowLiteral() {
+        switch (format) {
+            case Format11n:
+                return NibbleUtils.extractHighSignedNibble(readUbyte(1));
+            case Format21ih:
+                return readShort(2) << 16;
+            case Format21s:
+            case Format22s:
+                return readShort(2);
+            case Format22b:
+                return readByte(3);
+            case Format31i:
+                return readInt(2);
+            default:
+                throw notApplicable("narrow literal");
+        }
+    }
+
+    public long getWideLiteral() {
+        switch (format) {
+            case Format21lh:
+                return ((long) readShort(2)) << 48;
+            case Format51l:
+                checkPositioned();
+                return getBuffer().readLong(instructionStart + 2);
+            default:
+                return getNarrowLiteral();
+        }
+    }
+
+    /**
+     * @return The branch offset of the current instruction, relative to the instruction itself, in 16-bit code
+     * units. For 31t instructions, this is the offset of the associated payload.
+     */
+    public int getCodeOffset() {
+        switch (format) {
+            case Format10t:
+                return readByte(1);
+            case Format20t:
+            case Format21t:
+            case Format22t:
+                return readShort(2);
+            case Format30t:
+            case Format31t:
+                return readInt(2);
+            default:
+                throw notApplicable("code offset");
+        }
+    }
+
+    /**
+     * @return Whether the current instruction has a reference into one of the dex file's index sections
+     */
+    public boolean hasReference() {
+        switch (getFormat()) {
+            case Format20bc:
+            case Format21c:
+            case Format22c:
+            case Format31c:
+            case Format35c:
+            case Format3rc:
+            case Format45cc:
+            case Format4rcc:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return Whether the current instruction has a second reference, i.e. is a 45cc or 4rcc instruction
+     */
+    public boolean hasReference2() {
+        Format format = getFormat();
+        return format == Format.Format45cc || format == Format.Format4rcc;
+    }
+
+    /**
+     * @return The reference type of the current instruction, as per {@link ReferenceType}
+     */
+    public int getReferenceType() {
+        switch (format) {
+            case Format20bc:
+                return (readUbyte(1) >>> 6) + 1;
+            case Format21c:
+            case Format22c:
+            case Format31c:
+            case Format35c:
+            case Format3rc:
+            case Format45cc:
+            case Format4rcc:
+                checkPositioned();
+                return opcode.referenceType;
+            default:
+                throw notApplicable("reference");
+        }
+    }
+
+    /**
+     * Gets the raw index encoded in the current instruction.
+     *
+     * For the odex-only formats 22cs, 35mi, 35ms, 3rmi and 3rms, this is the field offset, inline index or vtable
+     * index respectively.
+     *
+     * @return The index of the instruction's reference into the corresponding section of the dex file
+     */
+    public int getReferenceIndex() {
+        switch (format) {
+            case Format20bc:
+            case Format21c:
+            case Format22c:
+            case Format22cs:
+            case Format35c:
+            case Format35mi:
+            case Format35ms:
+            case Format3rc:
+            case Format3rmi:
+            case Format3rms:
+            case Format45cc:
+            case Format4rcc:
+                return readUshort(2);
+            case Format31c:
+                checkPositioned();
+                return getBuffer().readSmallUint(instructionStart + 2);
+            default:
+                throw notApplicable("reference");
+        }
+    }
+
+    public int getReferenceType2() {
+        switch (format) {
+            case Format45cc:
+            case Format4rcc:
+                checkPositioned();
+                return opcode.referenceType2;
+            default:
+                throw notApplicable("second reference");
+        }
+    }
+
+    public int getReferenceIndex2() {
+        switch (format) {
+            case Format45cc:
+            case Format4rcc:
+                return readUshort(6);
+            default:
+                throw notApplicable("second reference");
+        }
+    }
+
+    /**
+     * Resolves the reference of the current instruction. Note that this allocates a new reference object.
+     *
+     * @return The reference of the current instruction
+     */
+    @Nonnull
+    public Reference getReference() {
+        return DexBackedReference.makeReference(getDexFile(), getReferenceType(), getReferenceIndex());
+    }
+
+    /**
+     * Resolves the second reference of the current instruction. Note that this allocates a new reference object.
+     *
+     * @return The second reference of the current instruction
+     */
+    @Nonnull
+    public Reference getReference2() {
+        return DexBackedReference.makeReference(getDexFile(), getReferenceType2(), getReferenceIndex2());
+    }
+
+    /**
+     * Materializes the current instruction, for callers that need to hand off an {@link Instruction} instance.
+     *
+     * @return A new DexBackedInstruction for the current instruction
+     */
+    @Nonnull
+    public Instruction getInstruction() {
+        checkPositioned();
+        return DexBackedInstruction.buildInstruction(getDexFile(), opcode, instructionStart);
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.dexlib2.dexbacked.util;
+
+import com.android.tools.smali.dexlib2.Opcode;
+import com.android.tools.smali.dexlib2.ReferenceType;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedClassDef;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedDexFile;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedMethod;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedMethodImplementation;
+import com.android.tools.smali.dexlib2.dexbacked.instruction.InstructionCursor;
+import com.android.tools.smali.dexlib2.dexbacked.reference.DexBackedReference;
+import com.android.tools.smali.dexlib2.iface.reference.Reference;
+
+import javax.annotation.Nonnull;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Scans the code items of a dex file for the references made by its instructions, reporting the raw reference
+ * indices without decoding the referenced items.
+ *
+ * Callers that only care about a subset of the referenced items can collect the distinct indices they are interested
+ * in, and then use {@link #resolveReferences} to decode just those.
+ *
+ * A ReferenceScanner reuses a single {@link InstructionCursor}, and so is not thread safe.
+ */
+public class ReferenceScanner {
+    @Nonnull private final DexBackedDexFile dexFile;
+    @Nonnull private final InstructionCursor cursor = new InstructionCursor();
+
+    public interface ReferenceVisitor {
+        /**
+         * Called for each reference made by an instruction. Instructions with two references (i.e. 45cc and 4rcc
+         * instructions) result in two calls.
+         *
+         * @param methodIndex The method_id index of the method containing the instruction
+         * @param codeAddress The offset of the instruction from the start of the method, in 16-bit code units
+         * @param opcode The opcode of the instruction
+         * @param referenceType The type of the reference, as per {@link ReferenceType}
+         * @param referenceIndex The index of the referenced item in its section
+         */
+        void visitReference(int methodIndex, int codeAddress, @Nonnull Opcode opcode, int referenceType,
+                            int referenceIndex);
+    }
+
+    public ReferenceScanner(@Nonnull DexBackedDexFile dexFile) {
+        this.dexFile = dexFile;
+    }
+
+    /**
+     * Scans every method in the dex file.
+     *
+     * @param visitor The visitor to report references to
+     */
+    public void scan(@Nonnull ReferenceVisitor visitor) {
+        for (DexBackedClassDef classDef: dexFile.getClasses()) {
+            for (DexBackedMethod method: classDef.getMethods()) {
+                scanMethod(method, visitor);
+            }
+        }
+    }
+
+    /**
+     * Scans a single method.
+     *
+     * @param method The method to scan. It must belong to this scanner's dex file.
+     * @param visitor The visitor to report references to
+     */
+    public void scanMethod(@Nonnull DexBackedMethod method, @Nonnull ReferenceVisitor visitor) {
+        DexBackedMethodImplementation impl = method.getImplementation();
+        if (impl == null) {
+            return;
+        }
+
+        int methodIndex = method.methodIndex;
+        InstructionCursor cursor = impl.resetInstructionCursor(this.cursor);
+        while (cursor.next()) {
+            if (!cursor.hasReference()) {
+                continue;
+            }
+            Opcode opcode = cursor.getOpcode();
+            assert opcode != null;
+            visitor.visitReference(methodIndex, cursor.getCodeAddress(), opcode, cursor.getReferenceType(),
+                    cursor.getReferenceIndex());
+            if (cursor.hasReference2()) {
+                visitor.visitReference(methodIndex, cursor.getCodeAddress(), opcode, cursor.getReferenceType2(),
+                        cursor.getReferenceIndex2());
+            }
+        }
+    }
+
+    /**
+     * Gets the distinct indices of all items of the given type that are referenced from code.
+     *
+     * @param referenceType The type of reference to collect, as per {@link ReferenceType}
+     * @return A BitSet containing the referenced indices
+     */
+    @Nonnull
+    public BitSet getReferencedIndices(final int referenceType) {
+        final BitSet indices = new BitSet();
+        scan(new ReferenceVisitor() {
+            @Override
+            public void visitReference(int methodIndex, int codeAddress, @Nonnull Opcode opcode, int type,
+                                       int referenceIndex) {
+                if (type == referenceType) {
+                    indices.set(referenceIndex);
+                }
+            }
+        });
+        return indices;
+    }
+
+    /**
+     * Decodes the references for the given indices, and only those indices.
+     *
+     * @param referenceType The type of the references, as per {@link ReferenceType}
+     * @param indices The indices of the items to resolve
+     * @return A map from index to reference, in ascending index order
+     * @throws IndexOutOfBoundsException if any of the indices is out of bounds for the corresponding section
+     */
+    @Nonnull
+    public Map<Integer, Reference> resolveReferences(int referenceType, @Nonnull BitSet indices) {
+        int sectionSize = getSectionSize(referenceType);
+        Map<Integer, Reference> references = new LinkedHashMap<>();
+        for (int index = indices.nextSetBit(0); index >= 0; index = indices.nextSetBit(index + 1)) {
+            if (index >= sectionSize) {
+                throw new IndexOutOfBoundsException(String.format("Index out of bounds: %d", index));
+            }
+            references.put(index, DexBackedReference.makeReference(dexFile, referenceType, index));
+        }
+        return references;
+    }
+
+    private int getSectionSize(int referenceType) {
+        switch (referenceType) {
+            case ReferenceType.STRING:
+                return dexFile.getStringSection().size();
+            case ReferenceType.TYPE:
+                return dexFile.getTypeSection().size();
+            case ReferenceType.FIELD:
+                return dexFile.getFieldSection().size();
+            case ReferenceType.METHOD:
+                return dexFile.getMethodSection().size();
+            case ReferenceType.METHOD_PROTO:
+                return dexFile.getProtoSection().size();
+            case ReferenceType.CALL_SITE:
+                return dexFile.getCallSiteSection().size();
+            case ReferenceType.METHOD_HANDLE:
+                return dexFile.getMethodHandleSection().size();
+            default:
+                throw new IllegalArgumentException(String.format("Invalid reference type: %d", referenceType));
+        }
+    }
+}
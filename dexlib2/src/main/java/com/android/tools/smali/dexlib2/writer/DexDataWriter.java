@@ -31,6 +31,7 @@
 package com.android.tools.smali.dexlib2.writer;
 
 import com.android.tools.smali.util.ExceptionWithContext;
+import com.android.tools.smali.util.Utf8Utils;
 
 import javax.annotation.Nonnull;
 import java.io.BufferedOutputStream;
@@ -69,10 +70,18 @@ public class DexDataWriter extends BufferedOutputStream {
         this.filePosition = filePosition;
     }
 
+    // The write methods below write directly into the buffer when there is enough space, to avoid the overhead of
+    // BufferedOutputStream's synchronized methods for the many small writes that make up a dex file. They fall back
+    // to BufferedOutputStream when the buffer needs to be flushed.
+
     @Override
     public void write(int b) throws IOException {
         filePosition++;
-        super.write(b);
+        if (count < buf.length) {
+            buf[count++] = (byte)b;
+        } else {
+            super.write(b);
+        }
     }
 
     @Override
@@ -83,12 +92,23 @@ public class DexDataWriter extends BufferedOutputStream {
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
         filePosition += len;
-        super.write(b, off, len);
+        if (len <= buf.length - count) {
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        } else {
+            super.write(b, off, len);
+        }
     }
 
     public void writeLong(long value) throws IOException {
-        writeInt((int)value);
-        writeInt((int)(value >> 32));
+        if (buf.length - count >= 8) {
+            filePosition += 8;
+            putInt((int)value);
+            putInt((int)(value >> 32));
+        } else {
+            writeInt((int)value);
+            writeInt((int)(value >> 32));
+        }
     }
 
     public static void writeInt(OutputStream out, int value) throws IOException {
@@ -99,23 +119,47 @@ public class DexDataWriter extends BufferedOutputStream {
     }
 
     public void writeInt(int value) throws IOException {
-        writeInt(this, value);
+        if (buf.length - count >= 4) {
+            filePosition += 4;
+            putInt(value);
+        } else {
+            writeInt(this, value);
+        }
+    }
+
+    private void putInt(int value) {
+        byte[] buf = this.buf;
+        int count = this.count;
+        buf[count] = (byte)value;
+        buf[count + 1] = (byte)(value >> 8);
+        buf[count + 2] = (byte)(value >> 16);
+        buf[count + 3] = (byte)(value >> 24);
+        this.count = count + 4;
     }
 
     public void writeShort(int value) throws IOException {
         if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
             throw new ExceptionWithContext("Short value out of range: %d", value);
         }
-        write(value);
-        write(value >> 8);
+        writeShortUnchecked(value);
     }
 
     public void writeUshort(int value) throws IOException {
         if (value < 0 || value > 0xFFFF) {
             throw new ExceptionWithContext("Unsigned short value out of range: %d", value);
         }
-        write(value);
-        write(value >> 8);
+        writeShortUnchecked(value);
+    }
+
+    private void writeShortUnchecked(int value) throws IOException {
+        if (buf.length - count >= 2) {
+            filePosition += 2;
+            buf[count++] = (byte)value;
+            buf[count++] = (byte)(value >> 8);
+        } else {
+            write(value);
+            write(value >> 8);
+        }
     }
 
     public void writeUbyte(int value) throws IOException {
@@ -134,7 +178,22 @@ public class DexDataWriter extends BufferedOutputStream {
     }
 
     public void writeUleb128(int value) throws IOException {
-        writeUleb128(this, value);
+        // a uleb128 value is at most 5 bytes
+        if (buf.length - count < 5) {
+            writeUleb128(this, value);
+            return;
+        }
+
+        byte[] buf = this.buf;
+        int start = count;
+        int count = start;
+        while ((value & 0xffffffffL) > 0x7f) {
+            buf[count++] = (byte)((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buf[count++] = (byte)value;
+        filePosition += count - start;
+        this.count = count;
     }
 
     public static void writeSleb128(OutputStream out, int value) throws IOException {
@@ -154,7 +213,29 @@ public class DexDataWriter extends BufferedOutputStream {
     }
 
     public void writeSleb128(int value) throws IOException {
-        writeSleb128(this, value);
+        // a sleb128 value is at most 5 bytes
+        if (buf.length - count < 5) {
+            writeSleb128(this, value);
+            return;
+        }
+
+        byte[] buf = this.buf;
+        int start = count;
+        int count = start;
+        if (value >= 0) {
+            while (value > 0x3f) {
+                buf[count++] = (byte)((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+        } else {
+            while (value < -0x40) {
+                buf[count++] = (byte)((value & 0x7f) | 0x80);
+                value >>= 7;
+            }
+        }
+        buf[count++] = (byte)(value & 0x7f);
+        filePosition += count - start;
+        this.count = count;
     }
 
     public void writeEncodedValueHeader(int valueType, int valueArg) throws IOException {
@@ -242,30 +323,23 @@ public class DexDataWriter extends BufferedOutputStream {
     }
 
     public void writeString(String string) throws IOException {
-        int len = string.length();
+        int maxLength = string.length()*3;
+
+        if (buf.length - count >= maxLength) {
+            // encode directly into the output buffer
+            int end = Utf8Utils.stringToUtf8Bytes(string, buf, count);
+            filePosition += end - count;
+            count = end;
+            return;
+        }
 
         // make sure we have enough room in the temporary buffer
-        if (tempBuf.length <= string.length()*3) {
-            tempBuf = new byte[string.length()*3];
+        if (tempBuf.length <= maxLength) {
+            tempBuf = new byte[maxLength];
         }
 
-        final byte[] buf = tempBuf;
-
-        int bufPos = 0;
-        for (int i = 0; i < len; i++) {
-            char c = string.charAt(i);
-            if ((c != 0) && (c < 0x80)) {
-                buf[bufPos++] = (byte)c;
-            } else if (c < 0x800) {
-                buf[bufPos++] = (byte)(((c >> 6) & 0x1f) | 0xc0);
-                buf[bufPos++] = (byte)((c & 0x3f) | 0x80);
-            } else {
-                buf[bufPos++] = (byte)(((c >> 12) & 0x0f) | 0xe0);
-                buf[bufPos++] = (byte)(((c >> 6) & 0x3f) | 0x80);
-                buf[bufPos++] = (byte)((c & 0x3f) | 0x80);
-            }
-        }
-        write(buf, 0, bufPos);
+        int bufPos = Utf8Utils.stringToUtf8Bytes(string, tempBuf, 0);
+        write(tempBuf, 0, bufPos);
     }
 
     public void align() throws IOException {
@@ -124,6 +124,11 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.ByteArrayOutputStream;
@@ -196,6 +201,8 @@ public abstract class DexWriter<
 
     protected boolean hasHiddenApiRestrictions = false;
 
+    private boolean skipSignature = false;
+
     protected int numAnnotationSetRefItems = 0;
     protected int numAnnotationDirectoryItems = 0;
     protected int numDebugInfoItems = 0;
@@ -255,6 +262,18 @@ public abstract class DexWriter<
 
     @Nonnull protected abstract SectionProvider getSectionProvider();
 
+    /**
+     * Sets whether to skip computing the SHA-1 signature of the dex file.
+     *
+     * If skipped, the signature is left as zeros. This is useful when the consumer of the dex file will re-sign it
+     * anyway. The checksum is always computed.
+     *
+     * @param skipSignature Whether to skip computing the signature
+     */
+    public void setSkipSignature(boolean skipSignature) {
+        this.skipSignature = skipSignature;
+    }
+
     protected abstract void writeEncodedValue(@Nonnull InternalEncodedValueWriter writer,
                                               @Nonnull EncodedValue encodedValue) throws IOException;
 
@@ -373,6 +392,28 @@ public abstract class DexWriter<
 
     public void writeTo(@Nonnull DexDataStore dest,
                         @Nonnull DeferredOutputStreamFactory tempFactory) throws IOException {
+        this.writeTo(dest, tempFactory, 1);
+    }
+
+    /**
+     * Writes the dex file, using multiple threads to encode the larger data sections.
+     *
+     * @param dest The DexDataStore to write the dex file to
+     * @param jobs The number of threads to use. The debug info, code, annotation and encoded array items are encoded
+     *             in chunks on this many threads, and then written out in order on the calling thread. The
+     *             resulting dex file is identical to the one produced by a single threaded write.
+     */
+    public void writeTo(@Nonnull DexDataStore dest, int jobs) throws IOException {
+        this.writeTo(dest, MemoryDeferredOutputStream.getFactory(), jobs);
+    }
+
+    public void writeTo(@Nonnull DexDataStore dest,
+                        @Nonnull DeferredOutputStreamFactory tempFactory, int jobs) throws IOException {
+        ExecutorService executor = null;
+        if (jobs > 1) {
+            executor = Executors.newFixedThreadPool(jobs);
+        }
+
         try {
             int dataSectionOffset = getDataSectionOffset();
 
@@ -394,7 +435,7 @@ public abstract class DexWriter<
                 }
 
                 // call sites depend on encoded arrays..
-                writeEncodedArrays(offsetWriter);
+                writeEncodedArrays(offsetWriter, executor, jobs);
 
                 // class defs depend on method handles and call sites..
                 try (DexDataWriter callSiteWriter = outputAt(dest, indexWriter.getPosition() +
@@ -402,67 +443,186 @@ public abstract class DexWriter<
                     writeCallSites(callSiteWriter);
                 }
 
-                writeAnnotations(offsetWriter);
+                writeAnnotations(offsetWriter, executor, jobs);
                 writeAnnotationSets(offsetWriter);
                 writeAnnotationSetRefs(offsetWriter);
                 writeAnnotationDirectories(offsetWriter);
-                writeDebugAndCodeItems(offsetWriter, tempFactory.makeDeferredOutputStream());
+                writeDebugAndCodeItems(offsetWriter, tempFactory.makeDeferredOutputStream(), executor, jobs);
                 writeClasses(dest, indexWriter, offsetWriter);
 
                 writeMapItem(offsetWriter);
                 writeHeader(headerWriter, dataSectionOffset, offsetWriter.getPosition());
             }
-            updateSignature(dest);
-            updateChecksum(dest);
+            updateSignatureAndChecksum(dest);
         } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
             dest.close();
         }
     }
 
-    private void updateSignature(@Nonnull DexDataStore dataStore) throws IOException {
-        MessageDigest md;
-        try {
-            md = MessageDigest.getInstance("SHA-1");
-        } catch (NoSuchAlgorithmException ex) {
-            throw new RuntimeException(ex);
-        }
+    /**
+     * Encodes a contiguous range of items on a worker thread.
+     */
+    private interface ChunkEncoder<T, R> {
+        @Nonnull R encode(@Nonnull List<T> items) throws IOException;
+    }
 
-        byte[] buffer = new byte[4 * 1024];
-        InputStream input = dataStore.readAt(HeaderItem.SIGNATURE_DATA_START_OFFSET);
-        int bytesRead = input.read(buffer);
-        while (bytesRead >= 0) {
-            md.update(buffer, 0, bytesRead);
-            bytesRead = input.read(buffer);
+    /**
+     * Splits items into contiguous chunks, and submits a task to encode each chunk.
+     *
+     * @return A list of futures for the encoded chunks, in the same order as the items
+     */
+    @Nonnull
+    private static <T, R> List<Future<R>> encodeChunks(@Nonnull ExecutorService executor, int jobs,
+                                                      @Nonnull List<T> items,
+                                                      @Nonnull final ChunkEncoder<T, R> encoder) {
+        // use a few chunks per thread, so that an expensive chunk doesn't leave the other threads idle
+        int chunkSize = Math.max(16, (items.size() + jobs * 4 - 1) / (jobs * 4));
+
+        List<Future<R>> chunks = new ArrayList<>();
+        for (int start = 0; start < items.size(); start += chunkSize) {
+            final List<T> chunkItems = items.subList(start, Math.min(items.size(), start + chunkSize));
+            chunks.add(executor.submit(new Callable<R>() {
+                @Override public R call() throws IOException {
+                    return encoder.encode(chunkItems);
+                }
+            }));
         }
+        return chunks;
+    }
 
-        byte[] signature = md.digest();
-        if (signature.length != HeaderItem.SIGNATURE_SIZE) {
-            throw new RuntimeException("unexpected digest write: " + signature.length + " bytes");
+    @Nonnull
+    private static <R> R getChunk(@Nonnull Future<R> chunk) throws IOException {
+        try {
+            return chunk.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing dex file", ex);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException)cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            } else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new RuntimeException(cause);
         }
+    }
 
-        // write signature
-        OutputStream output = dataStore.outputAt(HeaderItem.SIGNATURE_OFFSET);
-        output.write(signature);
-        output.close();
+    /**
+     * A chunk of consecutive, independently encoded items.
+     */
+    private static class EncodedItems {
+        @Nonnull final byte[] data;
+        // The offset of each item within data, plus a final entry with the total size
+        @Nonnull final int[] itemOffsets;
+
+        EncodedItems(@Nonnull byte[] data, @Nonnull int[] itemOffsets) {
+            this.data = data;
+            this.itemOffsets = itemOffsets;
+        }
     }
 
-    private void updateChecksum(@Nonnull DexDataStore dataStore) throws IOException {
+    /**
+     * Computes and writes the signature and checksum of the dex file, in a single pass over the written data.
+     *
+     * The checksum covers the signature, which isn't known until the rest of the file has been read. So the
+     * checksum of the data following the signature is calculated alongside the signature, and is then combined with
+     * the checksum of the signature itself.
+     */
+    private void updateSignatureAndChecksum(@Nonnull DexDataStore dataStore) throws IOException {
+        MessageDigest md = null;
+        if (!skipSignature) {
+            try {
+                md = MessageDigest.getInstance("SHA-1");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+
         Adler32 a32 = new Adler32();
+        long checksumLength = 0;
 
-        byte[] buffer = new byte[4 * 1024];
-        InputStream input = dataStore.readAt(HeaderItem.CHECKSUM_DATA_START_OFFSET);
-        int bytesRead = input.read(buffer);
-        while (bytesRead >= 0) {
-            a32.update(buffer, 0, bytesRead);
-            bytesRead = input.read(buffer);
+        byte[] buffer = new byte[64 * 1024];
+        InputStream input;
+        if (md == null) {
+            // The signature is left as zeros, so it can just be included in the checksum as-is
+            input = dataStore.readAt(HeaderItem.CHECKSUM_DATA_START_OFFSET);
+        } else {
+            input = dataStore.readAt(HeaderItem.SIGNATURE_DATA_START_OFFSET);
+        }
+        try {
+            int bytesRead = input.read(buffer);
+            while (bytesRead >= 0) {
+                if (md != null) {
+                    md.update(buffer, 0, bytesRead);
+                }
+                a32.update(buffer, 0, bytesRead);
+                checksumLength += bytesRead;
+                bytesRead = input.read(buffer);
+            }
+        } finally {
+            input.close();
+        }
+
+        int checksum = (int)a32.getValue();
+        if (md != null) {
+            byte[] signature = md.digest();
+            if (signature.length != HeaderItem.SIGNATURE_SIZE) {
+                throw new RuntimeException("unexpected digest write: " + signature.length + " bytes");
+            }
+
+            // write signature
+            OutputStream output = dataStore.outputAt(HeaderItem.SIGNATURE_OFFSET);
+            output.write(signature);
+            output.close();
+
+            Adler32 signatureA32 = new Adler32();
+            signatureA32.update(signature);
+            checksum = combineAdler32((int)signatureA32.getValue(), checksum, checksumLength);
         }
 
         // write checksum, utilizing logic in DexWriter to write the integer value properly
         OutputStream output = dataStore.outputAt(HeaderItem.CHECKSUM_OFFSET);
-        DexDataWriter.writeInt(output, (int)a32.getValue());
+        DexDataWriter.writeInt(output, checksum);
         output.close();
     }
 
+    private static final int ADLER32_BASE = 65521;
+
+    /**
+     * Combines the Adler-32 checksums of two consecutive blocks of data, as per zlib's adler32_combine.
+     *
+     * @param adler1 The checksum of the first block
+     * @param adler2 The checksum of the second block
+     * @param length2 The length of the second block
+     * @return The checksum of the two blocks concatenated together
+     */
+    static int combineAdler32(int adler1, int adler2, long length2) {
+        long remainder = length2 % ADLER32_BASE;
+        long sum1 = adler1 & 0xffff;
+        long sum2 = (remainder * sum1) % ADLER32_BASE;
+        sum1 += (adler2 & 0xffff) + ADLER32_BASE - 1;
+        sum2 += ((adler1 >>> 16) & 0xffff) + ((adler2 >>> 16) & 0xffff) + ADLER32_BASE - remainder;
+        if (sum1 >= ADLER32_BASE) {
+            sum1 -= ADLER32_BASE;
+        }
+        if (sum1 >= ADLER32_BASE) {
+            sum1 -= ADLER32_BASE;
+        }
+        if (sum2 >= ((long)ADLER32_BASE << 1)) {
+            sum2 -= ((long)ADLER32_BASE << 1);
+        }
+        if (sum2 >= ADLER32_BASE) {
+            sum2 -= ADLER32_BASE;
+        }
+        return (int)(sum1 | (sum2 << 16));
+    }
+
     private static DexDataWriter outputAt(DexDataStore dataStore, int filePosition) throws IOException {
         return new DexDataWriter(dataStore.outputAt(filePosition), filePosition);
     }
@@ -858,41 +1018,122 @@ public abstract class DexWriter<
         }
     }
 
-    private void writeEncodedArrays(@Nonnull DexDataWriter writer) throws IOException {
-        InternalEncodedValueWriter encodedValueWriter = new InternalEncodedValueWriter(writer);
+    private void writeEncodedArrays(@Nonnull DexDataWriter writer, @Nullable ExecutorService executor, int jobs)
+            throws IOException {
         encodedArraySectionOffset = writer.getPosition();
 
+        if (executor != null) {
+            writeItemsInParallel(writer, executor, jobs, encodedArraySection.getItems(),
+                    new ItemWriter<EncodedArrayKey>() {
+                        @Override void write(@Nonnull DexDataWriter writer,
+                                             @Nonnull InternalEncodedValueWriter encodedValueWriter,
+                                             @Nonnull EncodedArrayKey key) throws IOException {
+                            writeEncodedArray(writer, encodedValueWriter, key);
+                        }
+                    });
+            return;
+        }
+
+        InternalEncodedValueWriter encodedValueWriter = new InternalEncodedValueWriter(writer);
         for (Map.Entry<? extends EncodedArrayKey, Integer> entry: encodedArraySection.getItems()) {
             entry.setValue(writer.getPosition());
-            List<? extends EncodedValue> encodedArray = encodedArraySection.getEncodedValueList(entry.getKey());
-            writer.writeUleb128(encodedArray.size());
-            for (EncodedValue value: encodedArray) {
-                writeEncodedValue(encodedValueWriter, value);
-            }
+            writeEncodedArray(writer, encodedValueWriter, entry.getKey());
         }
     }
 
-    private void writeAnnotations(@Nonnull DexDataWriter writer) throws IOException {
-        InternalEncodedValueWriter encodedValueWriter = new InternalEncodedValueWriter(writer);
+    private void writeEncodedArray(@Nonnull DexDataWriter writer,
+                                   @Nonnull InternalEncodedValueWriter encodedValueWriter,
+                                   @Nonnull EncodedArrayKey key) throws IOException {
+        List<? extends EncodedValue> encodedArray = encodedArraySection.getEncodedValueList(key);
+        writer.writeUleb128(encodedArray.size());
+        for (EncodedValue value: encodedArray) {
+            writeEncodedValue(encodedValueWriter, value);
+        }
+    }
 
+    private void writeAnnotations(@Nonnull DexDataWriter writer, @Nullable ExecutorService executor, int jobs)
+            throws IOException {
         annotationSectionOffset = writer.getPosition();
+
+        if (executor != null) {
+            writeItemsInParallel(writer, executor, jobs, annotationSection.getItems(),
+                    new ItemWriter<AnnotationKey>() {
+                        @Override void write(@Nonnull DexDataWriter writer,
+                                             @Nonnull InternalEncodedValueWriter encodedValueWriter,
+                                             @Nonnull AnnotationKey key) throws IOException {
+                            writeAnnotation(writer, encodedValueWriter, key);
+                        }
+                    });
+            return;
+        }
+
+        InternalEncodedValueWriter encodedValueWriter = new InternalEncodedValueWriter(writer);
         for (Map.Entry<? extends AnnotationKey, Integer> entry: annotationSection.getItems()) {
             entry.setValue(writer.getPosition());
+            writeAnnotation(writer, encodedValueWriter, entry.getKey());
+        }
+    }
 
-            AnnotationKey key = entry.getKey();
+    private void writeAnnotation(@Nonnull DexDataWriter writer,
+                                 @Nonnull InternalEncodedValueWriter encodedValueWriter,
+                                 @Nonnull AnnotationKey key) throws IOException {
+        writer.writeUbyte(annotationSection.getVisibility(key));
+        writer.writeUleb128(typeSection.getItemIndex(annotationSection.getType(key)));
 
-            writer.writeUbyte(annotationSection.getVisibility(key));
-            writer.writeUleb128(typeSection.getItemIndex(annotationSection.getType(key)));
+        Collection<? extends AnnotationElement> elements = CollectionUtils.immutableSortedCopy(
+            annotationSection.getElements(key), BaseAnnotationElement.BY_NAME);
 
-            Collection<? extends AnnotationElement> elements = CollectionUtils.immutableSortedCopy(
-                annotationSection.getElements(key), BaseAnnotationElement.BY_NAME);
+        writer.writeUleb128(elements.size());
 
-            writer.writeUleb128(elements.size());
+        for (AnnotationElement element: elements) {
+            writer.writeUleb128(stringSection.getItemIndex(annotationSection.getElementName(element)));
+            writeEncodedValue(encodedValueWriter, annotationSection.getElementValue(element));
+        }
+    }
+
+    private abstract class ItemWriter<Key> {
+        abstract void write(@Nonnull DexDataWriter writer, @Nonnull InternalEncodedValueWriter encodedValueWriter,
+                            @Nonnull Key key) throws IOException;
+    }
 
-            for (AnnotationElement element: elements) {
-                writer.writeUleb128(stringSection.getItemIndex(annotationSection.getElementName(element)));
-                writeEncodedValue(encodedValueWriter, annotationSection.getElementValue(element));
+    /**
+     * Encodes unaligned items that don't depend on each other's offsets on multiple threads, and then writes them
+     * out in order, setting the offset of each item.
+     */
+    private <Key> void writeItemsInParallel(@Nonnull DexDataWriter writer, @Nonnull ExecutorService executor,
+                                            int jobs,
+                                            @Nonnull Collection<? extends Map.Entry<? extends Key, Integer>> items,
+                                            @Nonnull final ItemWriter<Key> itemWriter) throws IOException {
+        List<Map.Entry<? extends Key, Integer>> entries = new ArrayList<>(items);
+
+        List<Future<EncodedItems>> chunks = encodeChunks(executor, jobs, entries,
+                new ChunkEncoder<Map.Entry<? extends Key, Integer>, EncodedItems>() {
+                    @Nonnull @Override
+                    public EncodedItems encode(@Nonnull List<Map.Entry<? extends Key, Integer>> chunkEntries)
+                            throws IOException {
+                        ByteArrayOutputStream chunkBytes = new ByteArrayOutputStream();
+                        DexDataWriter chunkWriter = new DexDataWriter(chunkBytes, 0, 8 * 1024);
+                        InternalEncodedValueWriter encodedValueWriter = new InternalEncodedValueWriter(chunkWriter);
+
+                        int[] itemOffsets = new int[chunkEntries.size() + 1];
+                        for (int i=0; i<chunkEntries.size(); i++) {
+                            itemOffsets[i] = chunkWriter.getPosition();
+                            itemWriter.write(chunkWriter, encodedValueWriter, chunkEntries.get(i).getKey());
+                        }
+                        itemOffsets[chunkEntries.size()] = chunkWriter.getPosition();
+                        chunkWriter.close();
+                        return new EncodedItems(chunkBytes.toByteArray(), itemOffsets);
+                    }
+                });
+
+        int entryIndex = 0;
+        for (Future<EncodedItems> future: chunks) {
+            EncodedItems chunk = getChunk(future);
+            int chunkStart = writer.getPosition();
+            for (int i=0; i<chunk.itemOffsets.length - 1; i++) {
+                entries.get(entryIndex++).setValue(chunkStart + chunk.itemOffsets[i]);
             }
+            writer.write(chunk.data);
         }
     }
 
@@ -1047,62 +1288,31 @@ public abstract class DexWriter<
     }
 
     private void writeDebugAndCodeItems(@Nonnull DexDataWriter offsetWriter,
-                                        @Nonnull DeferredOutputStream temp) throws IOException {
-        ByteArrayOutputStream ehBuf = new ByteArrayOutputStream();
+                                        @Nonnull DeferredOutputStream temp,
+                                        @Nullable ExecutorService executor, int jobs) throws IOException {
         debugSectionOffset = offsetWriter.getPosition();
 
         DexDataWriter codeWriter = new DexDataWriter(temp, 0);
 
         List<CodeItemOffset<MethodKey>> codeOffsets = new ArrayList<>();
 
-        for (ClassKey classKey: classSection.getSortedClasses()) {
-            Collection<? extends MethodKey> directMethods = classSection.getSortedDirectMethods(classKey);
-            Collection<? extends MethodKey> virtualMethods = classSection.getSortedVirtualMethods(classKey);
-
-            Iterable<MethodKey> methods = new ChainedIterable<MethodKey>(
-                (Collection<MethodKey>)directMethods, (Collection<MethodKey>)virtualMethods);
-
-            for (MethodKey methodKey: methods) {
-                List<? extends TryBlock<? extends ExceptionHandler>> tryBlocks =
-                        classSection.getTryBlocks(methodKey);
-                Iterable<? extends Instruction> instructions = classSection.getInstructions(methodKey);
-                Iterable<? extends DebugItem> debugItems = classSection.getDebugItems(methodKey);
-
-                if (instructions != null && stringSection.hasJumboIndexes()) {
-                    boolean needsFix = false;
-                    for (Instruction instruction: instructions) {
-                        if (instruction.getOpcode() == Opcode.CONST_STRING) {
-                            if (stringSection.getItemIndex(
-                                    (StringRef)((ReferenceInstruction)instruction).getReference()) >= 65536) {
-                                needsFix = true;
-                                break;
-                            }
-                        }
-                    }
+        if (executor != null) {
+            writeDebugAndCodeItemsInParallel(offsetWriter, codeWriter, codeOffsets, executor, jobs);
+        } else {
+            ByteArrayOutputStream ehBuf = new ByteArrayOutputStream();
 
-                    if (needsFix) {
-                        MutableMethodImplementation mutableMethodImplementation =
-                                classSection.makeMutableMethodImplementation(methodKey);
-                        fixInstructions(mutableMethodImplementation);
+            for (ClassKey classKey: classSection.getSortedClasses()) {
+                for (MethodKey methodKey: getSortedMethods(classKey)) {
+                    MethodCode code = getMethodCode(methodKey);
 
-                        instructions = mutableMethodImplementation.getInstructions();
-                        tryBlocks = mutableMethodImplementation.getTryBlocks();
-                        debugItems = mutableMethodImplementation.getDebugItems();
-                    }
-                }
+                    int debugItemOffset = writeDebugItem(offsetWriter,
+                            encodeDebugItem(classSection.getParameterNames(methodKey), code.debugItems));
+                    int codeItemOffset = writeCodeItem(codeWriter, ehBuf, code, debugItemOffset);
 
-                int debugItemOffset = writeDebugItem(offsetWriter, classSection.getParameterNames(methodKey), debugItems);
-                int codeItemOffset;
-                try {
-                    codeItemOffset = writeCodeItem(
-                            codeWriter, ehBuf, methodKey, tryBlocks, instructions, debugItemOffset);
-                } catch (RuntimeException ex) {
-                    throw new ExceptionWithContext(ex, "Exception occurred while writing code_item for method %s",
-                            methodSection.getMethodReference(methodKey));
-                }
-
-                if (codeItemOffset != -1) {
-                    codeOffsets.add(new CodeItemOffset<MethodKey>(methodKey, codeItemOffset));
+                    if (codeItemOffset != -1) {
+                        numCodeItemItems++;
+                        codeOffsets.add(new CodeItemOffset<MethodKey>(methodKey, codeItemOffset));
+                    }
                 }
             }
         }
@@ -1119,6 +1329,167 @@ public abstract class DexWriter<
         }
     }
 
+    /**
+     * Encodes the debug and code items on multiple threads, and then writes them out in order.
+     *
+     * Each chunk of classes is encoded into a separate buffer, with a placeholder for the offset of each code item's
+     * debug item. The debug items are then deduplicated and written in the same order as a single threaded write
+     * would, and the placeholders patched with their final offsets.
+     */
+    private void writeDebugAndCodeItemsInParallel(@Nonnull DexDataWriter offsetWriter,
+                                                  @Nonnull DexDataWriter codeWriter,
+                                                  @Nonnull List<CodeItemOffset<MethodKey>> codeOffsets,
+                                                  @Nonnull ExecutorService executor, int jobs) throws IOException {
+        List<ClassKey> classes = new ArrayList<>(classSection.getSortedClasses());
+
+        List<Future<EncodedCodeItems>> chunks = encodeChunks(executor, jobs, classes,
+                new ChunkEncoder<ClassKey, EncodedCodeItems>() {
+                    @Nonnull @Override public EncodedCodeItems encode(@Nonnull List<ClassKey> chunkClasses)
+                            throws IOException {
+                        return encodeCodeItems(chunkClasses);
+                    }
+                });
+
+        for (Future<EncodedCodeItems> future: chunks) {
+            EncodedCodeItems chunk = getChunk(future);
+
+            if (chunk.data.length > 0) {
+                // Each chunk is encoded starting at an aligned offset of 0
+                codeWriter.align();
+            }
+            int chunkStart = codeWriter.getPosition();
+
+            for (EncodedCodeItem item: chunk.items) {
+                int debugItemOffset = writeDebugItem(offsetWriter, item.debugInfo);
+
+                if (item.codeItemOffset != -1) {
+                    if (item.debugInfo != null) {
+                        // debug_info_off is at the same position in both variants of code_item
+                        int offset = item.codeItemOffset + 8;
+                        chunk.data[offset] = (byte)debugItemOffset;
+                        chunk.data[offset + 1] = (byte)(debugItemOffset >>> 8);
+                        chunk.data[offset + 2] = (byte)(debugItemOffset >>> 16);
+                        chunk.data[offset + 3] = (byte)(debugItemOffset >>> 24);
+                    }
+
+                    numCodeItemItems++;
+                    codeOffsets.add(new CodeItemOffset<MethodKey>(item.method, chunkStart + item.codeItemOffset));
+                }
+            }
+
+            codeWriter.write(chunk.data);
+        }
+    }
+
+    @Nonnull
+    private EncodedCodeItems encodeCodeItems(@Nonnull List<ClassKey> classes) throws IOException {
+        ByteArrayOutputStream chunkBytes = new ByteArrayOutputStream();
+        DexDataWriter chunkWriter = new DexDataWriter(chunkBytes, 0);
+        ByteArrayOutputStream ehBuf = new ByteArrayOutputStream();
+
+        List<EncodedCodeItem> items = new ArrayList<>();
+        for (ClassKey classKey: classes) {
+            for (MethodKey methodKey: getSortedMethods(classKey)) {
+                MethodCode code = getMethodCode(methodKey);
+
+                byte[] debugInfo = encodeDebugItem(classSection.getParameterNames(methodKey), code.debugItems);
+                // The real debug item offset isn't known yet. -1 is used as a placeholder, since it can't be
+                // confused with NO_OFFSET
+                int codeItemOffset = writeCodeItem(chunkWriter, ehBuf, code, debugInfo == null ? NO_OFFSET : -1);
+
+                items.add(new EncodedCodeItem(methodKey, debugInfo, codeItemOffset));
+            }
+        }
+        chunkWriter.close();
+
+        return new EncodedCodeItems(chunkBytes.toByteArray(), items);
+    }
+
+    @Nonnull
+    private Iterable<MethodKey> getSortedMethods(@Nonnull ClassKey classKey) {
+        Collection<? extends MethodKey> directMethods = classSection.getSortedDirectMethods(classKey);
+        Collection<? extends MethodKey> virtualMethods = classSection.getSortedVirtualMethods(classKey);
+
+        return new ChainedIterable<MethodKey>(
+            (Collection<MethodKey>)directMethods, (Collection<MethodKey>)virtualMethods);
+    }
+
+    /**
+     * Gets the implementation of the given method, converting any const-string instructions that need a jumbo
+     * index.
+     */
+    @Nonnull
+    private MethodCode getMethodCode(@Nonnull MethodKey methodKey) {
+        List<? extends TryBlock<? extends ExceptionHandler>> tryBlocks =
+                classSection.getTryBlocks(methodKey);
+        Iterable<? extends Instruction> instructions = classSection.getInstructions(methodKey);
+        Iterable<? extends DebugItem> debugItems = classSection.getDebugItems(methodKey);
+
+        if (instructions != null && stringSection.hasJumboIndexes()) {
+            boolean needsFix = false;
+            for (Instruction instruction: instructions) {
+                if (instruction.getOpcode() == Opcode.CONST_STRING) {
+                    if (stringSection.getItemIndex(
+                            (StringRef)((ReferenceInstruction)instruction).getReference()) >= 65536) {
+                        needsFix = true;
+                        break;
+                    }
+                }
+            }
+
+            if (needsFix) {
+                MutableMethodImplementation mutableMethodImplementation =
+                        classSection.makeMutableMethodImplementation(methodKey);
+                fixInstructions(mutableMethodImplementation);
+
+                instructions = mutableMethodImplementation.getInstructions();
+                tryBlocks = mutableMethodImplementation.getTryBlocks();
+                debugItems = mutableMethodImplementation.getDebugItems();
+            }
+        }
+
+        return new MethodCode(methodKey, tryBlocks, instructions, debugItems);
+    }
+
+    private class MethodCode {
+        @Nonnull final MethodKey method;
+        @Nonnull final List<? extends TryBlock<? extends ExceptionHandler>> tryBlocks;
+        @Nullable final Iterable<? extends Instruction> instructions;
+        @Nullable final Iterable<? extends DebugItem> debugItems;
+
+        MethodCode(@Nonnull MethodKey method, @Nonnull List<? extends TryBlock<? extends ExceptionHandler>> tryBlocks,
+                   @Nullable Iterable<? extends Instruction> instructions,
+                   @Nullable Iterable<? extends DebugItem> debugItems) {
+            this.method = method;
+            this.tryBlocks = tryBlocks;
+            this.instructions = instructions;
+            this.debugItems = debugItems;
+        }
+    }
+
+    private class EncodedCodeItem {
+        @Nonnull final MethodKey method;
+        @Nullable final byte[] debugInfo;
+        // The offset of the code item within the chunk, or -1 if the method has no code item
+        final int codeItemOffset;
+
+        EncodedCodeItem(@Nonnull MethodKey method, @Nullable byte[] debugInfo, int codeItemOffset) {
+            this.method = method;
+            this.debugInfo = debugInfo;
+            this.codeItemOffset = codeItemOffset;
+        }
+    }
+
+    private class EncodedCodeItems {
+        @Nonnull final byte[] data;
+        @Nonnull final List<EncodedCodeItem> items;
+
+        EncodedCodeItems(@Nonnull byte[] data, @Nonnull List<EncodedCodeItem> items) {
+            this.data = data;
+            this.items = items;
+        }
+    }
+
     private void fixInstructions(@Nonnull MutableMethodImplementation methodImplementation) {
         List<? extends Instruction> instructions = methodImplementation.getInstructions();
 
@@ -1136,9 +1507,14 @@ public abstract class DexWriter<
         }
     }
 
-    private int writeDebugItem(@Nonnull DexDataWriter writer,
-                               @Nullable Iterable<? extends StringKey> parameterNames,
-                               @Nullable Iterable<? extends DebugItem> debugItems) throws IOException {
+    /**
+     * Encodes the debug_info_item for a method.
+     *
+     * @return The encoded debug_info_item, or null if the method has no debug information
+     */
+    @Nullable
+    private byte[] encodeDebugItem(@Nullable Iterable<? extends StringKey> parameterNames,
+                                   @Nullable Iterable<? extends DebugItem> debugItems) throws IOException {
         int parameterCount = 0;
         int lastNamedParameterIndex = -1;
         if (parameterNames != null) {
@@ -1155,10 +1531,9 @@ public abstract class DexWriter<
 
         if (lastNamedParameterIndex == -1 && (debugItems == null 
                 || !debugItems.iterator().hasNext())) {
-            return NO_OFFSET;
+            return null;
         }
 
-        int debugItemOffset = writer.getPosition();
         int startingLineNumber = 0;
 
         if (debugItems != null) {
@@ -1199,12 +1574,20 @@ public abstract class DexWriter<
         tempDataWriter.write(0);
 
         tempDataWriter.flush();
-        byte[] debugInfo = tempByteOutput.toByteArray();
+        return tempByteOutput.toByteArray();
+    }
+
+    private int writeDebugItem(@Nonnull DexDataWriter writer, @Nullable byte[] debugInfo) throws IOException {
+        if (debugInfo == null) {
+            return NO_OFFSET;
+        }
+
         DebugInfoCache wrapBytes = new DebugInfoCache(debugInfo);
         int cacheBytes = debugInfoCaches.getOrDefault(wrapBytes, -1);
         if (cacheBytes >= 0) {
             return cacheBytes;
         } else {
+            int debugItemOffset = writer.getPosition();
             writer.write(debugInfo);
             debugInfoCaches.put(wrapBytes, debugItemOffset);
             numDebugInfoItems++;
@@ -1212,6 +1595,18 @@ public abstract class DexWriter<
         }
     }
 
+    private int writeCodeItem(@Nonnull DexDataWriter writer,
+                              @Nonnull ByteArrayOutputStream ehBuf,
+                              @Nonnull MethodCode code,
+                              int debugItemOffset) throws IOException {
+        try {
+            return writeCodeItem(writer, ehBuf, code.method, code.tryBlocks, code.instructions, debugItemOffset);
+        } catch (RuntimeException ex) {
+            throw new ExceptionWithContext(ex, "Exception occurred while writing code_item for method %s",
+                    methodSection.getMethodReference(code.method));
+        }
+    }
+
     private int writeCodeItem(@Nonnull DexDataWriter writer,
                               @Nonnull ByteArrayOutputStream ehBuf,
                               @Nonnull MethodKey methodKey,
@@ -1222,8 +1617,6 @@ public abstract class DexWriter<
             return -1;
         }
 
-        numCodeItemItems++;
-
         writer.align();
 
         int codeItemOffset = writer.getPosition();
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.dexlib2.writer.io;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A DexDataStore that writes to a file using positional FileChannel writes.
+ *
+ * Unlike FileDataStore, the streams returned by this store don't share a file pointer, so there is no need to seek
+ * before each write. Writes are not buffered, and so should be done in large blocks, e.g. via a DexDataWriter.
+ */
+public class FileChannelDataStore implements DexDataStore {
+    @Nonnull private final FileChannel channel;
+
+    public FileChannelDataStore(@Nonnull File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    @Nonnull @Override public OutputStream outputAt(final int offset) {
+        if (offset < 0) throw new IllegalArgumentException();
+        return new OutputStream() {
+            private long position = offset;
+
+            @Override public void write(int b) throws IOException {
+                write(new byte[] { (byte)b }, 0, 1);
+            }
+
+            @Override public void write(byte[] b) throws IOException {
+                write(b, 0, b.length);
+            }
+
+            @Override public void write(byte[] b, int off, int len) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            }
+        };
+    }
+
+    @Nonnull @Override public InputStream readAt(final int offset) {
+        if (offset < 0) throw new IllegalArgumentException();
+        return new InputStream() {
+            private long position = offset;
+            private long mark = offset;
+
+            @Override public int read() throws IOException {
+                byte[] b = new byte[1];
+                int ret = read(b, 0, 1);
+                if (ret <= 0) {
+                    return -1;
+                }
+                return b[0] & 0xff;
+            }
+
+            @Override public int read(byte[] b) throws IOException {
+                return read(b, 0, b.length);
+            }
+
+            @Override public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                int ret = channel.read(ByteBuffer.wrap(b, off, len), position);
+                if (ret > 0) {
+                    position += ret;
+                }
+                return ret;
+            }
+
+            @Override public long skip(long n) throws IOException {
+                long skipped = Math.max(0, Math.min(n, channel.size() - position));
+                position += skipped;
+                return skipped;
+            }
+
+            @Override public int available() throws IOException {
+                return (int)Math.max(0, Math.min(Integer.MAX_VALUE, channel.size() - position));
+            }
+
+            @Override public void mark(int i) {
+                mark = position;
+            }
+
+            @Override public void reset() throws IOException {
+                position = mark;
+            }
+
+            @Override public boolean markSupported() {
+                return true;
+            }
+        };
+    }
+
+    @Override public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -65,7 +65,7 @@ import com.android.tools.smali.dexlib2.iface.value.TypeEncodedValue;
 import com.android.tools.smali.dexlib2.writer.DexWriter;
 import com.android.tools.smali.dexlib2.writer.io.DexDataStore;
 import com.android.tools.smali.util.ExceptionWithContext;
-import com.android.tools.smali.dexlib2.writer.io.FileDataStore;
+import com.android.tools.smali.dexlib2.writer.io.FileChannelDataStore;
 
 import javax.annotation.Nonnull;
 import java.io.File;
@@ -118,7 +118,7 @@ public class DexPool extends DexWriter<CharSequence, StringReference, CharSequen
         for (ClassDef classDef: input.getClasses()) {
             dexPool.internClass(classDef);
         }
-        dexPool.writeTo(new FileDataStore(new File(path)));
+        dexPool.writeTo(new FileChannelDataStore(new File(path)));
     }
 
     /**
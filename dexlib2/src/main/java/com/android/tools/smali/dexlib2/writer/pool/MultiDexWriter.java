@@ -0,0 +1,258 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.dexlib2.writer.pool;
+
+import com.android.tools.smali.dexlib2.Opcodes;
+import com.android.tools.smali.dexlib2.iface.ClassDef;
+import com.android.tools.smali.dexlib2.writer.DexWriter;
+import com.android.tools.smali.dexlib2.writer.io.FileChannelDataStore;
+import com.android.tools.smali.util.ExceptionWithContext;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Packs classes into as many dex files as needed to stay within the method/field/type limits of a single dex file.
+ *
+ * Classes are interned into a DexPool in order, until interning a class causes one of the pools to overflow. That
+ * class is then rolled back with DexPool.mark()/reset(), and added to a new DexPool instead.
+ */
+public class MultiDexWriter {
+    @Nonnull private final Opcodes opcodes;
+    private int maxPoolSize = DexWriter.MAX_POOL_SIZE;
+    @Nonnull private Set<String> mainDexClasses = Collections.emptySet();
+
+    public MultiDexWriter(@Nonnull Opcodes opcodes) {
+        this.opcodes = opcodes;
+    }
+
+    /**
+     * Sets the maximum number of entries in any of the size-sensitive constant pools of a single dex file.
+     *
+     * @param maxPoolSize The maximum pool size. Defaults to DexWriter.MAX_POOL_SIZE
+     */
+    public void setMaxPoolSize(int maxPoolSize) {
+        if (maxPoolSize <= 0) {
+            throw new IllegalArgumentException("maxPoolSize must be positive");
+        }
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    /**
+     * Sets the classes that must be placed in the main (first) dex file.
+     *
+     * These classes are added to the main dex file before any other classes. Any remaining space in the main dex file
+     * is filled with other classes.
+     *
+     * @param mainDexClasses The types of the main dex classes, e.g. Lcom/example/Main;
+     */
+    public void setMainDexClasses(@Nonnull Collection<String> mainDexClasses) {
+        this.mainDexClasses = new HashSet<>(mainDexClasses);
+    }
+
+    /**
+     * Packs the given classes into DexPools.
+     *
+     * @param classes The classes to pack. If main dex classes have been set, this will be iterated over twice.
+     * @return A list of DexPools, in dex file order
+     */
+    @Nonnull
+    public List<DexPool> pack(@Nonnull Iterable<? extends ClassDef> classes) {
+        final List<DexPool> pools = new ArrayList<>();
+        try {
+            pack(classes, new PoolHandler() {
+                @Override public void handle(@Nonnull DexPool dexPool, int index) {
+                    pools.add(dexPool);
+                }
+            });
+        } catch (IOException ex) {
+            // the handler doesn't perform any I/O
+            throw new RuntimeException(ex);
+        }
+        return pools;
+    }
+
+    /**
+     * Packs the given classes into dex files and writes them to the given directory.
+     *
+     * The dex files are named classes.dex, classes2.dex, etc. Each dex file is written as soon as it is full, while
+     * the remaining classes are being packed.
+     *
+     * @param outputDir The directory to write the dex files to
+     * @param classes The classes to pack. If main dex classes have been set, this will be iterated over twice.
+     * @param jobs The number of dex files to write in parallel
+     * @return The dex files that were written, in order
+     */
+    @Nonnull
+    public List<File> writeTo(@Nonnull final File outputDir, @Nonnull Iterable<? extends ClassDef> classes,
+                              int jobs) throws IOException {
+        if (!outputDir.exists() && !outputDir.mkdirs()) {
+            throw new IOException("Couldn't create directory " + outputDir);
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, jobs));
+        final List<File> files = new ArrayList<>();
+        final List<Future<Void>> tasks = new ArrayList<>();
+        try {
+            pack(classes, new PoolHandler() {
+                @Override public void handle(@Nonnull final DexPool dexPool, int index) {
+                    final File file = new File(outputDir, getDexFileName(index));
+                    files.add(file);
+                    tasks.add(executor.submit(new Callable<Void>() {
+                        @Override public Void call() throws IOException {
+                            dexPool.writeTo(new FileChannelDataStore(file));
+                            return null;
+                        }
+                    }));
+                }
+            });
+
+            for (Future<Void> task: tasks) {
+                try {
+                    task.get();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while writing dex files", ex);
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException)cause;
+                    } else if (cause instanceof RuntimeException) {
+                        throw (RuntimeException)cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error)cause;
+                    }
+                    throw new RuntimeException(cause);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return files;
+    }
+
+    /**
+     * Gets the conventional name of the dex file at the given index, e.g. classes.dex, classes2.dex, etc.
+     */
+    @Nonnull
+    public static String getDexFileName(int index) {
+        if (index == 0) {
+            return "classes.dex";
+        }
+        return "classes" + (index + 1) + ".dex";
+    }
+
+    private interface PoolHandler {
+        void handle(@Nonnull DexPool dexPool, int index) throws IOException;
+    }
+
+    private void pack(@Nonnull Iterable<? extends ClassDef> classes, @Nonnull PoolHandler handler)
+            throws IOException {
+        Packer packer = new Packer(handler);
+
+        if (!mainDexClasses.isEmpty()) {
+            for (ClassDef classDef: classes) {
+                if (mainDexClasses.contains(classDef.getType())) {
+                    packer.add(classDef, true);
+                }
+            }
+        }
+
+        for (ClassDef classDef: classes) {
+            if (!mainDexClasses.contains(classDef.getType())) {
+                packer.add(classDef, false);
+            }
+        }
+
+        packer.finish();
+    }
+
+    private class Packer {
+        @Nonnull private final PoolHandler handler;
+        @Nonnull private DexPool currentPool = new DexPool(opcodes);
+        private int currentClassCount = 0;
+        private int poolIndex = 0;
+
+        Packer(@Nonnull PoolHandler handler) {
+            this.handler = handler;
+        }
+
+        void add(@Nonnull ClassDef classDef, boolean mainDexClass) throws IOException {
+            currentPool.mark();
+            currentPool.internClass(classDef);
+            if (!currentPool.hasOverflowed(maxPoolSize)) {
+                currentClassCount++;
+                return;
+            }
+
+            currentPool.reset();
+            if (mainDexClass) {
+                throw new ExceptionWithContext("The main dex classes don't fit in a single dex file");
+            }
+            if (currentClassCount == 0) {
+                throw new ExceptionWithContext("Class %s doesn't fit in a dex file on its own", classDef.getType());
+            }
+
+            finishPool();
+
+            currentPool.mark();
+            currentPool.internClass(classDef);
+            if (currentPool.hasOverflowed(maxPoolSize)) {
+                throw new ExceptionWithContext("Class %s doesn't fit in a dex file on its own", classDef.getType());
+            }
+            currentClassCount++;
+        }
+
+        void finish() throws IOException {
+            if (currentClassCount > 0 || poolIndex == 0) {
+                finishPool();
+            }
+        }
+
+        private void finishPool() throws IOException {
+            handler.handle(currentPool, poolIndex++);
+            currentPool = new DexPool(opcodes);
+            currentClassCount = 0;
+        }
+    }
+}
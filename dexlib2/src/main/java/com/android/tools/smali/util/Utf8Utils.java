@@ -26,6 +26,7 @@ package com.android.tools.smali.util;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Constants of type <code>CONSTANT_Utf8_info</code>.
@@ -41,29 +42,88 @@ public final class Utf8Utils {
      */
     public static byte[] stringToUtf8Bytes(String string) {
         int len = string.length();
+        int asciiLength = getAsciiPrefixLength(string);
+        if (asciiLength == len) {
+            // the common case. Every char maps to the byte with the same value
+            return string.getBytes(StandardCharsets.ISO_8859_1);
+        }
+
         byte[] bytes = new byte[len * 3]; // Avoid having to reallocate.
-        int outAt = 0;
+        int outAt = stringToUtf8Bytes(string, bytes, 0);
 
-        for (int i = 0; i < len; i++) {
+        byte[] result = new byte[outAt];
+        System.arraycopy(bytes, 0, result, 0, outAt);
+        return result;
+    }
+
+    /**
+     * Converts a string into its Java-style UTF-8 form, writing the bytes into an existing array.
+     *
+     * @param string non-null; the string to convert
+     * @param dest non-null; the array to write the UTF-8 bytes to. It must have room for at least 3 bytes per char
+     * @param offset the index in dest to start writing at
+     * @return the index in dest just past the last byte written
+     */
+    public static int stringToUtf8Bytes(@Nonnull String string, @Nonnull byte[] dest, int offset) {
+        int len = string.length();
+        int outAt = offset;
+
+        int i = 0;
+        // tight loop for the leading run of ascii characters, which is usually the whole string
+        for (; i < len; i++) {
+            char c = string.charAt(i);
+            if (c == 0 || c >= 0x80) {
+                break;
+            }
+            dest[outAt++] = (byte) c;
+        }
+
+        for (; i < len; i++) {
             char c = string.charAt(i);
             if ((c != 0) && (c < 0x80)) {
-                bytes[outAt] = (byte) c;
+                dest[outAt] = (byte) c;
                 outAt++;
             } else if (c < 0x800) {
-                bytes[outAt] = (byte) (((c >> 6) & 0x1f) | 0xc0);
-                bytes[outAt + 1] = (byte) ((c & 0x3f) | 0x80);
+                dest[outAt] = (byte) (((c >> 6) & 0x1f) | 0xc0);
+                dest[outAt + 1] = (byte) ((c & 0x3f) | 0x80);
                 outAt += 2;
             } else {
-                bytes[outAt] = (byte) (((c >> 12) & 0x0f) | 0xe0);
-                bytes[outAt + 1] = (byte) (((c >> 6) & 0x3f) | 0x80);
-                bytes[outAt + 2] = (byte) ((c & 0x3f) | 0x80);
+                dest[outAt] = (byte) (((c >> 12) & 0x0f) | 0xe0);
+                dest[outAt + 1] = (byte) (((c >> 6) & 0x3f) | 0x80);
+                dest[outAt + 2] = (byte) ((c & 0x3f) | 0x80);
                 outAt += 3;
             }
         }
+        return outAt;
+    }
 
-        byte[] result = new byte[outAt];
-        System.arraycopy(bytes, 0, result, 0, outAt);
-        return result;
+    private static int getAsciiPrefixLength(@Nonnull String string) {
+        int len = string.length();
+        for (int i = 0; i < len; i++) {
+            char c = string.charAt(i);
+            if (c == 0 || c >= 0x80) {
+                return i;
+            }
+        }
+        return len;
+    }
+
+    /**
+     * Gets the number of leading bytes that are single-byte (i.e. non-zero ascii) characters.
+     *
+     * @param bytes the bytes to scan
+     * @param start the index to start scanning at
+     * @param maxLength the maximum number of bytes to scan
+     * @return the length of the leading ascii run, which is at most maxLength
+     */
+    private static int getAsciiPrefixLength(@Nonnull byte[] bytes, int start, int maxLength) {
+        int end = start + Math.min(maxLength, bytes.length - start);
+        int at = start;
+        // a byte in the range 0x01-0x7f is positive when viewed as a signed byte
+        while (at < end && bytes[at] > 0) {
+            at++;
+        }
+        return at - start;
     }
 
     private static final ThreadLocal<char[]> localBuffer =
@@ -83,14 +143,20 @@ public final class Utf8Utils {
      * @return non-null; the converted string
      */
     public static String utf8BytesToString(byte[] bytes, int start, int length) {
+        int asciiLength = getAsciiPrefixLength(bytes, start, length);
+        if (asciiLength == length) {
+            return new String(bytes, start, length, StandardCharsets.ISO_8859_1);
+        }
+
         char[] chars = localBuffer.get();
         if (chars == null || chars.length < length) {
             chars = new char[length];
             localBuffer.set(chars);
         }
-        int outAt = 0;
+        int outAt = copyAscii(bytes, start, asciiLength, chars);
+        length -= asciiLength;
 
-        for (int at = start; length > 0; /*at*/) {
+        for (int at = start + asciiLength; length > 0; /*at*/) {
             int v0 = bytes[at] & 0xFF;
             char out;
             switch (v0 >> 4) {
@@ -190,15 +256,25 @@ public final class Utf8Utils {
      */
     public static String utf8BytesWithUtf16LengthToString(@Nonnull byte[] bytes, int start, int utf16Length,
                                                           @Nullable int[] readLength) {
+        int asciiLength = getAsciiPrefixLength(bytes, start, utf16Length);
+        if (asciiLength == utf16Length) {
+            // each char was encoded as a single byte
+            if (readLength != null && readLength.length > 0) {
+                readLength[0] = utf16Length;
+            }
+            return new String(bytes, start, utf16Length, StandardCharsets.ISO_8859_1);
+        }
+
         char[] chars = localBuffer.get();
         if (chars == null || chars.length < utf16Length) {
             chars = new char[utf16Length];
             localBuffer.set(chars);
         }
-        int outAt = 0;
+        int outAt = copyAscii(bytes, start, asciiLength, chars);
+        utf16Length -= asciiLength;
 
         int at = 0;
-        for (at = start; utf16Length > 0; utf16Length--) {
+        for (at = start + asciiLength; utf16Length > 0; utf16Length--) {
             int v0 = bytes[at] & 0xFF;
             char out;
             switch (v0 >> 4) {
@@ -265,11 +341,74 @@ public final class Utf8Utils {
 
         if (readLength != null && readLength.length > 0) {
             readLength[0] = at - start;
-            readLength[0] = at - start;
         }
         return new String(chars, 0, outAt);
     }
 
+    private static int copyAscii(@Nonnull byte[] bytes, int start, int length, @Nonnull char[] chars) {
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) bytes[start + i];
+        }
+        return length;
+    }
+
+    /**
+     * Compares a modified UTF-8 string against a Java string, without decoding the UTF-8 bytes into a new string.
+     *
+     * The result is consistent with {@link String#compareTo}, i.e. the strings are compared by UTF-16 code unit.
+     *
+     * @param bytes non-null; the bytes containing the UTF-8 string
+     * @param start the start index of the utf8 string to compare
+     * @param utf16Length the number of utf16 characters in the UTF-8 string
+     * @param string non-null; the string to compare against
+     * @return a negative value, zero or a positive value if the UTF-8 string is less than, equal to or greater than
+     * the given string
+     */
+    public static int compareUtf8BytesWithUtf16LengthToString(@Nonnull byte[] bytes, int start, int utf16Length,
+                                                              @Nonnull String string) {
+        int stringLength = string.length();
+        int count = Math.min(utf16Length, stringLength);
+
+        int at = start;
+        for (int i = 0; i < count; i++) {
+            int v0 = bytes[at] & 0xFF;
+            char c;
+            if (v0 > 0 && v0 < 0x80) {
+                c = (char) v0;
+                at++;
+            } else if ((v0 >> 5) == 0x06) {
+                // 110XXXXX -- two-byte encoding
+                int v1 = bytes[at + 1] & 0xFF;
+                if ((v1 & 0xc0) != 0x80) {
+                    throw badUtf8(v1, at + 1);
+                }
+                c = (char) (((v0 & 0x1f) << 6) | (v1 & 0x3f));
+                at += 2;
+            } else if ((v0 >> 4) == 0x0e) {
+                // 1110XXXX -- three-byte encoding
+                int v1 = bytes[at + 1] & 0xFF;
+                if ((v1 & 0xc0) != 0x80) {
+                    throw badUtf8(v1, at + 1);
+                }
+                int v2 = bytes[at + 2] & 0xFF;
+                if ((v2 & 0xc0) != 0x80) {
+                    throw badUtf8(v2, at + 2);
+                }
+                c = (char) (((v0 & 0x0f) << 12) | ((v1 & 0x3f) << 6) | (v2 & 0x3f));
+                at += 3;
+            } else {
+                // a zero byte, 10XXXXXX, 1111XXXX -- illegal
+                throw badUtf8(v0, at);
+            }
+
+            char other = string.charAt(i);
+            if (c != other) {
+                return c - other;
+            }
+        }
+        return utf16Length - stringLength;
+    }
+
     /**
      * Helper for {@link #utf8BytesToString}, which throws the right
      * exception for a bogus utf-8 byte.
@@ -280,7 +419,12 @@ public final class Utf8Utils {
      * @throws IllegalArgumentException always thrown
      */
     private static String throwBadUtf8(int value, int offset) {
-        throw new IllegalArgumentException("bad utf-8 byte " + Hex.u1(value) +
-                                           " at offset " + Hex.u4(offset));
+        throw badUtf8(value, offset);
+    }
+
+    @Nonnull
+    private static IllegalArgumentException badUtf8(int value, int offset) {
+        return new IllegalArgumentException("bad utf-8 byte " + Hex.u1(value) +
+                                            " at offset " + Hex.u4(offset));
     }
 }
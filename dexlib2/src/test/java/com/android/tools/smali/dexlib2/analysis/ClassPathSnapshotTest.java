@@ -0,0 +1,175 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.dexlib2.analysis;
+
+import com.android.tools.smali.dexlib2.AccessFlags;
+import com.android.tools.smali.dexlib2.Opcodes;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedDexFile;
+import com.android.tools.smali.dexlib2.iface.ClassDef;
+import com.android.tools.smali.dexlib2.iface.Field;
+import com.android.tools.smali.dexlib2.iface.Method;
+import com.android.tools.smali.dexlib2.iface.MethodParameter;
+import com.android.tools.smali.dexlib2.iface.reference.FieldReference;
+import com.android.tools.smali.dexlib2.immutable.ImmutableClassDef;
+import com.android.tools.smali.dexlib2.immutable.ImmutableField;
+import com.android.tools.smali.dexlib2.immutable.ImmutableMethod;
+import com.android.tools.smali.dexlib2.immutable.ImmutableMethodParameter;
+import com.android.tools.smali.dexlib2.writer.io.MemoryDataStore;
+import com.android.tools.smali.dexlib2.writer.pool.DexPool;
+import com.android.tools.smali.util.SparseArray;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+public class ClassPathSnapshotTest {
+    private static final int VIRTUAL = AccessFlags.PUBLIC.getValue() | AccessFlags.ABSTRACT.getValue();
+
+    private static ClassDef makeClass(String type, String superclass, String fieldType, String methodName) {
+        return new ImmutableClassDef(type, VIRTUAL, superclass, null, null, null,
+                Lists.<Field>newArrayList(
+                        new ImmutableField(type, "field", fieldType, AccessFlags.PUBLIC.getValue(), null, null, null)),
+                Lists.<Method>newArrayList(
+                        new ImmutableMethod(type, methodName,
+                                Lists.<MethodParameter>newArrayList(new ImmutableMethodParameter("I", null, null)),
+                                "V", VIRTUAL, null, null, null)));
+    }
+
+    private static DexBackedDexFile makeDexFile(String extraMethodName) throws IOException {
+        MemoryDataStore dataStore = new MemoryDataStore();
+        DexPool dexPool = new DexPool(Opcodes.getDefault());
+        dexPool.internClass(makeClass("Ltest/one;", "Ljava/lang/Object;", "J", "one"));
+        dexPool.internClass(makeClass("Ltest/two;", "Ltest/one;", "I", extraMethodName));
+        dexPool.writeTo(dataStore);
+        return new DexBackedDexFile(Opcodes.getDefault(), dataStore.getBuffer());
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        List<ClassProvider> providers =
+                ImmutableList.<ClassProvider>of(new DexClassProvider(makeDexFile("two")));
+        byte[] key = ClassPathSnapshot.getKey(providers, false, ClassPath.NOT_ART);
+        Assert.assertNotNull(key);
+
+        ClassPath classPath = new ClassPath(providers, false, ClassPath.NOT_ART);
+        ClassProto two = (ClassProto)classPath.getClass("Ltest/two;");
+        List<Method> vtable = two.getVtable();
+        SparseArray<FieldReference> fields = two.getInstanceFields();
+
+        File file = File.createTempFile("snapshot", ".cpsnap");
+        try {
+            ClassPathSnapshot.write(classPath, key, file);
+
+            ClassPathSnapshot snapshot = ClassPathSnapshot.open(file, key);
+            Assert.assertNotNull(snapshot);
+            Assert.assertNotNull(snapshot.getClassEntry("Ltest/one;"));
+            Assert.assertNotNull(snapshot.getClassEntry("Ltest/two;"));
+            Assert.assertNull(snapshot.getClassEntry("Ltest/three;"));
+
+            ClassPath cachedClassPath = new ClassPath(providers, false, ClassPath.NOT_ART, snapshot);
+            ClassProto cachedTwo = (ClassProto)cachedClassPath.getClass("Ltest/two;");
+            Assert.assertEquals(vtable, cachedTwo.getVtable());
+            Assert.assertEquals(vtable.get(vtable.size() - 1).getAccessFlags(),
+                    cachedTwo.getVtable().get(vtable.size() - 1).getAccessFlags());
+
+            SparseArray<FieldReference> cachedFields = cachedTwo.getInstanceFields();
+            Assert.assertEquals(fields.size(), cachedFields.size());
+            for (int i=0; i<fields.size(); i++) {
+                Assert.assertEquals(fields.keyAt(i), cachedFields.keyAt(i));
+                Assert.assertEquals(fields.valueAt(i), cachedFields.valueAt(i));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testKeyChangesWithClassPath() throws IOException {
+        List<ClassProvider> providers1 =
+                ImmutableList.<ClassProvider>of(new DexClassProvider(makeDexFile("two")));
+        List<ClassProvider> providers2 =
+                ImmutableList.<ClassProvider>of(new DexClassProvider(makeDexFile("three")));
+
+        byte[] key1 = ClassPathSnapshot.getKey(providers1, false, ClassPath.NOT_ART);
+        byte[] key2 = ClassPathSnapshot.getKey(providers2, false, ClassPath.NOT_ART);
+        Assert.assertFalse(Arrays.equals(key1, key2));
+        Assert.assertFalse(Arrays.equals(key1,
+                ClassPathSnapshot.getKey(providers1, true, ClassPath.NOT_ART)));
+
+        ClassPath classPath = new ClassPath(providers1, false, ClassPath.NOT_ART);
+        classPath.getClass("Ltest/two;");
+
+        File file = File.createTempFile("snapshot", ".cpsnap");
+        try {
+            ClassPathSnapshot.write(classPath, key1, file);
+            Assert.assertNull(ClassPathSnapshot.open(file, key2));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testExcludedProviders() throws IOException {
+        ClassProvider bootProvider = new DexClassProvider(makeDexFile("two"));
+        MemoryDataStore dataStore = new MemoryDataStore();
+        DexPool dexPool = new DexPool(Opcodes.getDefault());
+        dexPool.internClass(makeClass("Ltest/app;", "Ltest/two;", "I", "app"));
+        dexPool.internClass(makeClass("Ltest/appBase;", "Ljava/lang/Object;", "I", "appBase"));
+        dexPool.writeTo(dataStore);
+        ClassProvider appProvider =
+                new DexClassProvider(new DexBackedDexFile(Opcodes.getDefault(), dataStore.getBuffer()));
+
+        ClassPath classPath = new ClassPath(ImmutableList.of(bootProvider, appProvider), false, ClassPath.NOT_ART);
+        ((ClassProto)classPath.getClass("Ltest/app;")).getVtable();
+        ((ClassProto)classPath.getClass("Ltest/appBase;")).getVtable();
+
+        byte[] key = ClassPathSnapshot.getKey(ImmutableList.of(bootProvider), false, ClassPath.NOT_ART);
+        Assert.assertNotNull(key);
+        File file = File.createTempFile("snapshot", ".cpsnap");
+        try {
+            ClassPathSnapshot.write(classPath, ImmutableList.of(appProvider), key, file);
+
+            ClassPathSnapshot snapshot = ClassPathSnapshot.open(file, key);
+            Assert.assertNotNull(snapshot);
+            Assert.assertNotNull(snapshot.getClassEntry("Ltest/one;"));
+            Assert.assertNotNull(snapshot.getClassEntry("Ltest/two;"));
+            Assert.assertNull(snapshot.getClassEntry("Ltest/app;"));
+            Assert.assertNull(snapshot.getClassEntry("Ltest/appBase;"));
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.dexlib2.analysis;
+
+import com.android.tools.smali.dexlib2.Opcodes;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedDexFile;
+import com.android.tools.smali.dexlib2.iface.ClassDef;
+import com.android.tools.smali.dexlib2.immutable.ImmutableDexFile;
+import com.android.tools.smali.dexlib2.writer.io.MemoryDataStore;
+import com.android.tools.smali.dexlib2.writer.pool.DexPool;
+import com.google.common.collect.ImmutableSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class DexClassProviderTest {
+    private static final ImmutableSet<ClassDef> CLASSES = ImmutableSet.of(
+            TestUtils.makeClassDef("Ltest/b;", "Ltest/a;"),
+            TestUtils.makeClassDef("Ltest/d;", "Ltest/c;", "Ltest/e;"),
+            TestUtils.makeClassDef("Ltest/a;", "Ljava/lang/Object;"),
+            TestUtils.makeInterfaceDef("Ltest/e;"));
+
+    private static void checkProvider(DexClassProvider provider) {
+        for (ClassDef classDef: CLASSES) {
+            ClassDef found = provider.getClassDef(classDef.getType());
+            Assert.assertNotNull(classDef.getType(), found);
+            Assert.assertEquals(classDef.getType(), found.getType());
+            Assert.assertEquals(classDef.getSuperclass(), found.getSuperclass());
+        }
+
+        // referenced, but not defined
+        Assert.assertNull(provider.getClassDef("Ltest/c;"));
+        Assert.assertNull(provider.getClassDef("Ljava/lang/Object;"));
+        // not referenced at all
+        Assert.assertNull(provider.getClassDef("La;"));
+        Assert.assertNull(provider.getClassDef("Lzzz;"));
+        Assert.assertNull(provider.getClassDef("Ltest/bb;"));
+    }
+
+    @Test
+    public void testDexBackedLookup() throws IOException {
+        MemoryDataStore dataStore = new MemoryDataStore();
+        DexPool dexPool = new DexPool(Opcodes.getDefault());
+        for (ClassDef classDef: CLASSES) {
+            dexPool.internClass(classDef);
+        }
+        dexPool.writeTo(dataStore);
+        DexBackedDexFile dexFile = new DexBackedDexFile(Opcodes.getDefault(), dataStore.getBuffer());
+
+        DexClassProvider provider = new DexClassProvider(dexFile);
+        checkProvider(provider);
+        Assert.assertSame(provider.getClassDef("Ltest/d;"), provider.getClassDef("Ltest/d;"));
+    }
+
+    @Test
+    public void testImmutableLookup() {
+        checkProvider(new DexClassProvider(new ImmutableDexFile(Opcodes.getDefault(), CLASSES)));
+    }
+}
@@ -260,4 +260,81 @@ public class MethodAnalyzerTest {
         Assert.assertEquals("Ljava/lang/Object;",
                 analyzedInstructions.get(4).getPreInstructionRegisterType(2).type.getType());
     }
+
+    @Test
+    public void testControlFlowAndPostRegisterTypes() throws IOException {
+        MethodImplementationBuilder builder = new MethodImplementationBuilder(2);
+
+        builder.addInstruction(new BuilderInstruction22c(Opcode.INSTANCE_OF, 0, 1,
+                new ImmutableTypeReference("Lmain;")));
+        builder.addInstruction(new BuilderInstruction21t(Opcode.IF_EQZ, 0, builder.getLabel("not_instance_of")));
+        builder.addInstruction(new BuilderInstruction10x(Opcode.RETURN_VOID));
+
+        builder.addLabel("not_instance_of");
+        builder.addInstruction(new BuilderInstruction10x(Opcode.RETURN_VOID));
+
+        MethodImplementation methodImplementation = builder.getMethodImplementation();
+
+        Method method = new ImmutableMethod("Lmain;", "narrowing",
+                Collections.singletonList(new ImmutableMethodParameter("Ljava/lang/Object;", null, null)), "V",
+                AccessFlags.PUBLIC.getValue(), null, null, methodImplementation);
+        ClassDef classDef = new ImmutableClassDef("Lmain;", AccessFlags.PUBLIC.getValue(), "Ljava/lang/Object;", null,
+                null, null, null, Collections.singletonList(method));
+        DexFile dexFile = new ImmutableDexFile(Opcodes.forApi(19), Collections.singletonList(classDef));
+
+        ClassPath classPath = new ClassPath(new DexClassProvider(dexFile));
+        MethodAnalyzer methodAnalyzer = new MethodAnalyzer(classPath, method, null, false);
+
+        List<AnalyzedInstruction> analyzedInstructions = methodAnalyzer.getAnalyzedInstructions();
+        AnalyzedInstruction instanceOf = analyzedInstructions.get(0);
+        AnalyzedInstruction ifEqz = analyzedInstructions.get(1);
+
+        Assert.assertTrue(instanceOf.isBeginningInstruction());
+        Assert.assertEquals(1, instanceOf.getSuccessorCount());
+        Assert.assertSame(ifEqz, instanceOf.getSuccessors().get(0));
+        Assert.assertEquals(Lists.newArrayList(analyzedInstructions.get(2), analyzedInstructions.get(3)),
+                ifEqz.getSuccessors());
+        Assert.assertEquals(1, analyzedInstructions.get(3).getPredecessorCount());
+        Assert.assertSame(ifEqz, analyzedInstructions.get(3).getPredecessors().first());
+
+        Assert.assertEquals(2, instanceOf.getRegisterCount());
+        Assert.assertEquals(RegisterType.BOOLEAN, instanceOf.getPostInstructionRegisterType(0).category);
+        Assert.assertNotEquals(instanceOf.getPreInstructionRegisterType(0),
+                instanceOf.getPostInstructionRegisterType(0));
+        Assert.assertEquals(instanceOf.getPreInstructionRegisterType(1), instanceOf.getPostInstructionRegisterType(1));
+        Assert.assertEquals(instanceOf.getPostInstructionRegisterType(0), ifEqz.getPreInstructionRegisterType(0));
+        Assert.assertEquals(ifEqz.getPreInstructionRegisterType(0), ifEqz.getPostInstructionRegisterType(0));
+    }
+
+    @Test
+    public void testAnalysisCounters() throws IOException {
+        MethodImplementationBuilder builder = new MethodImplementationBuilder(2);
+
+        builder.addLabel("loop");
+        builder.addInstruction(new BuilderInstruction12x(Opcode.MOVE_OBJECT, 0, 1));
+        builder.addInstruction(new BuilderInstruction21t(Opcode.IF_EQZ, 0, builder.getLabel("loop")));
+        builder.addInstruction(new BuilderInstruction10x(Opcode.RETURN_VOID));
+
+        MethodImplementation methodImplementation = builder.getMethodImplementation();
+
+        Method method = new ImmutableMethod("Lmain;", "loop",
+                Collections.singletonList(new ImmutableMethodParameter("Ljava/lang/Object;", null, null)), "V",
+                AccessFlags.PUBLIC.getValue(), null, null, methodImplementation);
+        ClassDef classDef = new ImmutableClassDef("Lmain;", AccessFlags.PUBLIC.getValue(), "Ljava/lang/Object;", null,
+                null, null, null, Collections.singletonList(method));
+        DexFile dexFile = new ImmutableDexFile(Opcodes.forApi(19), Collections.singletonList(classDef));
+
+        ClassPath classPath = new ClassPath(new DexClassProvider(dexFile));
+        MethodAnalyzer methodAnalyzer = new MethodAnalyzer(classPath, method, null, false);
+
+        Assert.assertNull(methodAnalyzer.getAnalysisException());
+        // the type of v0 flowing back into the move-object from the if-eqz is merged while the move-object itself is
+        // being analyzed, so each instruction only needs to be analyzed once
+        Assert.assertEquals(3, methodAnalyzer.getInstructionAnalysisCount());
+        Assert.assertTrue(methodAnalyzer.getRegisterMergeCount() > 0);
+
+        List<AnalyzedInstruction> analyzedInstructions = methodAnalyzer.getAnalyzedInstructions();
+        Assert.assertEquals("Ljava/lang/Object;",
+                analyzedInstructions.get(0).getPreInstructionRegisterType(0).type.getType());
+    }
 }
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.dexlib2.analysis.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ConcurrentLruCacheTest {
+    @Test
+    public void testCreate() {
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(10) {
+            @Override protected String create(String key) {
+                return key.startsWith("x") ? null : key + "!";
+            }
+        };
+
+        String value = cache.get("a");
+        Assert.assertEquals("a!", value);
+        Assert.assertSame(value, cache.get("a"));
+        Assert.assertNull(cache.get("xyz"));
+        Assert.assertEquals(1, cache.size());
+
+        Assert.assertEquals("a!", cache.put("a", "b"));
+        Assert.assertEquals("b", cache.get("a"));
+        Assert.assertEquals("b", cache.remove("a"));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        ConcurrentLruCache<Integer, Integer> cache = new ConcurrentLruCache<Integer, Integer>(16) {
+            @Override protected Integer create(Integer key) {
+                return key;
+            }
+        };
+
+        for (int i=0; i<16; i++) {
+            cache.get(i);
+        }
+        // keep 0 recently used while the rest of the cache is filled up
+        for (int i=16; i<24; i++) {
+            cache.get(0);
+            cache.get(i);
+        }
+
+        Assert.assertTrue(cache.size() <= 16);
+
+        // the original values are still returned if they weren't evicted
+        for (int i=0; i<24; i++) {
+            Integer value = cache.get(i);
+            Assert.assertEquals(Integer.valueOf(i), value);
+        }
+
+        cache.evictAll();
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testRecentlyUsedEntrySurvives() {
+        final AtomicInteger createCount = new AtomicInteger();
+        ConcurrentLruCache<Integer, Integer> cache = new ConcurrentLruCache<Integer, Integer>(16) {
+            @Override protected Integer create(Integer key) {
+                createCount.incrementAndGet();
+                return key;
+            }
+        };
+
+        cache.get(0);
+        for (int i=1; i<100; i++) {
+            cache.get(0);
+            cache.get(i);
+        }
+        Assert.assertEquals(100, createCount.get());
+
+        cache.get(0);
+        Assert.assertEquals(100, createCount.get());
+    }
+
+    @Test
+    public void testSingleCreation() throws Exception {
+        final AtomicInteger createCount = new AtomicInteger();
+        final CountDownLatch creating = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final ConcurrentLruCache<String, Object> cache = new ConcurrentLruCache<String, Object>(10) {
+            @Override protected Object create(String key) {
+                createCount.incrementAndGet();
+                creating.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+                return new Object();
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for (int i=0; i<8; i++) {
+                futures.add(executor.submit(new Callable<Object>() {
+                    @Override public Object call() {
+                        return cache.get("key");
+                    }
+                }));
+            }
+
+            Assert.assertTrue(creating.await(10, TimeUnit.SECONDS));
+            release.countDown();
+
+            Object value = futures.get(0).get();
+            Assert.assertNotNull(value);
+            for (Future<Object> future: futures) {
+                Assert.assertSame(value, future.get());
+            }
+            Assert.assertEquals(1, createCount.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailedCreationIsRetried() {
+        final AtomicInteger createCount = new AtomicInteger();
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(10) {
+            @Override protected String create(String key) {
+                if (createCount.incrementAndGet() == 1) {
+                    throw new IllegalArgumentException();
+                }
+                return key;
+            }
+        };
+
+        try {
+            cache.get("a");
+            Assert.fail();
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals("a", cache.get("a"));
+        Assert.assertEquals(2, createCount.get());
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.dexlib2.dexbacked;
+
+import com.android.tools.smali.dexlib2.DexFileFactory;
+import com.android.tools.smali.dexlib2.Opcodes;
+import com.android.tools.smali.dexlib2.dexbacked.reference.DexBackedMethodProtoReference;
+import com.android.tools.smali.dexlib2.immutable.reference.ImmutableMethodReference;
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class DexBackedDexFileTest {
+    private DexBackedDexFile dexFile;
+
+    @Before
+    public void loadDexFile() throws IOException {
+        URL url = DexBackedDexFileTest.class.getClassLoader().getResource("accessorTest.dex");
+        Assert.assertNotNull(url);
+        dexFile = DexFileFactory.loadDexFile(url.getFile(), Opcodes.getDefault());
+    }
+
+    @Test
+    public void testStringCache() {
+        List<String> uncached = new ArrayList<>(dexFile.getStringSection());
+        Assert.assertFalse(dexFile.isStringCacheEnabled());
+
+        dexFile.setStringCacheEnabled(true);
+        Assert.assertTrue(dexFile.isStringCacheEnabled());
+        Assert.assertEquals(uncached, new ArrayList<>(dexFile.getStringSection()));
+        for (int i = 0; i < uncached.size(); i++) {
+            Assert.assertSame(dexFile.getStringSection().get(i), dexFile.getStringSection().get(i));
+        }
+        for (int i = 0; i < dexFile.getTypeSection().size(); i++) {
+            Assert.assertSame(dexFile.getTypeSection().get(i), dexFile.getTypeSection().get(i));
+        }
+
+        dexFile.setStringCacheEnabled(false);
+        Assert.assertFalse(dexFile.isStringCacheEnabled());
+        Assert.assertEquals(uncached, new ArrayList<>(dexFile.getStringSection()));
+    }
+
+    @Test
+    public void testCompareString() {
+        List<String> strings = new ArrayList<>(dexFile.getStringSection());
+        for (boolean cached: new boolean[] { false, true }) {
+            dexFile.setStringCacheEnabled(cached);
+            for (int i = 0; i < strings.size(); i++) {
+                Assert.assertEquals(0, dexFile.compareString(i, strings.get(i)));
+                if (i > 0) {
+                    Assert.assertTrue(dexFile.compareString(i, strings.get(i - 1)) > 0);
+                    Assert.assertTrue(dexFile.compareString(i - 1, strings.get(i)) < 0);
+                }
+                Assert.assertTrue(dexFile.compareString(i, strings.get(i) + "a") < 0);
+            }
+        }
+    }
+
+    @Test
+    public void testFindIndexes() {
+        for (int i = 0; i < dexFile.getStringSection().size(); i++) {
+            Assert.assertEquals(i, dexFile.findStringIndex(dexFile.getStringSection().get(i)));
+        }
+        for (int i = 0; i < dexFile.getTypeSection().size(); i++) {
+            Assert.assertEquals(i, dexFile.findTypeIndex(dexFile.getTypeSection().get(i)));
+        }
+        for (int i = 0; i < dexFile.getFieldSection().size(); i++) {
+            Assert.assertEquals(i, dexFile.findFieldIndex(dexFile.getFieldSection().get(i)));
+        }
+        for (int i = 0; i < dexFile.getProtoSection().size(); i++) {
+            DexBackedMethodProtoReference proto = dexFile.getProtoSection().get(i);
+            Assert.assertEquals(i, dexFile.findProtoIndex(proto.getParameterTypes(), proto.getReturnType()));
+        }
+        for (int i = 0; i < dexFile.getMethodSection().size(); i++) {
+            Assert.assertEquals(i, dexFile.findMethodIndex(dexFile.getMethodSection().get(i)));
+        }
+
+        Assert.assertEquals(-1, dexFile.findStringIndex("not a string in the dex file"));
+        Assert.assertEquals(-1, dexFile.findTypeIndex("Lnot/a/Type;"));
+        Assert.assertEquals(-1, dexFile.findFieldIndex("Lnot/a/Type;", "field", "I"));
+        Assert.assertEquals(-1, dexFile.findMethodIndex(new ImmutableMethodReference(
+                "Ljava/lang/Object;", "notAMethod", ImmutableList.<String>of(), "V")));
+        Assert.assertEquals(-1, dexFile.findMethodIndex(new ImmutableMethodReference(
+                "Ljava/lang/Object;", "<init>", ImmutableList.of("I"), "V")));
+    }
+
+    @Test
+    public void testFindClassDef() {
+        int count = 0;
+        for (DexBackedClassDef classDef: dexFile.getClasses()) {
+            DexBackedClassDef found = dexFile.findClassDef(classDef.getType());
+            Assert.assertNotNull(found);
+            Assert.assertEquals(classDef.getType(), found.getType());
+            count++;
+        }
+        Assert.assertTrue(count > 0);
+        Assert.assertNull(dexFile.findClassDef("Ljava/lang/Object;"));
+        Assert.assertNull(dexFile.findClassDef("Lnot/a/Type;"));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testStringCacheOutOfBounds() {
+        dexFile.setStringCacheEnabled(true);
+        dexFile.getStringSection().get(dexFile.getStringSection().size());
+    }
+
+    @Test
+    public void testConcurrentStringCache() throws Exception {
+        final List<String> expected = new ArrayList<>(dexFile.getStringSection());
+        dexFile.setStringCacheEnabled(true);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<String>>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(new Callable<List<String>>() {
+                    @Override public List<String> call() {
+                        return new ArrayList<>(dexFile.getStringSection());
+                    }
+                }));
+            }
+            for (Future<List<String>> future: futures) {
+                Assert.assertEquals(expected, future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
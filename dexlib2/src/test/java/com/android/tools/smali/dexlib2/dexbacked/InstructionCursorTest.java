@@ -0,0 +1,267 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.dexlib2.dexbacked;
+
+import com.android.tools.smali.dexlib2.AccessFlags;
+import com.android.tools.smali.dexlib2.DexFileFactory;
+import com.android.tools.smali.dexlib2.Opcode;
+import com.android.tools.smali.dexlib2.Opcodes;
+import com.android.tools.smali.dexlib2.builder.Label;
+import com.android.tools.smali.dexlib2.builder.MethodImplementationBuilder;
+import com.android.tools.smali.dexlib2.builder.SwitchLabelElement;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderArrayPayload;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction10t;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction10x;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction11n;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction12x;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction20t;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction21c;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction21ih;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction21lh;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction21s;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction21t;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction22b;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction22c;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction22s;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction22t;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction22x;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction23x;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction30t;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction31c;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction31i;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction31t;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction32x;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction35c;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction3rc;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderInstruction51l;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderPackedSwitchPayload;
+import com.android.tools.smali.dexlib2.builder.instruction.BuilderSparseSwitchPayload;
+import com.android.tools.smali.dexlib2.dexbacked.instruction.DexBackedInstruction;
+import com.android.tools.smali.dexlib2.dexbacked.instruction.InstructionCursor;
+import com.android.tools.smali.dexlib2.iface.instruction.DualReferenceInstruction;
+import com.android.tools.smali.dexlib2.iface.instruction.FiveRegisterInstruction;
+import com.android.tools.smali.dexlib2.iface.instruction.Instruction;
+import com.android.tools.smali.dexlib2.iface.instruction.NarrowLiteralInstruction;
+import com.android.tools.smali.dexlib2.iface.instruction.OffsetInstruction;
+import com.android.tools.smali.dexlib2.iface.instruction.OneRegisterInstruction;
+import com.android.tools.smali.dexlib2.iface.instruction.ReferenceInstruction;
+import com.android.tools.smali.dexlib2.iface.instruction.RegisterRangeInstruction;
+import com.android.tools.smali.dexlib2.iface.instruction.ThreeRegisterInstruction;
+import com.android.tools.smali.dexlib2.iface.instruction.TwoRegisterInstruction;
+import com.android.tools.smali.dexlib2.iface.instruction.WideLiteralInstruction;
+import com.android.tools.smali.dexlib2.immutable.ImmutableClassDef;
+import com.android.tools.smali.dexlib2.immutable.ImmutableDexFile;
+import com.android.tools.smali.dexlib2.immutable.ImmutableMethod;
+import com.android.tools.smali.dexlib2.immutable.reference.ImmutableFieldReference;
+import com.android.tools.smali.dexlib2.immutable.reference.ImmutableMethodReference;
+import com.android.tools.smali.dexlib2.immutable.reference.ImmutableStringReference;
+import com.android.tools.smali.dexlib2.immutable.reference.ImmutableTypeReference;
+import com.android.tools.smali.dexlib2.writer.io.MemoryDataStore;
+import com.android.tools.smali.dexlib2.writer.pool.DexPool;
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URL;
+
+public class InstructionCursorTest {
+    @Test
+    public void testAccessorTestDex() throws IOException {
+        URL url = InstructionCursorTest.class.getClassLoader().getResource("accessorTest.dex");
+        Assert.assertNotNull(url);
+        DexBackedDexFile dexFile = DexFileFactory.loadDexFile(url.getFile(), Opcodes.getDefault());
+
+        // a single cursor is reused across every method
+        InstructionCursor cursor = new InstructionCursor();
+        int methodCount = 0;
+        for (DexBackedClassDef classDef: dexFile.getClasses()) {
+            for (DexBackedMethod method: classDef.getMethods()) {
+                DexBackedMethodImplementation impl = method.getImplementation();
+                if (impl != null) {
+                    assertCursorMatches(impl, impl.resetInstructionCursor(cursor));
+                    methodCount++;
+                }
+            }
+        }
+        Assert.assertTrue(methodCount > 0);
+    }
+
+    @Test
+    public void testAllFormats() throws IOException {
+        MethodImplementationBuilder builder = new MethodImplementationBuilder(300);
+        Label target = builder.getLabel("target");
+        Label packedSwitch = builder.getLabel("packedSwitch");
+        Label sparseSwitch = builder.getLabel("sparseSwitch");
+        Label arrayData = builder.getLabel("arrayData");
+
+        ImmutableMethodReference methodRef = new ImmutableMethodReference("Ltest;", "test",
+                ImmutableList.of("I", "J"), "V");
+
+        builder.addInstruction(new BuilderInstruction11n(Opcode.CONST_4, 1, -3));
+        builder.addInstruction(new BuilderInstruction12x(Opcode.MOVE, 2, 3));
+        builder.addInstruction(new BuilderInstruction21ih(Opcode.CONST_HIGH16, 4, 0x12340000));
+        builder.addInstruction(new BuilderInstruction21lh(Opcode.CONST_WIDE_HIGH16, 4, 0x1234000000000000L));
+        builder.addInstruction(new BuilderInstruction21s(Opcode.CONST_16, 5, -1234));
+        builder.addInstruction(new BuilderInstruction22b(Opcode.ADD_INT_LIT8, 6, 7, -100));
+        builder.addInstruction(new BuilderInstruction22s(Opcode.ADD_INT_LIT16, 8, 9, -30000));
+        builder.addInstruction(new BuilderInstruction22x(Opcode.MOVE_FROM16, 200, 299));
+        builder.addInstruction(new BuilderInstruction23x(Opcode.ADD_INT, 10, 11, 12));
+        builder.addInstruction(new BuilderInstruction31i(Opcode.CONST, 13, 0x12345678));
+        builder.addInstruction(new BuilderInstruction32x(Opcode.MOVE_16, 290, 291));
+        builder.addInstruction(new BuilderInstruction51l(Opcode.CONST_WIDE, 14, 0x123456789abcdefL));
+        builder.addInstruction(new BuilderInstruction21c(Opcode.CONST_STRING, 15,
+                new ImmutableStringReference("a string")));
+        builder.addInstruction(new BuilderInstruction22c(Opcode.IGET, 1, 2,
+                new ImmutableFieldReference("Ltest;", "field", "I")));
+        builder.addInstruction(new BuilderInstruction31c(Opcode.CONST_STRING_JUMBO, 16,
+                new ImmutableStringReference("another string")));
+        builder.addInstruction(new BuilderInstruction35c(Opcode.INVOKE_STATIC, 3, 1, 2, 3, 0, 0, methodRef));
+        builder.addInstruction(new BuilderInstruction3rc(Opcode.INVOKE_STATIC_RANGE, 100, 3, methodRef));
+        builder.addInstruction(new BuilderInstruction21c(Opcode.NEW_INSTANCE, 1,
+                new ImmutableTypeReference("Ltest;")));
+        builder.addInstruction(new BuilderInstruction21t(Opcode.IF_EQZ, 1, target));
+        builder.addInstruction(new BuilderInstruction22t(Opcode.IF_EQ, 1, 2, target));
+        builder.addInstruction(new BuilderInstruction31t(Opcode.PACKED_SWITCH, 1, packedSwitch));
+        builder.addInstruction(new BuilderInstruction31t(Opcode.SPARSE_SWITCH, 1, sparseSwitch));
+        builder.addInstruction(new BuilderInstruction31t(Opcode.FILL_ARRAY_DATA, 1, arrayData));
+        builder.addLabel("target");
+        builder.addInstruction(new BuilderInstruction10t(Opcode.GOTO, target));
+        builder.addInstruction(new BuilderInstruction20t(Opcode.GOTO_16, target));
+        builder.addInstruction(new BuilderInstruction30t(Opcode.GOTO_32, target));
+        builder.addInstruction(new BuilderInstruction10x(Opcode.RETURN_VOID));
+        builder.addLabel("packedSwitch");
+        builder.addInstruction(new BuilderPackedSwitchPayload(10, ImmutableList.of(target, target, target)));
+        builder.addLabel("sparseSwitch");
+        builder.addInstruction(new BuilderSparseSwitchPayload(ImmutableList.of(
+                new SwitchLabelElement(-5, target), new SwitchLabelElement(50000, target))));
+        builder.addLabel("arrayData");
+        builder.addInstruction(new BuilderArrayPayload(2, ImmutableList.<Number>of(1, 2, 3)));
+
+        ImmutableMethod method = new ImmutableMethod("Ltest;", "test", null, "V",
+                AccessFlags.PUBLIC.getValue() | AccessFlags.STATIC.getValue(), null, null,
+                builder.getMethodImplementation());
+        ImmutableClassDef classDef = new ImmutableClassDef("Ltest;", AccessFlags.PUBLIC.getValue(),
+                "Ljava/lang/Object;", null, null, null, null, ImmutableList.of(method));
+
+        MemoryDataStore dataStore = new MemoryDataStore();
+        DexPool.writeTo(dataStore, new ImmutableDexFile(Opcodes.getDefault(), ImmutableList.of(classDef)));
+        DexBackedDexFile dexFile = new DexBackedDexFile(Opcodes.getDefault(), dataStore.getData());
+
+        DexBackedMethodImplementation impl =
+                dexFile.getClasses().iterator().next().getMethods().iterator().next().getImplementation();
+        Assert.assertNotNull(impl);
+        assertCursorMatches(impl, impl.getInstructionCursor());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNotApplicable() throws IOException {
+        URL url = InstructionCursorTest.class.getClassLoader().getResource("accessorTest.dex");
+        Assert.assertNotNull(url);
+        DexBackedDexFile dexFile = DexFileFactory.loadDexFile(url.getFile(), Opcodes.getDefault());
+
+        for (DexBackedClassDef classDef: dexFile.getClasses()) {
+            for (DexBackedMethod method: classDef.getMethods()) {
+                DexBackedMethodImplementation impl = method.getImplementation();
+                if (impl == null) {
+                    continue;
+                }
+                InstructionCursor cursor = impl.getInstructionCursor();
+                while (cursor.next()) {
+                    if (cursor.getOpcode() == Opcode.RETURN_VOID) {
+                        cursor.getRegisterA();
+                    }
+                }
+            }
+        }
+    }
+
+    private static void assertCursorMatches(DexBackedMethodImplementation impl, InstructionCursor cursor) {
+        int codeAddress = 0;
+        for (Instruction instruction: impl.getInstructions()) {
+            Assert.assertTrue(cursor.next());
+
+            Assert.assertEquals(codeAddress, cursor.getCodeAddress());
+            Assert.assertEquals(((DexBackedInstruction)instruction).instructionStart, cursor.getInstructionStart());
+            Assert.assertEquals(instruction.getOpcode(), cursor.getOpcode());
+            Assert.assertEquals(instruction.getOpcode().format, cursor.getFormat());
+            Assert.assertEquals(instruction.getCodeUnits(), cursor.getCodeUnits());
+
+            if (instruction instanceof OneRegisterInstruction) {
+                Assert.assertEquals(((OneRegisterInstruction)instruction).getRegisterA(), cursor.getRegisterA());
+            }
+            if (instruction instanceof TwoRegisterInstruction) {
+                Assert.assertEquals(((TwoRegisterInstruction)instruction).getRegisterB(), cursor.getRegisterB());
+            }
+            if (instruction instanceof ThreeRegisterInstruction) {
+                Assert.assertEquals(((ThreeRegisterInstruction)instruction).getRegisterC(), cursor.getRegisterC());
+            }
+            if (instruction instanceof FiveRegisterInstruction) {
+                FiveRegisterInstruction fiveRegisterInstruction = (FiveRegisterInstruction)instruction;
+                Assert.assertEquals(fiveRegisterInstruction.getRegisterCount(), cursor.getRegisterCount());
+                Assert.assertEquals(fiveRegisterInstruction.getRegisterC(), cursor.getRegisterC());
+                Assert.assertEquals(fiveRegisterInstruction.getRegisterD(), cursor.getRegisterD());
+                Assert.assertEquals(fiveRegisterInstruction.getRegisterE(), cursor.getRegisterE());
+                Assert.assertEquals(fiveRegisterInstruction.getRegisterF(), cursor.getRegisterF());
+                Assert.assertEquals(fiveRegisterInstruction.getRegisterG(), cursor.getRegisterG());
+            }
+            if (instruction instanceof RegisterRangeInstruction) {
+                RegisterRangeInstruction rangeInstruction = (RegisterRangeInstruction)instruction;
+                Assert.assertEquals(rangeInstruction.getRegisterCount(), cursor.getRegisterCount());
+                Assert.assertEquals(rangeInstruction.getStartRegister(), cursor.getStartRegister());
+            }
+            if (instruction instanceof NarrowLiteralInstruction) {
+                Assert.assertEquals(((NarrowLiteralInstruction)instruction).getNarrowLiteral(),
+                        cursor.getNarrowLiteral());
+            }
+            if (instruction instanceof WideLiteralInstruction) {
+                Assert.assertEquals(((WideLiteralInstruction)instruction).getWideLiteral(), cursor.getWideLiteral());
+            }
+            if (instruction instanceof OffsetInstruction) {
+                Assert.assertEquals(((OffsetInstruction)instruction).getCodeOffset(), cursor.getCodeOffset());
+            }
+            if (instruction instanceof ReferenceInstruction) {
+                ReferenceInstruction referenceInstruction = (ReferenceInstruction)instruction;
+                Assert.assertEquals(referenceInstruction.getReferenceType(), cursor.getReferenceType());
+                Assert.assertEquals(referenceInstruction.getReference(), cursor.getReference());
+            }
+            if (instruction instanceof DualReferenceInstruction) {
+                DualReferenceInstruction dualReferenceInstruction = (DualReferenceInstruction)instruction;
+                Assert.assertEquals(dualReferenceInstruction.getReferenceType2(), cursor.getReferenceType2());
+                Assert.assertEquals(dualReferenceInstruction.getReference2(), cursor.getReference2());
+            }
+
+            codeAddress += instruction.getCodeUnits();
+        }
+        Assert.assertFalse(cursor.next());
+        Assert.assertEquals(impl.getInstructionsSize(), codeAddress);
+    }
+}
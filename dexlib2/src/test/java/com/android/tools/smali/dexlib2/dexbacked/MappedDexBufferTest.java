@@ -0,0 +1,148 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.dexlib2.dexbacked;
+
+import com.android.tools.smali.util.ExceptionWithContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class MappedDexBufferTest {
+    private interface Read {
+        Object read(DexBuffer buf, int offset);
+    }
+
+    private static final Read[] READS = new Read[] {
+            (buf, offset) -> buf.readSmallUint(offset),
+            (buf, offset) -> buf.readOptionalUint(offset),
+            (buf, offset) -> buf.readUshort(offset),
+            (buf, offset) -> buf.readUbyte(offset),
+            (buf, offset) -> buf.readLong(offset),
+            (buf, offset) -> buf.readLongAsSmallUint(offset),
+            (buf, offset) -> buf.readInt(offset),
+            (buf, offset) -> buf.readShort(offset),
+            (buf, offset) -> buf.readByte(offset),
+            (buf, offset) -> buf.readerAt(offset).readSleb128(),
+            (buf, offset) -> buf.readerAt(offset).peekSleb128Size(),
+            (buf, offset) -> buf.readerAt(offset).readSmallUleb128(),
+            (buf, offset) -> buf.readerAt(offset).peekSmallUleb128Size(),
+            (buf, offset) -> buf.readerAt(offset).readLargeUleb128(),
+            (buf, offset) -> buf.readerAt(offset).readBigUleb128(),
+            (buf, offset) -> buf.readerAt(offset).peekBigUleb128Size(),
+            (buf, offset) -> {
+                DexReader<? extends DexBuffer> reader = buf.readerAt(offset);
+                reader.skipUleb128();
+                return reader.getOffset();
+            },
+    };
+
+    private interface SizedRead {
+        Object read(DexReader<? extends DexBuffer> reader, int size);
+    }
+
+    private static final SizedRead[] SIZED_READS = new SizedRead[] {
+            DexReader::readSizedInt,
+            DexReader::readSizedSmallUint,
+            DexReader::readSizedRightExtendedInt,
+            DexReader::readSizedRightExtendedLong,
+            DexReader::readSizedLong,
+    };
+
+    @Test
+    public void testReadsMatchArrayBuffer() {
+        Random r = new Random(1234567890);
+        byte[] data = new byte[1024];
+        r.nextBytes(data);
+        // add some runs of small values, so that more of the leb128 values are valid
+        for (int i = 0; i < data.length; i += 7) {
+            data[i] &= 0x7f;
+        }
+
+        for (int baseOffset: new int[] {0, 3}) {
+            DexBuffer arrayBuf = new DexBuffer(data, baseOffset);
+            DexBuffer mappedBuf = new MappedDexBuffer(ByteBuffer.wrap(data), baseOffset);
+            Assert.assertEquals(arrayBuf.getLength(), mappedBuf.getLength());
+
+            for (int offset = 0; offset < arrayBuf.getLength() - 8; offset++) {
+                for (Read read: READS) {
+                    Assert.assertEquals(readOrException(read, arrayBuf, offset),
+                            readOrException(read, mappedBuf, offset));
+                }
+                for (SizedRead sizedRead: SIZED_READS) {
+                    for (int size = 0; size <= 9; size++) {
+                        Assert.assertEquals(readOrException(sizedRead, arrayBuf, offset, size),
+                                readOrException(sizedRead, mappedBuf, offset, size));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testReadString() {
+        byte[] data = new byte[] {0x00, 0x61, 0x62, (byte)0xc3, (byte)0xa9, (byte)0xe2, (byte)0x82, (byte)0xac, 0x00};
+        DexBuffer mappedBuf = new MappedDexBuffer(ByteBuffer.wrap(data));
+
+        DexReader<? extends DexBuffer> reader = mappedBuf.readerAt(1);
+        Assert.assertEquals(7, reader.peekStringLength(4));
+        Assert.assertEquals("ab\u00e9\u20ac", reader.readString(4));
+        Assert.assertEquals(8, reader.getOffset());
+    }
+
+    @Test
+    public void testSlice() {
+        byte[] data = new byte[] {0x00, 0x11, 0x22, 0x33, 0x44, 0x55};
+        DexBuffer slice = new MappedDexBuffer(ByteBuffer.wrap(data), 1).slice(1);
+        Assert.assertEquals(0x55443322, slice.readInt(0));
+        Assert.assertEquals(4, slice.getLength());
+        Assert.assertArrayEquals(new byte[] {0x33, 0x44}, slice.readByteRange(1, 2));
+    }
+
+    private static Object readOrException(Read read, DexBuffer buf, int offset) {
+        try {
+            return read.read(buf, offset);
+        } catch (ExceptionWithContext ex) {
+            return ExceptionWithContext.class;
+        }
+    }
+
+    private static Object readOrException(SizedRead read, DexBuffer buf, int offset, int size) {
+        DexReader<? extends DexBuffer> reader = buf.readerAt(offset);
+        try {
+            Object result = read.read(reader, size);
+            return result + "@" + reader.getOffset();
+        } catch (ExceptionWithContext ex) {
+            return ExceptionWithContext.class;
+        }
+    }
+}
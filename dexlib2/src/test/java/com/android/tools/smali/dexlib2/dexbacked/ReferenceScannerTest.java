@@ -0,0 +1,140 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.dexlib2.dexbacked;
+
+import com.android.tools.smali.dexlib2.DexFileFactory;
+import com.android.tools.smali.dexlib2.Opcode;
+import com.android.tools.smali.dexlib2.Opcodes;
+import com.android.tools.smali.dexlib2.ReferenceType;
+import com.android.tools.smali.dexlib2.dexbacked.util.ReferenceScanner;
+import com.android.tools.smali.dexlib2.iface.instruction.Instruction;
+import com.android.tools.smali.dexlib2.iface.instruction.ReferenceInstruction;
+import com.android.tools.smali.dexlib2.iface.reference.Reference;
+import com.google.common.collect.Lists;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.net.URL;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class ReferenceScannerTest {
+    private DexBackedDexFile dexFile;
+
+    @Before
+    public void loadDexFile() throws IOException {
+        URL url = ReferenceScannerTest.class.getClassLoader().getResource("accessorTest.dex");
+        Assert.assertNotNull(url);
+        dexFile = DexFileFactory.loadDexFile(url.getFile(), Opcodes.getDefault());
+    }
+
+    @Test
+    public void testScanMatchesInstructions() {
+        final List<Reference> scanned = Lists.newArrayList();
+        final List<Integer> scannedAddresses = Lists.newArrayList();
+        final List<Reference> expected = Lists.newArrayList();
+        final List<Integer> expectedAddresses = Lists.newArrayList();
+
+        ReferenceScanner scanner = new ReferenceScanner(dexFile);
+        for (DexBackedClassDef classDef: dexFile.getClasses()) {
+            for (final DexBackedMethod method: classDef.getMethods()) {
+                scanner.scanMethod(method, new ReferenceScanner.ReferenceVisitor() {
+                    @Override
+                    public void visitReference(int methodIndex, int codeAddress, @Nonnull Opcode opcode,
+                                               int referenceType, int referenceIndex) {
+                        Assert.assertEquals(method.methodIndex, methodIndex);
+                        scanned.add(dexFile.getReferences(referenceType).get(referenceIndex));
+                        scannedAddresses.add(codeAddress);
+                    }
+                });
+
+                DexBackedMethodImplementation impl = method.getImplementation();
+                if (impl == null) {
+                    continue;
+                }
+                int codeAddress = 0;
+                for (Instruction instruction: impl.getInstructions()) {
+                    if (instruction instanceof ReferenceInstruction) {
+                        expected.add(((ReferenceInstruction)instruction).getReference());
+                        expectedAddresses.add(codeAddress);
+                    }
+                    codeAddress += instruction.getCodeUnits();
+                }
+            }
+        }
+
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, scanned);
+        Assert.assertEquals(expectedAddresses, scannedAddresses);
+    }
+
+    @Test
+    public void testResolveReferences() {
+        ReferenceScanner scanner = new ReferenceScanner(dexFile);
+        BitSet methodIndices = scanner.getReferencedIndices(ReferenceType.METHOD);
+        Assert.assertFalse(methodIndices.isEmpty());
+
+        Set<Reference> expected = new HashSet<>();
+        for (DexBackedClassDef classDef: dexFile.getClasses()) {
+            for (DexBackedMethod method: classDef.getMethods()) {
+                DexBackedMethodImplementation impl = method.getImplementation();
+                if (impl == null) {
+                    continue;
+                }
+                for (Instruction instruction: impl.getInstructions()) {
+                    if (instruction.getOpcode().referenceType == ReferenceType.METHOD) {
+                        expected.add(((ReferenceInstruction)instruction).getReference());
+                    }
+                }
+            }
+        }
+
+        Map<Integer, Reference> resolved = scanner.resolveReferences(ReferenceType.METHOD, methodIndices);
+        Assert.assertEquals(methodIndices.cardinality(), resolved.size());
+        Assert.assertEquals(expected, new HashSet<>(resolved.values()));
+        for (Map.Entry<Integer, Reference> entry: resolved.entrySet()) {
+            Assert.assertEquals(dexFile.getMethodSection().get(entry.getKey()), entry.getValue());
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testResolveOutOfBounds() {
+        BitSet indices = new BitSet();
+        indices.set(dexFile.getFieldSection().size());
+        new ReferenceScanner(dexFile).resolveReferences(ReferenceType.FIELD, indices);
+    }
+}
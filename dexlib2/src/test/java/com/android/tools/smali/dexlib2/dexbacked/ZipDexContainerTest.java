@@ -0,0 +1,171 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.dexlib2.dexbacked;
+
+import com.android.tools.smali.dexlib2.DexFileFactory.DexFileNotFoundException;
+import com.android.tools.smali.dexlib2.Opcodes;
+import com.android.tools.smali.dexlib2.analysis.TestUtils;
+import com.android.tools.smali.dexlib2.iface.MultiDexContainer.DexEntry;
+import com.android.tools.smali.dexlib2.writer.io.MemoryDataStore;
+import com.android.tools.smali.dexlib2.writer.pool.DexPool;
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import javax.annotation.Nonnull;
+
+public class ZipDexContainerTest {
+    @Test
+    public void testInvalidEntries() throws IOException {
+        byte[] dex = makeDex("Ltest/a;");
+        File zipFile = File.createTempFile("container", ".zip");
+        try {
+            writeZip(zipFile, false,
+                    "classes.dex", dex,
+                    "classes2.dex", Arrays.copyOf(dex, dex.length / 2),
+                    "classes3.dex", Arrays.copyOf(dex, 16),
+                    "classes4.dex", "not a dex file".getBytes(),
+                    "assets/renamed.bin", dex);
+
+            for (boolean memoryMapped: new boolean[] { false, true }) {
+                ZipDexContainer container = new ZipDexContainer(zipFile, Opcodes.getDefault(), memoryMapped);
+                Assert.assertEquals(ImmutableList.of("assets/renamed.bin", "classes.dex"),
+                        container.getDexEntryNames());
+                Assert.assertNull(container.getEntry("classes2.dex"));
+                Assert.assertNull(container.getEntry("classes4.dex"));
+            }
+        } finally {
+            zipFile.delete();
+        }
+    }
+
+    @Test
+    public void testLazyLoading() throws IOException {
+        File zipFile = File.createTempFile("container", ".zip");
+        try {
+            writeZip(zipFile, true,
+                    "classes.dex", makeDex("Ltest/a;"),
+                    "classes2.dex", makeDex("Ltest/b;"));
+
+            for (boolean memoryMapped: new boolean[] { false, true }) {
+                ZipDexContainer container = new ZipDexContainer(zipFile, Opcodes.getDefault(), memoryMapped);
+                DexEntry<DexBackedDexFile> entry = container.getEntry("classes2.dex");
+                Assert.assertNotNull(entry);
+
+                DexBackedDexFile dexFile = entry.getDexFile();
+                Assert.assertNotNull(dexFile.findClassDef("Ltest/b;"));
+                Assert.assertSame(dexFile, entry.getDexFile());
+            }
+
+            // the dex files aren't loaded until they're needed, so a change to the zip file is only seen then
+            ZipDexContainer container = new ZipDexContainer(zipFile, Opcodes.getDefault());
+            DexEntry<DexBackedDexFile> entry = container.getEntry("classes.dex");
+            Assert.assertNotNull(entry);
+
+            writeZip(zipFile, true, "classes2.dex", makeDex("Ltest/b;"));
+            try {
+                entry.getDexFile();
+                Assert.fail();
+            } catch (DexFileNotFoundException ex) {
+                // expected
+            }
+        } finally {
+            zipFile.delete();
+        }
+    }
+
+    @Test
+    public void testIsDexOverride() throws IOException {
+        File zipFile = File.createTempFile("container", ".zip");
+        try {
+            writeZip(zipFile, false,
+                    "classes.dex", makeDex("Ltest/a;"),
+                    "assets/renamed.bin", makeDex("Ltest/b;"),
+                    "classes2.dex", "not a dex file".getBytes());
+
+            final List<String> checkedEntries = new ArrayList<>();
+            ZipDexContainer container = new ZipDexContainer(zipFile, Opcodes.getDefault()) {
+                @Override protected boolean isDex(@Nonnull ZipFile zipFile, @Nonnull ZipEntry zipEntry)
+                        throws IOException {
+                    checkedEntries.add(zipEntry.getName());
+                    return zipEntry.getName().endsWith(".dex") && super.isDex(zipFile, zipEntry);
+                }
+            };
+            Assert.assertEquals(ImmutableList.of("classes.dex"), container.getDexEntryNames());
+            // entries without a valid dex header are excluded before isDex is called
+            Assert.assertEquals(ImmutableList.of("classes.dex", "assets/renamed.bin"), checkedEntries);
+        } finally {
+            zipFile.delete();
+        }
+    }
+
+    private static byte[] makeDex(String type) throws IOException {
+        MemoryDataStore dataStore = new MemoryDataStore();
+        DexPool dexPool = new DexPool(Opcodes.getDefault());
+        dexPool.internClass(TestUtils.makeClassDef(type, "Ljava/lang/Object;"));
+        dexPool.writeTo(dataStore);
+        return dataStore.getData();
+    }
+
+    /**
+     * Writes a zip file with the given entries.
+     *
+     * @param entries Pairs of entry name and entry contents
+     */
+    private static void writeZip(File zipFile, boolean stored, Object... entries) throws IOException {
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(zipFile))) {
+            for (int i=0; i<entries.length; i+=2) {
+                byte[] data = (byte[])entries[i+1];
+                ZipEntry entry = new ZipEntry((String)entries[i]);
+                if (stored) {
+                    CRC32 crc = new CRC32();
+                    crc.update(data);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(data.length);
+                    entry.setCrc(crc.getValue());
+                }
+                zipOutputStream.putNextEntry(entry);
+                zipOutputStream.write(data);
+                zipOutputStream.closeEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.dexlib2.pool;
+
+import com.android.tools.smali.dexlib2.AccessFlags;
+import com.android.tools.smali.dexlib2.Opcodes;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedClassDef;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedDexFile;
+import com.android.tools.smali.dexlib2.iface.ClassDef;
+import com.android.tools.smali.dexlib2.iface.Method;
+import com.android.tools.smali.dexlib2.immutable.ImmutableClassDef;
+import com.android.tools.smali.dexlib2.immutable.ImmutableMethod;
+import com.android.tools.smali.dexlib2.writer.pool.DexPool;
+import com.android.tools.smali.dexlib2.writer.pool.MultiDexWriter;
+import com.android.tools.smali.util.ExceptionWithContext;
+import com.google.common.collect.ImmutableList;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class MultiDexWriterTest {
+    @Test
+    public void testPack() {
+        // Each class has 10 methods, so at most 5 classes fit in a dex file with a max pool size of 50
+        List<ClassDef> classes = makeClasses(23, 10);
+
+        MultiDexWriter writer = new MultiDexWriter(Opcodes.getDefault());
+        writer.setMaxPoolSize(50);
+        List<DexPool> pools = writer.pack(classes);
+
+        Assert.assertEquals(5, pools.size());
+        int classCount = 0;
+        for (DexPool pool: pools) {
+            Assert.assertFalse(pool.hasOverflowed(50));
+            classCount += pool.classSection.getItemCount();
+        }
+        Assert.assertEquals(23, classCount);
+    }
+
+    @Test
+    public void testPack_noOverflow() {
+        MultiDexWriter writer = new MultiDexWriter(Opcodes.getDefault());
+        List<DexPool> pools = writer.pack(makeClasses(10, 10));
+        Assert.assertEquals(1, pools.size());
+        Assert.assertEquals(10, pools.get(0).classSection.getItemCount());
+    }
+
+    @Test(expected = ExceptionWithContext.class)
+    public void testPack_classTooLarge() {
+        MultiDexWriter writer = new MultiDexWriter(Opcodes.getDefault());
+        writer.setMaxPoolSize(5);
+        writer.pack(makeClasses(1, 10));
+    }
+
+    @Test(expected = ExceptionWithContext.class)
+    public void testPack_mainDexTooLarge() {
+        MultiDexWriter writer = new MultiDexWriter(Opcodes.getDefault());
+        writer.setMaxPoolSize(50);
+        writer.setMainDexClasses(ImmutableList.of(getClassType(0), getClassType(1), getClassType(2),
+                getClassType(3), getClassType(4), getClassType(5)));
+        writer.pack(makeClasses(10, 10));
+    }
+
+    @Test
+    public void testWriteTo_mainDexClasses() throws IOException {
+        List<ClassDef> classes = makeClasses(23, 10);
+
+        MultiDexWriter writer = new MultiDexWriter(Opcodes.getDefault());
+        writer.setMaxPoolSize(50);
+        writer.setMainDexClasses(ImmutableList.of(getClassType(22), getClassType(11)));
+
+        File outputDir = Files.createTempDirectory("multidex").toFile();
+        try {
+            List<File> files = writer.writeTo(outputDir, classes, 2);
+            Assert.assertEquals(5, files.size());
+            Assert.assertEquals("classes.dex", files.get(0).getName());
+            Assert.assertEquals("classes2.dex", files.get(1).getName());
+
+            Set<String> types = new HashSet<>();
+            for (int i=0; i<files.size(); i++) {
+                DexBackedDexFile dexFile = new DexBackedDexFile(Opcodes.getDefault(),
+                        Files.readAllBytes(files.get(i).toPath()));
+                Set<String> dexTypes = new HashSet<>();
+                for (DexBackedClassDef classDef: dexFile.getClasses()) {
+                    dexTypes.add(classDef.getType());
+                }
+                if (i == 0) {
+                    Assert.assertTrue(dexTypes.contains(getClassType(22)));
+                    Assert.assertTrue(dexTypes.contains(getClassType(11)));
+                }
+                Assert.assertTrue(dexFile.getMethodSection().size() <= 50);
+                types.addAll(dexTypes);
+            }
+            Assert.assertEquals(23, types.size());
+        } finally {
+            for (File file: outputDir.listFiles()) {
+                file.delete();
+            }
+            outputDir.delete();
+        }
+    }
+
+    private static String getClassType(int index) {
+        return "Lcls" + index + ";";
+    }
+
+    private static List<ClassDef> makeClasses(int classCount, int methodsPerClass) {
+        List<ClassDef> classes = new ArrayList<>();
+        for (int i=0; i<classCount; i++) {
+            String type = getClassType(i);
+            List<Method> methods = new ArrayList<>();
+            for (int j=0; j<methodsPerClass; j++) {
+                methods.add(new ImmutableMethod(type, "method" + j, null, "V",
+                        AccessFlags.PUBLIC.getValue() | AccessFlags.ABSTRACT.getValue(), null, null, null));
+            }
+            classes.add(new ImmutableClassDef(type, AccessFlags.PUBLIC.getValue() | AccessFlags.ABSTRACT.getValue(),
+                    "Ljava/lang/Object;", null, null, null, null, methods));
+        }
+        return classes;
+    }
+}
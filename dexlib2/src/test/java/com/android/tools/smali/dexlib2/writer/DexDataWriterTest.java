@@ -36,6 +36,7 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Random;
@@ -494,6 +495,34 @@ public class DexDataWriterTest {
         testWriteStringHelper(new String(new char[]{0xffff}), 0xef, 0xbf, 0xbf);
     }
 
+    @Test
+    public void testSmallBuffer() throws IOException {
+        // Write the same values with a buffer that is too small for most of them to fit in the remaining space,
+        // and make sure the result matches the normal write
+        ByteArrayOutputStream smallOutput = new ByteArrayOutputStream();
+        DexDataWriter smallWriter = new DexDataWriter(smallOutput, startPosition, 3);
+
+        for (DexDataWriter w: new DexDataWriter[] { writer, smallWriter }) {
+            for (int i=0; i<20; i++) {
+                w.write(i);
+                w.writeUleb128(0x12345678 + i);
+                w.writeSleb128(-0x12345678 - i);
+                w.writeUshort(0xabcd);
+                w.writeShort(-2);
+                w.writeInt(0x11223344 + i);
+                w.writeLong(0x1122334455667788L + i);
+                w.write(new byte[] { 1, 2, 3, 4, 5 });
+                w.writeEncodedInt(0x04, 0x1234567 + i);
+            }
+            w.align();
+        }
+        Assert.assertEquals(writer.getPosition(), smallWriter.getPosition());
+
+        writer.flush();
+        smallWriter.flush();
+        Assert.assertArrayEquals(output.toByteArray(), smallOutput.toByteArray());
+    }
+
     @Test
     public void testAlign() throws IOException {
         // create a new writer so we can start at file position 0
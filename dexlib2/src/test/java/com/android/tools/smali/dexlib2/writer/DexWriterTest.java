@@ -30,29 +30,54 @@
 
 package com.android.tools.smali.dexlib2.writer;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.android.tools.smali.dexlib2.AccessFlags;
 import com.android.tools.smali.dexlib2.AnnotationVisibility;
+import com.android.tools.smali.dexlib2.DexFileFactory;
+import com.android.tools.smali.dexlib2.Opcode;
 import com.android.tools.smali.dexlib2.Opcodes;
 import com.android.tools.smali.dexlib2.dexbacked.DexBackedDexFile;
+import com.android.tools.smali.dexlib2.dexbacked.raw.HeaderItem;
 import com.android.tools.smali.dexlib2.iface.Annotation;
 import com.android.tools.smali.dexlib2.iface.AnnotationElement;
 import com.android.tools.smali.dexlib2.iface.ClassDef;
+import com.android.tools.smali.dexlib2.iface.DexFile;
 import com.android.tools.smali.dexlib2.iface.value.AnnotationEncodedValue;
 import com.android.tools.smali.dexlib2.immutable.ImmutableAnnotation;
 import com.android.tools.smali.dexlib2.immutable.ImmutableAnnotationElement;
 import com.android.tools.smali.dexlib2.immutable.ImmutableClassDef;
 import com.android.tools.smali.dexlib2.immutable.ImmutableDexFile;
+import com.android.tools.smali.dexlib2.immutable.ImmutableExceptionHandler;
+import com.android.tools.smali.dexlib2.immutable.ImmutableField;
+import com.android.tools.smali.dexlib2.immutable.ImmutableMethod;
+import com.android.tools.smali.dexlib2.immutable.ImmutableMethodImplementation;
+import com.android.tools.smali.dexlib2.immutable.ImmutableMethodParameter;
+import com.android.tools.smali.dexlib2.immutable.ImmutableTryBlock;
+import com.android.tools.smali.dexlib2.immutable.debug.ImmutableLineNumber;
+import com.android.tools.smali.dexlib2.immutable.instruction.ImmutableInstruction11x;
+import com.android.tools.smali.dexlib2.immutable.instruction.ImmutableInstruction21c;
+import com.android.tools.smali.dexlib2.immutable.reference.ImmutableStringReference;
 import com.android.tools.smali.dexlib2.immutable.value.ImmutableAnnotationEncodedValue;
+import com.android.tools.smali.dexlib2.immutable.value.ImmutableIntEncodedValue;
 import com.android.tools.smali.dexlib2.immutable.value.ImmutableNullEncodedValue;
 import com.android.tools.smali.dexlib2.writer.io.MemoryDataStore;
 import com.android.tools.smali.dexlib2.writer.pool.DexPool;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.zip.Adler32;
 
 public class DexWriterTest {
     @Test
@@ -132,4 +157,107 @@ public class DexWriterTest {
         Assert.assertEquals("blah", dbElements.get(0).getName());
         Assert.assertEquals("zabaglione", dbElements.get(1).getName());
     }
+
+    @Test
+    public void testParallelWriteMatchesSequentialWrite() throws IOException {
+        List<ClassDef> classDefs = new ArrayList<>();
+        for (int i=0; i<200; i++) {
+            String type = "Lorg/test/Class" + i + ";";
+
+            // Use a small set of distinct values, so that some of the debug items and annotations are shared
+            ImmutableAnnotation annotation = new ImmutableAnnotation(AnnotationVisibility.RUNTIME, "Lorg/test/anno;",
+                    ImmutableSet.of(new ImmutableAnnotationElement("value", new ImmutableIntEncodedValue(i % 4))));
+
+            ImmutableField field = new ImmutableField(type, "field", "I",
+                    AccessFlags.STATIC.getValue(), new ImmutableIntEncodedValue(i), null, null);
+
+            List<ImmutableTryBlock> tryBlocks = null;
+            if (i % 3 == 0) {
+                tryBlocks = ImmutableList.of(new ImmutableTryBlock(0, 2,
+                        ImmutableList.of(new ImmutableExceptionHandler("Ljava/lang/Exception;", 2))));
+            }
+            ImmutableMethodImplementation implementation = new ImmutableMethodImplementation(2,
+                    ImmutableList.of(
+                            new ImmutableInstruction21c(Opcode.CONST_STRING, 0, new ImmutableStringReference("s" + i)),
+                            new ImmutableInstruction11x(Opcode.RETURN, 1)),
+                    tryBlocks,
+                    i % 5 == 0 ? null : ImmutableList.of(new ImmutableLineNumber(0, i % 10)));
+
+            ImmutableMethod method = new ImmutableMethod(type, "method",
+                    ImmutableList.of(new ImmutableMethodParameter("I", null, i % 2 == 0 ? "param" : null)), "I",
+                    AccessFlags.STATIC.getValue(), null, null, implementation);
+
+            classDefs.add(new ImmutableClassDef(type, 0, "Ljava/lang/Object;", null, null,
+                    ImmutableSet.of(annotation), ImmutableList.of(field), ImmutableList.of(method)));
+        }
+
+        DexFile dexFile = new ImmutableDexFile(Opcodes.getDefault(), classDefs);
+        Assert.assertArrayEquals(writeDexFile(dexFile, 1, false), writeDexFile(dexFile, 4, false));
+    }
+
+    @Test
+    public void testParallelWriteMatchesSequentialWrite_dexFile() throws IOException {
+        DexFile dexFile = loadAccessorTestDexFile();
+        Assert.assertArrayEquals(writeDexFile(dexFile, 1, false), writeDexFile(dexFile, 4, false));
+    }
+
+
+    @Test
+    public void testSignatureAndChecksum() throws IOException, NoSuchAlgorithmException {
+        byte[] dex = writeDexFile(loadAccessorTestDexFile(), 1, false);
+
+        MessageDigest md = MessageDigest.getInstance("SHA-1");
+        md.update(dex, HeaderItem.SIGNATURE_DATA_START_OFFSET, dex.length - HeaderItem.SIGNATURE_DATA_START_OFFSET);
+        Assert.assertArrayEquals(md.digest(), Arrays.copyOfRange(dex, HeaderItem.SIGNATURE_OFFSET,
+                HeaderItem.SIGNATURE_OFFSET + HeaderItem.SIGNATURE_SIZE));
+
+        assertChecksumValid(dex);
+    }
+
+    @Test
+    public void testSkipSignature() throws IOException {
+        byte[] dex = writeDexFile(loadAccessorTestDexFile(), 1, true);
+
+        Assert.assertArrayEquals(new byte[HeaderItem.SIGNATURE_SIZE], Arrays.copyOfRange(dex,
+                HeaderItem.SIGNATURE_OFFSET, HeaderItem.SIGNATURE_OFFSET + HeaderItem.SIGNATURE_SIZE));
+
+        assertChecksumValid(dex);
+    }
+
+    @Test
+    public void testFileChannelDataStore() throws IOException {
+        DexFile dexFile = loadAccessorTestDexFile();
+
+        File tempFile = File.createTempFile("dex", ".dex");
+        try {
+            DexPool.writeTo(tempFile.getPath(), dexFile);
+            Assert.assertArrayEquals(writeDexFile(dexFile, 1, false), Files.readAllBytes(tempFile.toPath()));
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    private static void assertChecksumValid(byte[] dex) {
+        Adler32 a32 = new Adler32();
+        a32.update(dex, HeaderItem.CHECKSUM_DATA_START_OFFSET, dex.length - HeaderItem.CHECKSUM_DATA_START_OFFSET);
+        DexBackedDexFile dexFile = new DexBackedDexFile(Opcodes.getDefault(), dex);
+        Assert.assertEquals((int)a32.getValue(), dexFile.getBuffer().readInt(HeaderItem.CHECKSUM_OFFSET));
+    }
+
+    private static DexFile loadAccessorTestDexFile() throws IOException {
+        URL url = DexWriterTest.class.getClassLoader().getResource("accessorTest.dex");
+        Assert.assertNotNull(url);
+        return DexFileFactory.loadDexFile(url.getFile(), Opcodes.getDefault());
+    }
+
+    private static byte[] writeDexFile(DexFile dexFile, int jobs, boolean skipSignature) throws IOException {
+        DexPool dexPool = new DexPool(dexFile.getOpcodes());
+        for (ClassDef classDef: dexFile.getClasses()) {
+            dexPool.internClass(classDef);
+        }
+        dexPool.setSkipSignature(skipSignature);
+        MemoryDataStore dataStore = new MemoryDataStore();
+        dexPool.writeTo(dataStore, jobs);
+        return dataStore.getData();
+    }
 }
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class Utf8UtilsTest {
+    private static final String[] STRINGS = new String[] {
+            "",
+            "a",
+            "Ljava/lang/Object;",
+            "\u0000",
+            "abc\u0000def",
+            "café",
+            "éabc",
+            "abc€def",
+            "😀 surrogate pair",
+            "\u007f\u0080߿ࠀ￿",
+    };
+
+    @Test
+    public void testRoundTrip() {
+        for (String string: STRINGS) {
+            assertRoundTrip(string);
+        }
+
+        Random random = new Random(1234);
+        for (int i = 0; i < 1000; i++) {
+            assertRoundTrip(randomString(random));
+        }
+    }
+
+    @Test
+    public void testEncoding() {
+        Assert.assertArrayEquals(new byte[] { 'a', 'b', 'c' }, Utf8Utils.stringToUtf8Bytes("abc"));
+        // nul is encoded with the 2-byte form
+        Assert.assertArrayEquals(new byte[] { 'a', (byte)0xc0, (byte)0x80 }, Utf8Utils.stringToUtf8Bytes("a\u0000"));
+        Assert.assertArrayEquals(new byte[] { 'a', (byte)0xc3, (byte)0xa9, 'b' },
+                Utf8Utils.stringToUtf8Bytes("aéb"));
+        Assert.assertArrayEquals(new byte[] { (byte)0xe2, (byte)0x82, (byte)0xac },
+                Utf8Utils.stringToUtf8Bytes("€"));
+
+        byte[] dest = new byte[16];
+        Assert.assertEquals(7, Utf8Utils.stringToUtf8Bytes("aé€", dest, 1));
+        Assert.assertArrayEquals(new byte[] { 0, 'a', (byte)0xc3, (byte)0xa9, (byte)0xe2, (byte)0x82, (byte)0xac },
+                Arrays.copyOf(dest, 7));
+    }
+
+    @Test
+    public void testReadLength() {
+        byte[] bytes = new byte[] { 'x', 'a', 'b', (byte)0xc3, (byte)0xa9, 'c', 'y' };
+        int[] readLength = new int[1];
+        Assert.assertEquals("abéc", Utf8Utils.utf8BytesWithUtf16LengthToString(bytes, 1, 4, readLength));
+        Assert.assertEquals(5, readLength[0]);
+        Assert.assertEquals("ab", Utf8Utils.utf8BytesWithUtf16LengthToString(bytes, 1, 2, readLength));
+        Assert.assertEquals(2, readLength[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroByte() {
+        Utf8Utils.utf8BytesWithUtf16LengthToString(new byte[] { 'a', 0, 'b' }, 0, 3);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroByteUtf8Length() {
+        Utf8Utils.utf8BytesToString(new byte[] { 'a', 0, 'b' }, 0, 3);
+    }
+
+    @Test
+    public void testCompare() {
+        Random random = new Random(5678);
+        String[] strings = new String[STRINGS.length + 200];
+        System.arraycopy(STRINGS, 0, strings, 0, STRINGS.length);
+        for (int i = STRINGS.length; i < strings.length; i++) {
+            strings[i] = randomString(random);
+        }
+
+        for (String first: strings) {
+            byte[] bytes = Utf8Utils.stringToUtf8Bytes(first);
+            for (String second: strings) {
+                Assert.assertEquals(Integer.signum(first.compareTo(second)),
+                        Integer.signum(Utf8Utils.compareUtf8BytesWithUtf16LengthToString(
+                                bytes, 0, first.length(), second)));
+            }
+            Assert.assertEquals(0, Utf8Utils.compareUtf8BytesWithUtf16LengthToString(
+                    bytes, 0, first.length(), first));
+        }
+    }
+
+    private static void assertRoundTrip(String string) {
+        byte[] bytes = Utf8Utils.stringToUtf8Bytes(string);
+        byte[] padded = new byte[bytes.length + 2];
+        System.arraycopy(bytes, 0, padded, 1, bytes.length);
+
+        int[] readLength = new int[1];
+        Assert.assertEquals(string,
+                Utf8Utils.utf8BytesWithUtf16LengthToString(padded, 1, string.length(), readLength));
+        Assert.assertEquals(bytes.length, readLength[0]);
+        Assert.assertEquals(string, Utf8Utils.utf8BytesToString(padded, 1, bytes.length));
+    }
+
+    private static String randomString(Random random) {
+        int length = random.nextInt(20);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    sb.append((char)random.nextInt(0x80));
+                    break;
+                case 1:
+                    sb.append((char)random.nextInt(0x800));
+                    break;
+                case 2:
+                    sb.append((char)random.nextInt(0x10000));
+                    break;
+                default:
+                    sb.append((char)('a' + random.nextInt(3)));
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -76,8 +76,22 @@ public class AssembleCommand extends Command {
             description = "Allows the odex opcodes that dalvik doesn't reject to be assembled.")
     private boolean allowOdexOpcodes;
 
+    @Parameter(names = "--skip-signature",
+            description = "Don't compute the SHA-1 signature of the dex file. The signature is left as zeros. This " +
+                    "is useful if the dex file will be re-signed later.")
+    private boolean skipSignature;
+
+    @Parameter(names = "--cache",
+            description = "A directory to cache the assembled class from each file in. Files that were already " +
+                    "assembled with the same contents and options are loaded from the cache instead of being " +
+                    "assembled again. The directory is created if needed, and can be deleted at any time. The " +
+                    "output is equivalent to, but not byte-identical to, the output without a cache.")
+    @ExtendedParameter(argumentNames = "dir")
+    private String cacheDirectory;
+
     @Parameter(description = "Assembles the given files. If a directory is specified, it will be " +
-            "recursively searched for any files with a .smali prefix")
+            "recursively searched for any files with a .smali prefix. If a .zip or .jar file is specified, the " +
+            ".smali files in it are assembled directly from the archive")
     @ExtendedParameter(argumentNames = "[<file>|<dir>]+")
     private List<String> input;
 
@@ -106,6 +120,8 @@ public class AssembleCommand extends Command {
         options.outputDexFile = output;
         options.allowOdexOpcodes = allowOdexOpcodes;
         options.verboseErrors = verbose;
+        options.skipSignature = skipSignature;
+        options.cacheDirectory = cacheDirectory;
 
         return options;
     }
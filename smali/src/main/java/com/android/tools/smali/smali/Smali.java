@@ -32,29 +32,51 @@ package com.android.tools.smali.smali;
 
 import com.google.common.collect.Lists;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipFile;
 import org.antlr.runtime.CommonTokenStream;
 import org.antlr.runtime.Token;
 import org.antlr.runtime.TokenSource;
 import org.antlr.runtime.tree.CommonTree;
 import org.antlr.runtime.tree.CommonTreeNodeStream;
 import com.android.tools.smali.dexlib2.Opcodes;
+import com.android.tools.smali.dexlib2.iface.ClassDef;
 import com.android.tools.smali.dexlib2.writer.builder.DexBuilder;
-import com.android.tools.smali.dexlib2.writer.io.FileDataStore;
+import com.android.tools.smali.smali.util.BlankReader;
+import com.android.tools.smali.dexlib2.writer.io.FileChannelDataStore;
+import com.android.tools.smali.dexlib2.writer.io.MemoryDataStore;
+import com.android.tools.smali.dexlib2.writer.pool.DexPool;
+import com.android.tools.smali.util.ExceptionWithContext;
+import com.android.tools.smali.util.PathUtil;
 import com.android.tools.smali.util.StringUtils;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.CharArrayReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.security.MessageDigest;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -80,6 +102,7 @@ public class Smali {
      */
     public static boolean assemble(final SmaliOptions options, List<String> input) throws IOException {
         TreeSet<File> filesToProcessSet = new TreeSet<File>();
+        TreeSet<File> archivesToProcessSet = new TreeSet<File>();
 
         for (String fileToProcess: input) {
             File argFile = new File(fileToProcess);
@@ -91,53 +114,155 @@ public class Smali {
             if (argFile.isDirectory()) {
                 getSmaliFilesInDir(argFile, filesToProcessSet);
             } else if (argFile.isFile()) {
-                filesToProcessSet.add(argFile);
+                if (SmaliInput.isArchive(argFile)) {
+                    archivesToProcessSet.add(argFile);
+                } else {
+                    filesToProcessSet.add(argFile);
+                }
             }
         }
 
+        List<SmaliInput> inputs = Lists.newArrayList();
+        for (File file: filesToProcessSet) {
+            inputs.add(SmaliInput.forFile(file));
+        }
+
+        List<ZipFile> zipFiles = Lists.newArrayList();
+        try {
+            for (File archive: archivesToProcessSet) {
+                ZipFile zipFile = new ZipFile(archive);
+                zipFiles.add(zipFile);
+                inputs.addAll(SmaliInput.forArchiveEntries(archive, zipFile));
+            }
+
+            return assembleInputs(options, inputs);
+        } finally {
+            for (ZipFile zipFile: zipFiles) {
+                zipFile.close();
+            }
+        }
+    }
+
+    private static boolean assembleInputs(final SmaliOptions options, List<SmaliInput> inputs) throws IOException {
         boolean errors = false;
 
         final DexBuilder dexBuilder = new DexBuilder(Opcodes.forApi(options.apiLevel));
 
-        ExecutorService executor = Executors.newFixedThreadPool(options.jobs);
-        List<Future<Boolean>> tasks = Lists.newArrayList();
+        //when there's a cache, each file is assembled into a class of its own (or loaded from the cache), and the
+        //classes are all merged into a DexPool at the end
+        final SmaliCache cache;
+        if (options.cacheDirectory != null && !options.printTokens) {
+            cache = new SmaliCache(new File(options.cacheDirectory), options);
+        } else {
+            cache = null;
+        }
 
-        for (final File file: filesToProcessSet) {
-            tasks.add(executor.submit(new Callable<Boolean>() {
+        //assemble the largest files first, so that a few large files don't end up being assembled at the very end
+        //while the other threads sit idle. The sort is stable, so files of the same size stay in name order
+        final List<SmaliInput> files = Lists.newArrayList(inputs);
+        final Map<SmaliInput, Long> fileSizes = new HashMap<SmaliInput, Long>();
+        for (SmaliInput file: files) {
+            fileSizes.put(file, file.getSize());
+        }
+        Collections.sort(files, (file1, file2) -> Long.compare(fileSizes.get(file2), fileSizes.get(file1)));
+
+        final ClassDef[] classDefs = new ClassDef[files.size()];
+
+        //each worker takes the next file from the shared list until there are none left, and reuses the same
+        //lexer, parser and tree walker for every file it assembles
+        final AtomicInteger nextFile = new AtomicInteger(0);
+        int workerCount = Math.min(options.jobs, files.size());
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, workerCount));
+        CompletionService<Boolean> completionService = new ExecutorCompletionService<Boolean>(executor);
+        for (int i=0; i<workerCount; i++) {
+            completionService.submit(new Callable<Boolean>() {
                 @Override public Boolean call() throws Exception {
-                    return assembleSmaliFile(file, dexBuilder, options);
+                    FileAssembler assembler = new FileAssembler(dexBuilder, options, cache);
+                    boolean success = true;
+                    int index;
+                    while ((index = nextFile.getAndIncrement()) < files.size()) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            throw new InterruptedException();
+                        }
+                        if (cache != null) {
+                            classDefs[index] = assembler.assembleCached(files.get(index));
+                            success &= classDefs[index] != null;
+                        } else {
+                            success &= assembler.assemble(files.get(index));
+                        }
+                    }
+                    return success;
                 }
-            }));
+            });
         }
 
-        for (Future<Boolean> task: tasks) {
-            while(true) {
-                try {
+        try {
+            for (int i=0; i<workerCount; i++) {
+                while (true) {
                     try {
-                        if (!task.get()) {
-                            errors = true;
+                        try {
+                            if (!completionService.take().get()) {
+                                errors = true;
+                            }
+                        } catch (ExecutionException ex) {
+                            throw new RuntimeException(ex);
                         }
-                    } catch (ExecutionException ex) {
-                        throw new RuntimeException(ex);
+                    } catch (InterruptedException ex) {
+                        continue;
                     }
-                } catch (InterruptedException ex) {
-                    continue;
+                    break;
                 }
-                break;
             }
+        } finally {
+            //if a worker failed, there's no point in letting the others continue
+            executor.shutdownNow();
         }
 
-        executor.shutdown();
-
         if (errors) {
             return false;
         }
 
-        dexBuilder.writeTo(new FileDataStore(new File(options.outputDexFile)));
+        if (cache != null) {
+            DexPool dexPool = new DexPool(cache.getOpcodes());
+            for (int i=0; i<classDefs.length; i++) {
+                try {
+                    dexPool.internClass(classDefs[i]);
+                } catch (ExceptionWithContext ex) {
+                    //e.g. the class is also defined in another file. This is reported the same way the tree walker
+                    //reports it when the files are assembled without the cache
+                    if (options.verboseErrors) {
+                        ex.printStackTrace(System.err);
+                    }
+                    System.err.println(getSourceName(files.get(i).getSourceFile()) + " " + ex.getMessage());
+                    errors = true;
+                }
+            }
+            if (errors) {
+                return false;
+            }
+            dexPool.setSkipSignature(options.skipSignature);
+            dexPool.writeTo(new FileChannelDataStore(new File(options.outputDexFile)), options.jobs);
+        } else {
+            dexBuilder.setSkipSignature(options.skipSignature);
+            dexBuilder.writeTo(new FileChannelDataStore(new File(options.outputDexFile)), options.jobs);
+        }
 
         return true;
     }
 
+    /**
+     * Gets the name that the lexer and tree walker use for the given file in error messages.
+     */
+    @Nonnull
+    private static String getSourceName(@Nonnull File sourceFile) {
+        try {
+            return PathUtil.getRelativeFile(new File("."), sourceFile).getPath();
+        } catch (IOException ex) {
+            return sourceFile.getAbsolutePath();
+        }
+    }
+
     /**
      * Prints the lexical tokens for the given files.
      *
@@ -192,14 +317,87 @@ public class Smali {
         }
     }
 
-    private static boolean assembleSmaliFile(File smaliFile, DexBuilder dexBuilder, SmaliOptions options)
-            throws Exception {
-        try (FileInputStream fis = new FileInputStream(smaliFile)) {
-            InputStreamReader reader = new InputStreamReader(fis, StandardCharsets.UTF_8);
+    /**
+     * Assembles smali files into a DexBuilder, reusing the same lexer, token stream, parser and tree walker for each
+     * file, so that their buffers and tables only need to be set up once per thread. An instance must only be used by
+     * a single thread.
+     */
+    static class FileAssembler {
+        @Nonnull private final SmaliOptions options;
+        @Nullable private final SmaliCache cache;
+        @Nullable private final MessageDigest digest;
+
+        @Nonnull private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        @Nonnull private ByteBuffer byteBuffer = ByteBuffer.allocate(0);
+        @Nonnull private CharBuffer charBuffer = CharBuffer.allocate(0);
+
+        @Nonnull private final smaliFlexLexer lexer;
+        @Nonnull private final CommonTokenStream tokens;
+        @Nonnull private final smaliParser parser;
+        @Nonnull private final smaliTreeWalker dexGen;
+
+        public FileAssembler(@Nonnull DexBuilder dexBuilder, @Nonnull SmaliOptions options,
+                             @Nullable SmaliCache cache) {
+            this.options = options;
+            this.cache = cache;
+            this.digest = cache != null ? SmaliCache.newDigest() : null;
+
+            lexer = new smaliFlexLexer(BlankReader.INSTANCE, options.apiLevel);
+            tokens = new CommonTokenStream(lexer);
+
+            parser = new smaliParser(tokens);
+            parser.setVerboseErrors(options.verboseErrors);
+            parser.setAllowOdex(options.allowOdexOpcodes);
+            parser.setApiLevel(options.apiLevel);
 
-            LexerErrorInterface lexer = new smaliFlexLexer(reader, options.apiLevel);
-            ((smaliFlexLexer) lexer).setSourceFile(smaliFile);
-            CommonTokenStream tokens = new CommonTokenStream((TokenSource) lexer);
+            dexGen = new smaliTreeWalker(new CommonTreeNodeStream(new CommonTree()));
+            dexGen.setApiLevel(options.apiLevel);
+            dexGen.setVerboseErrors(options.verboseErrors);
+            dexGen.setDexBuilder(dexBuilder);
+        }
+
+        public boolean assemble(@Nonnull SmaliInput smaliFile) throws Exception {
+            readFile(smaliFile);
+            return assembleContents(smaliFile);
+        }
+
+        /**
+         * Assembles a file into a class of its own, or loads the class from the cache if the file was already
+         * assembled.
+         *
+         * @return The class from the file, or null if there were errors
+         */
+        @Nullable
+        public ClassDef assembleCached(@Nonnull SmaliInput smaliFile) throws Exception {
+            assert cache != null && digest != null;
+
+            readFile(smaliFile);
+            String key = cache.getKey(digest, byteBuffer);
+            ClassDef classDef = cache.load(key);
+            if (classDef != null) {
+                return classDef;
+            }
+
+            DexBuilder fileDexBuilder = new DexBuilder(cache.getOpcodes());
+            fileDexBuilder.setSkipSignature(true);
+            dexGen.setDexBuilder(fileDexBuilder);
+            if (!assembleContents(smaliFile)) {
+                return null;
+            }
+
+            MemoryDataStore dataStore = new MemoryDataStore();
+            fileDexBuilder.writeTo(dataStore);
+            return cache.store(key, Arrays.copyOf(dataStore.getBuffer(), dataStore.getSize()));
+        }
+
+        /**
+         * Assembles the file that was last read by {@link #readFile}.
+         */
+        private boolean assembleContents(@Nonnull SmaliInput smaliFile) throws Exception {
+            lexer.reset(decodeFile(), smaliFile.getSourceFile());
+            tokens.setTokenSource(lexer);
 
             if (options.printTokens) {
                 tokens.getTokens();
@@ -222,10 +420,7 @@ public class Smali {
                 System.out.flush();
             }
 
-            smaliParser parser = new smaliParser(tokens);
-            parser.setVerboseErrors(options.verboseErrors);
-            parser.setAllowOdex(options.allowOdexOpcodes);
-            parser.setApiLevel(options.apiLevel);
+            parser.setTokenStream(tokens);
 
             smaliParser.smali_file_return result = parser.smali_file();
 
@@ -242,15 +437,69 @@ public class Smali {
                 System.out.println(t.toStringTree());
             }
 
-            smaliTreeWalker dexGen = new smaliTreeWalker(treeStream);
-            dexGen.setApiLevel(options.apiLevel);
-
-            dexGen.setVerboseErrors(options.verboseErrors);
-            dexGen.setDexBuilder(dexBuilder);
+            dexGen.reset(treeStream);
             dexGen.smali_file();
 
             return dexGen.getNumberOfSyntaxErrors() == 0;
         }
+
+        /**
+         * Reads the whole file into this assembler's byte buffer.
+         */
+        private void readFile(@Nonnull SmaliInput smaliFile) throws IOException {
+            long size = smaliFile.getSize();
+            if (size >= Integer.MAX_VALUE) {
+                throw new IOException(String.format("%s is too large", smaliFile.getSourceFile()));
+            }
+            // leave room for 1 more byte, so that we can see the end of the file without having to grow the buffer
+            int capacity = size < 0 ? 8192 : (int)size + 1;
+            if (byteBuffer.capacity() < capacity) {
+                byteBuffer = ByteBuffer.allocate(capacity);
+            }
+            byteBuffer.clear();
+            try (ReadableByteChannel channel = smaliFile.open()) {
+                while (true) {
+                    if (!byteBuffer.hasRemaining()) {
+                        // the size wasn't known up front
+                        if (byteBuffer.capacity() >= Integer.MAX_VALUE / 2) {
+                            throw new IOException(String.format("%s is too large", smaliFile.getSourceFile()));
+                        }
+                        ByteBuffer newBuffer = ByteBuffer.allocate(byteBuffer.capacity() * 2);
+                        byteBuffer.flip();
+                        newBuffer.put(byteBuffer);
+                        byteBuffer = newBuffer;
+                    }
+                    if (channel.read(byteBuffer) < 0) {
+                        break;
+                    }
+                }
+            }
+            byteBuffer.flip();
+        }
+
+        /**
+         * Decodes the file in this assembler's byte buffer into its char buffer.
+         */
+        @Nonnull
+        private Reader decodeFile() throws IOException {
+            // utf-8 never decodes to more chars than there are bytes
+            if (charBuffer.capacity() < byteBuffer.remaining()) {
+                charBuffer = CharBuffer.allocate(byteBuffer.remaining());
+            }
+            charBuffer.clear();
+            decoder.reset();
+            CoderResult result = decoder.decode(byteBuffer.duplicate(), charBuffer, true);
+            if (!result.isUnderflow()) {
+                result.throwException();
+            }
+            result = decoder.flush(charBuffer);
+            if (!result.isUnderflow()) {
+                result.throwException();
+            }
+            charBuffer.flip();
+
+            return new CharArrayReader(charBuffer.array(), 0, charBuffer.limit());
+        }
     }
 
     private static boolean printTokensForSingleFile(File smaliFile, SmaliOptions options)
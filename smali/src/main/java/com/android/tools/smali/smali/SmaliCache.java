@@ -0,0 +1,208 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.smali;
+
+import com.android.tools.smali.dexlib2.Opcodes;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedDexFile;
+import com.android.tools.smali.dexlib2.iface.ClassDef;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.zip.Adler32;
+
+/**
+ * A directory of previously assembled classes, so that smali files that haven't changed don't need to be lexed,
+ * parsed and walked again.
+ *
+ * Each class is stored as a dex file containing just that class, named after a hash of the contents of the smali file
+ * it was assembled from, along with the smali version and the options that affect the assembled class. Since the key
+ * only depends on the contents, a file that was moved or renamed is still found in the cache. Entries are never
+ * removed, so the directory can be deleted at any time to clear the cache.
+ *
+ * A cache can be used by several threads at once, and by several smali processes at once.
+ */
+class SmaliCache {
+    // the layout of the cache. This should be changed whenever the way the entries are stored changes
+    private static final int VERSION = 1;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // the header checksum covers everything after the magic and the checksum itself
+    private static final int CHECKSUM_OFFSET = 8;
+    private static final int CHECKSUM_DATA_OFFSET = 12;
+
+    @Nonnull private final File directory;
+    @Nonnull private final Opcodes opcodes;
+    @Nonnull private final byte[] optionsKey;
+
+    public SmaliCache(@Nonnull File directory, @Nonnull SmaliOptions options) {
+        this.directory = directory;
+        this.opcodes = Opcodes.forApi(options.apiLevel);
+        this.optionsKey = String.format("smali-cache %d\n%s\n%d\n%b\n",
+                VERSION, Main.VERSION, options.apiLevel, options.allowOdexOpcodes).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Nonnull
+    public Opcodes getOpcodes() {
+        return opcodes;
+    }
+
+    /**
+     * Creates a digest to pass to {@link #getKey}. A digest can be reused, but only by a single thread at a time.
+     */
+    @Nonnull
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            // every java platform is required to support SHA-1
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Gets the key for a smali file.
+     *
+     * @param digest The digest to use, from {@link #newDigest()}
+     * @param contents The raw contents of the smali file. The position of the buffer isn't changed
+     * @return The key, as a hex string
+     */
+    @Nonnull
+    public String getKey(@Nonnull MessageDigest digest, @Nonnull ByteBuffer contents) {
+        digest.reset();
+        digest.update(optionsKey);
+        digest.update(contents.duplicate());
+
+        byte[] hash = digest.digest();
+        char[] key = new char[hash.length * 2];
+        for (int i=0; i<hash.length; i++) {
+            key[i*2] = HEX_DIGITS[(hash[i] >> 4) & 0xf];
+            key[i*2+1] = HEX_DIGITS[hash[i] & 0xf];
+        }
+        return new String(key);
+    }
+
+    /**
+     * Loads a class from the cache.
+     *
+     * @param key The key of the smali file the class was assembled from
+     * @return The class, or null if it isn't in the cache, or if the entry is damaged
+     */
+    @Nullable
+    public ClassDef load(@Nonnull String key) throws IOException {
+        File file = getFile(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        return readClass(Files.readAllBytes(file.toPath()));
+    }
+
+    /**
+     * Stores a class in the cache.
+     *
+     * The entry is first written to a temporary file, and then moved into place, so that another process never sees
+     * a partially written entry.
+     *
+     * @param key The key of the smali file the class was assembled from
+     * @param dexFile A dex file that contains only the class
+     * @return The class, read back from dexFile
+     */
+    @Nonnull
+    public ClassDef store(@Nonnull String key, @Nonnull byte[] dexFile) throws IOException {
+        ClassDef classDef = readClass(dexFile);
+        if (classDef == null) {
+            throw new IllegalArgumentException("Not a dex file with a single class");
+        }
+
+        File file = getFile(key);
+        File parent = file.getParentFile();
+        if (!parent.exists() && !parent.mkdirs() && !parent.exists()) {
+            throw new IOException("Unable to create directory " + parent);
+        }
+
+        File tempFile = File.createTempFile(key, ".tmp", parent);
+        try {
+            try (FileOutputStream out = new FileOutputStream(tempFile)) {
+                out.write(dexFile);
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            // noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+        }
+        return classDef;
+    }
+
+    @Nonnull
+    private File getFile(@Nonnull String key) {
+        // spread the entries over subdirectories, so that no one directory gets too large
+        return new File(new File(directory, key.substring(0, 2)), key.substring(2) + ".dex");
+    }
+
+    @Nullable
+    private ClassDef readClass(@Nonnull byte[] dexFile) {
+        if (dexFile.length < CHECKSUM_DATA_OFFSET) {
+            return null;
+        }
+
+        Adler32 adler32 = new Adler32();
+        adler32.update(dexFile, CHECKSUM_DATA_OFFSET, dexFile.length - CHECKSUM_DATA_OFFSET);
+        int checksum = (dexFile[CHECKSUM_OFFSET] & 0xff) |
+                ((dexFile[CHECKSUM_OFFSET + 1] & 0xff) << 8) |
+                ((dexFile[CHECKSUM_OFFSET + 2] & 0xff) << 16) |
+                ((dexFile[CHECKSUM_OFFSET + 3] & 0xff) << 24);
+        if (checksum != (int)adler32.getValue()) {
+            return null;
+        }
+
+        try {
+            Iterator<? extends ClassDef> classes = new DexBackedDexFile(opcodes, dexFile).getClasses().iterator();
+            if (!classes.hasNext()) {
+                return null;
+            }
+            ClassDef classDef = classes.next();
+            return classes.hasNext() ? null : classDef;
+        } catch (RuntimeException ex) {
+            // e.g. the dex file is damaged in a way the checksum didn't catch
+            return null;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.smali;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A single smali file to assemble, either a file on disk or an entry in a zip or jar archive.
+ */
+abstract class SmaliInput {
+    /**
+     * @return The file to use for this input in error messages. For an archive entry, this is the path of the entry
+     * under the archive, e.g. out.zip/java/lang/Object.smali
+     */
+    @Nonnull public abstract File getSourceFile();
+
+    /**
+     * @return The size of the input in bytes, or -1 if it isn't known
+     */
+    public abstract long getSize();
+
+    @Nonnull public abstract ReadableByteChannel open() throws IOException;
+
+    /**
+     * Returns whether the given file should be read as an archive of smali files, rather than as a smali file.
+     */
+    public static boolean isArchive(@Nonnull File file) {
+        String name = file.getName().toLowerCase();
+        return name.endsWith(".zip") || name.endsWith(".jar");
+    }
+
+    @Nonnull
+    public static SmaliInput forFile(@Nonnull final File file) {
+        return new SmaliInput() {
+            @Nonnull @Override public File getSourceFile() {
+                return file;
+            }
+
+            @Override public long getSize() {
+                return file.length();
+            }
+
+            @Nonnull @Override public ReadableByteChannel open() throws IOException {
+                return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            }
+        };
+    }
+
+    /**
+     * Gets an input for each .smali entry in the given archive, in entry name order.
+     *
+     * The inputs read from zipFile, so it must stay open until they have all been assembled. ZipFile can be read
+     * from several threads at once, so the inputs can be assembled in parallel.
+     *
+     * @param archive The path of the archive, used for the source file of each input
+     * @param zipFile The opened archive
+     */
+    @Nonnull
+    public static List<SmaliInput> forArchiveEntries(@Nonnull File archive, @Nonnull final ZipFile zipFile) {
+        List<ZipEntry> entries = new ArrayList<>();
+        Enumeration<? extends ZipEntry> enumeration = zipFile.entries();
+        while (enumeration.hasMoreElements()) {
+            ZipEntry entry = enumeration.nextElement();
+            if (!entry.isDirectory() && entry.getName().endsWith(".smali")) {
+                entries.add(entry);
+            }
+        }
+        Collections.sort(entries, (entry1, entry2) -> entry1.getName().compareTo(entry2.getName()));
+
+        List<SmaliInput> inputs = new ArrayList<>(entries.size());
+        for (final ZipEntry entry: entries) {
+            final File sourceFile = new File(archive, entry.getName());
+            inputs.add(new SmaliInput() {
+                @Nonnull @Override public File getSourceFile() {
+                    return sourceFile;
+                }
+
+                @Override public long getSize() {
+                    return entry.getSize();
+                }
+
+                @Nonnull @Override public ReadableByteChannel open() throws IOException {
+                    return Channels.newChannel(zipFile.getInputStream(entry));
+                }
+            });
+        }
+        return inputs;
+    }
+}
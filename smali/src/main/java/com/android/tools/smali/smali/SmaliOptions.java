@@ -38,4 +38,6 @@ public class SmaliOptions {
     public boolean allowOdexOpcodes = false;
     public boolean verboseErrors = false;
     public boolean printTokens = false;
+    public boolean skipSignature = false;
+    public String cacheDirectory = null;
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.smali;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.android.tools.smali.dexlib2.Opcodes;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedDexFile;
+import com.android.tools.smali.dexlib2.iface.ClassDef;
+import com.android.tools.smali.dexlib2.writer.builder.DexBuilder;
+import com.android.tools.smali.dexlib2.writer.io.MemoryDataStore;
+import com.android.tools.smali.dexlib2.writer.pool.DexPool;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class FileAssemblerTest {
+    private static final String[] VALID_FILES = new String[] {
+            "LFirst;",
+            ".class public LFirst;\n" +
+            ".super Ljava/lang/Object;\n" +
+            ".field public static final VALUE:I = 0x1\n" +
+            ".method public static run()V\n" +
+            "    .registers 2\n" +
+            "    const-string v0, \"first\"\n" +
+            "    invoke-static {v0}, LSecond;->call(Ljava/lang/String;)I\n" +
+            "    return-void\n" +
+            ".end method\n",
+
+            "LSecond;",
+            ".class public LSecond;\n" +
+            ".super LFirst;\n" +
+            ".implements Ljava/lang/Runnable;\n" +
+            ".method public static call(Ljava/lang/String;)I\n" +
+            "    .registers 3\n" +
+            "    invoke-virtual {p0}, Ljava/lang/String;->length()I\n" +
+            "    move-result v0\n" +
+            "    if-eqz v0, :zero\n" +
+            "    :try_start\n" +
+            "    invoke-static {}, LFirst;->run()V\n" +
+            "    :try_end\n" +
+            "    .catch Ljava/lang/Exception; {:try_start .. :try_end} :zero\n" +
+            "    return v0\n" +
+            "    :zero\n" +
+            "    const/4 v0, 0x0\n" +
+            "    return v0\n" +
+            ".end method\n" +
+            ".method public run()V\n" +
+            "    .registers 1\n" +
+            "    return-void\n" +
+            ".end method\n",
+
+            "LThird;",
+            ".class LThird;\n" +
+            ".super Ljava/lang/Object;\n" +
+            ".source \"Third.java\"\n" +
+            ".field private label:Ljava/lang/String;\n" +
+            ".method public constructor <init>()V\n" +
+            "    .registers 2\n" +
+            "    .line 10\n" +
+            "    invoke-direct {p0}, Ljava/lang/Object;-><init>()V\n" +
+            "    const-string v0, \"third\"\n" +
+            "    iput-object v0, p0, LThird;->label:Ljava/lang/String;\n" +
+            "    return-void\n" +
+            ".end method\n",
+    };
+
+    @Test
+    public void testReusedAssembler() throws Exception {
+        File tempDir = Files.createTempDir();
+        try {
+            SmaliOptions options = new SmaliOptions();
+            DexBuilder dexBuilder = new DexBuilder(Opcodes.forApi(options.apiLevel));
+            Smali.FileAssembler assembler = new Smali.FileAssembler(dexBuilder, options, null);
+
+            // a syntax error, an error from the tree walker, and then valid files, all through the same assembler
+            Assert.assertFalse(assembler.assemble(writeFile(tempDir, "Syntax",
+                    ".class public LSyntax;\n.super Ljava/lang/Object;\n.method public blah(\n")));
+            Assert.assertFalse(assembler.assemble(writeFile(tempDir, "Semantic",
+                    ".class public LSemantic;\n" +
+                    ".super Ljava/lang/Object;\n" +
+                    ".method public static blah()V\n" +
+                    "    .registers 1\n" +
+                    "    const/4 v0, 0x100\n" +
+                    "    return-void\n" +
+                    ".end method\n")));
+
+            List<SmaliInput> validFiles = Lists.newArrayList();
+            for (int i=0; i<VALID_FILES.length; i+=2) {
+                SmaliInput file = writeFile(tempDir, "Valid" + i, VALID_FILES[i+1]);
+                validFiles.add(file);
+                // the errors in the previous files don't affect this one
+                Assert.assertTrue(assembler.assemble(file));
+            }
+
+            DexBackedDexFile dexFile = writeDexFile(dexBuilder);
+            // the file with a syntax error never reaches the tree walker
+            Assert.assertNull(dexFile.findClassDef("LSyntax;"));
+
+            // each class matches the class assembled by an assembler of its own
+            for (int i=0; i<VALID_FILES.length; i+=2) {
+                DexBuilder freshDexBuilder = new DexBuilder(Opcodes.forApi(options.apiLevel));
+                Assert.assertTrue(new Smali.FileAssembler(freshDexBuilder, options, null)
+                        .assemble(validFiles.get(i/2)));
+                DexBackedDexFile freshDexFile = writeDexFile(freshDexBuilder);
+
+                ClassDef expected = freshDexFile.findClassDef(VALID_FILES[i]);
+                ClassDef actual = dexFile.findClassDef(VALID_FILES[i]);
+                Assert.assertNotNull(expected);
+                Assert.assertNotNull(actual);
+                Assert.assertArrayEquals(VALID_FILES[i], getClassBytes(expected), getClassBytes(actual));
+            }
+        } finally {
+            deleteRecursively(tempDir);
+        }
+    }
+
+    private static SmaliInput writeFile(File dir, String name, String contents) throws IOException {
+        File file = new File(dir, name + ".smali");
+        Files.asCharSink(file, StandardCharsets.UTF_8).write(contents);
+        return SmaliInput.forFile(file);
+    }
+
+    private static DexBackedDexFile writeDexFile(DexBuilder dexBuilder) throws IOException {
+        MemoryDataStore dataStore = new MemoryDataStore();
+        dexBuilder.writeTo(dataStore);
+        return new DexBackedDexFile(Opcodes.getDefault(), dataStore.getData());
+    }
+
+    /**
+     * Writes a class into a dex file of its own, so that two classes can be compared without depending on the other
+     * classes in their dex files.
+     */
+    static byte[] getClassBytes(ClassDef classDef) throws IOException {
+        DexPool dexPool = new DexPool(Opcodes.getDefault());
+        dexPool.internClass(classDef);
+        MemoryDataStore dataStore = new MemoryDataStore();
+        dexPool.writeTo(dataStore);
+        return dataStore.getData();
+    }
+
+    static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child: children) {
+                deleteRecursively(child);
+            }
+        }
+        // noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2026, Google LLC
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ * notice, this list of conditions and the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ * copyright notice, this list of conditions and the following disclaimer
+ * in the documentation and/or other materials provided with the
+ * distribution.
+ *     * Neither the name of Google LLC nor the names of its
+ * contributors may be used to endorse or promote products derived from
+ * this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.android.tools.smali.smali;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import com.android.tools.smali.dexlib2.Opcodes;
+import com.android.tools.smali.dexlib2.dexbacked.DexBackedDexFile;
+import com.android.tools.smali.dexlib2.iface.ClassDef;
+import com.android.tools.smali.dexlib2.iface.Field;
+import com.android.tools.smali.dexlib2.iface.value.IntEncodedValue;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class SmaliCacheTest {
+    @Test
+    public void testCachedAssembly() throws IOException {
+        File tempDir = Files.createTempDir();
+        try {
+            File inputDir = new File(tempDir, "input");
+            File cacheDir = new File(tempDir, "cache");
+            Assert.assertTrue(inputDir.mkdirs());
+            writeClass(inputDir, "First", 1);
+            writeClass(inputDir, "Second", 2);
+
+            SmaliOptions options = new SmaliOptions();
+            options.jobs = 2;
+            options.cacheDirectory = cacheDir.getPath();
+
+            File firstOutput = new File(tempDir, "first.dex");
+            options.outputDexFile = firstOutput.getPath();
+            Assert.assertTrue(Smali.assemble(options, inputDir.getPath()));
+            Assert.assertEquals(2, countEntries(cacheDir));
+
+            // the second run loads both classes from the cache, and produces the same dex file
+            File secondOutput = new File(tempDir, "second.dex");
+            options.outputDexFile = secondOutput.getPath();
+            Assert.assertTrue(Smali.assemble(options, inputDir.getPath()));
+            Assert.assertEquals(2, countEntries(cacheDir));
+            Assert.assertArrayEquals(Files.toByteArray(firstOutput), Files.toByteArray(secondOutput));
+
+            // a changed file is assembled again
+            writeClass(inputDir, "Second", 3);
+            File thirdOutput = new File(tempDir, "third.dex");
+            options.outputDexFile = thirdOutput.getPath();
+            Assert.assertTrue(Smali.assemble(options, inputDir.getPath()));
+            Assert.assertEquals(3, countEntries(cacheDir));
+
+            List<String> values = Lists.newArrayList();
+            DexBackedDexFile dexFile = new DexBackedDexFile(Opcodes.getDefault(), Files.toByteArray(thirdOutput));
+            for (ClassDef classDef: dexFile.getClasses()) {
+                for (Field field: classDef.getStaticFields()) {
+                    values.add(classDef.getType() + "=" + ((IntEncodedValue)field.getInitialValue()).getValue());
+                }
+            }
+            Assert.assertEquals(Lists.newArrayList("LFirst;=1", "LSecond;=3"), values);
+        } finally {
+            deleteRecursively(tempDir);
+        }
+    }
+
+    @Test
+    public void testDuplicateClass() throws IOException {
+        File tempDir = Files.createTempDir();
+        try {
+            File inputDir = new File(tempDir, "input");
+            Assert.assertTrue(inputDir.mkdirs());
+            writeClass(inputDir, "First", 1);
+            Files.copy(new File(inputDir, "First.smali"), new File(inputDir, "Copy.smali"));
+
+            // a class defined in two files is an error, the same as it is without the cache
+            SmaliOptions options = new SmaliOptions();
+            options.cacheDirectory = new File(tempDir, "cache").getPath();
+            options.outputDexFile = new File(tempDir, "out.dex").getPath();
+            Assert.assertFalse(Smali.assemble(options, inputDir.getPath()));
+
+            options.cacheDirectory = null;
+            Assert.assertFalse(Smali.assemble(options, inputDir.getPath()));
+        } finally {
+            deleteRecursively(tempDir);
+        }
+    }
+
+    @Test
+    public void testMatchesUncachedAssembly() throws IOException {
+        File tempDir = Files.createTempDir();
+        try {
+            File inputDir = new File(tempDir, "input");
+            Assert.assertTrue(inputDir.mkdirs());
+            writeClass(inputDir, "First", 1);
+            Files.asCharSink(new File(inputDir, "Second.smali"), StandardCharsets.UTF_8).write("" +
+                    ".class public LSecond;\n" +
+                    ".super LFirst;\n" +
+                    ".source \"Second.java\"\n" +
+                    ".annotation runtime Ljava/lang/Deprecated;\n" +
+                    ".end annotation\n" +
+                    ".field private name:Ljava/lang/String;\n" +
+                    ".method public constructor <init>()V\n" +
+                    "    .registers 2\n" +
+                    "    .line 5\n" +
+                    "    invoke-direct {p0}, LFirst;-><init>()V\n" +
+                    "    const-string v0, \"second\"\n" +
+                    "    iput-object v0, p0, LSecond;->name:Ljava/lang/String;\n" +
+                    "    return-void\n" +
+                    ".end method\n" +
+                    ".method public static count(Ljava/lang/String;)I\n" +
+                    "    .registers 3\n" +
+                    "    :try_start\n" +
+                    "    invoke-virtual {p0}, Ljava/lang/String;->length()I\n" +
+                    "    move-result v0\n" +
+                    "    :try_end\n" +
+                    "    .catch Ljava/lang/NullPointerException; {:try_start .. :try_end} :none\n" +
+                    "    sget v1, LFirst;->VALUE:I\n" +
+                    "    add-int/2addr v0, v1\n" +
+                    "    return v0\n" +
+                    "    :none\n" +
+                    "    const/4 v0, -0x1\n" +
+                    "    return v0\n" +
+                    ".end method\n");
+
+            SmaliOptions options = new SmaliOptions();
+            options.jobs = 2;
+
+            File uncachedOutput = new File(tempDir, "uncached.dex");
+            options.outputDexFile = uncachedOutput.getPath();
+            Assert.assertTrue(Smali.assemble(options, inputDir.getPath()));
+
+            options.cacheDirectory = new File(tempDir, "cache").getPath();
+            File coldOutput = new File(tempDir, "cold.dex");
+            options.outputDexFile = coldOutput.getPath();
+            Assert.assertTrue(Smali.assemble(options, inputDir.getPath()));
+
+            File warmOutput = new File(tempDir, "warm.dex");
+            options.outputDexFile = warmOutput.getPath();
+            Assert.assertTrue(Smali.assemble(options, inputDir.getPath()));
+
+            // the classes loaded from the cache are the same as the classes assembled without it
+            DexBackedDexFile uncached = loadDexFile(uncachedOutput);
+            for (File output: new File[] { coldOutput, warmOutput }) {
+                DexBackedDexFile cached = loadDexFile(output);
+                Assert.assertEquals(uncached.getClasses().size(), cached.getClasses().size());
+                for (ClassDef expected: uncached.getClasses()) {
+                    ClassDef actual = cached.findClassDef(expected.getType());
+                    Assert.assertNotNull(expected.getType(), actual);
+                    Assert.assertArrayEquals(output.getName() + ": " + expected.getType(),
+                            FileAssemblerTest.getClassBytes(expected), FileAssemblerTest.getClassBytes(actual));
+                }
+            }
+        } finally {
+            deleteRecursively(tempDir);
+        }
+    }
+
+    private static void writeClass(File dir, String name, int value) throws IOException {
+        Files.asCharSink(new File(dir, name + ".smali"), StandardCharsets.UTF_8).write("" +
+                ".class public L" + name + ";\n" +
+                ".super Ljava/lang/Object;\n" +
+                ".field public static final VALUE:I = " + value + "\n");
+    }
+
+    private static DexBackedDexFile loadDexFile(File file) throws IOException {
+        return new DexBackedDexFile(Opcodes.getDefault(), Files.toByteArray(file));
+    }
+
+    private static int countEntries(File dir) {
+        int count = 0;
+        File[] children = dir.listFiles();
+        if (children != null) {
+            for (File child: children) {
+                if (child.isDirectory()) {
+                    count += countEntries(child);
+                } else if (child.getName().endsWith(".dex")) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child: children) {
+                deleteRecursively(child);
+            }
+        }
+        // noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+}
@@ -36,14 +36,18 @@ import com.android.tools.smali.baksmali.BaksmaliOptions;
 import com.android.tools.smali.baksmali.formatter.BaksmaliFormatter;
 import com.android.tools.smali.baksmali.formatter.BaksmaliWriter;
 import com.android.tools.smali.dexlib2.AccessFlags;
+import com.android.tools.smali.dexlib2.analysis.MethodAnalyzer;
 import com.android.tools.smali.dexlib2.dexbacked.DexBackedClassDef;
 import com.android.tools.smali.dexlib2.iface.instruction.Instruction;
 import com.android.tools.smali.dexlib2.iface.instruction.formats.Instruction21c;
 import com.android.tools.smali.dexlib2.iface.reference.FieldReference;
 import com.android.tools.smali.dexlib2.iface.reference.Reference;
+import com.google.common.collect.Iterables;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
@@ -54,12 +58,25 @@ public class ClassDefinition {
     @Nonnull public final ClassDef classDef;
     @Nonnull private final HashSet<String> fieldsSetInStaticConstructor;
     @Nonnull private final BaksmaliFormatter formatter;
+    @Nullable private final MethodAnalysisScheduler analysisScheduler;
+    @Nullable private MethodAnalysisScheduler.ClassAnalyses scheduledAnalyses;
 
     protected boolean validationErrors;
 
     public ClassDefinition(@Nonnull BaksmaliOptions options, @Nonnull ClassDef classDef) {
+        this(options, classDef, null);
+    }
+
+    /**
+     * @param analysisScheduler If not null, the methods that need to be analyzed are analyzed using this scheduler,
+     *                          so that the analysis of large methods can proceed in parallel while the class is being
+     *                          written
+     */
+    public ClassDefinition(@Nonnull BaksmaliOptions options, @Nonnull ClassDef classDef,
+                           @Nullable MethodAnalysisScheduler analysisScheduler) {
         this.options = options;
         this.classDef = classDef;
+        this.analysisScheduler = analysisScheduler;
         formatter = new BaksmaliFormatter(options.implicitReferences ? classDef.getType() : null);
         fieldsSetInStaticConstructor = findFieldsSetInStaticConstructor(classDef);
     }
@@ -107,6 +124,20 @@ public class ClassDefinition {
     }
 
     public void writeTo(BaksmaliWriter writer) throws IOException {
+        Iterable<? extends Method> directMethods = getDirectMethods();
+        Iterable<? extends Method> virtualMethods = getVirtualMethods();
+        if (analysisScheduler != null) {
+            // the scheduled analyses are keyed by method instance, so the same instances must be used when writing
+            List<Method> methods = new ArrayList<Method>();
+            Iterables.addAll(methods, directMethods);
+            int directMethodCount = methods.size();
+            Iterables.addAll(methods, virtualMethods);
+
+            directMethods = methods.subList(0, directMethodCount);
+            virtualMethods = methods.subList(directMethodCount, methods.size());
+            scheduledAnalyses = analysisScheduler.scheduleClass(options, methods);
+        }
+
         writeClass(writer);
         writeSuper(writer);
         writeSourceFile(writer);
@@ -114,8 +145,41 @@ public class ClassDefinition {
         writeAnnotations(writer);
         Set<String> staticFields = writeStaticFields(writer);
         writeInstanceFields(writer, staticFields);
-        Set<String> directMethods = writeDirectMethods(writer);
-        writeVirtualMethods(writer, directMethods);
+        Set<String> writtenDirectMethods = writeDirectMethods(writer, directMethods);
+        writeVirtualMethods(writer, virtualMethods, writtenDirectMethods);
+    }
+
+    @Nonnull
+    private Iterable<? extends Method> getDirectMethods() {
+        if (classDef instanceof DexBackedClassDef) {
+            return ((DexBackedClassDef)classDef).getDirectMethods(false);
+        } else {
+            return classDef.getDirectMethods();
+        }
+    }
+
+    @Nonnull
+    private Iterable<? extends Method> getVirtualMethods() {
+        if (classDef instanceof DexBackedClassDef) {
+            return ((DexBackedClassDef)classDef).getVirtualMethods(false);
+        } else {
+            return classDef.getVirtualMethods();
+        }
+    }
+
+    /**
+     * Gets the analyzer for the given method, either from the analyses scheduled for this class, or by analyzing it
+     * on the current thread.
+     */
+    @Nonnull
+    public MethodAnalyzer getMethodAnalyzer(@Nonnull Method method) {
+        if (scheduledAnalyses != null) {
+            MethodAnalyzer methodAnalyzer = scheduledAnalyses.getMethodAnalyzer(method);
+            if (methodAnalyzer != null) {
+                return methodAnalyzer;
+            }
+        }
+        return MethodAnalysisScheduler.analyzeMethod(options, method);
     }
 
     private void writeClass(BaksmaliWriter writer) throws IOException {
@@ -246,17 +310,11 @@ public class ClassDefinition {
         }
     }
 
-    private Set<String> writeDirectMethods(BaksmaliWriter writer) throws IOException {
+    private Set<String> writeDirectMethods(BaksmaliWriter writer, Iterable<? extends Method> directMethods)
+            throws IOException {
         boolean wroteHeader = false;
         Set<String> writtenMethods = new HashSet<String>();
 
-        Iterable<? extends Method> directMethods;
-        if (classDef instanceof DexBackedClassDef) {
-            directMethods = ((DexBackedClassDef)classDef).getDirectMethods(false);
-        } else {
-            directMethods = classDef.getDirectMethods();
-        }
-
         for (Method method: directMethods) {
             if (!wroteHeader) {
                 writer.write("\n\n");
@@ -285,18 +343,11 @@ public class ClassDefinition {
         return writtenMethods;
     }
 
-    private void writeVirtualMethods(BaksmaliWriter writer, Set<String> directMethods)
-            throws IOException {
+    private void writeVirtualMethods(BaksmaliWriter writer, Iterable<? extends Method> virtualMethods,
+                                     Set<String> directMethods) throws IOException {
         boolean wroteHeader = false;
         Set<String> writtenMethods = new HashSet<String>();
 
-        Iterable<? extends Method> virtualMethods;
-        if (classDef instanceof DexBackedClassDef) {
-            virtualMethods = ((DexBackedClassDef)classDef).getVirtualMethods(false);
-        } else {
-            virtualMethods = classDef.getVirtualMethods();
-        }
-
         for (Method method: virtualMethods) {
             if (!wroteHeader) {
                 writer.write("\n\n");
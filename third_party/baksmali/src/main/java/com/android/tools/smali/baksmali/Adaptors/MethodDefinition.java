@@ -42,6 +42,7 @@ import com.android.tools.smali.dexlib2.iface.TryBlock;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.android.tools.smali.baksmali.Adaptors.Debug.DebugMethodItem;
+import com.android.tools.smali.baksmali.BaksmaliOptions;
 import com.android.tools.smali.baksmali.formatter.BaksmaliWriter;
 import com.android.tools.smali.dexlib2.analysis.AnalysisException;
 import com.android.tools.smali.dexlib2.analysis.AnalyzedInstruction;
@@ -366,8 +367,7 @@ public class MethodDefinition {
     private List<MethodItem> getMethodItems() {
         ArrayList<MethodItem> methodItems = new ArrayList<MethodItem>();
 
-        if ((classDef.options.registerInfo != 0) || (classDef.options.normalizeVirtualMethods) ||
-                (classDef.options.deodex && needsAnalyzed())) {
+        if (needsAnalysis(classDef.options, methodImpl)) {
             addAnalyzedInstructionMethodItems(methodItems);
         } else {
             addInstructionMethodItems(methodItems);
@@ -391,10 +391,19 @@ public class MethodDefinition {
         return methodItems;
     }
 
-    private boolean needsAnalyzed() {
-        for (Instruction instruction: methodImpl.getInstructions()) {
-            if (instruction.getOpcode().odexOnly()) {
-                return true;
+    /**
+     * @return true if the given method implementation needs to be run through the MethodAnalyzer in order to be
+     * disassembled with the given options
+     */
+    public static boolean needsAnalysis(@Nonnull BaksmaliOptions options, @Nonnull MethodImplementation methodImpl) {
+        if (options.registerInfo != 0 || options.normalizeVirtualMethods) {
+            return true;
+        }
+        if (options.deodex) {
+            for (Instruction instruction: methodImpl.getInstructions()) {
+                if (instruction.getOpcode().odexOnly()) {
+                    return true;
+                }
             }
         }
         return false;
@@ -462,8 +471,7 @@ public class MethodDefinition {
     }
 
     private void addAnalyzedInstructionMethodItems(List<MethodItem> methodItems) {
-        MethodAnalyzer methodAnalyzer = new MethodAnalyzer(classDef.options.classPath, method,
-                classDef.options.inlineResolver, classDef.options.normalizeVirtualMethods);
+        MethodAnalyzer methodAnalyzer = classDef.getMethodAnalyzer(method);
 
         AnalysisException analysisException = methodAnalyzer.getAnalysisException();
         if (analysisException != null) {
@@ -27,28 +27,36 @@
 
 package com.android.tools.smali.baksmali;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Ordering;
 import com.android.tools.smali.baksmali.Adaptors.ClassDefinition;
+import com.android.tools.smali.baksmali.Adaptors.MethodAnalysisScheduler;
 import com.android.tools.smali.baksmali.formatter.BaksmaliWriter;
+import com.android.tools.smali.baksmali.output.DirectoryOutputSink;
+import com.android.tools.smali.baksmali.output.OutputSink;
 import com.android.tools.smali.dexlib2.iface.ClassDef;
 import com.android.tools.smali.dexlib2.iface.DexFile;
 import com.android.tools.smali.util.ClassFileNameHandler;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.nio.charset.StandardCharsets;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class Baksmali {
@@ -58,133 +66,475 @@ public class Baksmali {
 
     public static boolean disassembleDexFile(DexFile dexFile, File outputDir, int jobs, final BaksmaliOptions options,
                                              @Nullable List<String> classes) {
+        return disassembleDexFiles(ImmutableMap.of(outputDir, dexFile), jobs, options, classes);
+    }
 
-        //sort the classes, so that if we're on a case-insensitive file system and need to handle classes with file
-        //name collisions, then we'll use the same name for each class, if the dex file goes through multiple
-        //baksmali/smali cycles for some reason. If a class with a colliding name is added or removed, the filenames
-        //may still change of course
-        List<? extends ClassDef> classDefs = Ordering.natural().sortedCopy(dexFile.getClasses());
-
-        final ClassFileNameHandler fileNameHandler = new ClassFileNameHandler(outputDir, ".smali");
+    /**
+     * Disassembles several dex files at once, e.g. every entry of a multidex apk.
+     *
+     * The classes from all of the dex files are scheduled on a single work-stealing pool, so that a small dex file
+     * doesn't leave threads idle while a larger one is still being disassembled. The given options (and therefore
+     * the class path and synthetic accessor resolver) are shared by every dex file. When the methods of a class need to
+     * be analyzed, e.g. for deodexing or register info, the analysis of its methods is also spread across the pool.
+     *
+     * @param dexFiles A map of output directory -&gt; the dex file to disassemble into that directory
+     * @param jobs The number of threads to use
+     * @param options The options to use for all of the dex files
+     * @param classes If not null, only the classes with these types will be disassembled
+     * @return true if all classes were disassembled successfully
+     */
+    public static boolean disassembleDexFiles(@Nonnull Map<File, ? extends DexFile> dexFiles, int jobs,
+                                              final BaksmaliOptions options, @Nullable List<String> classes) {
+        Map<String, DexFile> directoryDexFiles = new LinkedHashMap<String, DexFile>();
+        for (Map.Entry<File, ? extends DexFile> entry: dexFiles.entrySet()) {
+            directoryDexFiles.put(entry.getKey().getPath(), entry.getValue());
+        }
+        try {
+            return disassembleDexFiles(directoryDexFiles, new DirectoryOutputSink(), jobs, options, classes);
+        } catch (IOException ex) {
+            // a DirectoryOutputSink doesn't do anything when it's closed
+            throw new RuntimeException(ex);
+        }
+    }
 
-        ExecutorService executor = Executors.newFixedThreadPool(jobs);
+    /**
+     * Disassembles several dex files into the given output sink, e.g. a directory or an archive.
+     *
+     * This is like {@link #disassembleDexFiles(Map, int, BaksmaliOptions, List)}, except that the classes are written
+     * to outputSink, which is closed once all of the classes have been disassembled.
+     *
+     * @param dexFiles A map of directory within outputSink -&gt; the dex file to disassemble into that directory
+     * @param outputSink The sink to write the disassembled classes to
+     * @param jobs The number of threads to use
+     * @param options The options to use for all of the dex files
+     * @param classes If not null, only the classes with these types will be disassembled
+     * @return true if all classes were disassembled successfully
+     * @throws IOException if the output sink couldn't be finished
+     */
+    public static boolean disassembleDexFiles(@Nonnull Map<String, ? extends DexFile> dexFiles,
+                                              @Nonnull OutputSink outputSink, int jobs,
+                                              final BaksmaliOptions options, @Nullable List<String> classes)
+            throws IOException {
+        ExecutorService executor = new ForkJoinPool(jobs);
         List<Future<Boolean>> tasks = Lists.newArrayList();
 
+        final MethodAnalysisScheduler analysisScheduler;
+        if (jobs > 1) {
+            analysisScheduler = new MethodAnalysisScheduler(executor, jobs);
+        } else {
+            analysisScheduler = null;
+        }
+
         Set<String> classSet = null;
         if (classes != null) {
             classSet = new HashSet<String>(classes);
         }
 
-        for (final ClassDef classDef: classDefs) {
-            if (classSet != null && !classSet.contains(classDef.getType())) {
-                continue;
+        boolean errorOccurred = false;
+        Throwable failure = null;
+        try {
+            //the outputs for all of the classes are created up front, before any classes are disassembled. This lets
+            //the sink allocate all of the file names in one pass, and gives an archive a deterministic layout
+            List<ClassDef> allClassDefs = Lists.newArrayList();
+            List<OutputSink.ClassOutput> allClassOutputs = Lists.newArrayList();
+
+            for (Map.Entry<String, ? extends DexFile> entry: dexFiles.entrySet()) {
+                List<ClassDef> classDefs = Lists.newArrayList();
+                List<String> classDescriptors = Lists.newArrayList();
+                if (!getClassesToDisassemble(entry.getValue(), classSet, classDefs, classDescriptors)) {
+                    errorOccurred = true;
+                }
+
+                try {
+                    allClassOutputs.addAll(outputSink.createClassOutputs(entry.getKey(), classDescriptors, executor));
+                    allClassDefs.addAll(classDefs);
+                } catch (Exception ex) {
+                    System.err.println("\n\nError occurred while creating the output files in " + entry.getKey());
+                    ex.printStackTrace();
+                    errorOccurred = true;
+                }
             }
-            tasks.add(executor.submit(new Callable<Boolean>() {
-                @Override public Boolean call() throws Exception {
-                    return disassembleClass(classDef, fileNameHandler, options);
+
+            for (int i=0; i<allClassDefs.size(); i++) {
+                final ClassDef classDef = allClassDefs.get(i);
+                final OutputSink.ClassOutput classOutput = allClassOutputs.get(i);
+                tasks.add(executor.submit(new Callable<Boolean>() {
+                    @Override public Boolean call() throws Exception {
+                        return disassembleClass(classDef, classOutput, options, analysisScheduler);
+                    }
+                }));
+            }
+
+            if (!waitForTasks(tasks)) {
+                errorOccurred = true;
+            }
+        } catch (Throwable ex) {
+            failure = ex;
+            throw ex;
+        } finally {
+            executor.shutdown();
+
+            //the sink is closed even if a task failed, so that an archive isn't left truncated. Every class output
+            //is still committed or discarded by its task, so this finishes once the remaining tasks are done
+            try {
+                outputSink.close();
+            } catch (IOException ex) {
+                if (failure == null) {
+                    throw ex;
                 }
-            }));
+                failure.addSuppressed(ex);
+            }
+        }
+        return !errorOccurred;
+    }
+
+    /**
+     * Disassembles several dex files into directories under outputDir, only re-writing the classes that changed since
+     * the last time outputDir was written by this method.
+     *
+     * A fingerprint of each class is kept in a {@link DisassemblyManifest} in outputDir. A class is skipped when its
+     * fingerprint, its type and its file all match the manifest, and the file still exists. The files of classes
+     * that are no longer present are deleted. If the options changed since the last run, every class is re-written.
+     *
+     * The output of a class must only depend on the class itself, so this can't be used with a class path, e.g. for
+     * deodexing or register info.
+     *
+     * @param dexFiles A map of output directory -&gt; the dex file to disassemble into that directory. Each output
+     *                 directory should be outputDir or one of its subdirectories
+     * @param outputDir The root output directory, where the manifest is kept
+     * @param jobs The number of threads to use
+     * @param options The options to use for all of the dex files
+     * @return true if all classes were disassembled successfully
+     * @throws IOException if the manifest couldn't be read or written
+     */
+    public static boolean disassembleDexFilesIncrementally(@Nonnull Map<File, ? extends DexFile> dexFiles,
+                                                           @Nonnull File outputDir, int jobs,
+                                                           @Nonnull final BaksmaliOptions options)
+            throws IOException {
+        if (options.classPath != null || options.inlineResolver != null) {
+            throw new IllegalArgumentException(
+                    "Incremental disassembly can't be used with options that need a class path");
+        }
+
+        File outputRoot = outputDir.getCanonicalFile();
+        if (!outputRoot.exists() && !outputRoot.mkdirs()) {
+            throw new IOException("Unable to create directory " + outputRoot);
+        }
+        File manifestFile = new File(outputRoot, DisassemblyManifest.FILE_NAME);
+        DisassemblyManifest oldManifest = DisassemblyManifest.read(manifestFile);
+        DisassemblyManifest newManifest =
+                new DisassemblyManifest(ClassFingerprinter.getOptionsFingerprint(options));
+
+        //the old entries can only be reused if the classes would be disassembled the same way
+        final DisassemblyManifest reusableManifest;
+        if (oldManifest != null && oldManifest.getOptionsFingerprint().equals(newManifest.getOptionsFingerprint())) {
+            reusableManifest = oldManifest;
+        } else {
+            reusableManifest = null;
         }
 
+        final Map<String, DisassemblyManifest.Entry> newEntries =
+                new ConcurrentHashMap<String, DisassemblyManifest.Entry>();
+        final ThreadLocal<ClassFingerprinter> fingerprinters = new ThreadLocal<ClassFingerprinter>() {
+            @Override protected ClassFingerprinter initialValue() {
+                return new ClassFingerprinter(options);
+            }
+        };
+
+        ExecutorService executor = new ForkJoinPool(jobs);
+        List<Future<Boolean>> tasks = Lists.newArrayList();
+        Set<String> usedPaths = new HashSet<String>();
+
         boolean errorOccurred = false;
         try {
-            for (Future<Boolean> task: tasks) {
-                while(true) {
-                    try {
-                        if (!task.get()) {
-                            errorOccurred = true;
+            for (Map.Entry<File, ? extends DexFile> entry: dexFiles.entrySet()) {
+                File dexOutputDir = entry.getKey().getCanonicalFile();
+
+                List<ClassDef> classDefs = Lists.newArrayList();
+                List<String> classDescriptors = Lists.newArrayList();
+                if (!getClassesToDisassemble(entry.getValue(), null, classDefs, classDescriptors)) {
+                    errorOccurred = true;
+                }
+
+                List<File> smaliFiles;
+                try {
+                    smaliFiles = new ClassFileNameHandler(dexOutputDir, ".smali")
+                            .getUniqueFilenamesForClasses(classDescriptors, executor);
+                } catch (Exception ex) {
+                    System.err.println("\n\nError occurred while creating the output files in " + dexOutputDir);
+                    ex.printStackTrace();
+                    errorOccurred = true;
+
+                    //leave the files from the last run in this directory alone, rather than treating them as stale
+                    if (oldManifest != null) {
+                        String prefix = getManifestPath(outputRoot, dexOutputDir);
+                        if (!prefix.isEmpty()) {
+                            prefix += "/";
+                        }
+                        for (DisassemblyManifest.Entry oldEntry: oldManifest.getEntries()) {
+                            if (oldEntry.path.startsWith(prefix)) {
+                                usedPaths.add(oldEntry.path);
+                                if (reusableManifest != null) {
+                                    newEntries.put(oldEntry.path, oldEntry);
+                                }
+                            }
                         }
-                    } catch (InterruptedException ex) {
-                        continue;
-                    } catch (ExecutionException ex) {
-                        throw new RuntimeException(ex);
                     }
-                    break;
+                    continue;
                 }
+
+                for (int i=0; i<classDefs.size(); i++) {
+                    final ClassDef classDef = classDefs.get(i);
+                    final File smaliFile = smaliFiles.get(i);
+                    final String path = getManifestPath(outputRoot, smaliFile);
+                    usedPaths.add(path);
+
+                    tasks.add(executor.submit(new Callable<Boolean>() {
+                        @Override public Boolean call() throws Exception {
+                            String fingerprint = fingerprinters.get().getFingerprint(classDef);
+
+                            if (fingerprint != null && reusableManifest != null) {
+                                DisassemblyManifest.Entry oldEntry = reusableManifest.getEntry(path);
+                                if (oldEntry != null && oldEntry.fingerprint.equals(fingerprint) &&
+                                        oldEntry.classType.equals(classDef.getType()) && smaliFile.length() > 0) {
+                                    newEntries.put(path, oldEntry);
+                                    return true;
+                                }
+                            }
+
+                            if (!disassembleClass(classDef, DirectoryOutputSink.createFileOutput(smaliFile),
+                                    options, null)) {
+                                return false;
+                            }
+                            if (fingerprint != null) {
+                                newEntries.put(path,
+                                        new DisassemblyManifest.Entry(path, classDef.getType(), fingerprint));
+                            }
+                            return true;
+                        }
+                    }));
+                }
+            }
+
+            if (!waitForTasks(tasks)) {
+                errorOccurred = true;
             }
         } finally {
             executor.shutdown();
         }
+
+        //delete the files of any classes that were removed since the last run
+        if (oldManifest != null) {
+            for (DisassemblyManifest.Entry oldEntry: oldManifest.getEntries()) {
+                if (!usedPaths.contains(oldEntry.path)) {
+                    File staleFile = new File(outputRoot, oldEntry.path);
+                    if (staleFile.isFile() && !staleFile.delete()) {
+                        System.err.println("Unable to delete stale file " + staleFile);
+                        errorOccurred = true;
+                    }
+                }
+            }
+        }
+
+        //classes that failed aren't in the manifest, so that they're tried again next time
+        for (DisassemblyManifest.Entry entry: newEntries.values()) {
+            newManifest.addEntry(entry);
+        }
+        newManifest.write(manifestFile);
+
+        return !errorOccurred;
+    }
+
+    /**
+     * @return The path of the given file relative to outputRoot, with '/' as the separator
+     */
+    @Nonnull
+    private static String getManifestPath(@Nonnull File outputRoot, @Nonnull File file) {
+        return outputRoot.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Gets the classes of a dex file that should be disassembled, in a stable order.
+     *
+     * @return false if any of the classes were skipped because of an invalid descriptor
+     */
+    private static boolean getClassesToDisassemble(@Nonnull DexFile dexFile, @Nullable Set<String> classSet,
+                                                   @Nonnull List<ClassDef> classDefs,
+                                                   @Nonnull List<String> classDescriptors) {
+        //sort the classes, so that if we're on a case-insensitive file system and need to handle classes with file
+        //name collisions, then we'll use the same name for each class, if the dex file goes through multiple
+        //baksmali/smali cycles for some reason. If a class with a colliding name is added or removed, the filenames
+        //may still change of course
+        List<? extends ClassDef> sortedClassDefs = Ordering.natural().sortedCopy(dexFile.getClasses());
+
+        boolean valid = true;
+        for (ClassDef classDef: sortedClassDefs) {
+            String classDescriptor = classDef.getType();
+            if (classSet != null && !classSet.contains(classDescriptor)) {
+                continue;
+            }
+
+            //validate that the descriptor is formatted like we expect
+            if (classDescriptor.length() < 3 || classDescriptor.charAt(0) != 'L' ||
+                    classDescriptor.charAt(classDescriptor.length()-1) != ';') {
+                System.err.println("Unrecognized class descriptor - " + classDescriptor + " - skipping class");
+                valid = false;
+                continue;
+            }
+            classDefs.add(classDef);
+            classDescriptors.add(classDescriptor);
+        }
+        return valid;
+    }
+
+    /**
+     * Waits for all of the given disassembly tasks to finish.
+     *
+     * @return true if all of the tasks succeeded
+     */
+    private static boolean waitForTasks(@Nonnull List<Future<Boolean>> tasks) {
+        boolean errorOccurred = false;
+        for (Future<Boolean> task: tasks) {
+            while(true) {
+                try {
+                    if (!task.get()) {
+                        errorOccurred = true;
+                    }
+                } catch (InterruptedException ex) {
+                    continue;
+                } catch (ExecutionException ex) {
+                    throw new RuntimeException(ex);
+                }
+                break;
+            }
+        }
         return !errorOccurred;
     }
 
-    private static boolean disassembleClass(ClassDef classDef, ClassFileNameHandler fileNameHandler,
-                                            BaksmaliOptions options) {
+    /**
+     * Disassembles a single class into the given Appendable, without writing anything to disk.
+     *
+     * To disassemble several classes, it's cheaper to reuse a {@link ClassDisassembler}, which reuses the same
+     * writers for each class.
+     *
+     * @param classDef The class to disassemble
+     * @param options The options to use
+     * @param output The Appendable to append the smali to, e.g. a StringBuilder
+     */
+    public static void disassembleClass(@Nonnull ClassDef classDef, @Nonnull BaksmaliOptions options,
+                                        @Nonnull Appendable output) throws IOException {
+        new ClassDisassembler(options).disassembleClass(classDef, output);
+    }
+
+    /**
+     * Receives the smali for each class from {@link #disassembleClasses}.
+     */
+    public interface DisassembledClassHandler {
         /**
-         * The path for the disassembly file is based on the package name
-         * The class descriptor will look something like:
-         * Ljava/lang/Object;
-         * Where the there is leading 'L' and a trailing ';', and the parts of the
-         * package name are separated by '/'
+         * Handles the smali for a single class.
+         *
+         * This is called from several threads at once, when more than 1 job is used. The smali is held in a buffer
+         * that is reused for the next class on the same thread, so it is only valid until this returns.
+         *
+         * @param classDef The class that was disassembled
+         * @param smali The smali for the class
          */
-        String classDescriptor = classDef.getType();
+        void handleClass(@Nonnull ClassDef classDef, @Nonnull CharSequence smali) throws IOException;
+    }
+
+    /**
+     * Disassembles all of the classes in a dex file in memory, and passes the smali for each one to the given handler.
+     *
+     * Each thread keeps its own ClassDisassembler and StringBuilder, and reuses them for every class that it
+     * disassembles, so nothing is written to disk and very little is allocated per class.
+     *
+     * @param dexFile The dex file to disassemble
+     * @param options The options to use
+     * @param jobs The number of threads to use
+     * @param handler The handler to pass the smali for each class to
+     * @throws IOException if the handler throws an IOException
+     */
+    public static void disassembleClasses(@Nonnull DexFile dexFile, @Nonnull final BaksmaliOptions options, int jobs,
+                                          @Nonnull final DisassembledClassHandler handler) throws IOException {
+        final List<? extends ClassDef> classDefs = Ordering.natural().sortedCopy(dexFile.getClasses());
+
+        //each worker takes the next class from the shared list until there are none left
+        final AtomicInteger nextClass = new AtomicInteger(0);
+        int workerCount = Math.max(1, Math.min(jobs, classDefs.size()));
 
-        //validate that the descriptor is formatted like we expect
-        if (classDescriptor.charAt(0) != 'L' ||
-                classDescriptor.charAt(classDescriptor.length()-1) != ';') {
-            System.err.println("Unrecognized class descriptor - " + classDescriptor + " - skipping class");
-            return false;
+        ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+        CompletionService<Void> completionService = new ExecutorCompletionService<Void>(executor);
+        for (int i=0; i<workerCount; i++) {
+            completionService.submit(new Callable<Void>() {
+                @Override public Void call() throws Exception {
+                    ClassDisassembler disassembler = new ClassDisassembler(options);
+                    StringBuilder smali = new StringBuilder();
+                    int index;
+                    while ((index = nextClass.getAndIncrement()) < classDefs.size()) {
+                        if (Thread.currentThread().isInterrupted()) {
+                            throw new InterruptedException();
+                        }
+                        ClassDef classDef = classDefs.get(index);
+                        smali.setLength(0);
+                        disassembler.disassembleClass(classDef, smali);
+                        handler.handleClass(classDef, smali);
+                    }
+                    return null;
+                }
+            });
         }
 
-        File smaliFile = null;
         try {
-            smaliFile = fileNameHandler.getUniqueFilenameForClass(classDescriptor);
-        } catch (IOException ex) {
-            System.err.println("\n\nError occurred while creating file for class " + classDescriptor);
-            ex.printStackTrace();
-            return false;
-        }
-
-        //create and initialize the top level string template
-        ClassDefinition classDefinition = new ClassDefinition(options, classDef);
-
-        //write the disassembly
-        BaksmaliWriter writer = null;
-        try
-        {
-            File smaliParent = smaliFile.getParentFile();
-            if (!smaliParent.exists()) {
-                if (!smaliParent.mkdirs()) {
-                    // check again, it's likely it was created in a different thread
-                    if (!smaliParent.exists()) {
-                        System.err.println("Unable to create directory " + smaliParent.toString() + " - skipping class");
-                        return false;
+            for (int i=0; i<workerCount; i++) {
+                while (true) {
+                    try {
+                        completionService.take().get();
+                    } catch (InterruptedException ex) {
+                        continue;
+                    } catch (ExecutionException ex) {
+                        Throwable cause = ex.getCause();
+                        if (cause instanceof IOException) {
+                            throw (IOException)cause;
+                        }
+                        throw new RuntimeException(cause);
                     }
+                    break;
                 }
             }
+        } finally {
+            //if a worker failed, there's no point in letting the others continue
+            executor.shutdownNow();
+        }
+    }
 
-            if (!smaliFile.exists()){
-                if (!smaliFile.createNewFile()) {
-                    System.err.println("Unable to create file " + smaliFile.toString() + " - skipping class");
-                    return false;
-                }
-            }
+    private static boolean disassembleClass(ClassDef classDef, OutputSink.ClassOutput classOutput,
+                                            BaksmaliOptions options,
+                                            @Nullable MethodAnalysisScheduler analysisScheduler) {
+        String classDescriptor = classDef.getType();
 
-            BufferedWriter bufWriter = new BufferedWriter(new OutputStreamWriter(
-                    new FileOutputStream(smaliFile), StandardCharsets.UTF_8));
-
-            writer = new BaksmaliWriter(
-                    bufWriter,
-                    options.implicitReferences ? classDef.getType() : null);
-            classDefinition.writeTo(writer);
-        } catch (Exception ex) {
-            System.err.println("\n\nError occurred while disassembling class " + classDescriptor.replace('/', '.') + " - skipping class");
-            ex.printStackTrace();
-            // noinspection ResultOfMethodCallIgnored
-            smaliFile.delete();
-            return false;
-        }
-        finally
-        {
-            if (writer != null) {
-                try {
-                    writer.close();
-                } catch (Throwable ex) {
-                    System.err.println("\n\nError occurred while closing file " + smaliFile.toString());
-                    ex.printStackTrace();
-                }
+        boolean committed = false;
+        try {
+            //create and initialize the top level string template
+            ClassDefinition classDefinition = new ClassDefinition(options, classDef, analysisScheduler);
+
+            //write the disassembly
+            try {
+                BaksmaliWriter writer = new BaksmaliWriter(
+                        classOutput.getWriter(),
+                        options.implicitReferences ? classDef.getType() : null);
+                classDefinition.writeTo(writer);
+                classOutput.commit();
+                committed = true;
+            } catch (Exception ex) {
+                System.err.println("\n\nError occurred while disassembling class " + classDescriptor.replace('/', '.') + " - skipping class");
+                ex.printStackTrace();
+                return false;
+            }
+            return true;
+        } finally {
+            if (!committed) {
+                classOutput.discard();
             }
         }
-        return true;
     }
 }
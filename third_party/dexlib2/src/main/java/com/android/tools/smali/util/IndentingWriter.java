@@ -159,6 +159,14 @@ public class IndentingWriter extends Writer {
         writer.close();
     }
 
+    /**
+     * Resets the indentation, so that this writer can be reused for an unrelated block of text.
+     */
+    public void reset() {
+        indentLevel = 0;
+        beginningOfLine = true;
+    }
+
     public void indent(int indentAmount) {
         this.indentLevel += indentAmount;
         if (indentLevel < 0) {
@@ -96,6 +96,19 @@ import java.util.*;
     this.verboseErrors = verboseErrors;
   }
 
+  /**
+   * Points this tree walker at the tree for another file, and resets any state left over from the previous file, so
+   * that the same tree walker can be used to assemble multiple files.
+   */
+  public void reset(TreeNodeStream input) {
+    // like Parser.setTokenStream, clear the input first so that reset() doesn't try to rewind the previous tree
+    this.input = null;
+    reset();
+    setTreeNodeStream(input);
+    classType = null;
+    callSiteNameIndex = 0;
+  }
+
   private byte parseRegister_nibble(String register)
       throws SemanticException {
     int totalMethodRegisters = method_stack.peek().totalMethodRegisters;
@@ -37,9 +37,17 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.regex.Pattern;
 
 import static com.android.tools.smali.util.PathUtil.testCaseSensitivity;
@@ -131,6 +139,130 @@ public class ClassFileNameHandler {
         return addUniqueChild(top, packageElements, 0);
     }
 
+    /**
+     * Gets unique file names for a list of classes at once.
+     *
+     * Each distinct package is resolved into its directory just once, and then the classes of each package are added
+     * to their directory. Different directories don't share any state, so when an executor is given, the packages are
+     * spread across it. Within a package, the classes are added in list order, so the result is deterministic, and is
+     * the same as calling getUniqueFilenameForClass for each class in turn (except in the unlikely case that a package
+     * name collides with the file name for a class in the same directory).
+     *
+     * The directories and (empty) files are all created by the time this returns.
+     *
+     * @param classNames The classes to get file names for, in the normal dalvik style, e.g. Ljava/lang/Object;
+     * @param executor If not null, an executor to add the classes of each package with
+     * @return The file for each class, in the same order as classNames
+     */
+    @Nonnull
+    public List<File> getUniqueFilenamesForClasses(@Nonnull List<String> classNames, @Nullable Executor executor)
+            throws IOException {
+        final File[] files = new File[classNames.size()];
+
+        // maps the package part of a class name (without the leading L or trailing /) to the indexes of its classes
+        Map<String, List<Integer>> packageClasses = new LinkedHashMap<>();
+        final String[] simpleNames = new String[classNames.size()];
+        for (int i=0; i<classNames.size(); i++) {
+            String className = classNames.get(i);
+            if (className.length() < 3 ||
+                    className.charAt(0) != 'L' || className.charAt(className.length()-1) != ';') {
+                throw new RuntimeException("Not a valid dalvik class name");
+            }
+
+            int lastSlash = className.lastIndexOf('/');
+            String packageName;
+            if (lastSlash < 0) {
+                packageName = "";
+                simpleNames[i] = className.substring(1, className.length()-1);
+            } else {
+                packageName = className.substring(1, lastSlash);
+                simpleNames[i] = className.substring(lastSlash+1, className.length()-1);
+            }
+            if (simpleNames[i].isEmpty()) {
+                throw new RuntimeException("Not a valid dalvik class name");
+            }
+
+            List<Integer> indexes = packageClasses.get(packageName);
+            if (indexes == null) {
+                indexes = new ArrayList<>();
+                packageClasses.put(packageName, indexes);
+            }
+            indexes.add(i);
+        }
+
+        // resolve the directory for each package, in order of first appearance. This also creates the directories
+        List<FutureTask<Void>> tasks = new ArrayList<>(packageClasses.size());
+        for (Map.Entry<String, List<Integer>> entry: packageClasses.entrySet()) {
+            DirectoryEntry directory = top;
+            String packageName = entry.getKey();
+            if (!packageName.isEmpty()) {
+                int elementStart = 0;
+                while (true) {
+                    int elementEnd = packageName.indexOf('/', elementStart);
+                    if (elementEnd < 0) {
+                        elementEnd = packageName.length();
+                    }
+                    //if the first char after the initial L is a '/', or if there are two consecutive '/'
+                    if (elementEnd == elementStart) {
+                        throw new RuntimeException("Not a valid dalvik class name");
+                    }
+                    directory = (DirectoryEntry)directory.addChild(
+                            new DirectoryEntry(directory, packageName.substring(elementStart, elementEnd)));
+                    if (elementEnd == packageName.length()) {
+                        break;
+                    }
+                    elementStart = elementEnd + 1;
+                }
+            }
+
+            final DirectoryEntry packageDirectory = directory;
+            final List<Integer> indexes = entry.getValue();
+            tasks.add(new FutureTask<Void>(new Callable<Void>() {
+                @Override public Void call() throws IOException {
+                    for (int index: indexes) {
+                        FileEntry fileEntry = new FileEntry(packageDirectory, simpleNames[index] + fileExtension);
+                        packageDirectory.addChild(fileEntry);
+                        files[index] = new File(packageDirectory.file, fileEntry.getPhysicalName());
+                    }
+                    return null;
+                }
+            }));
+        }
+
+        // then add the classes of each package to its directory
+        for (FutureTask<Void> task: tasks) {
+            if (executor != null) {
+                executor.execute(task);
+            } else {
+                task.run();
+            }
+        }
+        for (FutureTask<Void> task: tasks) {
+            while (true) {
+                try {
+                    task.get();
+                } catch (InterruptedException ex) {
+                    continue;
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof IOException) {
+                        throw (IOException)cause;
+                    }
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException)cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error)cause;
+                    }
+                    throw new RuntimeException(cause);
+                }
+                break;
+            }
+        }
+
+        return Arrays.asList(files);
+    }
+
     @Nonnull
     private File addUniqueChild(@Nonnull DirectoryEntry parent, @Nonnull String[] packageElements,
                                 int packageElementIndex) throws IOException {
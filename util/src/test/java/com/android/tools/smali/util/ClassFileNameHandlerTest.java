@@ -31,6 +31,7 @@
 package com.android.tools.smali.util;
 
 import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
 import com.google.common.io.Files;
 import org.junit.Assert;
 import org.junit.Test;
@@ -39,6 +40,9 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class ClassFileNameHandlerTest {
     private final Charset UTF8 = StandardCharsets.UTF_8;
@@ -279,6 +283,40 @@ public class ClassFileNameHandlerTest {
         checkFilename(tempDir, file, "ϵ.1", "ε.1.smali");
     }
 
+    @Test
+    public void testBulkFilenames() throws IOException {
+        List<String> classNames = Lists.newArrayList("La/b/c;", "La/b/C;", "La/B/c;", "Ld;", "La/b/c/d;", "LD;",
+                "La/b;", "La/B/d;");
+
+        File sequentialDir = Files.createTempDir().getCanonicalFile();
+        ClassFileNameHandler sequentialHandler = new ClassFileNameHandler(sequentialDir, ".smali", false, false);
+        List<String> expected = Lists.newArrayList();
+        for (String className: classNames) {
+            File file = sequentialHandler.getUniqueFilenameForClass(className);
+            expected.add(sequentialDir.toPath().relativize(file.toPath()).toString());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            File bulkDir = Files.createTempDir().getCanonicalFile();
+            ClassFileNameHandler bulkHandler = new ClassFileNameHandler(bulkDir, ".smali", false, false);
+            List<File> files = bulkHandler.getUniqueFilenamesForClasses(classNames, executor);
+
+            List<String> actual = Lists.newArrayList();
+            for (File file: files) {
+                Assert.assertTrue(file.isFile());
+                actual.add(bulkDir.toPath().relativize(file.toPath()).toString());
+            }
+            Assert.assertEquals(expected, actual);
+
+            // classes added afterwards still see the bulk allocated names
+            File file = bulkHandler.getUniqueFilenameForClass("La/b/C;");
+            checkFilename(bulkDir, file, "a", "b", "C.2.smali");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     private void checkFilename(File base, File file, String... elements) {
         for (int i=elements.length-1; i>=0; i--) {
             Assert.assertEquals(elements[i], file.getName());